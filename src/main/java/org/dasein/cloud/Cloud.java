@@ -23,21 +23,32 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a core cloud independent of account-specific connectivity information. You can pre-register cloud objects
  * at system start up time and use the {@link #getInstance(String)} method to fetch the clouds during the system
  * life cycle. Clouds are uniquely identified by their API endpoints.
+ * <p>
+ * The registry is safe for concurrent registration and lookup without locking. The context requirements of each
+ * cloud are computed once and cached so that creating or copying contexts does not construct a provider.
+ * </p>
  * <p>Created by George Reese: 2/27/14 8:40 PM</p>
  * @author George Reese
  * @version 2014.03 initial version (issue #123)
+ * @version 2015.09 concurrent registry with lookups by provider and cloud name
  * @since 2014.03
  */
 public class Cloud {
-    static private HashMap<String,Cloud> clouds = new HashMap<String, Cloud>();
+    static private final ConcurrentMap<String,Cloud>                       clouds     = new ConcurrentHashMap<String, Cloud>();
+    static private final ConcurrentMap<String,CopyOnWriteArrayList<Cloud>> byProvider = new ConcurrentHashMap<String, CopyOnWriteArrayList<Cloud>>();
 
     /**
      * Fetches a cloud object using its {@link #getEndpoint()} as its identifying value. If no cloud has been registered
@@ -49,6 +60,62 @@ public class Cloud {
         return clouds.get(endpoint);
     }
 
+    /**
+     * Fetches the first cloud registered with the specified provider and cloud names. Names are matched without regard
+     * to case. Use {@link #getInstances(String, String)} when several endpoints are registered for the same cloud.
+     * @param providerName the name of the organization providing the cloud service (e.g. Amazon)
+     * @param cloudName the name of the cloud service being provided (e.g. AWS)
+     * @return the first matching cloud or <code>null</code> if none has been registered
+     */
+    static public @Nullable Cloud getInstance(@Nonnull String providerName, @Nonnull String cloudName) {
+        for( Cloud cloud : getInstances(providerName) ) {
+            if( cloud.cloudName.equalsIgnoreCase(cloudName) ) {
+                return cloud;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all registered clouds
+     */
+    static public @Nonnull Collection<Cloud> getInstances() {
+        return Collections.unmodifiableCollection(clouds.values());
+    }
+
+    /**
+     * Lists the clouds registered for the specified provider in registration order. The name is matched without
+     * regard to case.
+     * @param providerName the name of the organization providing the cloud services (e.g. Amazon)
+     * @return the matching clouds
+     */
+    static public @Nonnull List<Cloud> getInstances(@Nonnull String providerName) {
+        List<Cloud> list = byProvider.get(providerName.toLowerCase(Locale.ENGLISH));
+
+        if( list == null ) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Lists the clouds registered for the specified provider and cloud names in registration order. Names are matched
+     * without regard to case.
+     * @param providerName the name of the organization providing the cloud services (e.g. Amazon)
+     * @param cloudName the name of the cloud service being provided (e.g. AWS)
+     * @return the matching clouds
+     */
+    static public @Nonnull List<Cloud> getInstances(@Nonnull String providerName, @Nonnull String cloudName) {
+        List<Cloud> matches = new ArrayList<Cloud>();
+
+        for( Cloud cloud : getInstances(providerName) ) {
+            if( cloud.cloudName.equalsIgnoreCase(cloudName) ) {
+                matches.add(cloud);
+            }
+        }
+        return matches;
+    }
+
     /**
      * Registers a cloud with the specified state information under the named endpoint. If a cloud is already registered
      * under that endpoint, this method will simply return the original as if it were a call to {@link #getInstance(String)}.
@@ -59,25 +126,41 @@ public class Cloud {
      * @return a cloud matching the specified state information with that cloud cached for future reference
      */
     static public @Nonnull Cloud register(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String endpoint, @Nonnull Class<? extends CloudProvider> providerClass) {
-        if( clouds.containsKey(endpoint) ) {
-            return clouds.get(endpoint);
+        Cloud cloud = clouds.get(endpoint);
+
+        if( cloud != null ) {
+            return cloud;
         }
-        Cloud cloud = new Cloud();
+        cloud = new Cloud(providerName, cloudName, endpoint, providerClass);
+
+        Cloud existing = clouds.putIfAbsent(endpoint, cloud);
 
-        cloud.endpoint = endpoint;
-        cloud.cloudName = cloudName;
-        cloud.providerClass = providerClass;
-        cloud.providerName = providerName;
-        clouds.put(endpoint, cloud);
+        if( existing != null ) {
+            return existing;
+        }
+        String key = providerName.toLowerCase(Locale.ENGLISH);
+        CopyOnWriteArrayList<Cloud> list = byProvider.get(key);
+
+        if( list == null ) {
+            byProvider.putIfAbsent(key, new CopyOnWriteArrayList<Cloud>());
+            list = byProvider.get(key);
+        }
+        list.addIfAbsent(cloud);
         return cloud;
     }
 
-    private String cloudName;
-    private String endpoint;
-    private Class<? extends CloudProvider> providerClass;
-    private String providerName;
+    private final String                         cloudName;
+    private volatile ContextRequirements         contextRequirements;
+    private final String                         endpoint;
+    private final Class<? extends CloudProvider> providerClass;
+    private final String                         providerName;
 
-    private Cloud() { }
+    private Cloud(@Nonnull String providerName, @Nonnull String cloudName, @Nonnull String endpoint, @Nonnull Class<? extends CloudProvider> providerClass) {
+        this.providerName = providerName;
+        this.cloudName = cloudName;
+        this.endpoint = endpoint;
+        this.providerClass = providerClass;
+    }
 
     /**
      * Constructs an instance of the Dasein Cloud {@link org.dasein.cloud.CloudProvider} abstract class supporting
@@ -103,7 +186,7 @@ public class Cloud {
      */
     public @Nonnull ProviderContext createContext(@Nonnull String forAccountNumber, @Nonnull String inRegionId, @Nonnull Properties configurationProperties) throws InternalException {
         try {
-            List<ContextRequirements.Field> fields = buildProvider().getContextRequirements().getConfigurableValues();
+            List<ContextRequirements.Field> fields = getContextRequirements().getConfigurableValues();
             ArrayList<ProviderContext.Value> values = new ArrayList<ProviderContext.Value>();
 
             for( ContextRequirements.Field f : fields ) {
@@ -135,12 +218,6 @@ public class Cloud {
         catch( UnsupportedEncodingException e ) {
             throw new InternalException(e);
         }
-        catch( InstantiationException e ) {
-            throw new InternalException(e);
-        }
-        catch( IllegalAccessException e ) {
-            throw new InternalException(e);
-        }
     }
 
     /**
@@ -167,6 +244,30 @@ public class Cloud {
         return cloudName;
     }
 
+    /**
+     * Provides the configuration values required to connect to this cloud. The requirements are fetched from an
+     * unconnected provider the first time they are needed and cached for the life of the cloud.
+     * @return the context requirements of this cloud's provider implementation
+     * @throws InternalException an error occurred loading the {@link CloudProvider} implementation for this cloud
+     */
+    public @Nonnull ContextRequirements getContextRequirements() throws InternalException {
+        ContextRequirements requirements = contextRequirements;
+
+        if( requirements == null ) {
+            try {
+                requirements = buildProvider().getContextRequirements();
+            }
+            catch( InstantiationException e ) {
+                throw new InternalException(e);
+            }
+            catch( IllegalAccessException e ) {
+                throw new InternalException(e);
+            }
+            contextRequirements = requirements;
+        }
+        return requirements;
+    }
+
     /**
      * @return the endpoint to which API connections are initially made
      */
@@ -429,14 +429,20 @@ public abstract class CloudProvider {
     private void waitForHold() {
         long timeout = System.currentTimeMillis() + (CalendarWrapper.MINUTE * 20L);
 
-        while (timeout > System.currentTimeMillis()) {
-            synchronized (this) {
-                if (holdCount < 1) {
+        synchronized (this) {
+            // release() notifies on every decrement, so wake up as soon as the last hold drains
+            while (holdCount > 0) {
+                long remaining = timeout - System.currentTimeMillis();
+
+                if (remaining <= 0) {
+                    break;
+                }
+                try { wait(remaining); }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                     break;
                 }
             }
-            try { Thread.sleep(1000L); }
-            catch (InterruptedException ignore) { /* ignore this */ }
         }
         if (context != null) {
             context.clear();
@@ -21,15 +21,21 @@ package org.dasein.cloud;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.TreeMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 /**
  * <p>
@@ -40,6 +46,7 @@ import javax.annotation.Nullable;
  * </p>
  * @author George Reese
  * @version 2014.03 refactored for discoverability of configuration values and better model enforcement (issue #123)
+ * @version 2015.09 keyed connection fingerprints for provider pooling
  * @since 2010.08
  */
 public class ProviderContext extends ProviderContextCompat implements Serializable {
@@ -148,6 +155,23 @@ public class ProviderContext extends ProviderContextCompat implements Serializab
         }
     }
 
+    static private @Nullable Object copyCredential(@Nullable Object value) {
+        if( value instanceof byte[] ) {
+            return ((byte[])value).clone();
+        }
+        else if( value instanceof byte[][] ) {
+            byte[][] parts = ((byte[][])value).clone();
+
+            for( int i=0; i<parts.length; i++ ) {
+                if( parts[i] != null ) {
+                    parts[i] = parts[i].clone();
+                }
+            }
+            return parts;
+        }
+        return value;
+    }
+
     /**
      * Constructs a provider context from configuration values provided by a client. The preferred mechanism to access
      * this constructor is via {@link Cloud#createContext(String, String, org.dasein.cloud.ProviderContext.Value...)}.
@@ -163,7 +187,8 @@ public class ProviderContext extends ProviderContextCompat implements Serializab
 
         ctx.configurationValues = new HashMap<String,Object>();
         for( Value<?> v : configurationValues ) {
-            ctx.configurationValues.put(v.name, v.value);
+            // the context owns its credentials; clearing it on close must not wipe the caller's arrays
+            ctx.configurationValues.put(v.name, copyCredential(v.value));
             if( v.value instanceof String ) {
                 p.setProperty(v.name, (String)v.value);
             }
@@ -296,23 +321,17 @@ public class ProviderContext extends ProviderContextCompat implements Serializab
      * @throws InternalException an error occurred loading the {@link org.dasein.cloud.CloudProvider} implementation
      */
     public @Nonnull ProviderContext copy( @Nonnull String havingRegionId ) throws InternalException {
-        try {
-            CloudProvider provider = this.getCloud().buildProvider();
-            List<ContextRequirements.Field> fields = provider.getContextRequirements().getConfigurableValues();
-            List<Value<Object>> values = new ArrayList<Value<Object>>();
-            for( ContextRequirements.Field f : fields ) {
-                Object value = this.getConfigurationValue(f);
-                if( value != null ) {
-                    values.add(new Value<Object>(f.name, value));
-                }
+        List<ContextRequirements.Field> fields = getCloud().getContextRequirements().getConfigurableValues();
+        List<Value<Object>> values = new ArrayList<Value<Object>>();
+
+        for( ContextRequirements.Field f : fields ) {
+            Object value = this.getConfigurationValue(f);
+
+            if( value != null ) {
+                values.add(new Value<Object>(f.name, value));
             }
-            return this.getCloud().createContext(getAccountNumber(), havingRegionId, values.toArray(new Value[values.size()]));
-        } catch( IllegalAccessException e ) {
-            throw new InternalException(e);
-        } catch( InstantiationException e ) {
-            throw new InternalException(e);
         }
-
+        return this.getCloud().createContext(getAccountNumber(), havingRegionId, values.toArray(new Value[values.size()]));
     }
 
     /**
@@ -340,6 +359,65 @@ public class ProviderContext extends ProviderContextCompat implements Serializab
         return getConfigurationValue(field.name);
     }
 
+    /**
+     * Calculates a keyed digest (HMAC-SHA256) of the configuration values and custom properties of this context. Two
+     * contexts with the same fingerprint under the same secret connect with the same credentials and settings, so the
+     * raw credentials never need to be used as a key when pooling connected providers. The secret keeps the
+     * fingerprint from being used to test guesses of the credentials offline; it should never leave the process.
+     * @param secret the secret key for the digest
+     * @return a hex encoded digest of the connection settings
+     */
+    @Nonnull String getConnectionFingerprint(@Nonnull byte[] secret) {
+        Map<String,Object> values = new TreeMap<String, Object>();
+        Charset utf8 = Charset.forName("utf-8");
+
+        if( configurationValues != null ) {
+            values.putAll(configurationValues);
+        }
+        for( String name : getCustomProperties().stringPropertyNames() ) {
+            values.put("property." + name, getCustomProperties().getProperty(name));
+        }
+        try {
+            Mac digest = Mac.getInstance("HmacSHA256");
+
+            digest.init(new SecretKeySpec(secret, "HmacSHA256"));
+
+            for( Map.Entry<String,Object> entry : values.entrySet() ) {
+                Object value = entry.getValue();
+
+                digest.update(entry.getKey().getBytes(utf8));
+                digest.update((byte)0);
+                if( value instanceof byte[] ) {
+                    digest.update((byte[])value);
+                }
+                else if( value instanceof byte[][] ) {
+                    for( byte[] part : (byte[][])value ) {
+                        if( part != null ) {
+                            digest.update(part);
+                        }
+                        digest.update((byte)0);
+                    }
+                }
+                else if( value != null ) {
+                    digest.update(value.toString().getBytes(utf8));
+                }
+                digest.update((byte)0);
+            }
+            StringBuilder str = new StringBuilder();
+
+            for( byte b : digest.doFinal() ) {
+                str.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return str.toString();
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new RuntimeException("HmacSHA256 is not supported by this JVM", e);
+        }
+        catch( InvalidKeyException e ) {
+            throw new RuntimeException("Invalid fingerprint secret", e);
+        }
+    }
+
     /**
      * The effective account number under which this context operates. It is used for defining ownership of
      * storage assets so they align with compute assets while the {@link #getAccountNumber()} for this context
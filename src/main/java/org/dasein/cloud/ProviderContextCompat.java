@@ -65,14 +65,17 @@ public abstract class ProviderContextCompat implements Serializable {
 
     /**
      * Clears out all keys being stored by this provider. The keys are overwritten with random data.
-     * If these keys were set from instance variables in other objects, this method will result in
-     * some peculiar side-effects.
+     * The setters store copies of the keys they are given, so the caller's arrays are left untouched.
      */
     public void clear() {
         ProviderContext.clear(accessPublic, accessPrivate, storagePublic, storagePrivate, x509Cert, x509Key, storageX509Cert, storageX509Key);
     }
 
     /************************************** HELPER METHODS ************************************/
+    static private @Nullable byte[] copy(@Nullable byte[] key) {
+        return (key == null ? null : key.clone());
+    }
+
     public abstract String getAccountNumber();
 
     public abstract Cloud getCloud();
@@ -118,7 +121,7 @@ public abstract class ProviderContextCompat implements Serializable {
             return null;
         }
         try {
-            ContextRequirements.Field f = c.buildProvider().getContextRequirements().getCompatAccessKeys();
+            ContextRequirements.Field f = c.getContextRequirements().getCompatAccessKeys();
 
             if( f == null ) {
                 return null;
@@ -154,7 +157,7 @@ public abstract class ProviderContextCompat implements Serializable {
             return null;
         }
         try {
-            ContextRequirements.Field f = c.buildProvider().getContextRequirements().getCompatAccessKeys();
+            ContextRequirements.Field f = c.getContextRequirements().getCompatAccessKeys();
 
             if( f == null ) {
                 return null;
@@ -208,7 +211,7 @@ public abstract class ProviderContextCompat implements Serializable {
             Properties p = new Properties();
 
             try {
-                for( ContextRequirements.Field f : cloud.buildProvider().getContextRequirements().getConfigurableValues() ) {
+                for( ContextRequirements.Field f : cloud.getContextRequirements().getConfigurableValues() ) {
                     if( !f.type.equals(ContextRequirements.FieldType.KEYPAIR) ) {
                         Object val = getConfigurationValue(f.name);
 
@@ -334,7 +337,7 @@ public abstract class ProviderContextCompat implements Serializable {
             return null;
         }
         try {
-            ContextRequirements.Field f = c.buildProvider().getContextRequirements().getCompatAccessX509();
+            ContextRequirements.Field f = c.getContextRequirements().getCompatAccessX509();
 
             if( f == null ) {
                 return null;
@@ -368,7 +371,7 @@ public abstract class ProviderContextCompat implements Serializable {
             return null;
         }
         try {
-            ContextRequirements.Field f = c.buildProvider().getContextRequirements().getCompatAccessX509();
+            ContextRequirements.Field f = c.getContextRequirements().getCompatAccessX509();
 
             if( f == null ) {
                 return null;
@@ -395,8 +398,8 @@ public abstract class ProviderContextCompat implements Serializable {
      */
     @Deprecated
     public void setAccessKeys(@Nullable byte[] publicKey, @Nullable byte[] privateKey) {
-        accessPublic = publicKey;
-        accessPrivate = privateKey;
+        accessPublic = copy(publicKey);
+        accessPrivate = copy(privateKey);
     }
 
     /**
@@ -407,7 +410,7 @@ public abstract class ProviderContextCompat implements Serializable {
     @SuppressWarnings("UnusedDeclaration")
     @Deprecated
     public void setAccessPrivate(@Nullable byte[] accessPrivate) {
-        this.accessPrivate = accessPrivate;
+        this.accessPrivate = copy(accessPrivate);
     }
 
     /**
@@ -418,7 +421,7 @@ public abstract class ProviderContextCompat implements Serializable {
     @SuppressWarnings("UnusedDeclaration")
     @Deprecated
     public void setAccessPublic(@Nullable byte[] accessPublic) {
-        this.accessPublic = accessPublic;
+        this.accessPublic = copy(accessPublic);
     }
 
     /**
@@ -490,8 +493,8 @@ public abstract class ProviderContextCompat implements Serializable {
      */
     @Deprecated
     public void setStorageKeys(@Nullable byte[] publicKey, @Nullable byte[] privateKey) {
-        storagePublic = publicKey;
-        storagePrivate = privateKey;
+        storagePublic = copy(publicKey);
+        storagePrivate = copy(privateKey);
     }
 
     /**
@@ -502,7 +505,7 @@ public abstract class ProviderContextCompat implements Serializable {
     @SuppressWarnings("UnusedDeclaration")
     @Deprecated
     public void setStoragePrivate(@Nullable byte[] storagePrivate) {
-        this.storagePrivate = storagePrivate;
+        this.storagePrivate = copy(storagePrivate);
     }
 
     /**
@@ -513,19 +516,19 @@ public abstract class ProviderContextCompat implements Serializable {
     @SuppressWarnings("UnusedDeclaration")
     @Deprecated
     public void setStoragePublic(@Nullable byte[] storagePublic) {
-        this.storagePublic = storagePublic;
+        this.storagePublic = copy(storagePublic);
     }
 
     @SuppressWarnings("UnusedDeclaration")
     @Deprecated
     public void setStorageX509Cert(byte[] storageX509Cert) {
-        this.storageX509Cert = storageX509Cert;
+        this.storageX509Cert = copy(storageX509Cert);
     }
 
     @SuppressWarnings("UnusedDeclaration")
     @Deprecated
     public void setStorageX509Key(byte[] storageX509Key) {
-        this.storageX509Key = storageX509Key;
+        this.storageX509Key = copy(storageX509Key);
     }
 
     /**
@@ -536,7 +539,7 @@ public abstract class ProviderContextCompat implements Serializable {
      */
     @Deprecated
     public void setX509Cert(byte[] x509Cert) {
-        this.x509Cert = x509Cert;
+        this.x509Cert = copy(x509Cert);
     }
 
     /**
@@ -547,6 +550,6 @@ public abstract class ProviderContextCompat implements Serializable {
      */
     @Deprecated
     public void setX509Key(byte[] x509Key) {
-        this.x509Key = x509Key;
+        this.x509Key = copy(x509Key);
     }
 }
@@ -0,0 +1,334 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud;
+
+import org.apache.log4j.Logger;
+import org.dasein.util.CalendarWrapper;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * A pool of connected {@link CloudProvider} instances keyed by cloud, account, region and connection settings
+ * (credentials and custom properties). Short-lived request handlers borrow a warm provider instead of
+ * reflectively building and connecting a new one for every request.
+ * <p>
+ * A borrowed provider is held (see {@link CloudProvider#hold()}) until it is handed back via
+ * {@link #release(CloudProvider)}, so closing it while in use drains outstanding work first. Idle providers are
+ * reused most recently used first, are closed once they sit idle longer than the idle timeout, and are checked
+ * with {@link CloudProvider#testContext()} before reuse if they have not been checked within the validation
+ * interval.
+ * </p>
+ * <pre>
+ *     CloudProvider provider = pool.borrow(ctx);
+ *
+ *     try {
+ *         // make calls
+ *     }
+ *     finally {
+ *         pool.release(provider);
+ *     }
+ * </pre>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ProviderPool {
+    static private final Logger logger = Logger.getLogger(ProviderPool.class);
+
+    static public final long DEFAULT_IDLE_TIMEOUT        = CalendarWrapper.MINUTE * 5L;
+    static public final int  DEFAULT_MAX_IDLE_PER_KEY    = 8;
+    static public final long DEFAULT_VALIDATION_INTERVAL = CalendarWrapper.MINUTE;
+
+    static private class PooledProvider {
+        public final String        key;
+        public final CloudProvider provider;
+        public long                lastUsed;
+        public long                lastValidated;
+
+        public PooledProvider(@Nonnull String key, @Nonnull CloudProvider provider) {
+            this.key = key;
+            this.provider = provider;
+            this.lastUsed = System.currentTimeMillis();
+            this.lastValidated = lastUsed;
+        }
+    }
+
+    static public @Nonnull ProviderPool getInstance() {
+        return new ProviderPool();
+    }
+
+    static private @Nonnull String describe(@Nonnull ProviderContext ctx) {
+        return ctx.getCloud().getEndpoint() + "/" + ctx.getAccountNumber() + "/" + ctx.getRegionId();
+    }
+
+    private final Map<CloudProvider,PooledProvider>                             borrowed           = Collections.synchronizedMap(new IdentityHashMap<CloudProvider, PooledProvider>());
+    private volatile boolean                                                    closed             = false;
+    private final ConcurrentHashMap<String,LinkedBlockingDeque<PooledProvider>> idle               = new ConcurrentHashMap<String, LinkedBlockingDeque<PooledProvider>>();
+    private long                                                                idleTimeout        = DEFAULT_IDLE_TIMEOUT;
+    private volatile long                                                       lastEviction       = System.currentTimeMillis();
+    private int                                                                 maxIdlePerKey      = DEFAULT_MAX_IDLE_PER_KEY;
+    private final byte[]                                                        secret             = new byte[32];
+    private long                                                                validationInterval = DEFAULT_VALIDATION_INTERVAL;
+
+    private ProviderPool() {
+        new SecureRandom().nextBytes(secret);
+    }
+
+    /**
+     * Builds the pool key for the specified context. The credentials only contribute through a digest keyed with a
+     * secret private to this pool, so keys are not comparable across pools and should not be logged.
+     * @param ctx the context to key
+     * @return the key under which providers connected with the context are pooled
+     */
+    public @Nonnull String getKey(@Nonnull ProviderContext ctx) {
+        return ctx.getCloud().getEndpoint() + "|" + ctx.getAccountNumber() + "|" + ctx.getRegionId() + "|" + ctx.getConnectionFingerprint(secret);
+    }
+
+    /**
+     * Borrows a connected provider for the specified context, connecting a new one if no healthy idle provider is
+     * available. The provider must be handed back with {@link #release(CloudProvider)} or {@link #invalidate(CloudProvider)}.
+     * @param ctx the context for which a provider is needed
+     * @return a connected provider
+     * @throws CloudException an error occurred connecting a new provider
+     * @throws InternalException an error occurred loading the provider implementation or the pool is closed
+     */
+    public @Nonnull CloudProvider borrow(@Nonnull ProviderContext ctx) throws CloudException, InternalException {
+        if( closed ) {
+            throw new InternalException("The provider pool has been closed");
+        }
+        evictIfDue();
+
+        String key = getKey(ctx);
+        LinkedBlockingDeque<PooledProvider> deque = idle.get(key);
+        PooledProvider pooled = null;
+
+        while( pooled == null && deque != null ) {
+            PooledProvider candidate = deque.pollFirst();
+            long now = System.currentTimeMillis();
+
+            if( candidate == null ) {
+                break;
+            }
+            if( now - candidate.lastUsed > idleTimeout || !candidate.provider.isConnected() ) {
+                candidate.provider.close();
+                continue;
+            }
+            if( now - candidate.lastValidated > validationInterval ) {
+                if( candidate.provider.testContext() == null ) {
+                    logger.debug("Discarding pooled provider that failed its health check: " + describe(ctx));
+                    candidate.provider.close();
+                    continue;
+                }
+                candidate.lastValidated = now;
+            }
+            pooled = candidate;
+        }
+        if( pooled == null ) {
+            pooled = new PooledProvider(key, ctx.connect());
+        }
+        pooled.provider.hold();
+        borrowed.put(pooled.provider, pooled);
+        return pooled.provider;
+    }
+
+    /**
+     * Closes all idle providers and stops pooling. Providers still borrowed are closed when they are released.
+     */
+    public void close() {
+        List<PooledProvider> drained = new ArrayList<PooledProvider>();
+
+        // releases check closed and park providers under the same lock, so none can slip in after the drain
+        synchronized( idle ) {
+            closed = true;
+            for( LinkedBlockingDeque<PooledProvider> deque : idle.values() ) {
+                PooledProvider pooled;
+
+                while( (pooled = deque.pollFirst()) != null ) {
+                    drained.add(pooled);
+                }
+            }
+            idle.clear();
+        }
+        for( PooledProvider pooled : drained ) {
+            pooled.provider.close();
+        }
+    }
+
+    /**
+     * Closes idle providers that have been idle longer than the idle timeout.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+
+        lastEviction = now;
+        for( LinkedBlockingDeque<PooledProvider> deque : idle.values() ) {
+            // the least recently used providers sit at the tail
+            Iterator<PooledProvider> it = deque.descendingIterator();
+
+            while( it.hasNext() ) {
+                PooledProvider pooled = it.next();
+
+                if( now - pooled.lastUsed <= idleTimeout ) {
+                    break;
+                }
+                if( deque.removeLastOccurrence(pooled) ) {
+                    pooled.provider.close();
+                }
+            }
+        }
+    }
+
+    private void evictIfDue() {
+        if( System.currentTimeMillis() - lastEviction > idleTimeout / 2 ) {
+            evictIdle();
+        }
+    }
+
+    /**
+     * @return the number of providers currently borrowed from this pool
+     */
+    public @Nonnegative int getBorrowedCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return the number of idle providers waiting to be borrowed
+     */
+    public @Nonnegative int getIdleCount() {
+        int count = 0;
+
+        for( LinkedBlockingDeque<PooledProvider> deque : idle.values() ) {
+            count += deque.size();
+        }
+        return count;
+    }
+
+    /**
+     * @return how long in milliseconds a provider may sit idle before it is closed
+     */
+    public @Nonnegative long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @return the maximum number of idle providers kept for a single key
+     */
+    public @Nonnegative int getMaxIdlePerKey() {
+        return maxIdlePerKey;
+    }
+
+    /**
+     * @return how long in milliseconds an idle provider may go without a health check before it is checked on borrow
+     */
+    public @Nonnegative long getValidationInterval() {
+        return validationInterval;
+    }
+
+    /**
+     * Hands back a borrowed provider and closes it rather than returning it to the pool. Use this when the provider
+     * has shown itself to be broken, for example after authentication errors.
+     * @param provider the borrowed provider
+     */
+    public void invalidate(@Nonnull CloudProvider provider) {
+        if( borrowed.remove(provider) != null ) {
+            provider.release();
+        }
+        provider.close();
+    }
+
+    /**
+     * Hands back a borrowed provider so that it can be reused.
+     * @param provider the borrowed provider
+     */
+    public void release(@Nonnull CloudProvider provider) {
+        PooledProvider pooled = borrowed.remove(provider);
+
+        if( pooled == null ) {
+            logger.warn("Attempt to release a provider that was not borrowed from this pool: " + provider);
+            return;
+        }
+        provider.release();
+        pooled.lastUsed = System.currentTimeMillis();
+        if( !provider.isConnected() ) {
+            provider.close();
+            return;
+        }
+        boolean pooledIdle = false;
+
+        // borrowers and eviction only shrink the deques without the lock, so only releases and close() take it
+        synchronized( idle ) {
+            if( !closed ) {
+                LinkedBlockingDeque<PooledProvider> deque = idle.get(pooled.key);
+
+                if( deque == null ) {
+                    deque = new LinkedBlockingDeque<PooledProvider>();
+                    idle.put(pooled.key, deque);
+                }
+                if( deque.size() < maxIdlePerKey ) {
+                    deque.offerFirst(pooled);
+                    pooledIdle = true;
+                }
+            }
+        }
+        if( !pooledIdle ) {
+            provider.close();
+        }
+        evictIfDue();
+    }
+
+    /**
+     * Sets how long a provider may sit idle before it is closed.
+     * @param idleTimeout the idle timeout in milliseconds
+     * @return this
+     */
+    public @Nonnull ProviderPool withIdleTimeout(@Nonnegative long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of idle providers kept for a single key.
+     * @param maxIdlePerKey the maximum number of idle providers per key
+     * @return this
+     */
+    public @Nonnull ProviderPool withMaxIdlePerKey(@Nonnegative int maxIdlePerKey) {
+        this.maxIdlePerKey = maxIdlePerKey;
+        return this;
+    }
+
+    /**
+     * Sets how long an idle provider may go without a health check before it is checked on borrow.
+     * @param validationInterval the validation interval in milliseconds
+     * @return this
+     */
+    public @Nonnull ProviderPool withValidationInterval(@Nonnegative long validationInterval) {
+        this.validationInterval = validationInterval;
+        return this;
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.dasein.cloud.compute;
 
+import org.apache.log4j.Logger;
 import org.dasein.cloud.AbstractProviderService;
 import org.dasein.cloud.AsynchronousTask;
 import org.dasein.cloud.CloudException;
@@ -30,14 +31,30 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.BatchLookup;
+import org.dasein.cloud.util.ResourceReference;
+import org.dasein.cloud.util.TagIndex;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.util.stream.Flow;
+import org.dasein.cloud.util.stream.ListPublisher;
+import org.dasein.cloud.util.trace.Tracer;
+import org.dasein.util.Jiterator;
+import org.dasein.util.JiteratorPopulator;
+import org.dasein.util.PopulatorThread;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Basic implementations of deprecated methods, helper functions, and default approaches to implementing methods for
@@ -45,9 +62,19 @@ import java.util.Locale;
  * <p>Created by George Reese: 1/29/13 1:55 PM</p>
  * @author George Reese
  * @version 2013.04
+ * @version 2015.09 own and public images are searched concurrently and merged by ID; optional public image index
+ * @version 2015.09 public image searches by filter options go through the index; providers implement the live library search
+ * in searchPublicImageLibrary, and drivers that still override searchPublicImages(ImageFilterOptions) bypass the index
+ * until they move their search there
+ * @version 2015.09 added batch image lookup
+ * @version 2015.09 added deferred loading of attributes skipped by a projection
+ * @version 2015.09 added streaming listing with back pressure
+ * @version 2015.09 tag changes go through protected hooks and are reported to the tag index once they reach the cloud
  * @since 2013.04
  */
 public abstract class AbstractImageSupport<T extends CloudProvider> extends AbstractProviderService<T> implements MachineImageSupport {
+    static private final Logger logger = Logger.getLogger(AbstractImageSupport.class);
+
     protected AbstractImageSupport(T provider) {
         super(provider);
     }
@@ -146,6 +173,67 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
         return getImage(providerImageId);
     }
 
+    /**
+     * Resolves the IDs in a single pass over {@link #listImages(ImageFilterOptions)}; IDs not found there, such as
+     * public images, are then fetched one at a time with {@link #getImage(String)}. Clouds with a batch describe call
+     * should override this, for example with
+     * {@link BatchLookup#lookupInChunks(Collection, int, int, BatchLookup.ChunkLookup, BatchLookup.IdFunction)}.
+     */
+    @Override
+    public @Nonnull Map<String,MachineImage> getImages(@Nonnull Collection<String> providerImageIds) throws CloudException, InternalException {
+        if( providerImageIds.size() == 1 ) {
+            String id = providerImageIds.iterator().next();
+            MachineImage img = getImage(id);
+
+            return (img == null ? Collections.<String,MachineImage>emptyMap() : Collections.singletonMap(id, img));
+        }
+        if( providerImageIds.isEmpty() ) {
+            return Collections.emptyMap();
+        }
+        Map<String,MachineImage> found = BatchLookup.index(providerImageIds, listImages(ImageFilterOptions.getInstance()), new BatchLookup.IdFunction<MachineImage>() {
+            @Override
+            public @Nullable String getId(@Nonnull MachineImage img) {
+                return img.getProviderMachineImageId();
+            }
+        });
+
+        if( found.size() == new HashSet<String>(providerImageIds).size() ) {
+            return found;
+        }
+        Map<String,MachineImage> images = new LinkedHashMap<String, MachineImage>();
+
+        for( String id : providerImageIds ) {
+            MachineImage img = found.get(id);
+
+            if( img == null && !images.containsKey(id) ) {
+                img = getImage(id);
+            }
+            if( img != null ) {
+                images.put(id, img);
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Arranges for the attributes a provider skipped while listing an image with a projection (see
+     * {@link ImageFilterOptions#withAttributes(String...)}) to be fetched with {@link #getImage(String)} the first time
+     * one of them is read.
+     * @param img the partially populated image
+     * @return the same image
+     */
+    protected @Nonnull MachineImage deferDetails(final @Nonnull MachineImage img) {
+        final String id = img.getProviderMachineImageId();
+
+        img.setDetailsCallback(new Callable<MachineImage>() {
+            @Override
+            public MachineImage call() throws Exception {
+                return getImage(id);
+            }
+        });
+        return img;
+    }
+
     @Override
     @Deprecated
     public @Nonnull String getProviderTermForImage(@Nonnull Locale locale) {
@@ -264,6 +352,16 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
         return listImages(ImageFilterOptions.getInstance(cls).withAccountNumber(ownedBy));
     }
 
+    @Override
+    public @Nonnull Flow.Publisher<MachineImage> streamImages(final @Nullable ImageFilterOptions options) throws CloudException, InternalException {
+        return ListPublisher.forListing(new ListPublisher.Listing<MachineImage>() {
+            @Override
+            public @Nonnull Iterable<MachineImage> list() throws CloudException, InternalException {
+                return listImages(options);
+            }
+        });
+    }
+
     @Override
     @Deprecated
     public @Nonnull Iterable<MachineImageFormat> listSupportedFormats() throws CloudException, InternalException {
@@ -437,7 +535,7 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
                         break;
                     }
                 }
-                if( matches && options.matches(img) ) {
+                if( matches ) {
                     images.add(img);
                 }
             }
@@ -445,25 +543,166 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
         }
     }
 
+    /**
+     * Searches the caller's own images and the public library at the same time and streams the union of the two as
+     * results arrive. Own images come first; public images already returned as own images are skipped by ID.
+     * <p>
+     * Both searches run on background threads that continue the caller's {@link Tracer} trace. Because they run
+     * while the caller iterates, a {@link CloudException} or {@link InternalException} from either search surfaces
+     * during iteration as a {@link org.dasein.util.JiteratorLoadException} whose cause is the original exception.
+     * The searches stop early once the caller no longer holds the returned results or any iterator over them.
+     * </p>
+     */
     @Override
-    public @Nonnull Iterable<MachineImage> searchMachineImages(@Nullable String keyword, @Nullable Platform platform, @Nullable Architecture architecture) throws CloudException, InternalException {
-        ArrayList<MachineImage> matches = new ArrayList<MachineImage>();
-        for( MachineImage img : searchImages(null, keyword, platform, architecture, ImageClass.MACHINE) ) {
-            matches.add(img);
-        }
-        for( MachineImage img : searchPublicImages(keyword, platform, architecture, ImageClass.MACHINE) ) {
-            if( !matches.contains(img) ) {
-                matches.add(img);
+    public @Nonnull Iterable<MachineImage> searchMachineImages(@Nullable final String keyword, @Nullable final Platform platform, @Nullable final Architecture architecture) throws CloudException, InternalException {
+        final Tracer.Context trace = Tracer.capture();
+        Object consumer = new Object();
+        // the searches must not hold the consumer strongly, or it could never become unreachable
+        final WeakReference<Object> held = new WeakReference<Object>(consumer);
+
+        final PopulatorThread<MachineImage> publicSearch = new PopulatorThread<MachineImage>(new JiteratorPopulator<MachineImage>() {
+            @Override
+            public void populate(@Nonnull Jiterator<MachineImage> iterator) throws Exception {
+                Tracer.attach(trace);
+                try {
+                    for( MachineImage img : searchPublicImages(keyword, platform, architecture, ImageClass.MACHINE) ) {
+                        if( held.get() == null ) {
+                            return;
+                        }
+                        iterator.push(img);
+                    }
+                }
+                finally {
+                    Tracer.detach();
+                }
+            }
+        });
+        PopulatorThread<MachineImage> merged = new PopulatorThread<MachineImage>(new JiteratorPopulator<MachineImage>() {
+            @Override
+            public void populate(@Nonnull Jiterator<MachineImage> iterator) throws Exception {
+                HashSet<String> ids = new HashSet<String>();
+
+                Tracer.attach(trace);
+                try {
+                    for( MachineImage img : searchImages(null, keyword, platform, architecture, ImageClass.MACHINE) ) {
+                        if( held.get() == null ) {
+                            return;
+                        }
+                        ids.add(img.getProviderMachineImageId());
+                        iterator.push(img);
+                    }
+                    for( MachineImage img : publicSearch.getResult() ) {
+                        if( held.get() == null ) {
+                            return;
+                        }
+                        if( ids.add(img.getProviderMachineImageId()) ) {
+                            iterator.push(img);
+                        }
+                    }
+                }
+                finally {
+                    Tracer.detach();
+                }
             }
+        });
+
+        publicSearch.populate();
+        merged.populate();
+        return new HeldResults<MachineImage>(merged.getResult(), consumer);
+    }
+
+    /**
+     * Results produced in the background that keep a token reachable for as long as the caller holds them or any
+     * iterator over them. Producers hold the token only weakly and stop once it has been collected.
+     */
+    static private class HeldResults<T> implements Iterable<T> {
+        private final Iterable<T> results;
+        @SuppressWarnings("unused")
+        private final Object      token;
+
+        HeldResults(@Nonnull Iterable<T> results, @Nonnull Object token) {
+            this.results = results;
+            this.token = token;
+        }
+
+        @Override
+        public @Nonnull Iterator<T> iterator() {
+            final Iterator<T> it = results.iterator();
+
+            // an inner class, so every iterator keeps this, and with it the token, reachable
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public T next() {
+                    return it.next();
+                }
+
+                @Override
+                public void remove() {
+                    it.remove();
+                }
+            };
         }
-        return matches;
     }
 
+    /**
+     * Searches the public image library through the {@link PublicImageIndex} if one is configured for the provider
+     * context, and otherwise in the cloud through {@link #searchPublicImageLibrary(ImageFilterOptions)}. Providers
+     * implement that method rather than overriding this one; an override of this method bypasses the index.
+     * <p>
+     *     Note to driver authors: drivers written before 2015.09 override this method with their live search, so none
+     *     of their users get the index. To migrate, rename the override to
+     *     {@link #searchPublicImageLibrary(ImageFilterOptions)} and make it protected; nothing else needs to change.
+     * </p>
+     * @param options the search criteria
+     * @return the matching public images
+     * @throws CloudException an error occurred with the cloud provider while searching
+     * @throws InternalException a local error occurred while searching
+     */
     @Override
     public @Nonnull Iterable<MachineImage> searchPublicImages(@Nonnull ImageFilterOptions options) throws CloudException, InternalException {
+        return searchIndexedPublicImages(options);
+    }
+
+    /**
+     * Searches the public image library in the cloud. This is the live search behind
+     * {@link #searchPublicImages(ImageFilterOptions)} and the source from which a {@link PublicImageIndex} is built.
+     * @param options the search criteria
+     * @return the matching public images
+     * @throws CloudException an error occurred with the cloud provider while searching
+     * @throws InternalException a local error occurred while searching
+     */
+    protected @Nonnull Iterable<MachineImage> searchPublicImageLibrary(@Nonnull ImageFilterOptions options) throws CloudException, InternalException {
         return Collections.emptyList();
     }
 
+    /**
+     * Searches the public image library through the {@link PublicImageIndex} if one is configured for the provider
+     * context, falling back to {@link #searchPublicImageLibrary(ImageFilterOptions)} when it is not or when the index
+     * cannot be used.
+     * @param options the search criteria
+     * @return the matching public images
+     * @throws CloudException an error occurred with the cloud provider while searching
+     * @throws InternalException a local error occurred while searching
+     */
+    protected @Nonnull Iterable<MachineImage> searchIndexedPublicImages(@Nonnull ImageFilterOptions options) throws CloudException, InternalException {
+        PublicImageIndex index = (options.getWithAllRegions() ? null : PublicImageIndex.getInstance(getProvider()));
+
+        if( index != null ) {
+            try {
+                return index.search(getProvider(), options);
+            }
+            catch( InternalException e ) {
+                logger.warn("Searching public images live: " + e.getMessage());
+            }
+        }
+        return searchPublicImageLibrary(options);
+    }
+
     @Override
     public @Nonnull Iterable<MachineImage> searchPublicImages(@Nullable String keyword, @Nullable Platform platform, @Nullable Architecture architecture, @Nullable ImageClass ... imageClasses) throws CloudException, InternalException {
         ImageFilterOptions options = ImageFilterOptions.getInstance();
@@ -496,7 +735,7 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
                         break;
                     }
                 }
-                if( matches && options.matches(img) ) {
+                if( matches ) {
                     images.add(img);
                 }
             }
@@ -568,7 +807,28 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
 
     @Override
     public void updateTags(@Nonnull String imageId, @Nonnull Tag ... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            updateTagsInCloud(imageId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsUpdated(getProvider(), ResourceReference.MACHINE_IMAGE, new String[] { imageId }, tags);
+    }
+
+    /**
+     * Adds or changes tags on a machine image in the cloud. The default implementation does not support tagging.
+     * Called by {@link #updateTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param imageId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void updateTagsInCloud(@Nonnull String imageId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for machine images in " + getProvider().getCloudName());
     }
 
     @Override
@@ -580,7 +840,28 @@ public abstract class AbstractImageSupport<T extends CloudProvider> extends Abst
 
     @Override
     public void removeTags(@Nonnull String imageId, @Nonnull Tag ... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            removeTagsInCloud(imageId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsRemoved(getProvider(), ResourceReference.MACHINE_IMAGE, new String[] { imageId }, tags);
+    }
+
+    /**
+     * Removes tags from a machine image in the cloud. The default implementation does not support tagging.
+     * Called by {@link #removeTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param imageId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void removeTagsInCloud(@Nonnull String imageId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for machine images in " + getProvider().getCloudName());
     }
 
     @Override
@@ -29,6 +29,10 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.BatchLookup;
+import org.dasein.cloud.util.ResourceReference;
+import org.dasein.cloud.util.StatusListing;
+import org.dasein.cloud.util.TagIndex;
 import org.dasein.cloud.util.TagUtils;
 
 import javax.annotation.Nonnull;
@@ -37,6 +41,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Basic non-functional functionality for any implementation of snapshot support in any cloud.
@@ -44,6 +49,9 @@ import java.util.Locale;
  * @author George Reese
  * @since 2013.04
  * @version 2013.04
+ * @version 2015.09 added batch snapshot lookup
+ * @version 2015.09 status listings are projected lazily and can be cached briefly
+ * @version 2015.09 tag changes go through protected hooks and are reported to the tag index once they reach the cloud
  */
 public abstract class AbstractSnapshotSupport<T extends CloudProvider> extends AbstractProviderService<T> implements SnapshotSupport {
     protected AbstractSnapshotSupport(T provider) {
@@ -95,6 +103,29 @@ public abstract class AbstractSnapshotSupport<T extends CloudProvider> extends A
         return null;
     }
 
+    /**
+     * Resolves all of the IDs in a single pass over {@link #listSnapshots()}. Clouds with a batch describe call should
+     * override this, for example with {@link BatchLookup#lookupInChunks(Collection, int, int, BatchLookup.ChunkLookup, BatchLookup.IdFunction)}.
+     */
+    @Override
+    public @Nonnull Map<String,Snapshot> getSnapshots(@Nonnull Collection<String> snapshotIds) throws InternalException, CloudException {
+        if( snapshotIds.size() == 1 ) {
+            String id = snapshotIds.iterator().next();
+            Snapshot snapshot = getSnapshot(id);
+
+            return (snapshot == null ? Collections.<String,Snapshot>emptyMap() : Collections.singletonMap(id, snapshot));
+        }
+        if( snapshotIds.isEmpty() ) {
+            return Collections.emptyMap();
+        }
+        return BatchLookup.index(snapshotIds, listSnapshots(), new BatchLookup.IdFunction<Snapshot>() {
+            @Override
+            public @Nullable String getId(@Nonnull Snapshot snapshot) {
+                return snapshot.getProviderSnapshotId();
+            }
+        });
+    }
+
     @Override
     @Deprecated
     public @Nonnull Requirement identifyAttachmentRequirement() throws InternalException, CloudException {
@@ -113,12 +144,29 @@ public abstract class AbstractSnapshotSupport<T extends CloudProvider> extends A
 
     @Override
     public @Nonnull Iterable<ResourceStatus> listSnapshotStatus() throws InternalException, CloudException {
-        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
-
-        for( Snapshot snapshot : listSnapshots() ) {
-            status.add(new ResourceStatus(snapshot.getProviderSnapshotId(), snapshot.getCurrentState()));
-        }
-        return status;
+        return StatusListing.list(getProvider(), "Snapshot", new StatusListing.StatusSource() {
+            @Override
+            public @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException {
+                return fetchSnapshotStatus();
+            }
+        });
+    }
+
+    /**
+     * Fetches the status of all snapshots from the cloud for {@link #listSnapshotStatus()}, which caches the result briefly if the context opts in.
+     * By default this projects the full listing onto status objects one snapshot at a time; providers with a
+     * cheaper call returning only IDs and states should override this method.
+     * @return the status of each snapshot
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected @Nonnull Iterable<ResourceStatus> fetchSnapshotStatus() throws CloudException, InternalException {
+        return StatusListing.project(listSnapshots(), new StatusListing.StatusFunction<Snapshot>() {
+            @Override
+            public @Nullable ResourceStatus getStatus(@Nonnull Snapshot snapshot) {
+                return new ResourceStatus(snapshot.getProviderSnapshotId(), snapshot.getCurrentState());
+            }
+        });
     }
 
     public @Nonnull Iterable<Snapshot> listSnapshots(SnapshotFilterOptions options) throws InternalException, CloudException {
@@ -159,7 +207,28 @@ public abstract class AbstractSnapshotSupport<T extends CloudProvider> extends A
 
     @Override
     public void removeTags(@Nonnull String snapshotId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            removeTagsInCloud(snapshotId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsRemoved(getProvider(), ResourceReference.SNAPSHOT, new String[] { snapshotId }, tags);
+    }
+
+    /**
+     * Removes tags from a snapshot in the cloud. The default implementation does not support tagging.
+     * Called by {@link #removeTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param snapshotId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void removeTagsInCloud(@Nonnull String snapshotId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for snapshots in " + getProvider().getCloudName());
     }
 
     @Override
@@ -268,7 +337,28 @@ public abstract class AbstractSnapshotSupport<T extends CloudProvider> extends A
 
     @Override
     public void updateTags(@Nonnull String snapshotId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            updateTagsInCloud(snapshotId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsUpdated(getProvider(), ResourceReference.SNAPSHOT, new String[] { snapshotId }, tags);
+    }
+
+    /**
+     * Adds or changes tags on a snapshot in the cloud. The default implementation does not support tagging.
+     * Called by {@link #updateTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param snapshotId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void updateTagsInCloud(@Nonnull String snapshotId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for snapshots in " + getProvider().getCloudName());
     }
 
     @Override
@@ -30,26 +30,18 @@ import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
 import org.dasein.cloud.util.*;
+import org.dasein.cloud.util.event.CloudEvent;
+import org.dasein.cloud.util.event.CloudEvents;
+import org.dasein.cloud.util.stream.Flow;
+import org.dasein.cloud.util.stream.ListPublisher;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.Jiterator;
 import org.dasein.util.JiteratorPopulator;
 import org.dasein.util.PopulatorThread;
-import org.dasein.util.uom.storage.Gigabyte;
-import org.dasein.util.uom.storage.Megabyte;
-import org.dasein.util.uom.storage.Storage;
-import org.dasein.util.uom.time.Day;
-import org.dasein.util.uom.time.TimePeriod;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -62,6 +54,11 @@ import java.util.concurrent.Future;
  *
  * @author George Reese
  * @version 2013.04
+ * @version 2015.09 added batch virtual machine lookup
+ * @version 2015.09 status listings are projected lazily and can be cached briefly
+ * @version 2015.09 added deferred loading of attributes skipped by a projection
+ * @version 2015.09 added streaming listing with back pressure
+ * @version 2015.09 tag changes go through protected hooks and are reported to the tag index once they reach the cloud
  * @since 2013.04
  */
 public abstract class AbstractVMSupport<T extends CloudProvider> extends AbstractProviderService<T> implements VirtualMachineSupport {
@@ -206,6 +203,48 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         return null;
     }
 
+    /**
+     * Resolves all of the IDs in a single pass over {@link #listVirtualMachines()}. Clouds with a batch describe call should
+     * override this, for example with {@link BatchLookup#lookupInChunks(Collection, int, int, BatchLookup.ChunkLookup, BatchLookup.IdFunction)}.
+     */
+    @Override
+    public @Nonnull Map<String,VirtualMachine> getVirtualMachines(@Nonnull Collection<String> vmIds) throws InternalException, CloudException {
+        if( vmIds.size() == 1 ) {
+            String id = vmIds.iterator().next();
+            VirtualMachine vm = getVirtualMachine(id);
+
+            return (vm == null ? Collections.<String,VirtualMachine>emptyMap() : Collections.singletonMap(id, vm));
+        }
+        if( vmIds.isEmpty() ) {
+            return Collections.emptyMap();
+        }
+        return BatchLookup.index(vmIds, listVirtualMachines(), new BatchLookup.IdFunction<VirtualMachine>() {
+            @Override
+            public @Nullable String getId(@Nonnull VirtualMachine vm) {
+                return vm.getProviderVirtualMachineId();
+            }
+        });
+    }
+
+    /**
+     * Arranges for the attributes a provider skipped while listing a virtual machine with a projection (see
+     * {@link VMFilterOptions#withAttributes(String...)}) to be fetched with {@link #getVirtualMachine(String)} the first time
+     * one of them is read.
+     * @param vm the partially populated virtual machine
+     * @return the same virtual machine
+     */
+    protected @Nonnull VirtualMachine deferDetails(final @Nonnull VirtualMachine vm) {
+        final String id = vm.getProviderVirtualMachineId();
+
+        vm.setDetailsCallback(new Callable<VirtualMachine>() {
+            @Override
+            public VirtualMachine call() throws Exception {
+                return getVirtualMachine(id);
+            }
+        });
+        return vm;
+    }
+
     @Override
     public @Nonnull VmStatistics getVMStatistics( @Nonnull String vmId, @Nonnegative long from, @Nonnegative long to ) throws InternalException, CloudException {
         return new VmStatistics();
@@ -567,16 +606,13 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
      *          the source iterable
      */
     private void mergeProductLists(List<VirtualMachineProduct> to, Iterable<VirtualMachineProduct> from) {
-        List<VirtualMachineProduct> copy = new ArrayList<VirtualMachineProduct>(to);
+        Set<String> ids = new HashSet<String>();
+
+        for( VirtualMachineProduct productTo : to ) {
+            ids.add(productTo.getProviderProductId().toLowerCase());
+        }
         for( VirtualMachineProduct productFrom : from ) {
-            boolean found = false;
-            for( VirtualMachineProduct productTo : copy ) {
-                if( productTo.getProviderProductId().equalsIgnoreCase(productFrom.getProviderProductId()) ) {
-                    found = true;
-                    break;
-                }
-            }
-            if( !found ) {
+            if( !ids.contains(productFrom.getProviderProductId().toLowerCase()) ) {
                 to.add(productFrom);
             }
         }
@@ -593,133 +629,15 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
     public @Nonnull Iterable<VirtualMachineProduct> listProducts( @Nonnull VirtualMachineProductFilterOptions options, @Nullable Architecture architecture ) throws InternalException, CloudException {
         APITrace.begin(getProvider(), "VM.listProducts");
         try {
-            String cacheName = "productsALL";
-            if( architecture != null ) {
-                cacheName = "products" + architecture.name();
-            }
-            Cache<VirtualMachineProduct> cache = Cache.getInstance(getProvider(), cacheName, VirtualMachineProduct.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Day>(1, TimePeriod.DAY));
-            Iterable<VirtualMachineProduct> products = cache.get(getContext());
+            VMProductCatalog catalog = VMProductCatalog.getInstance(getVMProductsResource());
 
-            if( products != null ) {
-                return products;
+            if( catalog == null ) {
+                catalog = VMProductCatalog.getInstance("/org/dasein/cloud/std/vmproducts.json");
             }
-            List<VirtualMachineProduct> list = new ArrayList<VirtualMachineProduct>();
-
-            try {
-                String resource = getVMProductsResource();
-                InputStream input = AbstractVMSupport.class.getResourceAsStream(resource);
-
-                if( input == null ) {
-                    input = AbstractVMSupport.class.getResourceAsStream("/org/dasein/cloud/std/vmproducts.json");
-                }
-                if( input == null ) {
-                    return Collections.emptyList();
-                }
-                BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-                StringBuilder json = new StringBuilder();
-                String line;
-
-                while( ( line = reader.readLine() ) != null ) {
-                    json.append(line);
-                    json.append("\n");
-                }
-                JSONArray arr = new JSONArray(json.toString());
-                JSONObject toCache = null;
-
-                for( int i = 0; i < arr.length(); i++ ) {
-                    JSONObject productSet = arr.getJSONObject(i);
-                    String cloud, provider;
-
-                    if( productSet.has("cloud") ) {
-                        cloud = productSet.getString("cloud");
-                    }
-                    else {
-                        continue;
-                    }
-                    if( productSet.has("provider") ) {
-                        provider = productSet.getString("provider");
-                    }
-                    else {
-                        continue;
-                    }
-                    if( !productSet.has("products") ) {
-                        continue;
-                    }
-                    if( toCache == null || ( provider.equals("default") && cloud.equals("default") ) ) {
-                        toCache = productSet;
-                    }
-                    if( provider.equalsIgnoreCase(getProvider().getProviderName()) && cloud.equalsIgnoreCase(getProvider().getCloudName()) ) {
-                        toCache = productSet;
-                        break;
-                    }
-                }
-                if( toCache == null ) {
-                    return Collections.emptyList();
-                }
-                JSONArray plist = toCache.getJSONArray("products");
-
-                for( int i = 0; i < plist.length(); i++ ) {
-                    JSONObject product = plist.getJSONObject(i);
-                    boolean supported = false;
-
-                    // If architecture is specified, check if product matches
-                    if( architecture != null && product.has("architectures") ) {
-                        JSONArray architectures = product.getJSONArray("architectures");
-
-                        for( int j = 0; j < architectures.length(); j++ ) {
-                            String a = architectures.getString(j);
-
-                            if( architecture.name().equals(a) ) {
-                                supported = true;
-                                break;
-                            }
-                        }
-                        if( !supported ) {
-                            continue;
-                        }
-                    }
-                    else {
-                        // No architecture specified, flip the flag - all architectures allowed
-                        supported = true;
-                    }
-
-                    if( product.has("excludesRegions") ) {
-                        JSONArray regions = product.getJSONArray("excludesRegions");
-
-                        for( int j = 0; j < regions.length(); j++ ) {
-                            String r = regions.getString(j);
-
-                            if( r.equals(getContext().getRegionId()) ) {
-                                supported = false;
-                                break;
-                            }
-                        }
-                    }
-                    if( !supported ) {
-                        continue;
-                    }
-                    VirtualMachineProduct prd = toProduct(product);
-
-                    if( prd != null ) {
-                        if( options != null) {
-                            // Filter supplied, add matches only.
-                            if( options.matches(prd) ) {
-                                list.add(prd);
-                            }
-                        }
-                        else {
-                            // No filter supplied, add all survived.
-                            list.add(prd);
-                        }
-                    }
-                }
-                cache.put(getContext(), list);
-            } catch( IOException e ) {
-                throw new InternalException(e);
-            } catch( JSONException e ) {
-                throw new InternalException(e);
+            if( catalog == null ) {
+                return Collections.emptyList();
             }
-            return list;
+            return catalog.listProducts(getProvider().getProviderName(), getProvider().getCloudName(), architecture, getContext().getRegionId(), options);
         } finally {
             APITrace.end();
         }
@@ -751,12 +669,29 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
 
     @Override
     public @Nonnull Iterable<ResourceStatus> listVirtualMachineStatus() throws InternalException, CloudException {
-        List<ResourceStatus> status = new ArrayList<ResourceStatus>();
+        return StatusListing.list(getProvider(), "VirtualMachine", new StatusListing.StatusSource() {
+            @Override
+            public @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException {
+                return fetchVirtualMachineStatus();
+            }
+        });
+    }
 
-        for( VirtualMachine vm : listVirtualMachines() ) {
-            status.add(new ResourceStatus(vm.getProviderVirtualMachineId(), vm.getCurrentState()));
-        }
-        return status;
+    /**
+     * Fetches the status of all virtual machines from the cloud for {@link #listVirtualMachineStatus()}, which caches the result briefly if the context opts in.
+     * By default this projects the full listing onto status objects one virtual machine at a time; providers with a
+     * cheaper call returning only IDs and states should override this method.
+     * @return the status of each virtual machine
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected @Nonnull Iterable<ResourceStatus> fetchVirtualMachineStatus() throws CloudException, InternalException {
+        return StatusListing.project(listVirtualMachines(), new StatusListing.StatusFunction<VirtualMachine>() {
+            @Override
+            public @Nullable ResourceStatus getStatus(@Nonnull VirtualMachine vm) {
+                return new ResourceStatus(vm.getProviderVirtualMachineId(), vm.getCurrentState());
+            }
+        });
     }
 
     @Override
@@ -779,6 +714,16 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         return vms;
     }
 
+    @Override
+    public @Nonnull Flow.Publisher<VirtualMachine> streamVirtualMachines(final @Nullable VMFilterOptions options) throws InternalException, CloudException {
+        return ListPublisher.forListing(new ListPublisher.Listing<VirtualMachine>() {
+            @Override
+            public @Nonnull Iterable<VirtualMachine> list() throws CloudException, InternalException {
+                return listVirtualMachines(options);
+            }
+        });
+    }
+
     @Override
     public void pause( @Nonnull String vmId ) throws InternalException, CloudException {
         throw new OperationNotSupportedException("Pause/unpause is not currently implemented for " + getProvider().getCloudName());
@@ -793,18 +738,26 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         }
         stop(vmId);
         long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
+        long start = CloudEvents.start();
 
-        while( timeout > System.currentTimeMillis() ) {
-            try {
-                vm = getVirtualMachine(vmId);
-            } catch( Throwable ignore ) {
-            }
-            if( vm == null ) {
-                return;
+        try {
+            while( timeout > System.currentTimeMillis() ) {
+                try {
+                    vm = getVirtualMachine(vmId);
+                } catch( Throwable ignore ) {
+                }
+                if( vm == null ) {
+                    return;
+                }
+                if( vm.getCurrentState().equals(VmState.STOPPED) ) {
+                    start(vmId);
+                    return;
+                }
             }
-            if( vm.getCurrentState().equals(VmState.STOPPED) ) {
-                start(vmId);
-                return;
+        }
+        finally {
+            if( CloudEvents.isEnabled() ) {
+                CloudEvents.publish(CloudEvent.Type.WAIT, getProvider(), "reboot " + vmId, start, -1L, null);
             }
         }
     }
@@ -824,20 +777,28 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         stop(vmId, false);
 
         long timeout = System.currentTimeMillis() + ( CalendarWrapper.MINUTE * 5L );
+        long start = CloudEvents.start();
 
-        while( timeout > System.currentTimeMillis() ) {
-            try {
-                Thread.sleep(10000L);
-            } catch( InterruptedException ignore ) {
-            }
-            try {
-                VirtualMachine vm = getVirtualMachine(vmId);
+        try {
+            while( timeout > System.currentTimeMillis() ) {
+                try {
+                    Thread.sleep(10000L);
+                } catch( InterruptedException ignore ) {
+                }
+                try {
+                    VirtualMachine vm = getVirtualMachine(vmId);
 
-                if( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) || VmState.STOPPED.equals(vm.getCurrentState()) ) {
-                    return;
+                    if( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) || VmState.STOPPED.equals(vm.getCurrentState()) ) {
+                        return;
+                    }
+                } catch( Throwable ignore ) {
+                    // ignore
                 }
-            } catch( Throwable ignore ) {
-                // ignore
+            }
+        }
+        finally {
+            if( CloudEvents.isEnabled() ) {
+                CloudEvents.publish(CloudEvent.Type.WAIT, getProvider(), "stop " + vmId, start, -1L, null);
             }
         }
 
@@ -912,7 +873,28 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
 
     @Override
     public void updateTags( @Nonnull String vmId, @Nonnull Tag... tags ) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            updateTagsInCloud(vmId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsUpdated(getProvider(), ResourceReference.VIRTUAL_MACHINE, new String[] { vmId }, tags);
+    }
+
+    /**
+     * Adds or changes tags on a virtual machine in the cloud. The default implementation does not support tagging.
+     * Called by {@link #updateTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param vmId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void updateTagsInCloud(@Nonnull String vmId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for virtual machines in " + getProvider().getCloudName());
     }
 
     @Override
@@ -924,7 +906,28 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
 
     @Override
     public void removeTags( @Nonnull String vmId, @Nonnull Tag... tags ) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            removeTagsInCloud(vmId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsRemoved(getProvider(), ResourceReference.VIRTUAL_MACHINE, new String[] { vmId }, tags);
+    }
+
+    /**
+     * Removes tags from a virtual machine in the cloud. The default implementation does not support tagging.
+     * Called by {@link #removeTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param vmId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void removeTagsInCloud(@Nonnull String vmId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for virtual machines in " + getProvider().getCloudName());
     }
 
     @Override
@@ -957,63 +960,6 @@ public abstract class AbstractVMSupport<T extends CloudProvider> extends Abstrac
         return new String[0];
     }
 
-    private @Nullable VirtualMachineProduct toProduct( @Nonnull JSONObject json ) throws InternalException {
-        VirtualMachineProduct prd = new VirtualMachineProduct();
-
-        try {
-            if( json.has("id") ) {
-                prd.setProviderProductId(json.getString("id"));
-            }
-            else {
-                return null;
-            }
-            if( json.has("name") ) {
-                prd.setName(json.getString("name"));
-            }
-            else {
-                prd.setName(prd.getProviderProductId());
-            }
-            if( json.has("description") ) {
-                prd.setDescription(json.getString("description"));
-            }
-            else {
-                prd.setDescription(prd.getName());
-            }
-            if( json.has("cpuCount") ) {
-                prd.setCpuCount(json.getInt("cpuCount"));
-            }
-            else {
-                prd.setCpuCount(1);
-            }
-            if( json.has("rootVolumeSizeInGb") ) {
-                prd.setRootVolumeSize(new Storage<Gigabyte>(json.getInt("rootVolumeSizeInGb"), Storage.GIGABYTE));
-            }
-            else {
-                prd.setRootVolumeSize(new Storage<Gigabyte>(1, Storage.GIGABYTE));
-            }
-            if( json.has("ramSizeInMb") ) {
-                prd.setRamSize(new Storage<Megabyte>(json.getInt("ramSizeInMb"), Storage.MEGABYTE));
-            }
-            else {
-                prd.setRamSize(new Storage<Megabyte>(512, Storage.MEGABYTE));
-            }
-            if( json.has("standardHourlyRates") ) {
-                JSONArray rates = json.getJSONArray("standardHourlyRates");
-
-                for( int i = 0; i < rates.length(); i++ ) {
-                    JSONObject rate = rates.getJSONObject(i);
-
-                    if( rate.has("rate") ) {
-                        prd.setStandardHourlyRate(( float ) rate.getDouble("rate"));
-                    }
-                }
-            }
-        } catch( JSONException e ) {
-            throw new InternalException(e);
-        }
-        return prd;
-    }
-
     @Override
     public @Nullable Iterable<VirtualMachineStatus> getVMStatus( @Nullable String... vmIds ) throws InternalException, CloudException {
         throw new OperationNotSupportedException("Virtual Machine Status is not currently implemented for " + getProvider().getCloudName());
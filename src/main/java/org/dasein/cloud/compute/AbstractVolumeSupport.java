@@ -29,7 +29,13 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.BatchLookup;
+import org.dasein.cloud.util.ResourceReference;
+import org.dasein.cloud.util.StatusListing;
+import org.dasein.cloud.util.TagIndex;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.util.stream.Flow;
+import org.dasein.cloud.util.stream.ListPublisher;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
 
@@ -37,6 +43,7 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Implements the basic functionality of volume support so that it is easier to rapidly craft a support class for
@@ -44,6 +51,11 @@ import java.util.*;
  * <p>Created by George Reese: 1/31/13 11:04 AM</p>
  * @author George Reese
  * @version 2013.04
+ * @version 2015.09 added batch volume lookup
+ * @version 2015.09 status listings are projected lazily and can be cached briefly
+ * @version 2015.09 added deferred loading of attributes skipped by a projection
+ * @version 2015.09 added streaming listing with back pressure
+ * @version 2015.09 tag changes go through protected hooks and are reported to the tag index once they reach the cloud
  * @since 2013.04
  */
 public abstract class AbstractVolumeSupport<T extends CloudProvider> extends AbstractProviderService<T> implements VolumeSupport {
@@ -217,6 +229,48 @@ public abstract class AbstractVolumeSupport<T extends CloudProvider> extends Abs
         return null;
     }
 
+    /**
+     * Resolves all of the IDs in a single pass over {@link #listVolumes()}. Clouds with a batch describe call should
+     * override this, for example with {@link BatchLookup#lookupInChunks(Collection, int, int, BatchLookup.ChunkLookup, BatchLookup.IdFunction)}.
+     */
+    @Override
+    public @Nonnull Map<String,Volume> getVolumes(@Nonnull Collection<String> volumeIds) throws InternalException, CloudException {
+        if( volumeIds.size() == 1 ) {
+            String id = volumeIds.iterator().next();
+            Volume volume = getVolume(id);
+
+            return (volume == null ? Collections.<String,Volume>emptyMap() : Collections.singletonMap(id, volume));
+        }
+        if( volumeIds.isEmpty() ) {
+            return Collections.emptyMap();
+        }
+        return BatchLookup.index(volumeIds, listVolumes(), new BatchLookup.IdFunction<Volume>() {
+            @Override
+            public @Nullable String getId(@Nonnull Volume volume) {
+                return volume.getProviderVolumeId();
+            }
+        });
+    }
+
+    /**
+     * Arranges for the attributes a provider skipped while listing a volume with a projection (see
+     * {@link VolumeFilterOptions#withAttributes(String...)}) to be fetched with {@link #getVolume(String)} the first time
+     * one of them is read.
+     * @param volume the partially populated volume
+     * @return the same volume
+     */
+    protected @Nonnull Volume deferDetails(final @Nonnull Volume volume) {
+        final String id = volume.getProviderVolumeId();
+
+        volume.setDetailsCallback(new Callable<Volume>() {
+            @Override
+            public Volume call() throws Exception {
+                return getVolume(id);
+            }
+        });
+        return volume;
+    }
+
     @Override
     @Deprecated
     public @Nonnull Requirement getVolumeProductRequirement() throws InternalException, CloudException {
@@ -242,12 +296,29 @@ public abstract class AbstractVolumeSupport<T extends CloudProvider> extends Abs
 
     @Override
     public @Nonnull Iterable<ResourceStatus> listVolumeStatus() throws InternalException, CloudException {
-        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
+        return StatusListing.list(getProvider(), "Volume", new StatusListing.StatusSource() {
+            @Override
+            public @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException {
+                return fetchVolumeStatus();
+            }
+        });
+    }
 
-        for( Volume volume : listVolumes() ) {
-            status.add(new ResourceStatus(volume.getProviderVolumeId(), volume.getCurrentState()));
-        }
-        return status;
+    /**
+     * Fetches the status of all volumes from the cloud for {@link #listVolumeStatus()}, which caches the result briefly if the context opts in.
+     * By default this projects the full listing onto status objects one volume at a time; providers with a
+     * cheaper call returning only IDs and states should override this method.
+     * @return the status of each volume
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected @Nonnull Iterable<ResourceStatus> fetchVolumeStatus() throws CloudException, InternalException {
+        return StatusListing.project(listVolumes(), new StatusListing.StatusFunction<Volume>() {
+            @Override
+            public @Nullable ResourceStatus getStatus(@Nonnull Volume volume) {
+                return new ResourceStatus(volume.getProviderVolumeId(), volume.getCurrentState());
+            }
+        });
     }
 
     @Override
@@ -265,6 +336,16 @@ public abstract class AbstractVolumeSupport<T extends CloudProvider> extends Abs
         return volumes;
     }
 
+    @Override
+    public @Nonnull Flow.Publisher<Volume> streamVolumes(final @Nullable VolumeFilterOptions options) throws InternalException, CloudException {
+        return ListPublisher.forListing(new ListPublisher.Listing<Volume>() {
+            @Override
+            public @Nonnull Iterable<Volume> list() throws CloudException, InternalException {
+                return listVolumes(options);
+            }
+        });
+    }
+
     @Override
     public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
         return new String[0];
@@ -272,7 +353,28 @@ public abstract class AbstractVolumeSupport<T extends CloudProvider> extends Abs
 
     @Override
     public void removeTags(@Nonnull String volumeId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            removeTagsInCloud(volumeId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsRemoved(getProvider(), ResourceReference.VOLUME, new String[] { volumeId }, tags);
+    }
+
+    /**
+     * Removes tags from a volume in the cloud. The default implementation does not support tagging.
+     * Called by {@link #removeTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param volumeId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void removeTagsInCloud(@Nonnull String volumeId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for volumes in " + getProvider().getCloudName());
     }
 
     @Override
@@ -284,7 +386,28 @@ public abstract class AbstractVolumeSupport<T extends CloudProvider> extends Abs
 
     @Override
     public void updateTags(@Nonnull String volumeId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            updateTagsInCloud(volumeId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsUpdated(getProvider(), ResourceReference.VOLUME, new String[] { volumeId }, tags);
+    }
+
+    /**
+     * Adds or changes tags on a volume in the cloud. The default implementation does not support tagging.
+     * Called by {@link #updateTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param volumeId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void updateTagsInCloud(@Nonnull String volumeId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for volumes in " + getProvider().getCloudName());
     }
 
     @Override
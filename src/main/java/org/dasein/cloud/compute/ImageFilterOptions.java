@@ -23,7 +23,10 @@ import org.dasein.cloud.CloudProvider;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Options for filtering machine images when querying the cloud provider. <b>Note:</b> How searching handles account numbers is
@@ -32,6 +35,7 @@ import java.util.Map;
  * @author Cameron Stokes
  * @version 2013.04 initial version
  * @version 2013.04 renamed to ImageFilterOptions to be consistent with multi-image type naming
+ * @version 2015.09 added attribute projection
  * @since 2013.04
  */
 public class ImageFilterOptions {
@@ -113,6 +117,7 @@ public class ImageFilterOptions {
 
     private String             accountNumber;
     private Architecture       architecture;
+    private Set<String>        attributes;
     private ImageClass         imageClass;
     private boolean            matchesAny;
     private Platform           platform;
@@ -141,6 +146,13 @@ public class ImageFilterOptions {
         return architecture;
     }
 
+    /**
+     * @return the attributes needed on each image, or <code>null</code> if all of them are needed
+     */
+    public @Nullable Set<String> getAttributes() {
+        return attributes;
+    }
+
     /**
      * @return the number of criteria on which this filter is operating
      */
@@ -218,6 +230,31 @@ public class ImageFilterOptions {
         return matchesAny;
     }
 
+    /**
+     * Indicates whether a provider listing with these options needs to populate the specified attribute, either because
+     * it was asked for or because the filter criteria test it.
+     * @param attribute the name of a {@link MachineImage} bean property, such as <code>tags</code>
+     * @return <code>true</code> if the attribute is needed
+     */
+    public boolean isRequested(@Nonnull String attribute) {
+        if( attributes == null || attributes.contains(attribute) ) {
+            return true;
+        }
+        if( "name".equals(attribute) || "description".equals(attribute) || "tags".equals(attribute) ) {
+            return (regex != null || (tags != null && !tags.isEmpty()));
+        }
+        if( "imageClass".equals(attribute) ) {
+            return (imageClass != null);
+        }
+        if( "architecture".equals(attribute) ) {
+            return (architecture != null);
+        }
+        if( "platform".equals(attribute) ) {
+            return (platform != null);
+        }
+        return ("providerOwnerId".equals(attribute) && accountNumber != null);
+    }
+
     /**
      * Matches an image against the criteria in this set of filter options.
      * @param image the image to test
@@ -365,6 +402,18 @@ public class ImageFilterOptions {
         return this;
     }
 
+    /**
+     * Limits the attributes needed on each image to the specified bean properties of {@link MachineImage}, such as
+     * <code>tags</code>. Providers may skip fetching and parsing the others; any they skip are fetched in full on
+     * first use through {@link MachineImage#setDetailsCallback(java.util.concurrent.Callable)}. The ID and current state are always populated.
+     * @param attributes the names of the needed attributes
+     * @return this
+     */
+    public @Nonnull ImageFilterOptions withAttributes(@Nonnull String... attributes) {
+        this.attributes = new HashSet<String>(Arrays.asList(attributes));
+        return this;
+    }
+
     /**
      * Sets an image class on which filtering should be done.
      * @param imageClass the image class to filter against
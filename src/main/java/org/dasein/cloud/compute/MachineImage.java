@@ -22,10 +22,13 @@ package org.dasein.cloud.compute;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import org.apache.log4j.Logger;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.Taggable;
 import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.util.StringPool;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
@@ -48,9 +51,14 @@ import javax.annotation.Nullable;
  * </p>
  * @author George Reese
  * @version 2013.04 added documentation and the idea of data center constraints
+ * @version 2015.09 attributes left out of a projected listing can be loaded on first use
+ * @version 2015.09 low-cardinality identifiers and tag keys are canonicalized through {@link StringPool}
+ * @version 2015.09 failed detail loads are logged and retried, outside of the object's monitor
  * @since unknown
  */
 public class MachineImage implements Taggable {
+    static private final Logger logger = Logger.getLogger(MachineImage.class);
+
     /**
      * Constructs a minimally viable image object of the specified image class. Because no image format is specified,
      * the type for this image will be {@link MachineImageType#VOLUME}.
@@ -68,8 +76,8 @@ public class MachineImage implements Taggable {
     static public @Nonnull MachineImage getInstance(@Nonnull String ownerId, @Nonnull String regionId, @Nonnull String imageId, @Nonnull ImageClass imageClass, @Nonnull MachineImageState state,  @Nonnull String name, @Nonnull String description, @Nonnull Architecture architecture, @Nonnull Platform platform) {
         @SuppressWarnings("deprecation") MachineImage image = new MachineImage();
 
-        image.providerOwnerId = ownerId;
-        image.providerRegionId = regionId;
+        image.providerOwnerId = StringPool.intern(ownerId);
+        image.providerRegionId = StringPool.intern(regionId);
         image.providerMachineImageId = imageId;
         image.name = name;
         image.description = description;
@@ -106,6 +114,8 @@ public class MachineImage implements Taggable {
     private boolean            sharedWithPublic;
     private Map<String,String> providerMetadata;
 
+    private transient volatile Callable<MachineImage> detailsCallback;
+
     /**
      * Constructs an empty machine image.
      * @deprecated Use the static factory methods
@@ -129,7 +139,7 @@ public class MachineImage implements Taggable {
      * @return this
      */
     public @Nonnull MachineImage constrainedTo(@Nonnull String dataCenterId) {
-        this.providerDataCenterId = dataCenterId;
+        this.providerDataCenterId = StringPool.intern(dataCenterId);
         return this;
     }
 
@@ -295,6 +305,10 @@ public class MachineImage implements Taggable {
 
     @Override
     public @Nonnull Map<String,String> getTags() {
+        // an empty map may have been handed out while an earlier load failed
+        if( tags == null || (tags.isEmpty() && detailsCallback != null) ) {
+            loadDetails();
+        }
         if( tags == null ) {
             tags = new HashMap<String,String>();
         }
@@ -334,7 +348,7 @@ public class MachineImage implements Taggable {
 
     @Override
     public void setTag(@Nonnull String key, @Nonnull String value) {
-        getTags().put(key, value);
+        getTags().put(StringPool.intern(key), value);
     }
 
     /**
@@ -343,13 +357,18 @@ public class MachineImage implements Taggable {
      */
     public void setTags(Map<String,String> properties) {
         getTags().clear();
-        getTags().putAll(properties);
+        for( Map.Entry<String,String> entry : properties.entrySet() ) {
+            tags.put(StringPool.intern(entry.getKey()), entry.getValue());
+        }
     }
 
     /**
      * @return volumes of the image
      */
     public @Nullable Iterable<MachineImageVolume> getVolumes() {
+        if( volumes == null ) {
+            loadDetails();
+        }
         return volumes;
     }
 
@@ -399,6 +418,9 @@ public class MachineImage implements Taggable {
      * @return product metadata
      */
     public @Nonnull Map<String, String> getProviderMetadata() {
+        if( providerMetadata == null ) {
+            loadDetails();
+        }
         if( providerMetadata == null ) {
             providerMetadata = new HashMap<String, String>();
         }
@@ -410,6 +432,59 @@ public class MachineImage implements Taggable {
         return this;
     }
 
+    /**
+     * Sets a callback for fetching this image in full when it was listed with only some of its attributes (see
+     * {@link ImageFilterOptions#withAttributes(String...)}). The first getter to find its tags, volumes or provider
+     * meta-data missing calls it and fills them in. The callback is called without holding this object's monitor.
+     * If it fails, the failure is logged and the callback is kept, so the next getter to find its attribute missing
+     * tries again. Set it only after the object has been populated.
+     * Code that reads every attribute of a resource, such as the change feed's fingerprints, the tag index, the
+     * resource graph, the binary codecs and address indexes, triggers the load for each projected object it reads, so
+     * use a full listing when feeding those.
+     * @param callback a callback returning the full image, or <code>null</code> if the object is complete
+     */
+    public void setDetailsCallback(@Nullable Callable<MachineImage> callback) {
+        this.detailsCallback = callback;
+    }
+
+    public @Nullable Callable<MachineImage> getDetailsCallback() {
+        return detailsCallback;
+    }
+
+    private void loadDetails() {
+        Callable<MachineImage> callback = detailsCallback;
+
+        if( callback == null ) {
+            return;
+        }
+        MachineImage full;
+
+        try {
+            full = callback.call();
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to load the details of image " + providerMachineImageId + ": " + e.getMessage());
+            return;
+        }
+        synchronized( this ) {
+            if( detailsCallback == callback ) {
+                detailsCallback = null;
+            }
+            if( full == null || full == this ) {
+                return;
+            }
+            if( (tags == null || tags.isEmpty()) && full.tags != null ) {
+                tags = full.tags;
+            }
+            if( volumes == null ) {
+                volumes = full.volumes;
+            }
+            if( providerMetadata == null ) {
+                providerMetadata = full.providerMetadata;
+            }
+        }
+    }
+
     /********************************** DEPRECATED METHODS *******************************************/
 
     /**
@@ -520,7 +595,7 @@ public class MachineImage implements Taggable {
      * @deprecated Use the static factory methods
      */
     public void setProviderOwnerId(@Nonnull String providerOwnerId) {
-        this.providerOwnerId = providerOwnerId;
+        this.providerOwnerId = StringPool.intern(providerOwnerId);
     }
 
     /**
@@ -529,7 +604,7 @@ public class MachineImage implements Taggable {
      * @deprecated Use the static factory methods
      */
     public void setProviderRegionId(@Nonnull String providerRegionId) {
-        this.providerRegionId = providerRegionId;
+        this.providerRegionId = StringPool.intern(providerRegionId);
     }
 
     /**
@@ -588,8 +663,8 @@ public class MachineImage implements Taggable {
     static public @Nonnull MachineImage getImageInstance(@Nonnull String ownerId, @Nonnull String regionId, @Nonnull String imageId, @Nonnull ImageClass imageClass, @Nonnull MachineImageState state,  @Nonnull String name, @Nonnull String description, @Nonnull Architecture architecture, @Nonnull Platform platform) {
         @SuppressWarnings("deprecation") MachineImage image = new MachineImage();
 
-        image.providerOwnerId = ownerId;
-        image.providerRegionId = regionId;
+        image.providerOwnerId = StringPool.intern(ownerId);
+        image.providerRegionId = StringPool.intern(regionId);
         image.providerMachineImageId = imageId;
         image.name = name;
         image.description = description;
@@ -622,8 +697,8 @@ public class MachineImage implements Taggable {
     static public @Nonnull MachineImage getImageInstance(@Nonnull String ownerId, @Nonnull String regionId, @Nonnull String imageId, @Nonnull ImageClass imageClass, @Nonnull MachineImageState state,  @Nonnull String name, @Nonnull String description, @Nonnull Architecture architecture, @Nonnull Platform platform, @Nonnull MachineImageFormat format) {
         @SuppressWarnings("deprecation") MachineImage image = new MachineImage();
 
-        image.providerOwnerId = ownerId;
-        image.providerRegionId = regionId;
+        image.providerOwnerId = StringPool.intern(ownerId);
+        image.providerRegionId = StringPool.intern(regionId);
         image.providerMachineImageId = imageId;
         image.name = name;
         image.description = description;
@@ -656,8 +731,8 @@ public class MachineImage implements Taggable {
     static public @Nonnull MachineImage getMachineImageInstance(@Nonnull String ownerId, @Nonnull String regionId, @Nonnull String imageId,  @Nonnull MachineImageState state,  @Nonnull String name, @Nonnull String description, @Nonnull Architecture architecture, @Nonnull Platform platform) {
         @SuppressWarnings("deprecation") MachineImage image = new MachineImage();
 
-        image.providerOwnerId = ownerId;
-        image.providerRegionId = regionId;
+        image.providerOwnerId = StringPool.intern(ownerId);
+        image.providerRegionId = StringPool.intern(regionId);
         image.providerMachineImageId = imageId;
         image.name = name;
         image.description = description;
@@ -689,8 +764,8 @@ public class MachineImage implements Taggable {
     static public @Nonnull MachineImage getMachineImageInstance(@Nonnull String ownerId, @Nonnull String regionId, @Nonnull String imageId,  @Nonnull MachineImageState state,  @Nonnull String name, @Nonnull String description, @Nonnull Architecture architecture, @Nonnull Platform platform, @Nonnull MachineImageFormat format) {
         @SuppressWarnings("deprecation") MachineImage image = new MachineImage();
 
-        image.providerOwnerId = ownerId;
-        image.providerRegionId = regionId;
+        image.providerOwnerId = StringPool.intern(ownerId);
+        image.providerRegionId = StringPool.intern(regionId);
         image.providerMachineImageId = imageId;
         image.name = name;
         image.description = description;
@@ -725,8 +800,8 @@ public class MachineImage implements Taggable {
     static public @Nonnull MachineImage getImageInstance(@Nonnull String ownerId, @Nonnull String regionId, @Nonnull String imageId, @Nonnull ImageClass imageClass, @Nonnull MachineImageState state,  @Nonnull String name, @Nonnull String description, @Nonnull Architecture architecture, @Nonnull Platform platform, @Nonnull MachineImageFormat format, @Nullable VisibleScope visibleScope) {
         @SuppressWarnings("deprecation") MachineImage image = new MachineImage();
 
-        image.providerOwnerId = ownerId;
-        image.providerRegionId = regionId;
+        image.providerOwnerId = StringPool.intern(ownerId);
+        image.providerRegionId = StringPool.intern(regionId);
         image.providerMachineImageId = imageId;
         image.name = name;
         image.description = description;
@@ -22,6 +22,7 @@ package org.dasein.cloud.compute;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.Locale;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -35,6 +36,7 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.stream.Flow;
 
 /**
  * Defines operations on the images/templates from which virtual machines are created. In general, any cloud
@@ -46,6 +48,8 @@ import org.dasein.cloud.identity.ServiceAction;
  * @version 2013.01 Added synchronous bundling methods (Issue #12)
  * @version 2013.01 Added a resource lister (Issue #4)
  * @version 2013.02 Added method to identify term for custom images (issue #34)
+ * @version 2015.09 Added batch lookup of images by ID
+ * @version 2015.09 Added a streaming listing with back pressure
  * @since unknown
  */
 @SuppressWarnings("UnusedDeclaration")
@@ -162,6 +166,15 @@ public interface MachineImageSupport extends AccessControlledService {
      */
     public @Nullable MachineImage getImage(@Nonnull String providerImageId) throws CloudException, InternalException;
 
+    /**
+     * Fetches several images at once. Implementations should resolve all of them with as few calls to the cloud as possible.
+     * @param providerImageIds the IDs of the desired images
+     * @return the images found, keyed by ID in the order the IDs were given; IDs that do not exist are absent
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     * @throws CloudException an error occurred with the cloud provider
+     */
+    public @Nonnull Map<String,MachineImage> getImages(@Nonnull Collection<String> providerImageIds) throws InternalException, CloudException;
+
     /**
      * Provides access to the current state of the specified image.
      * @param providerImageId the cloud provider ID uniquely identifying the desired image
@@ -274,6 +287,18 @@ public interface MachineImageSupport extends AccessControlledService {
      */
     public @Nonnull Iterable<MachineImage> listImages(@Nullable ImageFilterOptions options) throws CloudException, InternalException;
 
+    /**
+     * Streams the images matching the specified filter options with back pressure: items are emitted only as the
+     * subscriber requests them, a slow subscriber pauses paging through the cloud and cancelling stops it.
+     * Use {@link org.dasein.cloud.util.stream.ListPublisher#toIterable(Flow.Publisher, int)} to consume it as a
+     * bounded {@link Iterable}.
+     * @param options the filter options, or <code>null</code> for all images
+     * @return a publisher that lists the images anew for each subscriber
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException a local error occurred in the Dasein Cloud implementation
+     */
+    public @Nonnull Flow.Publisher<MachineImage> streamImages(@Nullable ImageFilterOptions options) throws CloudException, InternalException;
+
     /**
      * Lists all images in my library. This generally includes all images belonging to me as well any explicitly shared
      * with me. In clouds without a public library, it's all images I can see.
@@ -0,0 +1,823 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.compute;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.util.codec.BinaryReader;
+import org.dasein.cloud.util.codec.BinaryWriter;
+import org.dasein.cloud.util.codec.CodecException;
+import org.dasein.cloud.util.codec.ModelCodecs;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An optional on-disk index of a region's public machine image library. Public libraries are large and change slowly,
+ * so rather than going to the cloud on every search, the whole library is fetched once, written to a file and
+ * memory-mapped. Searches check per-image columns for class, architecture, platform and owner, narrow keyword
+ * searches through an inverted index of the tokens in image names, descriptions, IDs and tag values, and then apply
+ * {@link ImageFilterOptions#matches(MachineImage)} to the remaining candidates, so they return the same images as a
+ * live search of the same library. Each result is decoded from the mapped file into a new object by
+ * {@link ModelCodecs#MACHINE_IMAGE}; every image is written with a string table of its own so it can be decoded
+ * on its own.
+ * <p>
+ *     The columns and the inverted index live in the mapped file as well: the index holds every suffix of every token
+ *     in sorted order, and a keyword is looked up by binary search for the suffixes it is a prefix of. Loading an
+ *     index reads only its header and the few distinct column values, so it takes the same time and heap whatever the
+ *     size of the library.
+ * </p>
+ * <p>
+ *     The index is enabled by setting the {@link #DIRECTORY_PROPERTY} custom property on the provider context. It
+ *     answers {@link AbstractImageSupport#searchPublicImages(ImageFilterOptions)} for providers that implement
+ *     {@link AbstractImageSupport#searchPublicImageLibrary(ImageFilterOptions)}. Once the index is older than
+ *     {@link #REFRESH_PROPERTY} minutes, searches keep using it while a background thread connects a provider of its
+ *     own, fetches the library again and swaps in the new version. Searches made while the first version is being
+ *     fetched go to the cloud instead of waiting for it.
+ * </p>
+ * <p>
+ *     At most {@link #MAX_OPEN_INDEXES} indexes are kept open; the least recently used one is dropped when another is
+ *     opened, and {@link #close()} drops one explicitly. A dropped index is reopened from its file on next use.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class PublicImageIndex {
+    static private final Logger logger = Logger.getLogger(PublicImageIndex.class);
+
+    /**
+     * Custom property on the provider context naming the directory that holds index files. The index is disabled
+     * unless it is set.
+     */
+    static public final String DIRECTORY_PROPERTY = "publicImageIndexDirectory";
+
+    /**
+     * Custom property on the provider context that overrides {@link #DEFAULT_REFRESH_MINUTES}.
+     */
+    static public final String REFRESH_PROPERTY = "publicImageIndexRefreshMinutes";
+
+    static public final long DEFAULT_REFRESH_MINUTES = 60L;
+
+    /**
+     * The number of indexes kept open at once.
+     */
+    static public final int MAX_OPEN_INDEXES = 32;
+
+    static private final int MAGIC   = 0x44504958; // "DPIX"
+    static private final int VERSION = 3;
+
+    // magic, version, refresh time, count, schema version and the offsets of the dictionaries, rows and terms
+    static private final int HEADER_SIZE = 40;
+    // row offset, class, architecture, platform, padding and owner
+    static private final int ROW_SIZE    = 16;
+
+    static private class IndexMap extends LinkedHashMap<String,PublicImageIndex> {
+        static private final long serialVersionUID = 1L;
+
+        IndexMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,PublicImageIndex> eldest) {
+            return (size() > MAX_OPEN_INDEXES);
+        }
+    }
+
+    // guarded by itself
+    static private final Map<String,PublicImageIndex> indexes = new IndexMap();
+
+    /**
+     * Provides the index of public images for the region of the specified provider's context.
+     * @param provider the provider whose public images are indexed
+     * @return the index, or null if no index directory is configured or the context has no region
+     */
+    static public @Nullable PublicImageIndex getInstance(@Nonnull CloudProvider provider) {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null || ctx.getRegionId() == null ) {
+            return null;
+        }
+        Properties props = ctx.getCustomProperties();
+        String directory = props.getProperty(DIRECTORY_PROPERTY);
+
+        if( directory == null ) {
+            return null;
+        }
+        long refreshMinutes = DEFAULT_REFRESH_MINUTES;
+        String value = props.getProperty(REFRESH_PROPERTY);
+
+        if( value != null ) {
+            try {
+                refreshMinutes = Long.parseLong(value);
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Ignoring invalid " + REFRESH_PROPERTY + ": " + value);
+            }
+        }
+        String endpoint = ctx.getCloud().getEndpoint();
+        String key = directory + "|" + endpoint + "|" + ctx.getRegionId();
+
+        synchronized( indexes ) {
+            PublicImageIndex index = indexes.get(key);
+
+            if( index == null ) {
+                String fileName = (endpoint + "-" + ctx.getRegionId()).replaceAll("[^A-Za-z0-9._-]", "_") + ".idx";
+
+                index = new PublicImageIndex(key, new File(directory, fileName), refreshMinutes * 60000L);
+                indexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Forgets all open indexes; their files are left in place and reloaded on next use.
+     */
+    static public void clear() {
+        synchronized( indexes ) {
+            indexes.clear();
+        }
+    }
+
+    /**
+     * Splits text into maximal runs of letters and digits. Any occurrence of an alphanumeric keyword in the text lies
+     * within one such run, which is what makes narrowing by token safe.
+     */
+    static private void tokenize(@Nullable String text, @Nonnull List<String> into) {
+        if( text == null ) {
+            return;
+        }
+        int start = -1;
+
+        for( int i=0; i<=text.length(); i++ ) {
+            boolean alnum = (i < text.length() && Character.isLetterOrDigit(text.charAt(i)));
+
+            if( alnum && start < 0 ) {
+                start = i;
+            }
+            else if( !alnum && start > -1 ) {
+                into.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * @return the literal every match of the regex must contain, or null if the regex is not of the form
+     * <code>.*literal.*</code>, <code>literal.*</code>, <code>.*literal</code> or <code>literal</code> with an
+     * alphanumeric literal
+     */
+    static @Nullable String getRequiredLiteral(@Nullable String regex) {
+        if( regex == null ) {
+            return null;
+        }
+        String literal = regex;
+
+        if( literal.startsWith(".*") ) {
+            literal = literal.substring(2);
+        }
+        if( literal.endsWith(".*") ) {
+            literal = literal.substring(0, literal.length() - 2);
+        }
+        if( literal.length() < 1 ) {
+            return null;
+        }
+        for( int i=0; i<literal.length(); i++ ) {
+            if( !Character.isLetterOrDigit(literal.charAt(i)) ) {
+                return null;
+            }
+        }
+        return literal;
+    }
+
+    /**
+     * An immutable, loaded version of the index. Only the header and the dictionaries of column values are read into
+     * the heap; the rows and the sorted terms with their postings are read from the mapped file as they are needed.
+     */
+    static private class Snapshot {
+        MappedByteBuffer           buffer;
+        int                        count;
+        ImageClass[]               imageClasses;
+        Architecture[]             architectures;
+        Platform[]                 platforms;
+        String[]                   owners;
+        long                       refreshedAt;
+        int                        rowTable;
+        int                        schemaVersion;
+        int                        termCount;
+        int                        termTable;
+
+        @Nonnull MachineImage get(int row) throws CodecException {
+            ByteBuffer b = buffer.duplicate();
+
+            b.position(buffer.getInt(rowTable + row*ROW_SIZE));
+            return ModelCodecs.MACHINE_IMAGE.read(new BinaryReader(b), schemaVersion);
+        }
+
+        /**
+         * @return the rows whose tokens contain the literal, in row order
+         */
+        @Nonnull int[] getCandidates(@Nonnull String literal) {
+            boolean[] hit = new boolean[count];
+            int matched = 0;
+            int low = 0, high = termCount;
+
+            // the first term not less than the literal; every term starting with the literal follows it
+            while( low < high ) {
+                int mid = (low + high) >>> 1;
+
+                if( compareTerm(mid, literal) < 0 ) {
+                    low = mid + 1;
+                }
+                else {
+                    high = mid;
+                }
+            }
+            for( int term=low; term<termCount && startsWith(term, literal); term++ ) {
+                int position = buffer.getInt(termTable + term*4);
+                int postings = position + 4 + buffer.getInt(position)*2;
+                int n = buffer.getInt(postings);
+
+                for( int i=0; i<n; i++ ) {
+                    int row = buffer.getInt(postings + 4 + i*4);
+
+                    if( !hit[row] ) {
+                        hit[row] = true;
+                        matched++;
+                    }
+                }
+            }
+            int[] rows = new int[matched];
+
+            for( int i=0, j=0; i<hit.length; i++ ) {
+                if( hit[i] ) {
+                    rows[j++] = i;
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Compares a term in the file with a string in the order of {@link String#compareTo(String)}.
+         */
+        private int compareTerm(int term, @Nonnull String value) {
+            int position = buffer.getInt(termTable + term*4);
+            int length = buffer.getInt(position);
+            int n = Math.min(length, value.length());
+
+            for( int i=0; i<n; i++ ) {
+                char c = buffer.getChar(position + 4 + i*2);
+
+                if( c != value.charAt(i) ) {
+                    return c - value.charAt(i);
+                }
+            }
+            return length - value.length();
+        }
+
+        private boolean startsWith(int term, @Nonnull String prefix) {
+            int position = buffer.getInt(termTable + term*4);
+
+            if( buffer.getInt(position) < prefix.length() ) {
+                return false;
+            }
+            for( int i=0; i<prefix.length(); i++ ) {
+                if( buffer.getChar(position + 4 + i*2) != prefix.charAt(i) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean matchesColumns(int row, @Nonnull ImageFilterOptions options) {
+            if( options.isMatchesAny() ) {
+                return true;
+            }
+            int position = rowTable + row*ROW_SIZE;
+
+            if( options.getImageClass() != null && !options.getImageClass().equals(lookup(imageClasses, buffer.getShort(position + 4))) ) {
+                return false;
+            }
+            if( options.getArchitecture() != null && !options.getArchitecture().equals(lookup(architectures, buffer.getShort(position + 6))) ) {
+                return false;
+            }
+            if( options.getPlatform() != null && !options.getPlatform().equals(lookup(platforms, buffer.getShort(position + 8))) ) {
+                return false;
+            }
+            return (options.getAccountNumber() == null || options.getAccountNumber().equals(lookup(owners, buffer.getInt(position + 12))));
+        }
+
+        int size() {
+            return count;
+        }
+    }
+
+    static private @Nullable <V> V lookup(@Nonnull V[] dictionary, int index) {
+        return (index < 0 ? null : dictionary[index]);
+    }
+
+    /**
+     * Assigns each distinct value of a column a number, in order of first appearance.
+     */
+    static private class Dictionary {
+        private final HashMap<String,Integer> numbers = new HashMap<String, Integer>();
+        private final ArrayList<String>       values  = new ArrayList<String>();
+
+        int add(@Nullable Object value) {
+            if( value == null ) {
+                return -1;
+            }
+            String key = (value instanceof Enum ? ((Enum<?>)value).name() : value.toString());
+            Integer number = numbers.get(key);
+
+            if( number == null ) {
+                number = values.size();
+                numbers.put(key, number);
+                values.add(key);
+            }
+            return number;
+        }
+
+        void writeTo(@Nonnull DataOutputStream out) throws IOException {
+            out.writeInt(values.size());
+            for( String value : values ) {
+                out.writeInt(value.length());
+                out.writeChars(value);
+            }
+        }
+    }
+
+    /**
+     * Reads a dictionary written by {@link Dictionary#writeTo(DataOutputStream)}, turning values that no longer name a
+     * constant of the enum into nulls.
+     */
+    static private @Nonnull <E extends Enum<E>> E[] readDictionary(@Nonnull ByteBuffer buffer, @Nonnull Class<E> type) throws IOException {
+        String[] names = readDictionary(buffer);
+        @SuppressWarnings("unchecked") E[] values = (E[])Array.newInstance(type, names.length);
+
+        for( int i=0; i<names.length; i++ ) {
+            try {
+                values[i] = Enum.valueOf(type, names[i]);
+            }
+            catch( IllegalArgumentException ignore ) {
+                // a constant that was removed since the index was written
+            }
+        }
+        return values;
+    }
+
+    static private @Nonnull String[] readDictionary(@Nonnull ByteBuffer buffer) throws IOException {
+        int n = buffer.getInt();
+
+        if( n < 0 || n > buffer.remaining() / 2 ) {
+            throw new IOException("Invalid dictionary size: " + n);
+        }
+        String[] values = new String[n];
+
+        for( int i=0; i<n; i++ ) {
+            int length = buffer.getInt();
+
+            if( length < 0 || length > buffer.remaining() / 2 ) {
+                throw new IOException("Invalid dictionary value length: " + length);
+            }
+            char[] chars = new char[length];
+
+            buffer.asCharBuffer().get(chars);
+            buffer.position(buffer.position() + length*2);
+            values[i] = new String(chars);
+        }
+        return values;
+    }
+
+    private final File     file;
+    private final String   key;
+    private final long     refreshMillis;
+    // serializes writers of the index file without blocking searches, which only take this index's monitor briefly
+    private final Object   writeLock = new Object();
+    private boolean        refreshing;
+    private volatile Snapshot snapshot;
+
+    private PublicImageIndex(@Nonnull String key, @Nonnull File file, @Nonnegative long refreshMillis) {
+        this.key = key;
+        this.file = file;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Drops this index from the open indexes and releases its loaded version. The file is left in place, and the index
+     * is loaded from it again if it is searched or opened through {@link #getInstance(CloudProvider)} later.
+     */
+    public void close() {
+        synchronized( indexes ) {
+            if( indexes.get(key) == this ) {
+                indexes.remove(key);
+            }
+        }
+        snapshot = null;
+    }
+
+    /**
+     * @return the file holding the index
+     */
+    public @Nonnull File getFile() {
+        return file;
+    }
+
+    /**
+     * @return when the loaded index was last fetched from the cloud, or -1 if no index is loaded
+     */
+    public long getLastRefresh() {
+        Snapshot s = snapshot;
+
+        return (s == null ? -1L : s.refreshedAt);
+    }
+
+    /**
+     * Fetches the whole public library from the cloud, rewrites the index file and swaps the new index in. Searches
+     * continue against the previous version while this runs.
+     * @param support the image support used to fetch the library
+     * @throws CloudException an error occurred fetching the library
+     * @throws InternalException the index file could not be written
+     */
+    public void refresh(@Nonnull MachineImageSupport support) throws CloudException, InternalException {
+        synchronized( writeLock ) {
+            write(fetchLibrary(support, ImageFilterOptions.getInstance()));
+        }
+    }
+
+    /**
+     * Searches the public library in the cloud without going through any index.
+     */
+    static private @Nonnull Iterable<MachineImage> fetchLibrary(@Nonnull MachineImageSupport support, @Nonnull ImageFilterOptions options) throws CloudException, InternalException {
+        if( support instanceof AbstractImageSupport ) {
+            return ((AbstractImageSupport<?>)support).searchPublicImageLibrary(options);
+        }
+        return support.searchPublicImages(options);
+    }
+
+    private void write(@Nonnull Iterable<MachineImage> images) throws InternalException {
+        long now = System.currentTimeMillis();
+
+        try {
+            File dir = file.getParentFile();
+
+            if( dir != null && !dir.exists() && !dir.mkdirs() ) {
+                throw new IOException("Unable to create " + dir);
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+            BinaryWriter row = new BinaryWriter();
+            ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+            DataOutputStream rows = new DataOutputStream(rowBytes);
+            Dictionary imageClasses = new Dictionary();
+            Dictionary architectures = new Dictionary();
+            Dictionary platforms = new Dictionary();
+            Dictionary owners = new Dictionary();
+            // every suffix of every token, so a literal inside a token is found as a prefix of a term
+            HashMap<String,ArrayList<Integer>> postings = new HashMap<String, ArrayList<Integer>>();
+            ArrayList<String> words = new ArrayList<String>();
+            int count = 0, dictionaryTable, rowTable, termTable;
+            ArrayList<String> terms;
+
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(now);
+                out.writeInt(0); // the count and offsets are patched below once they are known
+                out.writeInt(ModelCodecs.MACHINE_IMAGE.getVersion());
+                out.write(new byte[HEADER_SIZE - 24]);
+                for( MachineImage img : images ) {
+                    rows.writeInt(out.size());
+                    rows.writeShort(imageClasses.add(img.getImageClass()));
+                    rows.writeShort(architectures.add(img.getArchitecture()));
+                    rows.writeShort(platforms.add(img.getPlatform()));
+                    rows.writeShort(0);
+                    rows.writeInt(owners.add(img.getProviderOwnerId()));
+                    row.reset();
+                    ModelCodecs.MACHINE_IMAGE.write(row, img);
+                    row.writeTo(out);
+
+                    words.clear();
+                    tokenize(img.getName(), words);
+                    tokenize(img.getDescription(), words);
+                    tokenize(img.getProviderMachineImageId(), words);
+                    for( String value : img.getTags().values() ) {
+                        tokenize(value, words);
+                    }
+                    for( String word : words ) {
+                        for( int i=0; i<word.length(); i++ ) {
+                            String suffix = word.substring(i);
+                            ArrayList<Integer> matches = postings.get(suffix);
+
+                            if( matches == null ) {
+                                matches = new ArrayList<Integer>(2);
+                                postings.put(suffix, matches);
+                            }
+                            if( matches.isEmpty() || matches.get(matches.size() - 1) != count ) {
+                                matches.add(count);
+                            }
+                        }
+                    }
+                    count++;
+                }
+                dictionaryTable = out.size();
+                imageClasses.writeTo(out);
+                architectures.writeTo(out);
+                platforms.writeTo(out);
+                owners.writeTo(out);
+                rowTable = out.size();
+                rowBytes.writeTo(out);
+                termTable = out.size();
+
+                // the terms in String order, each pointed to from a table of fixed-size entries for binary search
+                terms = new ArrayList<String>(postings.keySet());
+                Collections.sort(terms);
+                long position = termTable + 4L*terms.size();
+
+                for( String term : terms ) {
+                    if( position > Integer.MAX_VALUE ) {
+                        throw new IOException("The public image library is too large to index");
+                    }
+                    out.writeInt((int)position);
+                    position += 8L + term.length()*2L + postings.get(term).size()*4L;
+                }
+                if( position > Integer.MAX_VALUE ) {
+                    throw new IOException("The public image library is too large to index");
+                }
+                for( String term : terms ) {
+                    ArrayList<Integer> matches = postings.get(term);
+
+                    out.writeInt(term.length());
+                    out.writeChars(term);
+                    out.writeInt(matches.size());
+                    for( Integer match : matches ) {
+                        out.writeInt(match);
+                    }
+                }
+            }
+            finally {
+                out.close();
+            }
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+
+            try {
+                raf.seek(16);
+                raf.writeInt(count);
+                raf.seek(24);
+                raf.writeInt(dictionaryTable);
+                raf.writeInt(rowTable);
+                raf.writeInt(terms.size());
+                raf.writeInt(termTable);
+            }
+            finally {
+                raf.close();
+            }
+            File target = file;
+
+            if( !tmp.renameTo(file) ) {
+                // some platforms will not replace an existing (possibly mapped) file
+                if( !file.delete() || !tmp.renameTo(file) ) {
+                    target = tmp;
+                }
+            }
+            snapshot = load(target);
+        }
+        catch( IOException e ) {
+            throw new InternalException("Unable to write public image index " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Searches the indexed public library. If nothing is loaded yet the index file is read, and if there is none the
+     * library is fetched first; other callers searching meanwhile are answered by the cloud. A stale index is still
+     * searched while it refreshes in the background.
+     * @param provider the provider on whose behalf the search is made, used to fetch the library when needed
+     * @param options the search criteria
+     * @return the matching images, identical to a live search of the indexed library
+     * @throws CloudException an error occurred fetching the library
+     * @throws InternalException the index file could not be read or written, or the provider has no image support
+     */
+    public @Nonnull Iterable<MachineImage> search(@Nonnull CloudProvider provider, @Nonnull ImageFilterOptions options) throws CloudException, InternalException {
+        MachineImageSupport support = getImageSupport(provider);
+        Snapshot s = getSnapshot(provider, support);
+
+        if( s == null ) {
+            return fetchLibrary(support, options);
+        }
+        String literal = (options.isMatchesAny() ? null : getRequiredLiteral(options.getRegex()));
+        ArrayList<MachineImage> matches = new ArrayList<MachineImage>();
+
+        try {
+            int[] rows = (literal == null ? null : s.getCandidates(literal));
+            int count = (rows == null ? s.size() : rows.length);
+
+            for( int i=0; i<count; i++ ) {
+                int row = (rows == null ? i : rows[i]);
+
+                if( s.matchesColumns(row, options) ) {
+                    MachineImage img = s.get(row);
+
+                    if( options.matches(img) ) {
+                        matches.add(img);
+                    }
+                }
+            }
+        }
+        catch( CodecException e ) {
+            throw new InternalException("Corrupt public image index " + file + ": " + e.getMessage(), e);
+        }
+        catch( IndexOutOfBoundsException e ) {
+            // the file is only checked as it is read, so damage to the rows or terms shows up here
+            throw new InternalException("Corrupt public image index " + file + ": " + e.getMessage(), e);
+        }
+        return matches;
+    }
+
+    /**
+     * @return the number of images in the loaded index, or 0 if none is loaded
+     */
+    public int size() {
+        Snapshot s = snapshot;
+
+        return (s == null ? 0 : s.size());
+    }
+
+    static private @Nonnull MachineImageSupport getImageSupport(@Nonnull CloudProvider provider) throws InternalException {
+        ComputeServices services = provider.getComputeServices();
+        MachineImageSupport support = (services == null ? null : services.getImageSupport());
+
+        if( support == null ) {
+            throw new InternalException("The provider has no image support");
+        }
+        return support;
+    }
+
+    /**
+     * @return the loaded index, or null if it is being fetched for the first time by another caller
+     */
+    private @Nullable Snapshot getSnapshot(@Nonnull CloudProvider provider, @Nonnull MachineImageSupport support) throws CloudException, InternalException {
+        Snapshot s = snapshot;
+
+        if( s == null ) {
+            synchronized( this ) {
+                s = snapshot;
+                if( s == null ) {
+                    if( refreshing ) {
+                        return null;
+                    }
+                    refreshing = true;
+                }
+            }
+        }
+        if( s == null ) {
+            try {
+                if( file.exists() ) {
+                    try {
+                        s = load(file);
+                        snapshot = s;
+                    }
+                    catch( IOException e ) {
+                        logger.warn("Discarding unreadable public image index " + file + ": " + e.getMessage());
+                    }
+                }
+                if( s == null ) {
+                    refresh(support);
+                    return snapshot;
+                }
+            }
+            finally {
+                synchronized( this ) {
+                    refreshing = false;
+                }
+            }
+        }
+        if( s.refreshedAt + refreshMillis < System.currentTimeMillis() ) {
+            final ProviderContext ctx = provider.getContext();
+
+            if( ctx == null ) {
+                return s;
+            }
+            synchronized( this ) {
+                if( refreshing ) {
+                    return s;
+                }
+                refreshing = true;
+            }
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        // the caller's provider may be closed as soon as its search returns
+                        CloudProvider fresh = ctx.connect();
+
+                        try {
+                            refresh(getImageSupport(fresh));
+                        }
+                        finally {
+                            fresh.close();
+                        }
+                    }
+                    catch( Throwable t ) {
+                        logger.warn("Failed to refresh public image index " + file + ": " + t.getMessage());
+                    }
+                    finally {
+                        synchronized( PublicImageIndex.this ) {
+                            refreshing = false;
+                        }
+                    }
+                }
+            };
+
+            t.setName("Public Image Index Refresh: " + file.getName());
+            t.setDaemon(true);
+            t.start();
+        }
+        return s;
+    }
+
+    private @Nonnull Snapshot load(@Nonnull File from) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(from, "r");
+        MappedByteBuffer buffer;
+
+        try {
+            // the mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        finally {
+            raf.close();
+        }
+        if( buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION ) {
+            throw new IOException("Not a public image index: " + from);
+        }
+        Snapshot s = new Snapshot();
+
+        s.buffer = buffer;
+        s.refreshedAt = buffer.getLong();
+        s.count = buffer.getInt();
+        s.schemaVersion = buffer.getInt();
+
+        int dictionaryTable = buffer.getInt();
+
+        s.rowTable = buffer.getInt();
+        s.termCount = buffer.getInt();
+        s.termTable = buffer.getInt();
+        if( s.count < 0 || s.schemaVersion < 1 || s.schemaVersion > ModelCodecs.MACHINE_IMAGE.getVersion() ) {
+            throw new IOException("Unsupported public image index " + from);
+        }
+        if( dictionaryTable < HEADER_SIZE || s.rowTable < dictionaryTable || s.rowTable + (long)s.count*ROW_SIZE > s.termTable
+                || s.termCount < 0 || s.termTable + 4L*s.termCount > buffer.limit() ) {
+            throw new IOException("Corrupt public image index " + from);
+        }
+        try {
+            buffer.position(dictionaryTable);
+            s.imageClasses = readDictionary(buffer, ImageClass.class);
+            s.architectures = readDictionary(buffer, Architecture.class);
+            s.platforms = readDictionary(buffer, Platform.class);
+            s.owners = readDictionary(buffer);
+        }
+        catch( RuntimeException e ) {
+            throw new IOException("Corrupt public image index " + from + ": " + e.getMessage());
+        }
+        return s;
+    }
+}
@@ -22,6 +22,7 @@ package org.dasein.cloud.compute;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.Taggable;
 import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.util.StringPool;
 
 import javax.annotation.Nonnull;
 import java.util.HashMap;
@@ -102,7 +103,7 @@ public class Snapshot implements Taggable {
     }
 
     public void setOwner( String owner ) {
-        this.owner = owner;
+        this.owner = StringPool.intern(owner);
     }
 
     public void setProviderSnapshotId( String providerSnapshotId ) {
@@ -110,7 +111,7 @@ public class Snapshot implements Taggable {
     }
 
     public void setRegionId( String regionId ) {
-        this.regionId = regionId;
+        this.regionId = StringPool.intern(regionId);
     }
 
     public void setSnapshotTimestamp( long snapshotTimestamp ) {
@@ -151,7 +152,7 @@ public class Snapshot implements Taggable {
     }
 
     public void addTag( String key, String value ) {
-        getTags().put(key, value);
+        getTags().put(StringPool.intern(key), value);
     }
 
     public Object getTag( String tag ) {
@@ -166,12 +167,14 @@ public class Snapshot implements Taggable {
     }
 
     public void setTag( @Nonnull String key, @Nonnull String value ) {
-        getTags().put(key, value);
+        getTags().put(StringPool.intern(key), value);
     }
 
     public synchronized void setTags( Map<String, String> properties ) {
         getTags().clear();
-        getTags().putAll(properties);
+        for( Map.Entry<String, String> entry : properties.entrySet() ) {
+            tags.put(StringPool.intern(entry.getKey()), entry.getValue());
+        }
     }
 
     public void setVisibleScope(VisibleScope visibleScope){
@@ -21,6 +21,7 @@ package org.dasein.cloud.compute;
 
 import java.util.Collection;
 import java.util.Locale;
+import java.util.Map;
 
 import org.dasein.cloud.AccessControlledService;
 import org.dasein.cloud.CloudException;
@@ -38,6 +39,7 @@ import javax.annotation.Nullable;
  * Core interfaces for snapshot management.
  * @author George Reese @ enstratius (http://www.enstratius.com)
  * @version 2013.01 Added status listing (Issue #4)
+ * @version 2015.09 Added batch lookup of snapshots by ID
  * @since unknown
  */
 @SuppressWarnings("UnusedDeclaration")
@@ -119,6 +121,15 @@ public interface SnapshotSupport extends AccessControlledService {
      */
     public @Nullable Snapshot getSnapshot(@Nonnull String snapshotId) throws InternalException, CloudException;
 
+    /**
+     * Fetches several snapshots at once. Implementations should resolve all of them with as few calls to the cloud as possible.
+     * @param snapshotIds the IDs of the desired snapshots
+     * @return the snapshots found, keyed by ID in the order the IDs were given; IDs that do not exist are absent
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     * @throws CloudException an error occurred with the cloud provider
+     */
+    public @Nonnull Map<String,Snapshot> getSnapshots(@Nonnull Collection<String> snapshotIds) throws InternalException, CloudException;
+
     /**
      * Indicates whether or not the cloud requires a volume to be attached when performing a snapshot. {@link Requirement#REQUIRED}
      * means that a volume must be attached; {@link Requirement#OPTIONAL} means that it may be attached; {@link Requirement#NONE}
@@ -23,7 +23,9 @@ import org.dasein.cloud.CloudProvider;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -35,9 +37,11 @@ import java.util.Set;
  *
  * @author Cameron Stokes
  * @version 2013.04 initial version
+ * @version 2015.09 added attribute projection
  * @since 2013.04
  */
 public class VMFilterOptions {
+    private Set<String>               attributes;
     private String[]                  labels;
     private boolean                   matchesAny;
     private String                    regex;
@@ -97,6 +101,13 @@ public class VMFilterOptions {
         this.matchesAny = matchesAny;
     }
 
+    /**
+     * @return the attributes needed on each virtual machine, or <code>null</code> if all of them are needed
+     */
+    public @Nullable Set<String> getAttributes() {
+        return attributes;
+    }
+
     /**
      * @return a regular expression to match against a VM name, description, or tag values.
      */
@@ -158,6 +169,25 @@ public class VMFilterOptions {
         return matchesAny;
     }
 
+    /**
+     * Indicates whether a provider listing with these options needs to populate the specified attribute, either because
+     * it was asked for or because the filter criteria test it.
+     * @param attribute the name of a {@link VirtualMachine} bean property, such as <code>privateAddresses</code>
+     * @return <code>true</code> if the attribute is needed
+     */
+    public boolean isRequested( @Nonnull String attribute ) {
+        if( attributes == null || attributes.contains(attribute) ) {
+            return true;
+        }
+        if( "name".equals(attribute) || "description".equals(attribute) || "tags".equals(attribute) ) {
+            return ( regex != null || ( tags != null && !tags.isEmpty() ) );
+        }
+        if( "lifecycle".equals(attribute) ) {
+            return ( lifecycles != null && lifecycles.length > 0 );
+        }
+        return ( "spotRequestId".equals(attribute) && spotRequestId != null );
+    }
+
     /**
      * Matches a virtual machine against the criteria in this set of filter options.
      *
@@ -308,4 +338,16 @@ public class VMFilterOptions {
         return this;
     }
 
+    /**
+     * Limits the attributes needed on each virtual machine to the specified bean properties of {@link VirtualMachine}, such as
+     * <code>privateAddresses</code>. Providers may skip fetching and parsing the others; any they skip are fetched in full on
+     * first use through {@link VirtualMachine#setDetailsCallback(java.util.concurrent.Callable)}. The ID and current state are always populated.
+     * @param attributes the names of the needed attributes
+     * @return this
+     */
+    public @Nonnull VMFilterOptions withAttributes( @Nonnull String... attributes ) {
+        this.attributes = new HashSet<String>(Arrays.asList(attributes));
+        return this;
+    }
+
 }
@@ -0,0 +1,357 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.compute;
+
+import org.dasein.cloud.InternalException;
+import org.dasein.util.CalendarWrapper;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Megabyte;
+import org.dasein.util.uom.storage.Storage;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pre-indexed view of a vmproducts.json resource as described in
+ * {@link AbstractVMSupport#getVMProductsResource()}. Each resource is read and parsed exactly once and the resulting
+ * catalog is shared by every provider instance referencing it. Product sets are indexed by provider/cloud name and
+ * by architecture so that product listings become simple lookups instead of a full parse of the resource. The parsed
+ * products are never handed out; each listing returns copies, so callers may modify what they get back.
+ * <p>
+ * Catalogs backed by a file on the local file system may be reloaded when the file changes by setting the system
+ * property &quot;dasein.vmproducts.reload&quot; to &quot;true&quot;. The modification time is then checked at most
+ * once every {@link #RELOAD_CHECK_INTERVAL} milliseconds when the catalog is requested.
+ * </p>
+ * @version 2015.09 initial version
+ * @version 2015.09 listings return copies of the parsed products
+ * @since 2015.09
+ */
+public final class VMProductCatalog {
+    static public final long   RELOAD_CHECK_INTERVAL = CalendarWrapper.MINUTE;
+    static public final String RELOAD_PROPERTY       = "dasein.vmproducts.reload";
+
+    static private final Map<String,VMProductCatalog> catalogs = new ConcurrentHashMap<String, VMProductCatalog>();
+
+    /**
+     * Provides the catalog for the specified resource, parsing it if this is the first reference to it.
+     * @param resource the CLASSPATH resource holding the vmproducts JSON definition
+     * @return the catalog for the resource or <code>null</code> if no such resource exists
+     * @throws InternalException the resource could not be read or is not a valid vmproducts definition
+     */
+    static public @Nullable VMProductCatalog getInstance(@Nonnull String resource) throws InternalException {
+        VMProductCatalog catalog = catalogs.get(resource);
+
+        if( catalog != null && !catalog.isStale() ) {
+            return catalog;
+        }
+        synchronized( catalogs ) {
+            catalog = catalogs.get(resource);
+            if( catalog == null || catalog.isStale() ) {
+                catalog = load(resource);
+                if( catalog != null ) {
+                    catalogs.put(resource, catalog);
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * Discards all parsed catalogs so they will be reloaded from their resources on next reference.
+     */
+    static public void clear() {
+        catalogs.clear();
+    }
+
+    static private @Nullable VMProductCatalog load(@Nonnull String resource) throws InternalException {
+        URL url = VMProductCatalog.class.getResource(resource);
+
+        if( url == null ) {
+            return null;
+        }
+        File file = null;
+
+        if( "file".equals(url.getProtocol()) ) {
+            try {
+                file = new File(url.toURI());
+            }
+            catch( URISyntaxException ignore ) {
+                // not something we can watch, so we will just never reload
+            }
+        }
+        long lastModified = (file == null ? 0L : file.lastModified());
+
+        try {
+            InputStream input = url.openStream();
+
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+                StringBuilder json = new StringBuilder();
+                String line;
+
+                while( (line = reader.readLine()) != null ) {
+                    json.append(line);
+                    json.append("\n");
+                }
+                return new VMProductCatalog(new JSONArray(json.toString()), file, lastModified);
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+        catch( JSONException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    static private @Nonnull VirtualMachineProduct copy(@Nonnull VirtualMachineProduct prd) {
+        VirtualMachineProduct copy = new VirtualMachineProduct();
+
+        copy.setProviderProductId(prd.getProviderProductId());
+        copy.setName(prd.getName());
+        copy.setDescription(prd.getDescription());
+        copy.setCpuCount(prd.getCpuCount());
+        // Storage values are immutable and can be shared
+        copy.setRootVolumeSize(prd.getRootVolumeSize());
+        copy.setRamSize(prd.getRamSize());
+        copy.setStandardHourlyRate(prd.getStandardHourlyRate());
+        return copy;
+    }
+
+    static private @Nonnull String toKey(@Nonnull String providerName, @Nonnull String cloudName) {
+        return (providerName.toLowerCase() + ":" + cloudName.toLowerCase());
+    }
+
+    static private @Nullable VirtualMachineProduct toProduct(@Nonnull JSONObject json) throws JSONException {
+        VirtualMachineProduct prd = new VirtualMachineProduct();
+
+        if( json.has("id") ) {
+            prd.setProviderProductId(json.getString("id"));
+        }
+        else {
+            return null;
+        }
+        if( json.has("name") ) {
+            prd.setName(json.getString("name"));
+        }
+        else {
+            prd.setName(prd.getProviderProductId());
+        }
+        if( json.has("description") ) {
+            prd.setDescription(json.getString("description"));
+        }
+        else {
+            prd.setDescription(prd.getName());
+        }
+        if( json.has("cpuCount") ) {
+            prd.setCpuCount(json.getInt("cpuCount"));
+        }
+        else {
+            prd.setCpuCount(1);
+        }
+        if( json.has("rootVolumeSizeInGb") ) {
+            prd.setRootVolumeSize(new Storage<Gigabyte>(json.getInt("rootVolumeSizeInGb"), Storage.GIGABYTE));
+        }
+        else {
+            prd.setRootVolumeSize(new Storage<Gigabyte>(1, Storage.GIGABYTE));
+        }
+        if( json.has("ramSizeInMb") ) {
+            prd.setRamSize(new Storage<Megabyte>(json.getInt("ramSizeInMb"), Storage.MEGABYTE));
+        }
+        else {
+            prd.setRamSize(new Storage<Megabyte>(512, Storage.MEGABYTE));
+        }
+        if( json.has("standardHourlyRates") ) {
+            JSONArray rates = json.getJSONArray("standardHourlyRates");
+
+            for( int i = 0; i < rates.length(); i++ ) {
+                JSONObject rate = rates.getJSONObject(i);
+
+                if( rate.has("rate") ) {
+                    prd.setStandardHourlyRate((float) rate.getDouble("rate"));
+                }
+            }
+        }
+        return prd;
+    }
+
+    static private class Entry {
+        public VirtualMachineProduct product;
+        public Set<String>           excludedRegions;
+    }
+
+    static private class ProductSet {
+        public final List<Entry>                   all            = new ArrayList<Entry>();
+        public final Map<Architecture,List<Entry>> byArchitecture = new EnumMap<Architecture, List<Entry>>(Architecture.class);
+
+        public ProductSet(@Nonnull JSONArray products) throws JSONException {
+            for( Architecture a : Architecture.values() ) {
+                byArchitecture.put(a, new ArrayList<Entry>());
+            }
+            for( int i = 0; i < products.length(); i++ ) {
+                JSONObject json = products.getJSONObject(i);
+                VirtualMachineProduct prd = toProduct(json);
+
+                if( prd == null ) {
+                    continue;
+                }
+                Entry entry = new Entry();
+
+                entry.product = prd;
+                if( json.has("excludesRegions") ) {
+                    JSONArray regions = json.getJSONArray("excludesRegions");
+
+                    entry.excludedRegions = new HashSet<String>();
+                    for( int j = 0; j < regions.length(); j++ ) {
+                        entry.excludedRegions.add(regions.getString(j));
+                    }
+                }
+                else {
+                    entry.excludedRegions = Collections.emptySet();
+                }
+                all.add(entry);
+                if( json.has("architectures") ) {
+                    JSONArray architectures = json.getJSONArray("architectures");
+
+                    for( int j = 0; j < architectures.length(); j++ ) {
+                        String a = architectures.getString(j);
+
+                        for( Architecture architecture : Architecture.values() ) {
+                            if( architecture.name().equals(a) ) {
+                                byArchitecture.get(architecture).add(entry);
+                                break;
+                            }
+                        }
+                    }
+                }
+                else {
+                    // no architectures specified means the product supports all architectures
+                    for( List<Entry> entries : byArchitecture.values() ) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+    }
+
+    private final ProductSet              defaultSet;
+    private final File                    file;
+    private final long                    lastModified;
+    private volatile long                 nextReloadCheck;
+    private final Map<String,ProductSet>  productSets = new HashMap<String, ProductSet>();
+
+    private VMProductCatalog(@Nonnull JSONArray arr, @Nullable File file, long lastModified) throws JSONException {
+        ProductSet fallback = null;
+
+        for( int i = 0; i < arr.length(); i++ ) {
+            JSONObject productSet = arr.getJSONObject(i);
+
+            if( !productSet.has("cloud") || !productSet.has("provider") || !productSet.has("products") ) {
+                continue;
+            }
+            String cloud = productSet.getString("cloud");
+            String provider = productSet.getString("provider");
+            String key = toKey(provider, cloud);
+
+            if( productSets.containsKey(key) ) {
+                // the first definition for a given provider/cloud always wins
+                continue;
+            }
+            ProductSet set = new ProductSet(productSet.getJSONArray("products"));
+
+            productSets.put(key, set);
+            if( fallback == null || (provider.equals("default") && cloud.equals("default")) ) {
+                fallback = set;
+            }
+        }
+        this.defaultSet = fallback;
+        this.file = file;
+        this.lastModified = lastModified;
+        this.nextReloadCheck = System.currentTimeMillis() + RELOAD_CHECK_INTERVAL;
+    }
+
+    private boolean isStale() {
+        if( file == null || !"true".equalsIgnoreCase(System.getProperty(RELOAD_PROPERTY)) ) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+
+        if( now < nextReloadCheck ) {
+            return false;
+        }
+        nextReloadCheck = now + RELOAD_CHECK_INTERVAL;
+        return (file.lastModified() != lastModified);
+    }
+
+    /**
+     * Lists the products defined for the specified provider and cloud, falling back to the default product set (or
+     * the first set in the resource if there is no default) when there is no product set specific to that cloud.
+     * @param providerName the name of the provider whose products are being sought
+     * @param cloudName the name of the cloud whose products are being sought
+     * @param architecture the architecture the products must support or <code>null</code> for all products
+     * @param regionId the region in which the products must be available or <code>null</code> to skip region exclusions
+     * @param options any filtering criteria to apply to the matching products
+     * @return copies of the matching products
+     */
+    public @Nonnull List<VirtualMachineProduct> listProducts(@Nonnull String providerName, @Nonnull String cloudName, @Nullable Architecture architecture, @Nullable String regionId, @Nullable VirtualMachineProductFilterOptions options) {
+        ProductSet set = productSets.get(toKey(providerName, cloudName));
+
+        if( set == null ) {
+            set = defaultSet;
+        }
+        if( set == null ) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = (architecture == null ? set.all : set.byArchitecture.get(architecture));
+        List<VirtualMachineProduct> list = new ArrayList<VirtualMachineProduct>(entries.size());
+
+        for( Entry entry : entries ) {
+            if( regionId != null && entry.excludedRegions.contains(regionId) ) {
+                continue;
+            }
+            if( options == null || options.matches(entry.product) ) {
+                list.add(copy(entry.product));
+            }
+        }
+        return list;
+    }
+}
@@ -19,9 +19,11 @@
 
 package org.dasein.cloud.compute;
 
+import org.apache.log4j.Logger;
 import org.dasein.cloud.*;
 import org.dasein.cloud.network.Networkable;
 import org.dasein.cloud.network.RawAddress;
+import org.dasein.cloud.util.StringPool;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -41,8 +43,14 @@ import java.util.concurrent.Callable;
  *
  * @author George Reese @ enstratius (http://www.enstratius.com)
  * @version 2013.04 added access to shell key IDs
+ * @version 2015.09 attributes left out of a projected listing can be loaded on first use
+ * @version 2015.09 low-cardinality identifiers and tag keys are canonicalized through {@link StringPool}
+ * @version 2015.09 failed detail loads are logged and retried, outside of the object's monitor
+ * @version 2015.09 added access to volume IDs without a live lookup
  */
 public class VirtualMachine implements Networkable, Taggable {
+    static private final Logger logger = Logger.getLogger(VirtualMachine.class);
+
     private String                  affinityGroupId;
     private Architecture            architecture;
     private boolean                 clonable;
@@ -122,7 +130,7 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public void addTag( String key, String value ) {
-        getTags().put(key, value);
+        getTags().put(StringPool.intern(key), value);
     }
 
     private transient volatile Callable<String> passwordCallback = null;
@@ -131,6 +139,79 @@ public class VirtualMachine implements Networkable, Taggable {
         this.passwordCallback = callback;
     }
 
+    private transient volatile Callable<VirtualMachine> detailsCallback = null;
+
+    /**
+     * Sets a callback for fetching this virtual machine in full when it was listed with only some of its attributes
+     * (see {@link VMFilterOptions#withAttributes(String...)}). The first getter to find its attribute missing calls it
+     * and fills in the tags, labels, addresses, volumes and firewall, network interface, shell key and volume IDs
+     * that were left out. The callback is called without holding this object's monitor. If it fails, the failure is
+     * logged and the callback is kept, so the next getter to find its attribute missing tries again. Set it only
+     * after the object has been populated.
+     * Code that reads every attribute of a resource, such as the change feed's fingerprints, the tag index, the
+     * resource graph, the binary codecs and address indexes, triggers the load for each projected object it reads, so
+     * use a full listing when feeding those.
+     * @param callback a callback returning the full virtual machine, or <code>null</code> if the object is complete
+     */
+    public void setDetailsCallback( @Nullable Callable<VirtualMachine> callback ) {
+        this.detailsCallback = callback;
+    }
+
+    public @Nullable Callable<VirtualMachine> getDetailsCallback() {
+        return detailsCallback;
+    }
+
+    private void loadDetails() {
+        Callable<VirtualMachine> callback = detailsCallback;
+
+        if( callback == null ) {
+            return;
+        }
+        VirtualMachine full;
+
+        try {
+            full = callback.call();
+        } catch( Exception e ) {
+            logger.warn("Unable to load the details of virtual machine " + providerVirtualMachineId + ": " + e.getMessage());
+            return;
+        }
+        synchronized ( this ) {
+            if( detailsCallback == callback ) {
+                detailsCallback = null;
+            }
+            if( full == null || full == this ) {
+                return;
+            }
+            if( (tags == null || tags.isEmpty()) && full.tags != null ) {
+                tags = full.tags;
+            }
+            if( labels == null ) {
+                labels = full.labels;
+            }
+            if( privateIpAddresses == null ) {
+                privateIpAddresses = full.privateIpAddresses;
+            }
+            if( publicIpAddresses == null ) {
+                publicIpAddresses = full.publicIpAddresses;
+            }
+            if( volumes == null ) {
+                volumes = full.volumes;
+            }
+            if( providerFirewallIds == null ) {
+                providerFirewallIds = full.providerFirewallIds;
+            }
+            if( providerNetworkInterfaceIds == null ) {
+                providerNetworkInterfaceIds = full.providerNetworkInterfaceIds;
+            }
+            if( providerShellKeyIds == null ) {
+                providerShellKeyIds = full.providerShellKeyIds;
+            }
+            if( providerVolumeIds == null ) {
+                providerVolumeIds = full.providerVolumeIds;
+            }
+        }
+    }
+
     public void setRootPassword( String rootPassword ) {
         this.rootPassword = rootPassword;
     }
@@ -315,6 +396,9 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public @Nonnull RawAddress[] getPrivateAddresses() {
+        if( privateIpAddresses == null ) {
+            loadDetails();
+        }
         return ( privateIpAddresses == null ? new RawAddress[0] : privateIpAddresses );
     }
 
@@ -324,6 +408,9 @@ public class VirtualMachine implements Networkable, Taggable {
      */
     @Deprecated
     public String[] getPrivateIpAddresses() {
+        if( privateIpAddresses == null ) {
+            loadDetails();
+        }
         String[] addrs = new String[privateIpAddresses == null ? 0 : privateIpAddresses.length];
 
         if( privateIpAddresses != null ) {
@@ -366,7 +453,7 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public void setProviderDataCenterId( String providerDataCenterId ) {
-        this.providerDataCenterId = providerDataCenterId;
+        this.providerDataCenterId = StringPool.intern(providerDataCenterId);
     }
 
     public String getProviderMachineImageId() {
@@ -374,7 +461,7 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public void setProviderMachineImageId( String providerMachineImageId ) {
-        this.providerMachineImageId = providerMachineImageId;
+        this.providerMachineImageId = StringPool.intern(providerMachineImageId);
     }
 
     public String getProviderOwnerId() {
@@ -382,7 +469,7 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public void setProviderOwnerId( String providerOwnerId ) {
-        this.providerOwnerId = providerOwnerId;
+        this.providerOwnerId = StringPool.intern(providerOwnerId);
     }
 
     public String getProviderRegionId() {
@@ -390,7 +477,7 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public void setProviderRegionId( String providerRegionId ) {
-        this.providerRegionId = providerRegionId;
+        this.providerRegionId = StringPool.intern(providerRegionId);
     }
 
     public String getProviderVirtualMachineId() {
@@ -410,6 +497,9 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public @Nonnull RawAddress[] getPublicAddresses() {
+        if( publicIpAddresses == null ) {
+            loadDetails();
+        }
         return ( publicIpAddresses == null ? new RawAddress[0] : publicIpAddresses );
     }
 
@@ -418,6 +508,9 @@ public class VirtualMachine implements Networkable, Taggable {
      */
     @Deprecated
     public String[] getPublicIpAddresses() {
+        if( publicIpAddresses == null ) {
+            loadDetails();
+        }
         if( publicIpAddresses == null || publicIpAddresses.length < 0 ) {
             if( publicDnsAddress == null ) {
                 return new String[0];
@@ -526,7 +619,7 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public void setProductId( String productId ) {
-        this.productId = productId;
+        this.productId = StringPool.intern(productId);
     }
 
     public String getProductId() {
@@ -538,6 +631,9 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public String[] getLabels() {
+        if( labels == null ) {
+            loadDetails();
+        }
         return ( labels == null ? new String[0] : labels );
     }
 
@@ -545,23 +641,35 @@ public class VirtualMachine implements Networkable, Taggable {
         return getTags().get(tag);
     }
 
-    public synchronized @Nonnull Map<String, String> getTags() {
-        if( tags == null ) {
-            tags = new HashMap<String, String>();
+    public @Nonnull Map<String, String> getTags() {
+        // an empty map may have been handed out while an earlier load failed
+        if( tags == null || (tags.isEmpty() && detailsCallback != null) ) {
+            loadDetails();
+        }
+        synchronized ( this ) {
+            if( tags == null ) {
+                tags = new HashMap<String, String>();
+            }
+            return tags;
         }
-        return tags;
     }
 
     public void setTag( @Nonnull String key, @Nonnull String value ) {
         if( tags == null ) {
             tags = new HashMap<String, String>();
         }
-        tags.put(key, value);
+        tags.put(StringPool.intern(key), value);
     }
 
-    public synchronized void setTags( Map<String, String> properties ) {
-        getTags().clear();
-        getTags().putAll(properties);
+    public void setTags( Map<String, String> properties ) {
+        Map<String, String> current = getTags();
+
+        synchronized ( this ) {
+            current.clear();
+            for( Map.Entry<String, String> entry : properties.entrySet() ) {
+                current.put(StringPool.intern(entry.getKey()), entry.getValue());
+            }
+        }
     }
 
     public void setProviderSubnetId( String providerSubnetId ) {
@@ -589,6 +697,9 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public String[] getProviderFirewallIds() {
+        if( providerFirewallIds == null ) {
+            loadDetails();
+        }
         return ( providerFirewallIds == null ? new String[0] : providerFirewallIds );
     }
 
@@ -597,6 +708,9 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public String[] getProviderNetworkInterfaceIds() {
+        if( providerNetworkInterfaceIds == null ) {
+            loadDetails();
+        }
         return ( providerNetworkInterfaceIds == null ? new String[0] : providerNetworkInterfaceIds );
     }
 
@@ -625,10 +739,16 @@ public class VirtualMachine implements Networkable, Taggable {
     }
 
     public @Nonnull String[] getProviderShellKeyIds() {
+        if( providerShellKeyIds == null ) {
+            loadDetails();
+        }
         return ( providerShellKeyIds == null ? new String[0] : providerShellKeyIds );
     }
 
     public @Nonnull String[] getProviderVolumeIds( @Nonnull CloudProvider provider ) throws CloudException, InternalException {
+        if( providerVolumeIds == null ) {
+            loadDetails();
+        }
         if( providerVolumeIds == null ) {
             ComputeServices services = provider.getComputeServices();
 
@@ -652,11 +772,26 @@ public class VirtualMachine implements Networkable, Taggable {
         return providerVolumeIds;
     }
 
+    /**
+     * Provides the volume IDs set on this virtual machine, or loaded with its details, without listing volumes
+     * against a live provider.
+     * @return the volume IDs, or <code>null</code> if they are not known
+     */
+    public @Nullable String[] getProviderVolumeIds() {
+        if( providerVolumeIds == null ) {
+            loadDetails();
+        }
+        return providerVolumeIds;
+    }
+
     public void setProviderVolumeIds( @Nonnull String... ids ) {
         providerVolumeIds = ids;
     }
 
     public @Nullable Volume[] getVolumes() {
+        if( volumes == null ) {
+            loadDetails();
+        }
         return volumes;
     }
 
@@ -21,11 +21,14 @@ package org.dasein.cloud.compute;
 
 import org.dasein.cloud.*;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.stream.Flow;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * <p>
@@ -35,6 +38,8 @@ import java.util.Locale;
  *
  * @author George Reese @ enstratius (http://www.enstratius.com)
  * @version 2014.03 Removed getXXXStates() methods, added a capabilities fetcher, and deprecated all capabilities methods
+ * @version 2015.09 Added batch lookup of virtual machines by ID
+ * @version 2015.09 Added a streaming listing with back pressure
  * @since unknown
  */
 @SuppressWarnings("UnusedDeclaration")
@@ -250,6 +255,15 @@ public interface VirtualMachineSupport extends AccessControlledService {
      */
     public @Nullable VirtualMachine getVirtualMachine(@Nonnull String vmId) throws InternalException, CloudException;
 
+    /**
+     * Fetches several virtual machines at once. Implementations should resolve all of them with as few calls to the cloud as possible.
+     * @param vmIds the IDs of the desired virtual machines
+     * @return the virtual machines found, keyed by ID in the order the IDs were given; IDs that do not exist are absent
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     * @throws CloudException an error occurred with the cloud provider
+     */
+    public @Nonnull Map<String,VirtualMachine> getVirtualMachines(@Nonnull Collection<String> vmIds) throws InternalException, CloudException;
+
     /**
      * Provides hypervisor statistics for the specified server that fit within the defined time range.
      * For clouds that do not provide hypervisor statistics, this method should return an empty
@@ -498,6 +512,18 @@ public interface VirtualMachineSupport extends AccessControlledService {
      */
     public @Nonnull Iterable<VirtualMachine> listVirtualMachines(@Nullable VMFilterOptions options) throws InternalException, CloudException;
 
+    /**
+     * Streams the virtual machines matching the specified filter options with back pressure: items are emitted only as the
+     * subscriber requests them, a slow subscriber pauses paging through the cloud and cancelling stops it.
+     * Use {@link org.dasein.cloud.util.stream.ListPublisher#toIterable(Flow.Publisher, int)} to consume it as a
+     * bounded {@link Iterable}.
+     * @param options the filter options, or <code>null</code> for all virtual machines
+     * @return a publisher that lists the virtual machines anew for each subscriber
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     * @throws CloudException an error occurred with the cloud provider
+     */
+    public @Nonnull Flow.Publisher<VirtualMachine> streamVirtualMachines(@Nullable VMFilterOptions options) throws InternalException, CloudException;
+
     /**
      * Executes a hypervisor pause that essentially removes the virtual machine from the hypervisor scheduler.
      * The virtual machine is considered active and volatile at this point, but it won't actually do anything
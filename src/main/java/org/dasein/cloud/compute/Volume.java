@@ -19,8 +19,10 @@
 
 package org.dasein.cloud.compute;
 
+import org.apache.log4j.Logger;
 import org.dasein.cloud.Taggable;
 import org.dasein.cloud.network.Networkable;
+import org.dasein.cloud.util.StringPool;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
 
@@ -28,15 +30,21 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * Represents a block storage volume in the cloud.
  *
  * @author George Reese (george.reese@imaginary.com)
  * @version 2012-07 updated to match new volume enhancements, including UoM, type, and root volume awareness
+ * @version 2015.09 tags left out of a projected listing can be loaded on first use
+ * @version 2015.09 low-cardinality identifiers and tag keys are canonicalized through {@link StringPool}
+ * @version 2015.09 failed detail loads are logged and retried, outside of the object's monitor
  * @since unknown
  */
 public class Volume implements Networkable, Taggable {
+    static private final Logger logger = Logger.getLogger(Volume.class);
+
     private long                creationTimestamp;
     private VolumeState         currentState;
     private String              providerDataCenterId;
@@ -64,6 +72,8 @@ public class Volume implements Networkable, Taggable {
      */
     private Boolean deleteOnVirtualMachineTermination = null;
 
+    private transient volatile Callable<Volume> detailsCallback = null;
+
     public Volume() {
     }
 
@@ -180,7 +190,7 @@ public class Volume implements Networkable, Taggable {
     }
 
     public void setProviderDataCenterId( String dataCenterId ) {
-        this.providerDataCenterId = dataCenterId;
+        this.providerDataCenterId = StringPool.intern(dataCenterId);
     }
 
     public void setDeviceId( String deviceId ) {
@@ -203,7 +213,7 @@ public class Volume implements Networkable, Taggable {
     }
 
     public void setProviderRegionId( String regionId ) {
-        this.providerRegionId = regionId;
+        this.providerRegionId = StringPool.intern(regionId);
     }
 
     /**
@@ -242,7 +252,7 @@ public class Volume implements Networkable, Taggable {
     }
 
     public void setProviderProductId( String providerProductId ) {
-        this.providerProductId = providerProductId;
+        this.providerProductId = StringPool.intern(providerProductId);
     }
 
     public String getDescription() {
@@ -305,9 +315,15 @@ public class Volume implements Networkable, Taggable {
         this.providerVlanId = providerVlanId;
     }
 
-    public synchronized void setTags( Map<String, String> properties ) {
-        getTags().clear();
-        getTags().putAll(properties);
+    public void setTags( Map<String, String> properties ) {
+        Map<String, String> current = getTags();
+
+        synchronized( this ) {
+            current.clear();
+            for( Map.Entry<String, String> entry : properties.entrySet() ) {
+                current.put(StringPool.intern(entry.getKey()), entry.getValue());
+            }
+        }
     }
 
     public @Nullable String getTag( @Nonnull String key ) {
@@ -316,15 +332,21 @@ public class Volume implements Networkable, Taggable {
 
     @Override
     public @Nonnull Map<String, String> getTags() {
-        if( tags == null ) {
-            tags = new HashMap<String, String>();
+        // an empty map may have been handed out while an earlier load failed
+        if( tags == null || (tags.isEmpty() && detailsCallback != null) ) {
+            loadDetails();
+        }
+        synchronized( this ) {
+            if( tags == null ) {
+                tags = new HashMap<String, String>();
+            }
+            return tags;
         }
-        return tags;
     }
 
     @Override
     public void setTag( @Nonnull String key, @Nonnull String value ) {
-        getTags().put(key, value);
+        getTags().put(StringPool.intern(key), value);
     }
 
     public Boolean isDeleteOnVirtualMachineTermination() {
@@ -335,4 +357,48 @@ public class Volume implements Networkable, Taggable {
         this.deleteOnVirtualMachineTermination = deleteOnVirtualMachineTermination;
     }
 
+    /**
+     * Sets a callback for fetching this volume in full when it was listed with only some of its attributes (see
+     * {@link VolumeFilterOptions#withAttributes(String...)}). The first call to {@link #getTags()} that finds the tags
+     * missing calls it and fills them in. The callback is called without holding this object's monitor. If it fails,
+     * the failure is logged and the callback is kept, so the next call that finds the tags missing tries again. Set it
+     * only after the object has been populated.
+     * Code that reads every attribute of a resource, such as the change feed's fingerprints, the tag index, the
+     * resource graph, the binary codecs and address indexes, triggers the load for each projected object it reads, so
+     * use a full listing when feeding those.
+     * @param callback a callback returning the full volume, or <code>null</code> if the object is complete
+     */
+    public void setDetailsCallback( @Nullable Callable<Volume> callback ) {
+        this.detailsCallback = callback;
+    }
+
+    public @Nullable Callable<Volume> getDetailsCallback() {
+        return detailsCallback;
+    }
+
+    private void loadDetails() {
+        Callable<Volume> callback = detailsCallback;
+
+        if( callback == null ) {
+            return;
+        }
+        Volume full;
+
+        try {
+            full = callback.call();
+        }
+        catch( Exception e ) {
+            logger.warn("Unable to load the details of volume " + providerVolumeId + ": " + e.getMessage());
+            return;
+        }
+        synchronized( this ) {
+            if( detailsCallback == callback ) {
+                detailsCallback = null;
+            }
+            if( full != null && full != this && (tags == null || tags.isEmpty()) && full.tags != null ) {
+                tags = full.tags;
+            }
+        }
+    }
+
 }
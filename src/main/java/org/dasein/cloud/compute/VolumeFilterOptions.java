@@ -23,7 +23,10 @@ import org.dasein.cloud.CloudProvider;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Filtering options for filtering listings of volumes based on specific criteria. You can match any single criterion or
@@ -32,6 +35,7 @@ import java.util.Map;
  * @author George Reese
  * @author Cameron Stokes
  * @version 2013.04 initial version
+ * @version 2015.09 added attribute projection
  * @since 2013.04
  */
 public class VolumeFilterOptions {
@@ -78,6 +82,7 @@ public class VolumeFilterOptions {
     }
 
     private String             attachedTo;
+    private Set<String>        attributes;
     private boolean            matchesAny;
     private String             regex;
     private Map<String,String> tags;
@@ -103,6 +108,13 @@ public class VolumeFilterOptions {
         return attachedTo;
     }
 
+    /**
+     * @return the attributes needed on each volume, or <code>null</code> if all of them are needed
+     */
+    public @Nullable Set<String> getAttributes() {
+        return attributes;
+    }
+
     /**
      * @return a regular expression to match against a volume name, description, or tag values.
      */
@@ -135,6 +147,22 @@ public class VolumeFilterOptions {
         return matchesAny;
     }
 
+    /**
+     * Indicates whether a provider listing with these options needs to populate the specified attribute, either because
+     * it was asked for or because the filter criteria test it.
+     * @param attribute the name of a {@link Volume} bean property, such as <code>tags</code>
+     * @return <code>true</code> if the attribute is needed
+     */
+    public boolean isRequested(@Nonnull String attribute) {
+        if( attributes == null || attributes.contains(attribute) ) {
+            return true;
+        }
+        if( "name".equals(attribute) || "description".equals(attribute) || "tags".equals(attribute) ) {
+            return (regex != null || (tags != null && !tags.isEmpty()));
+        }
+        return ("providerVirtualMachineId".equals(attribute) && attachedTo != null);
+    }
+
     /**
      * Matches a volume against the criteria in this set of filter options.
      * @param volume the volume to test
@@ -223,6 +251,18 @@ public class VolumeFilterOptions {
         return this;
     }
 
+    /**
+     * Limits the attributes needed on each volume to the specified bean properties of {@link Volume}, such as
+     * <code>tags</code>. Providers may skip fetching and parsing the others; any they skip are fetched in full on
+     * first use through {@link Volume#setDetailsCallback(java.util.concurrent.Callable)}. The ID and current state are always populated.
+     * @param attributes the names of the needed attributes
+     * @return this
+     */
+    public @Nonnull VolumeFilterOptions withAttributes(@Nonnull String... attributes) {
+        this.attributes = new HashSet<String>(Arrays.asList(attributes));
+        return this;
+    }
+
     @Override
     public @Nonnull String toString() {
         return "[matchesAny=" + matchesAny + ",attachedTo=" + attachedTo + ",regex=" + regex + ",tags=" + tags + "]";
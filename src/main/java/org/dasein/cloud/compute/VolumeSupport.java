@@ -21,6 +21,7 @@ package org.dasein.cloud.compute;
 
 import java.util.Collection;
 import java.util.Locale;
+import java.util.Map;
 
 import org.dasein.cloud.AccessControlledService;
 import org.dasein.cloud.CloudException;
@@ -29,6 +30,7 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.stream.Flow;
 import org.dasein.util.uom.storage.Gigabyte;
 import org.dasein.util.uom.storage.Storage;
 
@@ -44,6 +46,8 @@ import javax.annotation.Nullable;
  * @version 2012-07 Added extended meta-data, included support for new {@link VolumeCreateOptions}
  * @version 2013.01 Added status listing (Issue #4)
  * @version 2013.04 Added support for volume filtering (Issue greese/dasein-cloud/#6)
+ * @version 2015.09 Added batch lookup of volumes by ID
+ * @version 2015.09 Added a streaming listing with back pressure
  */
 @SuppressWarnings("UnusedDeclaration")
 public interface VolumeSupport extends AccessControlledService {
@@ -163,6 +167,15 @@ public interface VolumeSupport extends AccessControlledService {
      */
     public @Nullable Volume getVolume(@Nonnull String volumeId) throws InternalException, CloudException;
 
+    /**
+     * Fetches several volumes at once. Implementations should resolve all of them with as few calls to the cloud as possible.
+     * @param volumeIds the IDs of the desired volumes
+     * @return the volumes found, keyed by ID in the order the IDs were given; IDs that do not exist are absent
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     * @throws CloudException an error occurred with the cloud provider
+     */
+    public @Nonnull Map<String,Volume> getVolumes(@Nonnull Collection<String> volumeIds) throws InternalException, CloudException;
+
     /**
      * Identifies to what degree volume products are supported/required in this cloud. If the support
      * level is {@link Requirement#NONE}, then {@link #listVolumeProducts()} should return an empty list.
@@ -243,6 +256,18 @@ public interface VolumeSupport extends AccessControlledService {
      */
     public @Nonnull Iterable<Volume> listVolumes(@Nullable VolumeFilterOptions options) throws InternalException, CloudException;
 
+    /**
+     * Streams the volumes matching the specified filter options with back pressure: items are emitted only as the
+     * subscriber requests them, a slow subscriber pauses paging through the cloud and cancelling stops it.
+     * Use {@link org.dasein.cloud.util.stream.ListPublisher#toIterable(Flow.Publisher, int)} to consume it as a
+     * bounded {@link Iterable}.
+     * @param options the filter options, or <code>null</code> for all volumes
+     * @return a publisher that lists the volumes anew for each subscriber
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     * @throws CloudException an error occurred with the cloud provider
+     */
+    public @Nonnull Flow.Publisher<Volume> streamVolumes(@Nullable VolumeFilterOptions options) throws InternalException, CloudException;
+
     /**
      * Identifies whether or not the current account has access to volumes in the current region.
      * @return true if the current account has access to volumes in the current region
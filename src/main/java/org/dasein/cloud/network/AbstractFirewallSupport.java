@@ -29,15 +29,20 @@ import org.dasein.cloud.Requirement;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.APITrace;
+import org.dasein.cloud.util.BatchLookup;
+import org.dasein.cloud.util.ResourceReference;
+import org.dasein.cloud.util.StatusListing;
+import org.dasein.cloud.util.TagIndex;
 import org.dasein.cloud.util.TagUtils;
 
 import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -48,6 +53,10 @@ import java.util.Map;
  * @since 2013.04
  * @version 2013.04
  * @version 2014.03 added support for authorizing with rule create options
+ * @version 2015.09 added desired-state rule sync
+ * @version 2015.09 added batch firewall lookup
+ * @version 2015.09 status listings are projected lazily and can be cached briefly
+ * @version 2015.09 tag changes go through protected hooks and are reported to the tag index once they reach the cloud
  */
 @SuppressWarnings("UnusedDeclaration")
 public abstract class AbstractFirewallSupport<T extends CloudProvider> extends AbstractProviderService<T> implements FirewallSupport {
@@ -166,6 +175,29 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
         return null;
     }
 
+    /**
+     * Resolves all of the IDs in a single pass over {@link #list()}. Clouds with a batch describe call should
+     * override this, for example with {@link BatchLookup#lookupInChunks(Collection, int, int, BatchLookup.ChunkLookup, BatchLookup.IdFunction)}.
+     */
+    @Override
+    public @Nonnull Map<String,Firewall> getFirewalls(@Nonnull Collection<String> firewallIds) throws InternalException, CloudException {
+        if( firewallIds.size() == 1 ) {
+            String id = firewallIds.iterator().next();
+            Firewall firewall = getFirewall(id);
+
+            return (firewall == null ? Collections.<String,Firewall>emptyMap() : Collections.singletonMap(id, firewall));
+        }
+        if( firewallIds.isEmpty() ) {
+            return Collections.emptyMap();
+        }
+        return BatchLookup.index(firewallIds, list(), new BatchLookup.IdFunction<Firewall>() {
+            @Override
+            public @Nullable String getId(@Nonnull Firewall firewall) {
+                return firewall.getProviderFirewallId();
+            }
+        });
+    }
+
     @Override
     @Deprecated
     public @Nonnull FirewallConstraints getFirewallConstraintsForCloud() throws InternalException, CloudException {
@@ -204,13 +236,30 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
 
     @Override
     public @Nonnull Iterable<ResourceStatus> listFirewallStatus() throws InternalException, CloudException {
-        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
-
-        for( Firewall fw : list() ) {
-            //noinspection ConstantConditions
-            status.add(new ResourceStatus(fw.getProviderFirewallId(), true));
-        }
-        return status;
+        return StatusListing.list(getProvider(), "Firewall", new StatusListing.StatusSource() {
+            @Override
+            public @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException {
+                return fetchFirewallStatus();
+            }
+        });
+    }
+
+    /**
+     * Fetches the status of all firewalls from the cloud for {@link #listFirewallStatus()}, which caches the result briefly if the context opts in.
+     * By default this projects the full listing onto status objects one firewall at a time; providers with a
+     * cheaper call returning only IDs and states should override this method.
+     * @return the status of each firewall
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected @Nonnull Iterable<ResourceStatus> fetchFirewallStatus() throws CloudException, InternalException {
+        return StatusListing.project(list(), new StatusListing.StatusFunction<Firewall>() {
+            @Override
+            public @Nullable ResourceStatus getStatus(@Nonnull Firewall fw) {
+                //noinspection ConstantConditions
+                return new ResourceStatus(fw.getProviderFirewallId(), true);
+            }
+        });
     }
 
     @Deprecated
@@ -242,7 +291,28 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
 
     @Override
     public void removeTags(@Nonnull String firewallId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            removeTagsInCloud(firewallId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsRemoved(getProvider(), ResourceReference.FIREWALL, new String[] { firewallId }, tags);
+    }
+
+    /**
+     * Removes tags from a firewall in the cloud. The default implementation does not support tagging.
+     * Called by {@link #removeTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param firewallId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void removeTagsInCloud(@Nonnull String firewallId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for firewalls in " + getProvider().getCloudName());
     }
 
     @Override
@@ -348,6 +418,54 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
         }
     }
 
+    /**
+     * Revokes the specified rules from a firewall. This implementation revokes them one at a time; clouds that can
+     * revoke several rules in one call should override it.
+     * @param firewallId the firewall from which the rules are being revoked
+     * @param rules the rules to revoke
+     * @throws InternalException an error occurred locally independent of any events in the cloud
+     * @throws CloudException an error occurred with the cloud provider while performing the operation
+     */
+    protected void revokeAll(@Nonnull String firewallId, @Nonnull List<FirewallRule> rules) throws CloudException, InternalException {
+        for( FirewallRule rule : rules ) {
+            revoke(rule.getProviderRuleId());
+        }
+    }
+
+    /**
+     * Authorizes the specified rules on a firewall. This implementation authorizes them one at a time; clouds that can
+     * authorize several rules in one call should override it.
+     * @param firewallId the firewall to which the rules are being added
+     * @param rules the rules to authorize
+     * @throws InternalException an error occurred locally independent of any events in the cloud
+     * @throws CloudException an error occurred with the cloud provider while performing the operation
+     */
+    protected void authorizeAll(@Nonnull String firewallId, @Nonnull List<FirewallRuleCreateOptions> rules) throws CloudException, InternalException {
+        for( FirewallRuleCreateOptions options : rules ) {
+            authorize(firewallId, options);
+        }
+    }
+
+    @Override
+    public @Nonnull FirewallRuleDelta syncRules(@Nonnull String firewallId, @Nonnull Iterable<FirewallRuleCreateOptions> desiredRules) throws CloudException, InternalException {
+        APITrace.begin(getProvider(), "Firewall.syncRules");
+        try {
+            FirewallRuleDelta delta = FirewallRuleIndex.getInstance(getRules(firewallId)).diff(firewallId, desiredRules);
+
+            // new rules go in before old ones come out so traffic allowed by both states is never cut off
+            if( !delta.getRulesToAuthorize().isEmpty() ) {
+                authorizeAll(firewallId, delta.getRulesToAuthorize());
+            }
+            if( !delta.getRulesToRevoke().isEmpty() ) {
+                revokeAll(firewallId, delta.getRulesToRevoke());
+            }
+            return delta;
+        }
+        finally {
+            APITrace.end();
+        }
+    }
+
     @Override
     @Deprecated
     public boolean supportsRules(@Nonnull Direction direction, @Nonnull Permission permission, boolean inVlan) throws CloudException, InternalException {
@@ -380,7 +498,28 @@ public abstract class AbstractFirewallSupport<T extends CloudProvider> extends A
 
     @Override
     public void updateTags(@Nonnull String firewallId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            updateTagsInCloud(firewallId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsUpdated(getProvider(), ResourceReference.FIREWALL, new String[] { firewallId }, tags);
+    }
+
+    /**
+     * Adds or changes tags on a firewall in the cloud. The default implementation does not support tagging.
+     * Called by {@link #updateTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param firewallId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void updateTagsInCloud(@Nonnull String firewallId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for firewalls in " + getProvider().getCloudName());
     }
 
     @Override
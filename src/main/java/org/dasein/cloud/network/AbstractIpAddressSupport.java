@@ -22,11 +22,14 @@ package org.dasein.cloud.network;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.CloudProvider;
 import org.dasein.cloud.InternalException;
+import org.dasein.cloud.OperationNotSupportedException;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.Requirement;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.*;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.ResourceReference;
+import org.dasein.cloud.util.TagIndex;
 import org.dasein.cloud.util.TagUtils;
 
 import javax.annotation.Nonnull;
@@ -40,6 +43,7 @@ import java.util.concurrent.Future;
 
 /**
  * Created by stas on 19/02/2015.
+ * @version 2015.09 tag changes go through protected hooks and are reported to the tag index once they reach the cloud
  */
 public abstract class AbstractIpAddressSupport<T extends CloudProvider> extends AbstractProviderService<T> implements IpAddressSupport {
 
@@ -159,7 +163,28 @@ public abstract class AbstractIpAddressSupport<T extends CloudProvider> extends
     
     @Override
     public void removeTags(@Nonnull String addressId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            removeTagsInCloud(addressId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsRemoved(getProvider(), ResourceReference.IP_ADDRESS, new String[] { addressId }, tags);
+    }
+
+    /**
+     * Removes tags from an IP address in the cloud. The default implementation does not support tagging.
+     * Called by {@link #removeTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param addressId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void removeTagsInCloud(@Nonnull String addressId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for IP addresses in " + getProvider().getCloudName());
     }
 
     @Override
@@ -171,7 +196,28 @@ public abstract class AbstractIpAddressSupport<T extends CloudProvider> extends
     
     @Override
     public void updateTags(@Nonnull String addressId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            updateTagsInCloud(addressId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsUpdated(getProvider(), ResourceReference.IP_ADDRESS, new String[] { addressId }, tags);
+    }
+
+    /**
+     * Adds or changes tags on an IP address in the cloud. The default implementation does not support tagging.
+     * Called by {@link #updateTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param addressId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void updateTagsInCloud(@Nonnull String addressId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for IP addresses in " + getProvider().getCloudName());
     }
 
     @Override
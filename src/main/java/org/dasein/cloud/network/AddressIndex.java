@@ -0,0 +1,452 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.network;
+
+import org.dasein.cloud.compute.VirtualMachine;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A path-compressed binary (Patricia) trie of values keyed by {@link CidrBlock}. Finding every value whose block
+ * covers an address or block walks one path from the root, so the cost grows with the prefix length rather than
+ * with the number of indexed blocks. IPv4 and IPv6 blocks live in separate tries.
+ * <p>
+ *     The static factories index the blocks of subnets, the CIDR sources and destinations of firewall rules, and
+ *     the addresses of virtual machines:
+ * </p>
+ * <pre>
+ *     AddressIndex&lt;FirewallRule&gt; rules = AddressIndex.forFirewallRules(firewallSupport.getRules(firewallId));
+ *
+ *     for( FirewallRule rule : rules.getCovering("203.0.113.7") ) {
+ *         ...
+ *     }
+ * </pre>
+ * <p>The index is not thread-safe; build it once and share it read-only, or synchronize externally.</p>
+ * @param <T> the type of value indexed
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class AddressIndex<T> {
+    /**
+     * Indexes firewall rules by their CIDR source and destination endpoints. Rules whose endpoints are firewalls,
+     * VLANs or virtual machines are not indexed.
+     * @param rules the rules to index
+     * @return an index of the rules
+     */
+    static public @Nonnull AddressIndex<FirewallRule> forFirewallRules(@Nonnull Iterable<FirewallRule> rules) {
+        AddressIndex<FirewallRule> index = new AddressIndex<FirewallRule>();
+
+        for( FirewallRule rule : rules ) {
+            CidrBlock source = rule.getSourceEndpoint().getCidrBlock();
+            CidrBlock destination = rule.getDestinationEndpoint().getCidrBlock();
+
+            if( source != null ) {
+                index.add(source, rule);
+            }
+            if( destination != null && !destination.equals(source) ) {
+                index.add(destination, rule);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Indexes subnets by their CIDR blocks. Subnets with a missing or invalid CIDR are not indexed.
+     * @param subnets the subnets to index
+     * @return an index of the subnets
+     */
+    static public @Nonnull AddressIndex<Subnet> forSubnets(@Nonnull Iterable<Subnet> subnets) {
+        AddressIndex<Subnet> index = new AddressIndex<Subnet>();
+
+        for( Subnet subnet : subnets ) {
+            CidrBlock block = subnet.getCidrBlock();
+
+            if( block != null ) {
+                index.add(block, subnet);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Indexes virtual machines by each of their public and private IP addresses.
+     * @param vms the virtual machines to index
+     * @return an index of the virtual machines
+     */
+    static public @Nonnull AddressIndex<VirtualMachine> forVirtualMachines(@Nonnull Iterable<VirtualMachine> vms) {
+        AddressIndex<VirtualMachine> index = new AddressIndex<VirtualMachine>();
+
+        for( VirtualMachine vm : vms ) {
+            for( RawAddress address : vm.getPublicAddresses() ) {
+                index.add(address, vm);
+            }
+            for( RawAddress address : vm.getPrivateAddresses() ) {
+                index.add(address, vm);
+            }
+        }
+        return index;
+    }
+
+    static private class Node<T> {
+        CidrBlock  block;
+        Node<T>    zero;
+        Node<T>    one;
+        Object     values; // null, a single value, or an ArrayList of values
+
+        Node(@Nonnull CidrBlock block) {
+            this.block = block;
+        }
+
+        @SuppressWarnings("unchecked")
+        void add(@Nonnull T value) {
+            if( values == null ) {
+                values = value;
+            }
+            else if( values instanceof ValueList ) {
+                ((ValueList)values).add(value);
+            }
+            else {
+                ValueList list = new ValueList();
+
+                list.add(values);
+                list.add(value);
+                values = list;
+            }
+        }
+
+        @Nullable Node<T> getChild(int bit) {
+            return (bit == 0 ? zero : one);
+        }
+
+        @SuppressWarnings("unchecked")
+        void collect(@Nonnull Collection<T> into) {
+            if( values instanceof ValueList ) {
+                for( Object v : (ValueList)values ) {
+                    into.add((T)v);
+                }
+            }
+            else if( values != null ) {
+                into.add((T)values);
+            }
+        }
+
+        boolean remove(@Nonnull T value) {
+            if( values instanceof ValueList ) {
+                ValueList list = (ValueList)values;
+                boolean removed = list.remove(value);
+
+                if( list.size() == 1 ) {
+                    values = list.get(0);
+                }
+                return removed;
+            }
+            if( values != null && values.equals(value) ) {
+                values = null;
+                return true;
+            }
+            return false;
+        }
+
+        void setChild(int bit, @Nullable Node<T> child) {
+            if( bit == 0 ) {
+                zero = child;
+            }
+            else {
+                one = child;
+            }
+        }
+    }
+
+    /**
+     * Marks a list of several values so it cannot be confused with a single value that happens to be a list.
+     */
+    static private class ValueList extends ArrayList<Object> {
+        static private final long serialVersionUID = 1L;
+
+        ValueList() { super(2); }
+    }
+
+    private Node<T> ipv4Root;
+    private Node<T> ipv6Root;
+    private int     size;
+
+    /**
+     * Constructs an empty index.
+     */
+    public AddressIndex() { }
+
+    /**
+     * Adds a value under the specified block. The same value may be added under any number of blocks.
+     * @param block the block to index the value under
+     * @param value the value to index
+     */
+    public void add(@Nonnull CidrBlock block, @Nonnull T value) {
+        if( block.getVersion().equals(IPVersion.IPV4) ) {
+            ipv4Root = insert(ipv4Root, block, value);
+        }
+        else {
+            ipv6Root = insert(ipv6Root, block, value);
+        }
+        size++;
+    }
+
+    /**
+     * Adds a value under the specified address or block. Strings that are not valid addresses or blocks are ignored.
+     * @param cidr an address or block in CIDR notation
+     * @param value the value to index
+     * @return true if the string was valid and the value was added
+     */
+    public boolean add(@Nonnull String cidr, @Nonnull T value) {
+        CidrBlock block = CidrBlock.parse(cidr);
+
+        if( block == null ) {
+            return false;
+        }
+        add(block, value);
+        return true;
+    }
+
+    /**
+     * Adds a value under the specified address. Addresses that cannot be parsed are ignored.
+     * @param address the address to index the value under
+     * @param value the value to index
+     * @return true if the address was valid and the value was added
+     */
+    public boolean add(@Nonnull RawAddress address, @Nonnull T value) {
+        CidrBlock block = address.getCidrBlock();
+
+        if( block == null ) {
+            return false;
+        }
+        add(block, value);
+        return true;
+    }
+
+    /**
+     * Lists the values indexed under blocks that lie entirely within the specified block, such as the virtual machines
+     * whose addresses fall within a subnet.
+     * @param block the block to search within
+     * @return the values under the block or any block within it
+     */
+    public @Nonnull List<T> getCovered(@Nonnull CidrBlock block) {
+        ArrayList<T> found = new ArrayList<T>();
+        Node<T> node = getRoot(block);
+
+        while( node != null ) {
+            if( node.block.getPrefixLength() >= block.getPrefixLength() ) {
+                if( block.contains(node.block) ) {
+                    collectAll(node, found);
+                }
+                break;
+            }
+            if( node.block.getCommonPrefixLength(block) < node.block.getPrefixLength() ) {
+                break;
+            }
+            node = node.getChild(block.getBit(node.block.getPrefixLength()));
+        }
+        return found;
+    }
+
+    /**
+     * Lists the values indexed under blocks that lie entirely within the specified address or block.
+     * @param cidr an address or block in CIDR notation
+     * @return the values under the block or any block within it; empty if the string is not a valid address or block
+     */
+    public @Nonnull List<T> getCovered(@Nonnull String cidr) {
+        CidrBlock block = CidrBlock.parse(cidr);
+
+        return (block == null ? new ArrayList<T>() : getCovered(block));
+    }
+
+    /**
+     * Lists the values indexed under blocks that contain the whole of the specified block, such as the firewall rules
+     * that apply to an address. Values under shorter, wider prefixes come first.
+     * @param block the address or block to look up
+     * @return the values under every block covering the specified one
+     */
+    public @Nonnull List<T> getCovering(@Nonnull CidrBlock block) {
+        ArrayList<T> found = new ArrayList<T>();
+        Node<T> node = getRoot(block);
+
+        while( node != null && node.block.getPrefixLength() <= block.getPrefixLength() ) {
+            if( node.block.getCommonPrefixLength(block) < node.block.getPrefixLength() ) {
+                break;
+            }
+            node.collect(found);
+            if( node.block.getPrefixLength() == block.getPrefixLength() ) {
+                break;
+            }
+            node = node.getChild(block.getBit(node.block.getPrefixLength()));
+        }
+        return found;
+    }
+
+    /**
+     * Lists the values indexed under blocks that contain the whole of the specified address or block.
+     * @param cidr an address or block in CIDR notation
+     * @return the values under every block covering the specified one; empty if the string is not a valid address or block
+     */
+    public @Nonnull List<T> getCovering(@Nonnull String cidr) {
+        CidrBlock block = CidrBlock.parse(cidr);
+
+        return (block == null ? new ArrayList<T>() : getCovering(block));
+    }
+
+    /**
+     * Finds the values under the most specific block covering the specified one, as a router would.
+     * @param block the address or block to look up
+     * @return the values under the longest matching prefix, empty if no block covers the specified one
+     */
+    public @Nonnull List<T> getLongestMatch(@Nonnull CidrBlock block) {
+        ArrayList<T> found = new ArrayList<T>();
+        Node<T> node = getRoot(block);
+        Node<T> best = null;
+
+        while( node != null && node.block.getPrefixLength() <= block.getPrefixLength() ) {
+            if( node.block.getCommonPrefixLength(block) < node.block.getPrefixLength() ) {
+                break;
+            }
+            if( node.values != null ) {
+                best = node;
+            }
+            if( node.block.getPrefixLength() == block.getPrefixLength() ) {
+                break;
+            }
+            node = node.getChild(block.getBit(node.block.getPrefixLength()));
+        }
+        if( best != null ) {
+            best.collect(found);
+        }
+        return found;
+    }
+
+    /**
+     * Removes a value from under the specified block.
+     * @param block the block the value was indexed under
+     * @param value the value to remove
+     * @return true if the value was found and removed
+     */
+    public boolean remove(@Nonnull CidrBlock block, @Nonnull T value) {
+        Node<T> node = getRoot(block);
+
+        while( node != null && node.block.getPrefixLength() <= block.getPrefixLength() ) {
+            if( node.block.getCommonPrefixLength(block) < node.block.getPrefixLength() ) {
+                return false;
+            }
+            if( node.block.getPrefixLength() == block.getPrefixLength() ) {
+                if( node.remove(value) ) {
+                    size--;
+                    return true;
+                }
+                return false;
+            }
+            node = node.getChild(block.getBit(node.block.getPrefixLength()));
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of (block, value) entries in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    private void collectAll(@Nonnull Node<T> node, @Nonnull Collection<T> into) {
+        // an explicit stack keeps 128-deep IPv6 tries off the call stack
+        ArrayList<Node<T>> stack = new ArrayList<Node<T>>();
+
+        stack.add(node);
+        while( !stack.isEmpty() ) {
+            Node<T> n = stack.remove(stack.size() - 1);
+
+            n.collect(into);
+            if( n.one != null ) {
+                stack.add(n.one);
+            }
+            if( n.zero != null ) {
+                stack.add(n.zero);
+            }
+        }
+    }
+
+    private @Nullable Node<T> getRoot(@Nonnull CidrBlock block) {
+        return (block.getVersion().equals(IPVersion.IPV4) ? ipv4Root : ipv6Root);
+    }
+
+    private @Nonnull Node<T> insert(@Nullable Node<T> root, @Nonnull CidrBlock block, @Nonnull T value) {
+        Node<T> parent = null;
+        int parentBit = 0;
+        Node<T> node = root;
+
+        while( true ) {
+            if( node == null ) {
+                node = new Node<T>(block);
+                node.add(value);
+                return attach(root, parent, parentBit, node);
+            }
+            int common = node.block.getCommonPrefixLength(block);
+            int nodeLength = node.block.getPrefixLength();
+            int length = block.getPrefixLength();
+
+            if( common == nodeLength && common == length ) {
+                node.add(value);
+                return root;
+            }
+            if( common == nodeLength ) {
+                parent = node;
+                parentBit = block.getBit(nodeLength);
+                node = node.getChild(parentBit);
+                continue;
+            }
+            Node<T> split;
+
+            if( common == length ) {
+                // the new block is a prefix of this node
+                split = new Node<T>(block);
+                split.add(value);
+                split.setChild(node.block.getBit(length), node);
+            }
+            else {
+                // the two diverge first at bit "common"; join them under a value-less branch node
+                Node<T> leaf = new Node<T>(block);
+
+                leaf.add(value);
+                split = new Node<T>(CidrBlock.getInstance(block.getVersion(), block.getHigh(), block.getLow(), common));
+                split.setChild(block.getBit(common), leaf);
+                split.setChild(node.block.getBit(common), node);
+            }
+            return attach(root, parent, parentBit, split);
+        }
+    }
+
+    private @Nonnull Node<T> attach(@Nullable Node<T> root, @Nullable Node<T> parent, int bit, @Nonnull Node<T> node) {
+        if( parent == null ) {
+            return node;
+        }
+        parent.setChild(bit, node);
+        return (root == null ? node : root);
+    }
+}
@@ -0,0 +1,441 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.network;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An IPv4 or IPv6 address block in CIDR notation held as a pair of longs, so it is parsed once and compared
+ * without touching strings. A single address is a block whose prefix length is the full width of its version.
+ * The address bits are stored left-aligned in 128 bits: an IPv4 address occupies the top 32 bits of the high word.
+ * Bits beyond the prefix are always zero.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class CidrBlock {
+    static private final CidrBlock[] PRIVATE_BLOCKS = new CidrBlock[] {
+            parse("10.0.0.0/8"), parse("172.16.0.0/12"), parse("192.168.0.0/16"), parse("169.254.0.0/16"), parse("fc00::/7"),
+            parse("fe80::/10")
+    };
+
+    /**
+     * Builds a block from address bits already in the left-aligned form used by this class.
+     * @param version the IP version of the block
+     * @param high the top 64 bits of the address
+     * @param low the bottom 64 bits of the address
+     * @param prefixLength the number of significant bits
+     * @return a block with the bits beyond the prefix cleared
+     */
+    static public @Nonnull CidrBlock getInstance(@Nonnull IPVersion version, long high, long low, @Nonnegative int prefixLength) {
+        int max = getWidth(version);
+
+        if( prefixLength < 0 || prefixLength > max ) {
+            throw new IllegalArgumentException("Invalid prefix length for " + version + ": " + prefixLength);
+        }
+        return new CidrBlock(version, mask(high, prefixLength), mask(low, prefixLength - 64), prefixLength);
+    }
+
+    /**
+     * @param version an IP version
+     * @return the number of bits in an address of that version
+     */
+    static public int getWidth(@Nonnull IPVersion version) {
+        return (version.equals(IPVersion.IPV4) ? 32 : 128);
+    }
+
+    /**
+     * Parses an address ({@code 10.1.2.3}, {@code 2001:db8::1}) or a block ({@code 10.1.0.0/16}, {@code 2001:db8::/32}).
+     * Host bits beyond the prefix are cleared, so {@code 10.1.2.3/16} parses as {@code 10.1.0.0/16}.
+     * @param cidr the string to parse
+     * @return the matching block or null if the string is not a valid IPv4 or IPv6 address or block
+     */
+    static public @Nullable CidrBlock parse(@Nullable String cidr) {
+        if( cidr == null ) {
+            return null;
+        }
+        int end = cidr.length();
+        int slash = cidr.indexOf('/');
+        int prefix = -1;
+
+        if( slash > -1 ) {
+            prefix = parseDecimal(cidr, slash + 1, end, 128);
+            if( prefix < 0 ) {
+                return null;
+            }
+            end = slash;
+        }
+        boolean v6 = false;
+
+        for( int i=0; i<end; i++ ) {
+            if( cidr.charAt(i) == ':' ) {
+                v6 = true;
+                break;
+            }
+        }
+        if( v6 ) {
+            return parseIPv6(cidr, end, prefix < 0 ? 128 : prefix);
+        }
+        if( prefix > 32 ) {
+            return null;
+        }
+        long address = parseIPv4(cidr, 0, end);
+
+        if( address < 0L ) {
+            return null;
+        }
+        return getInstance(IPVersion.IPV4, address << 32, 0L, prefix < 0 ? 32 : prefix);
+    }
+
+    static private long mask(long bits, int prefixLength) {
+        if( prefixLength <= 0 ) {
+            return 0L;
+        }
+        if( prefixLength >= 64 ) {
+            return bits;
+        }
+        return bits & (-1L << (64 - prefixLength));
+    }
+
+    /**
+     * @return the number between the two indexes if it is a decimal no greater than max, otherwise -1
+     */
+    static private int parseDecimal(@Nonnull String str, int start, int end, int max) {
+        if( start >= end || end - start > 3 ) {
+            return -1;
+        }
+        int value = 0;
+
+        for( int i=start; i<end; i++ ) {
+            char c = str.charAt(i);
+
+            if( c < '0' || c > '9' ) {
+                return -1;
+            }
+            value = value*10 + (c - '0');
+        }
+        return (value > max ? -1 : value);
+    }
+
+    /**
+     * @return the unsigned 32-bit address between the two indexes, or -1 if it is not a dotted quad
+     */
+    static private long parseIPv4(@Nonnull String str, int start, int end) {
+        long address = 0L;
+        int octets = 0;
+        int from = start;
+
+        for( int i=start; i<=end; i++ ) {
+            if( i == end || str.charAt(i) == '.' ) {
+                int octet = parseDecimal(str, from, i, 255);
+
+                if( octet < 0 || ++octets > 4 ) {
+                    return -1L;
+                }
+                address = (address << 8) | octet;
+                from = i + 1;
+            }
+        }
+        return (octets == 4 ? address : -1L);
+    }
+
+    static private @Nullable CidrBlock parseIPv6(@Nonnull String str, int end, int prefix) {
+        int zone = str.indexOf('%');
+
+        if( zone > -1 && zone < end ) {
+            end = zone;
+        }
+        // groups before a "::" collect in head, groups after it in tail; the tail is shifted into place at the end
+        long headHigh = 0L, headLow = 0L, tailHigh = 0L, tailLow = 0L;
+        int headCount = 0, tailCount = 0;
+        boolean compressed = false;
+        int i = 0;
+
+        if( end >= 2 && str.charAt(0) == ':' && str.charAt(1) == ':' ) {
+            compressed = true;
+            i = 2;
+        }
+        while( i < end ) {
+            int j = i;
+            int group = 0;
+
+            while( j < end && str.charAt(j) != ':' && str.charAt(j) != '.' ) {
+                int digit = Character.digit(str.charAt(j), 16);
+
+                if( digit < 0 || j - i >= 4 ) {
+                    return null;
+                }
+                group = (group << 4) | digit;
+                j++;
+            }
+            if( j < end && str.charAt(j) == '.' ) {
+                // an embedded IPv4 address fills the last two groups
+                long v4 = parseIPv4(str, i, end);
+
+                if( v4 < 0L ) {
+                    return null;
+                }
+                for( int k=0; k<2; k++ ) {
+                    int g = (int)((v4 >>> (16 - 16*k)) & 0xFFFF);
+
+                    if( compressed ) {
+                        tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                        tailLow = (tailLow << 16) | g;
+                        tailCount++;
+                    }
+                    else {
+                        headHigh = (headHigh << 16) | (headLow >>> 48);
+                        headLow = (headLow << 16) | g;
+                        headCount++;
+                    }
+                }
+                break;
+            }
+            if( j == i ) {
+                return null;
+            }
+            if( compressed ) {
+                tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                tailLow = (tailLow << 16) | group;
+                tailCount++;
+            }
+            else {
+                headHigh = (headHigh << 16) | (headLow >>> 48);
+                headLow = (headLow << 16) | group;
+                headCount++;
+            }
+            if( j == end ) {
+                break;
+            }
+            // j is at a ':'
+            if( j + 1 < end && str.charAt(j + 1) == ':' ) {
+                if( compressed ) {
+                    return null;
+                }
+                compressed = true;
+                i = j + 2;
+            }
+            else if( j + 1 == end ) {
+                return null;
+            }
+            else {
+                i = j + 1;
+            }
+        }
+        int total = headCount + tailCount;
+
+        if( total > 8 || (!compressed && total != 8) || (compressed && total > 7) ) {
+            return null;
+        }
+        // move the head groups to the top of the 128 bits
+        for( int k=headCount; k<8; k++ ) {
+            headHigh = (headHigh << 16) | (headLow >>> 48);
+            headLow <<= 16;
+        }
+        return getInstance(IPVersion.IPV6, headHigh | tailHigh, headLow | tailLow, prefix);
+    }
+
+    private final long      high;
+    private final long      low;
+    private final int       prefixLength;
+    private final IPVersion version;
+
+    private CidrBlock(@Nonnull IPVersion version, long high, long low, int prefixLength) {
+        this.version = version;
+        this.high = high;
+        this.low = low;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * @param other another block
+     * @return true if every address in the other block is in this block
+     */
+    public boolean contains(@Nonnull CidrBlock other) {
+        return version.equals(other.version) && prefixLength <= other.prefixLength && getCommonPrefixLength(other) >= prefixLength;
+    }
+
+    /**
+     * @param address an address or block in CIDR notation
+     * @return true if the address or block is valid and falls within this block
+     */
+    public boolean contains(@Nonnull String address) {
+        CidrBlock other = parse(address);
+
+        return (other != null && contains(other));
+    }
+
+    @Override
+    public boolean equals(@Nullable Object other) {
+        if( other == this ) {
+            return true;
+        }
+        if( !(other instanceof CidrBlock) ) {
+            return false;
+        }
+        CidrBlock b = (CidrBlock)other;
+
+        return (high == b.high && low == b.low && prefixLength == b.prefixLength && version.equals(b.version));
+    }
+
+    /**
+     * @param index a bit index counted from the most significant bit of the address
+     * @return the bit at that index, 0 or 1
+     */
+    public int getBit(@Nonnegative int index) {
+        if( index < 64 ) {
+            return (int)((high >>> (63 - index)) & 1L);
+        }
+        return (int)((low >>> (127 - index)) & 1L);
+    }
+
+    /**
+     * @param other another block of the same version
+     * @return the number of leading bits the two blocks share, no more than the shorter of their prefix lengths
+     */
+    public int getCommonPrefixLength(@Nonnull CidrBlock other) {
+        long x = high ^ other.high;
+        int common;
+
+        if( x != 0L ) {
+            common = Long.numberOfLeadingZeros(x);
+        }
+        else {
+            common = 64 + Long.numberOfLeadingZeros(low ^ other.low);
+        }
+        return Math.min(common, Math.min(prefixLength, other.prefixLength));
+    }
+
+    /**
+     * @return the top 64 bits of the left-aligned address
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return the bottom 64 bits of the left-aligned address; always 0 for IPv4
+     */
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * @return the number of significant bits in this block
+     */
+    public @Nonnegative int getPrefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * @return the IP version of this block
+     */
+    public @Nonnull IPVersion getVersion() {
+        return version;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = high * 31 + low;
+
+        return (int)(h ^ (h >>> 32)) * 31 + prefixLength;
+    }
+
+    /**
+     * @return true if this block represents a single address
+     */
+    public boolean isAddress() {
+        return (prefixLength == getWidth(version));
+    }
+
+    /**
+     * @return true if this block lies in a private, link-local or unique local address space
+     */
+    public boolean isPrivate() {
+        for( CidrBlock b : PRIVATE_BLOCKS ) {
+            if( b.contains(this) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the address part of this block in canonical form, without the prefix length
+     */
+    public @Nonnull String toAddressString() {
+        StringBuilder str = new StringBuilder(39);
+
+        if( version.equals(IPVersion.IPV4) ) {
+            for( int i=0; i<4; i++ ) {
+                if( i > 0 ) {
+                    str.append('.');
+                }
+                str.append((int)((high >>> (56 - 8*i)) & 0xFF));
+            }
+            return str.toString();
+        }
+        // RFC 5952: compress the longest run of two or more zero groups, the first one on a tie
+        int bestStart = -1, bestLength = 1;
+
+        for( int i=0; i<8; ) {
+            if( getGroup(i) == 0 ) {
+                int j = i;
+
+                while( j < 8 && getGroup(j) == 0 ) {
+                    j++;
+                }
+                if( j - i > bestLength ) {
+                    bestStart = i;
+                    bestLength = j - i;
+                }
+                i = j;
+            }
+            else {
+                i++;
+            }
+        }
+        for( int i=0; i<8; i++ ) {
+            if( i == bestStart ) {
+                str.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if( str.length() > 0 && str.charAt(str.length() - 1) != ':' ) {
+                str.append(':');
+            }
+            str.append(Integer.toHexString(getGroup(i)));
+        }
+        return str.toString();
+    }
+
+    private int getGroup(int index) {
+        long word = (index < 4 ? high : low);
+
+        return (int)((word >>> (48 - 16*(index % 4))) & 0xFFFF);
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return toAddressString() + "/" + prefixLength;
+    }
+}
@@ -34,33 +34,14 @@ import javax.annotation.Nullable;
  * @version 2013.01 added full permission support and non-global destinations (Issue #14, Issue #11)
  * @version 2013.02 added precedence
  * @version 2013.04 added support for proper sorting of -1 rules to the end (issue greese/dasein-cloud-aws/#8)
+ * @version 2015.09 sources are recognized as IPv4 or IPv6 CIDRs by parsing them
  * @since 2010.08
  */
 @SuppressWarnings("UnusedDeclaration")
 public class FirewallRule implements Comparable<FirewallRule> {
     static private @Nonnull RuleTarget toSourceDestination(@Nonnull String source) {
-        String[] parts = source.split("\\.");
-
-        if( parts.length == 4 ) {
-            int idx = parts[3].indexOf("/");
-            boolean num = true;
-
-            if( idx > 0 ) {
-                parts[3] = parts[3].substring(0,idx);
-            }
-            for( String p : parts ) {
-                try {
-                    //noinspection ResultOfMethodCallIgnored
-                    Integer.parseInt(p);
-                }
-                catch( NumberFormatException ignore ) {
-                    num = false;
-                    break;
-                }
-            }
-            if( num ) {
-                return RuleTarget.getCIDR(source);
-            }
+        if( CidrBlock.parse(source) != null ) {
+            return RuleTarget.getCIDR(source);
         }
         return RuleTarget.getGlobal(source);
     }
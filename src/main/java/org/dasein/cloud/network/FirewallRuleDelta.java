@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.network;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes needed to bring a firewall's rules to a desired state: the rules to authorize and the existing rules
+ * to revoke. Rules present in both states are left alone.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class FirewallRuleDelta {
+    private List<FirewallRuleCreateOptions> rulesToAuthorize;
+    private List<FirewallRule>              rulesToRevoke;
+
+    /**
+     * Constructs a delta.
+     * @param rulesToAuthorize desired rules the firewall does not have
+     * @param rulesToRevoke rules the firewall has that are not desired
+     */
+    public FirewallRuleDelta(@Nonnull List<FirewallRuleCreateOptions> rulesToAuthorize, @Nonnull List<FirewallRule> rulesToRevoke) {
+        this.rulesToAuthorize = Collections.unmodifiableList(rulesToAuthorize);
+        this.rulesToRevoke = Collections.unmodifiableList(rulesToRevoke);
+    }
+
+    /**
+     * @return desired rules the firewall does not have
+     */
+    public @Nonnull List<FirewallRuleCreateOptions> getRulesToAuthorize() {
+        return rulesToAuthorize;
+    }
+
+    /**
+     * @return rules the firewall has that are not desired
+     */
+    public @Nonnull List<FirewallRule> getRulesToRevoke() {
+        return rulesToRevoke;
+    }
+
+    /**
+     * @return true if the firewall already matches the desired state
+     */
+    public boolean isEmpty() {
+        return (rulesToAuthorize.isEmpty() && rulesToRevoke.isEmpty());
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return "+" + rulesToAuthorize.size() + "/-" + rulesToRevoke.size();
+    }
+}
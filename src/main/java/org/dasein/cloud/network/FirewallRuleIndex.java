@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.network;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory index of a firewall's rules keyed by what each rule does: its direction, permission, protocol, port
+ * range and endpoints. {@link #diff(String, Iterable)} computes the authorizations and revocations that turn the
+ * indexed rules into a desired set in a single pass.
+ * <p>
+ *     An index is a snapshot of the rules it was built from and is not updated when the firewall changes, so build
+ *     it from a fresh listing for each comparison. Building one costs as much as a scan of the rules, so it only pays
+ *     off when several rules are looked up against the same listing, as in a sync.
+ * </p>
+ * <p>
+ *     Precedence and provider rule IDs are not part of the key. CIDR endpoints are compared in their canonical form,
+ *     so {@code 10.0.0.1/8} and {@code 10.0.0.0/8} are the same endpoint.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class FirewallRuleIndex {
+    /**
+     * Indexes the specified rules.
+     * @param rules the current rules of a firewall
+     * @return an index of the rules
+     */
+    static public @Nonnull FirewallRuleIndex getInstance(@Nonnull Iterable<FirewallRule> rules) {
+        FirewallRuleIndex index = new FirewallRuleIndex();
+
+        for( FirewallRule rule : rules ) {
+            index.add(rule);
+        }
+        return index;
+    }
+
+    static private final class Key {
+        private final Direction  direction;
+        private final Permission permission;
+        private final Protocol   protocol;
+        private final int        startPort;
+        private final int        endPort;
+        private final Object     source;
+        private final Object     destination;
+        private final int        hash;
+
+        Key(@Nonnull Direction direction, @Nonnull Permission permission, @Nonnull Protocol protocol, int startPort, int endPort, @Nonnull RuleTarget source, @Nonnull RuleTarget destination) {
+            this.direction = direction;
+            this.permission = permission;
+            this.protocol = protocol;
+            this.startPort = startPort;
+            this.endPort = endPort;
+            this.source = toEndpointKey(source);
+            this.destination = toEndpointKey(destination);
+
+            int h = direction.hashCode();
+
+            h = h*31 + permission.hashCode();
+            h = h*31 + protocol.hashCode();
+            h = h*31 + startPort;
+            h = h*31 + endPort;
+            h = h*31 + this.source.hashCode();
+            h = h*31 + this.destination.hashCode();
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if( other == this ) {
+                return true;
+            }
+            if( !(other instanceof Key) ) {
+                return false;
+            }
+            Key k = (Key)other;
+
+            return (hash == k.hash && startPort == k.startPort && endPort == k.endPort && direction.equals(k.direction)
+                    && permission.equals(k.permission) && protocol.equals(k.protocol) && source.equals(k.source) && destination.equals(k.destination));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A CIDR endpoint is keyed by its parsed block, other endpoints by their type and ID.
+     */
+    static private @Nonnull Object toEndpointKey(@Nonnull RuleTarget target) {
+        RuleTargetType type = target.getRuleTargetType();
+        String id;
+
+        switch( type ) {
+            case CIDR:
+                CidrBlock block = target.getCidrBlock();
+
+                if( block != null ) {
+                    return block;
+                }
+                id = target.getCidr();
+                break;
+            case VLAN: id = target.getProviderVlanId(); break;
+            case VM: id = target.getProviderVirtualMachineId(); break;
+            default: id = target.getProviderFirewallId(); break;
+        }
+        return type.name() + ":" + id;
+    }
+
+    static private @Nonnull Key toKey(@Nonnull FirewallRule rule) {
+        return new Key(rule.getDirection(), rule.getPermission(), rule.getProtocol(), rule.getStartPort(), rule.getEndPort(), rule.getSourceEndpoint(), rule.getDestinationEndpoint());
+    }
+
+    static private @Nonnull Key toKey(@Nonnull String firewallId, @Nonnull FirewallRuleCreateOptions options) {
+        RuleTarget source = options.getSourceEndpoint();
+        RuleTarget destination = options.getDestinationEndpoint();
+
+        // same defaults as AbstractFirewallSupport.authorize(String, FirewallRuleCreateOptions)
+        if( source == null ) {
+            source = RuleTarget.getGlobal(firewallId);
+        }
+        if( destination == null ) {
+            destination = RuleTarget.getGlobal(firewallId);
+        }
+        return new Key(options.getDirection(), options.getPermission(), options.getProtocol(), options.getPortRangeStart(), options.getPortRangeEnd(), source, destination);
+    }
+
+    private HashMap<Key,List<FirewallRule>> rules = new HashMap<Key, List<FirewallRule>>();
+    private int                             size;
+
+    /**
+     * Constructs an empty index.
+     */
+    public FirewallRuleIndex() { }
+
+    /**
+     * Adds a rule to the index.
+     * @param rule the rule to add
+     */
+    public void add(@Nonnull FirewallRule rule) {
+        Key key = toKey(rule);
+        List<FirewallRule> list = rules.get(key);
+
+        if( list == null ) {
+            // clouds rarely hold duplicates, so most keys map to a single rule
+            list = new ArrayList<FirewallRule>(1);
+            rules.put(key, list);
+        }
+        list.add(rule);
+        size++;
+    }
+
+    /**
+     * Computes the changes that turn the indexed rules into the desired rules. Desired rules that are already indexed
+     * are left alone, duplicates among the desired rules are authorized once, and every indexed rule not desired
+     * (including extra copies of a desired rule) is revoked.
+     * @param firewallId the firewall the rules belong to, used for desired rules without an endpoint
+     * @param desiredRules the complete set of rules the firewall should have
+     * @return the rules to authorize and revoke
+     */
+    public @Nonnull FirewallRuleDelta diff(@Nonnull String firewallId, @Nonnull Iterable<FirewallRuleCreateOptions> desiredRules) {
+        LinkedHashMap<Key,FirewallRuleCreateOptions> desired = new LinkedHashMap<Key, FirewallRuleCreateOptions>();
+
+        for( FirewallRuleCreateOptions options : desiredRules ) {
+            Key key = toKey(firewallId, options);
+
+            if( !desired.containsKey(key) ) {
+                desired.put(key, options);
+            }
+        }
+        ArrayList<FirewallRuleCreateOptions> authorize = new ArrayList<FirewallRuleCreateOptions>();
+        ArrayList<FirewallRule> revoke = new ArrayList<FirewallRule>();
+
+        for( Map.Entry<Key,FirewallRuleCreateOptions> entry : desired.entrySet() ) {
+            if( !rules.containsKey(entry.getKey()) ) {
+                authorize.add(entry.getValue());
+            }
+        }
+        for( Map.Entry<Key,List<FirewallRule>> entry : rules.entrySet() ) {
+            List<FirewallRule> list = entry.getValue();
+
+            revoke.addAll(desired.containsKey(entry.getKey()) ? list.subList(1, list.size()) : list);
+        }
+        return new FirewallRuleDelta(authorize, revoke);
+    }
+
+    /**
+     * Finds an indexed rule matching the specified tuple.
+     * @param direction the direction of the rule
+     * @param permission the permission of the rule
+     * @param sourceEndpoint the source endpoint of the rule
+     * @param protocol the protocol of the rule
+     * @param destinationEndpoint the destination endpoint of the rule
+     * @param startPort the start of the rule's port range
+     * @param endPort the end of the rule's port range
+     * @return a matching rule or null if none is indexed
+     */
+    public @Nullable FirewallRule find(@Nonnull Direction direction, @Nonnull Permission permission, @Nonnull RuleTarget sourceEndpoint, @Nonnull Protocol protocol, @Nonnull RuleTarget destinationEndpoint, int startPort, int endPort) {
+        List<FirewallRule> list = rules.get(new Key(direction, permission, protocol, startPort, endPort, sourceEndpoint, destinationEndpoint));
+
+        return (list == null ? null : list.get(0));
+    }
+
+    /**
+     * @return all indexed rules
+     */
+    public @Nonnull Collection<FirewallRule> getRules() {
+        ArrayList<FirewallRule> all = new ArrayList<FirewallRule>(size);
+
+        for( List<FirewallRule> list : rules.values() ) {
+            all.addAll(list);
+        }
+        return all;
+    }
+
+    /**
+     * Removes a rule from the index.
+     * @param rule the rule to remove
+     * @return true if the rule was indexed
+     */
+    public boolean remove(@Nonnull FirewallRule rule) {
+        Key key = toKey(rule);
+        List<FirewallRule> list = rules.get(key);
+
+        if( list == null || !list.remove(rule) ) {
+            return false;
+        }
+        if( list.isEmpty() ) {
+            rules.remove(key);
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * @return the number of indexed rules
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -48,6 +48,8 @@ import javax.annotation.Nullable;
  * @version 2013.02 Added meta-data for source endpoint types (issue #27)
  * @version 2014.03 Added support for creating firewall rules through a create options object
  * @version 2014.03 Added support for firewall constraints (issue #99)
+ * @version 2015.09 Added desired-state rule sync
+ * @version 2015.09 Added batch lookup of firewalls by ID
  * @since unknown
  */
 public interface FirewallSupport extends AccessControlledService {
@@ -244,6 +246,15 @@ public interface FirewallSupport extends AccessControlledService {
      */
     public @Nullable Firewall getFirewall(@Nonnull String firewallId) throws InternalException, CloudException;
 
+    /**
+     * Fetches several firewalls at once. Implementations should resolve all of them with as few calls to the cloud as possible.
+     * @param firewallIds the IDs of the desired firewalls
+     * @return the firewalls found, keyed by ID in the order the IDs were given; IDs that do not exist are absent
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     * @throws CloudException an error occurred with the cloud provider
+     */
+    public @Nonnull Map<String,Firewall> getFirewalls(@Nonnull Collection<String> firewallIds) throws InternalException, CloudException;
+
     /**
      * Fetches the constraints for firewalls in this cloud. A constraint is a field that all rules
      * associated with a firewall must share. For example, a firewall constrained on
@@ -454,6 +465,18 @@ public interface FirewallSupport extends AccessControlledService {
      */
     public void revoke(@Nonnull String firewallId, @Nonnull Direction direction, @Nonnull Permission permission, @Nonnull String source, @Nonnull Protocol protocol, @Nonnull RuleTarget target, int beginPort, int endPort) throws CloudException, InternalException;
 
+    /**
+     * Brings the rules of a firewall to the desired state with the fewest changes: desired rules the firewall lacks
+     * are authorized, then rules it has that are not desired are revoked. Rules are matched by direction, permission,
+     * protocol, port range and endpoints; rules present in both states are left untouched.
+     * @param firewallId the firewall whose rules are being synchronized
+     * @param desiredRules the complete set of rules the firewall should have
+     * @return the rules that were authorized and revoked
+     * @throws InternalException an error occurred locally independent of any events in the cloud
+     * @throws CloudException an error occurred with the cloud provider while performing the operation
+     */
+    public @Nonnull FirewallRuleDelta syncRules(@Nonnull String firewallId, @Nonnull Iterable<FirewallRuleCreateOptions> desiredRules) throws CloudException, InternalException;
+
     /**
      * Indicates whether firewalls of the specified type (VLAN or flat network) support rules over the direction specified.
      * @param direction the direction of the traffic
@@ -27,11 +27,14 @@ import javax.annotation.Nullable;
  * <p>Created by George Reese: 1/9/13 10:18 AM</p>
  * @author George Reese
  * @version 2013.02 initial version (issue #38)
+ * @version 2015.09 addresses are parsed once into a {@link CidrBlock}
  * @since 2013.02
  */
 public class RawAddress {
     private String ipAddress;
     private IPVersion version;
+    private CidrBlock block;
+    private boolean   parsed;
 
     @SuppressWarnings("UnusedDeclaration")
     private RawAddress() { }
@@ -42,13 +45,20 @@ public class RawAddress {
      */
     public RawAddress(@Nonnull String ipAddress) {
         this.ipAddress = ipAddress;
-        String[] tmp = ipAddress.split("\\.");
+        CidrBlock b = getCidrBlock();
 
-        if( tmp.length == 4 ) {
-            version = IPVersion.IPV4;
+        if( b != null ) {
+            version = b.getVersion();
         }
         else {
-            version = IPVersion.IPV6;
+            int dots = 0;
+
+            for( int i=0; i<ipAddress.length(); i++ ) {
+                if( ipAddress.charAt(i) == '.' ) {
+                    dots++;
+                }
+            }
+            version = (dots == 3 ? IPVersion.IPV4 : IPVersion.IPV6);
         }
     }
 
@@ -67,6 +77,19 @@ public class RawAddress {
         return other != null && (other == this || other.getClass().getName().equals(getClass().getName()) && ipAddress.equalsIgnoreCase(((RawAddress) other).ipAddress));
     }
 
+    /**
+     * @return the address in binary form, or null if the IP address string is not a valid IPv4 or IPv6 address
+     */
+    public @Nullable CidrBlock getCidrBlock() {
+        if( !parsed ) {
+            CidrBlock b = CidrBlock.parse(ipAddress);
+
+            block = (b != null && b.isAddress() ? b : null);
+            parsed = true;
+        }
+        return block;
+    }
+
     /**
      * @return the IP address string
      */
@@ -92,6 +115,11 @@ public class RawAddress {
      * @return true if this address is in the publicly addressable address space
      */
     public boolean isPublicIpAddress() {
+        CidrBlock b = getCidrBlock();
+
+        if( b != null ) {
+            return !b.isPrivate();
+        }
         if( getVersion().equals(IPVersion.IPV4) ) {
             if( ipAddress.startsWith("10.") || ipAddress.startsWith("192.168") || ipAddress.startsWith("169.254") ) {
                 return false;
@@ -82,6 +82,7 @@ public class RuleTarget {
 
     private RuleTargetType  ruleTargetType;
     private String          cidr;
+    private CidrBlock       cidrBlock;
     private String          providerFirewallId;
     private String          providerVirtualMachineId;
     private String          providerVlanId;
@@ -103,6 +104,16 @@ public class RuleTarget {
         return cidr;
     }
 
+    /**
+     * @return the CIDR behind the firewall for this destination in binary form, or null if there is no CIDR or it is not valid
+     */
+    public @Nullable CidrBlock getCidrBlock() {
+        if( cidrBlock == null && cidr != null ) {
+            cidrBlock = CidrBlock.parse(cidr);
+        }
+        return cidrBlock;
+    }
+
     /**
      * @return the unique ID of the provider firewall associated with resources for this target
      */
@@ -52,6 +52,7 @@ public class Subnet implements Networkable, Taggable {
     private AllocationPool[]   allocationPools;
     private int                availableIpAddresses;
     private String             cidr;
+    private CidrBlock          cidrBlock;
     private SubnetState        currentState;
     private String             description;
     private RawAddress         gateway;
@@ -126,6 +127,16 @@ public class Subnet implements Networkable, Taggable {
         return cidr;
     }
 
+    /**
+     * @return the CIDR block associated with this subnet in binary form, or null if it is not a valid CIDR
+     */
+    public @Nullable CidrBlock getCidrBlock() {
+        if( cidrBlock == null && cidr != null ) {
+            cidrBlock = CidrBlock.parse(cidr);
+        }
+        return cidrBlock;
+    }
+
     /**
      * @return the current state for the subnet
      */
@@ -283,6 +294,7 @@ public class Subnet implements Networkable, Taggable {
      */
     public void setCidr(@Nonnull String cidr) {
         this.cidr = cidr;
+        this.cidrBlock = null;
     }
 
     /**
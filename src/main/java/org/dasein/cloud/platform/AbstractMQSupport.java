@@ -27,10 +27,10 @@ import org.dasein.cloud.OperationNotSupportedException;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.ResourceStatus;
 import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.util.StatusListing;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.ArrayList;
 import java.util.Iterator;
 
 /**
@@ -38,6 +38,7 @@ import java.util.Iterator;
  * <p>Created by George Reese: 7/24/13 6:21 AM</p>
  * @author George Reese
  * @version 2013.07 initial version
+ * @version 2015.09 status listings are projected lazily and can be cached briefly
  * @since 2013.07
  */
 public abstract class AbstractMQSupport<T extends CloudProvider> extends AbstractProviderService<T> implements MQSupport {
@@ -67,12 +68,29 @@ public abstract class AbstractMQSupport<T extends CloudProvider> extends Abstrac
 
     @Override
     public @Nonnull Iterable<ResourceStatus> listMessageQueueStatus() throws CloudException, InternalException {
-        ArrayList<ResourceStatus> status = new ArrayList<ResourceStatus>();
+        return StatusListing.list(getProvider(), "MessageQueue", new StatusListing.StatusSource() {
+            @Override
+            public @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException {
+                return fetchMessageQueueStatus();
+            }
+        });
+    }
 
-        for( MessageQueue q : listMessageQueues() ) {
-            status.add(new ResourceStatus(q.getProviderMessageQueueId(), q.getCurrentState()));
-        }
-        return status;
+    /**
+     * Fetches the status of all message queues from the cloud for {@link #listMessageQueueStatus()}, which caches the result briefly if the context opts in.
+     * By default this projects the full listing onto status objects one message queue at a time; providers with a
+     * cheaper call returning only IDs and states should override this method.
+     * @return the status of each message queue
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected @Nonnull Iterable<ResourceStatus> fetchMessageQueueStatus() throws CloudException, InternalException {
+        return StatusListing.project(listMessageQueues(), new StatusListing.StatusFunction<MessageQueue>() {
+            @Override
+            public @Nullable ResourceStatus getStatus(@Nonnull MessageQueue q) {
+                return new ResourceStatus(q.getProviderMessageQueueId(), q.getCurrentState());
+            }
+        });
     }
 
     @Override
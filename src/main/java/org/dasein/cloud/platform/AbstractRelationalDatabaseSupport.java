@@ -20,6 +20,9 @@
 package org.dasein.cloud.platform;
 
 import org.dasein.cloud.*;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.util.ResourceReference;
+import org.dasein.cloud.util.TagIndex;
 import org.dasein.cloud.util.TagUtils;
 
 import javax.annotation.Nonnull;
@@ -32,6 +35,7 @@ import java.util.Locale;
  *
  * @author Stas Maksimov
  * @version 2015.01 initial version
+ * @version 2015.09 tag changes go through protected hooks and are reported to the tag index once they reach the cloud
  * @since 2015.01
  */
 public abstract class AbstractRelationalDatabaseSupport<T extends CloudProvider> extends AbstractProviderService<T> implements RelationalDatabaseSupport {
@@ -226,7 +230,28 @@ public abstract class AbstractRelationalDatabaseSupport<T extends CloudProvider>
     
     @Override
     public void removeTags(@Nonnull String providerDatabaseId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            removeTagsInCloud(providerDatabaseId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsRemoved(getProvider(), ResourceReference.DATABASE, new String[] { providerDatabaseId }, tags);
+    }
+
+    /**
+     * Removes tags from a database in the cloud. The default implementation does not support tagging.
+     * Called by {@link #removeTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param providerDatabaseId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void removeTagsInCloud(@Nonnull String providerDatabaseId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for databases in " + getProvider().getCloudName());
     }
 
     @Override
@@ -238,7 +263,28 @@ public abstract class AbstractRelationalDatabaseSupport<T extends CloudProvider>
     
     @Override
     public void updateTags(@Nonnull String providerDatabaseId, @Nonnull Tag... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            updateTagsInCloud(providerDatabaseId, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsUpdated(getProvider(), ResourceReference.DATABASE, new String[] { providerDatabaseId }, tags);
+    }
+
+    /**
+     * Adds or changes tags on a database in the cloud. The default implementation does not support tagging.
+     * Called by {@link #updateTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param providerDatabaseId the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void updateTagsInCloud(@Nonnull String providerDatabaseId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for databases in " + getProvider().getCloudName());
     }
 
     @Override
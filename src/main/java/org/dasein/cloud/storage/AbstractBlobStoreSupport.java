@@ -34,9 +34,14 @@ import org.dasein.cloud.AbstractProviderService;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.CloudProvider;
 import org.dasein.cloud.InternalException;
+import org.dasein.cloud.OperationNotSupportedException;
 import org.dasein.cloud.Tag;
 import org.dasein.cloud.util.NamingConstraints;
+import org.dasein.cloud.util.ResourceReference;
+import org.dasein.cloud.util.TagIndex;
 import org.dasein.cloud.util.TagUtils;
+import org.dasein.cloud.util.event.CloudEvent;
+import org.dasein.cloud.util.event.CloudEvents;
 import org.dasein.util.Retry;
 import org.dasein.util.uom.storage.*;
 import org.dasein.util.uom.storage.Byte;
@@ -117,9 +122,12 @@ public abstract class AbstractBlobStoreSupport<T extends CloudProvider> extends
     }
     
     protected void copy(@Nonnull InputStream input, @Nonnull OutputStream output, @Nullable FileTransfer xfer) throws IOException {
+        long start = CloudEvents.start();
+        long total = 0L;
+        IOException error = null;
+
         try {
             byte[] bytes = new byte[10240];
-            long total = 0L;
             int count;
 
             if( xfer != null ) {
@@ -136,9 +144,16 @@ public abstract class AbstractBlobStoreSupport<T extends CloudProvider> extends
             }
             output.flush();
         }
+        catch( IOException e ) {
+            error = e;
+            throw e;
+        }
         finally {
             input.close();
             output.close();
+            if( CloudEvents.isEnabled() ) {
+                CloudEvents.publish(CloudEvent.Type.BLOB_TRANSFER, getProvider(), "copy", start, total, error);
+            }
         }
     }
     
@@ -222,7 +237,28 @@ public abstract class AbstractBlobStoreSupport<T extends CloudProvider> extends
     
     @Override
     public void updateTags(@Nonnull String bucketName, @Nonnull Tag ... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            updateTagsInCloud(bucketName, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsUpdated(getProvider(), ResourceReference.BLOB, new String[] { bucketName }, tags);
+    }
+
+    /**
+     * Adds or changes tags on a bucket in the cloud. The default implementation does not support tagging.
+     * Called by {@link #updateTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param bucketName the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void updateTagsInCloud(@Nonnull String bucketName, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for buckets in " + getProvider().getCloudName());
     }
 
     @Override
@@ -234,7 +270,28 @@ public abstract class AbstractBlobStoreSupport<T extends CloudProvider> extends
 
     @Override
     public void removeTags(@Nonnull String bucketName, @Nonnull Tag ... tags) throws CloudException, InternalException {
-        // NO-OP
+        try {
+            removeTagsInCloud(bucketName, tags);
+        }
+        catch( OperationNotSupportedException ignore ) {
+            // NO-OP
+            return;
+        }
+        TagIndex.tagsRemoved(getProvider(), ResourceReference.BLOB, new String[] { bucketName }, tags);
+    }
+
+    /**
+     * Removes tags from a bucket in the cloud. The default implementation does not support tagging.
+     * Called by {@link #removeTags(String, Tag...)}, which reports the change to the provider's {@link TagIndex} once
+     * this returns.
+     * @param bucketName the resource whose tags are changed
+     * @param tags the tags
+     * @throws OperationNotSupportedException the cloud does not support tagging
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    protected void removeTagsInCloud(@Nonnull String bucketName, @Nonnull Tag... tags) throws CloudException, InternalException {
+        throw new OperationNotSupportedException("Tagging is not supported for buckets in " + getProvider().getCloudName());
     }
 
     @Override
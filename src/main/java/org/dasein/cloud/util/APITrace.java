@@ -23,6 +23,9 @@ import org.apache.log4j.Logger;
 import org.dasein.cloud.CloudProvider;
 import org.dasein.cloud.ProviderContext;
 import org.dasein.cloud.RequestTrackingStrategy;
+import org.dasein.cloud.util.event.CloudEvent;
+import org.dasein.cloud.util.event.CloudEvents;
+import org.dasein.cloud.util.trace.Tracer;
 import org.json.JSONObject;
 
 import javax.annotation.Nonnull;
@@ -43,6 +46,7 @@ import java.util.TreeSet;
  * <p>Created by George Reese: 11/16/12 7:20 PM</p>
  * @author George Reese
  * @version 2013.01 initial version (Issue #1)
+ * @version 2015.09 operations recorded as trace spans
  * @since 2013.01
  */
 public class  APITrace {
@@ -69,6 +73,14 @@ public class  APITrace {
 
     static private HashMap<Long,CloudOperation> operations = new HashMap<Long, CloudOperation>();
 
+    // the event tokens of the operations open on each thread, null for those begun without event listeners
+    static private final ThreadLocal<ArrayList<CloudEvents.Operation>> eventOperations = new ThreadLocal<ArrayList<CloudEvents.Operation>>() {
+        @Override
+        protected ArrayList<CloudEvents.Operation> initialValue() {
+            return new ArrayList<CloudEvents.Operation>();
+        }
+    };
+
 
     static {
         try {
@@ -85,6 +97,13 @@ public class  APITrace {
     }
 
     static public void begin(@Nonnull CloudProvider provider, @Nonnull String operationName) {
+        eventOperations.get().add(CloudEvents.beginOperation(provider, operationName));
+        try {
+            Tracer.begin(provider, operationName);
+        }
+        catch( Throwable t ) {
+            logger.warn("Error with trace span begin: " + t.getMessage());
+        }
         if( logger.isDebugEnabled() ) {
             try {
                 ProviderContext ctx = provider.getContext();
@@ -136,6 +155,20 @@ public class  APITrace {
     }
 
     static public void end() {
+        ArrayList<CloudEvents.Operation> open = eventOperations.get();
+
+        if( !open.isEmpty() ) {
+            CloudEvents.endOperation(open.remove(open.size() - 1), null);
+        }
+        if( open.isEmpty() ) {
+            eventOperations.remove();
+        }
+        try {
+            Tracer.end();
+        }
+        catch( Throwable t ) {
+            logger.warn("Error with trace span end: " + t.getMessage());
+        }
         if( logger.isDebugEnabled() ) {
             try {
                 long thread = Thread.currentThread().getId();
@@ -590,6 +623,10 @@ public class  APITrace {
     }
 
     static public void trace(@Nonnull CloudProvider provider,  @Nonnull String apiCall) {
+        Tracer.annotate(apiCall);
+        if( CloudEvents.isEnabled() ) {
+            CloudEvents.publish(CloudEvent.Type.API_CALL, provider, apiCall, 0L, -1L, null);
+        }
         if( logger.isInfoEnabled() ) {
             ProviderContext ctx = provider.getContext();
             String accountNumber = getAccountNumber( ctx );
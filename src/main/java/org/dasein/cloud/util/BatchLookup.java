@@ -0,0 +1,219 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helpers for looking up many resources by ID at once. The default batch lookups of the abstract support classes use
+ * {@link #index(Collection, Iterable, IdFunction)} to resolve every ID in a single pass over a listing. Providers with a
+ * native batch describe call can use {@link #lookupInChunks(Collection, int, int, ChunkLookup, IdFunction)} to split
+ * the IDs into chunks the cloud accepts and fetch the chunks in parallel.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class BatchLookup {
+    /**
+     * Extracts the provider ID of a resource.
+     * @param <T> the type of resource
+     */
+    public interface IdFunction<T> {
+        public @Nullable String getId(@Nonnull T resource);
+    }
+
+    /**
+     * Fetches the resources matching one chunk of IDs, typically with a single batch describe call.
+     * @param <T> the type of resource
+     */
+    public interface ChunkLookup<T> {
+        public @Nonnull Iterable<T> lookup(@Nonnull List<String> ids) throws CloudException, InternalException;
+    }
+
+    static private final AtomicInteger   threadCount = new AtomicInteger(0);
+    static private final ExecutorService workers     = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Batch Lookup " + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Picks the requested resources out of a listing in one pass, stopping as soon as all of them are found.
+     * @param ids the IDs being looked up
+     * @param listing the resources to search
+     * @param idFunction extracts the ID of each resource
+     * @param <T> the type of resource
+     * @return the resources found, keyed by ID in the order the IDs were given; IDs not found are absent
+     */
+    static public @Nonnull <T> Map<String,T> index(@Nonnull Collection<String> ids, @Nonnull Iterable<T> listing, @Nonnull IdFunction<T> idFunction) {
+        HashMap<String,T> found = new HashMap<String, T>();
+        LinkedHashSet<String> wanted = new LinkedHashSet<String>(ids);
+
+        for( T resource : listing ) {
+            String id = idFunction.getId(resource);
+
+            if( id != null && wanted.contains(id) && !found.containsKey(id) ) {
+                found.put(id, resource);
+                if( found.size() == wanted.size() ) {
+                    break;
+                }
+            }
+        }
+        return order(wanted, found);
+    }
+
+    /**
+     * Looks up resources in chunks of at most <code>chunkSize</code> IDs, running up to <code>parallelism</code>
+     * chunks at once. Duplicate IDs are looked up once. If any chunk fails, the first failure is thrown once all
+     * running chunks finish.
+     * @param ids the IDs being looked up
+     * @param chunkSize the most IDs the cloud accepts in one call
+     * @param parallelism the most chunks to fetch at the same time
+     * @param lookup fetches one chunk
+     * @param idFunction extracts the ID of each resource
+     * @param <T> the type of resource
+     * @return the resources found, keyed by ID in the order the IDs were given; IDs not found are absent
+     * @throws CloudException a chunk failed in the cloud
+     * @throws InternalException a chunk failed locally or the lookup was interrupted
+     */
+    static public @Nonnull <T> Map<String,T> lookupInChunks(@Nonnull Collection<String> ids, @Nonnegative int chunkSize, @Nonnegative int parallelism, final @Nonnull ChunkLookup<T> lookup, final @Nonnull IdFunction<T> idFunction) throws CloudException, InternalException {
+        if( chunkSize < 1 || parallelism < 1 ) {
+            throw new InternalException("Chunk size and parallelism must be positive: " + chunkSize + "/" + parallelism);
+        }
+        LinkedHashSet<String> wanted = new LinkedHashSet<String>(ids);
+        final ConcurrentLinkedQueue<List<String>> chunks = new ConcurrentLinkedQueue<List<String>>();
+        ArrayList<String> chunk = new ArrayList<String>();
+
+        for( String id : wanted ) {
+            chunk.add(id);
+            if( chunk.size() == chunkSize ) {
+                chunks.add(chunk);
+                chunk = new ArrayList<String>();
+            }
+        }
+        if( !chunk.isEmpty() ) {
+            chunks.add(chunk);
+        }
+        final Map<String,T> found = new HashMap<String, T>();
+
+        if( chunks.size() == 1 ) {
+            collect(lookup.lookup(chunks.poll()), idFunction, found);
+            return order(wanted, found);
+        }
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        int workerCount = Math.min(parallelism, chunks.size());
+
+        for( int i=0; i<workerCount; i++ ) {
+            results.add(workers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    List<String> next;
+
+                    while( (next = chunks.poll()) != null ) {
+                        Iterable<T> resources = lookup.lookup(next);
+
+                        synchronized( found ) {
+                            collect(resources, idFunction, found);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        Throwable failure = null;
+
+        for( Future<Void> result : results ) {
+            try {
+                result.get();
+            }
+            catch( ExecutionException e ) {
+                if( failure == null ) {
+                    failure = e.getCause();
+                    // no point fetching chunks nobody will see
+                    chunks.clear();
+                }
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException("Interrupted while looking up resources", e);
+            }
+        }
+        if( failure instanceof CloudException ) {
+            throw (CloudException)failure;
+        }
+        if( failure instanceof InternalException ) {
+            throw (InternalException)failure;
+        }
+        if( failure != null ) {
+            throw new InternalException(failure);
+        }
+        return order(wanted, found);
+    }
+
+    static private <T> void collect(@Nonnull Iterable<T> resources, @Nonnull IdFunction<T> idFunction, @Nonnull Map<String,T> into) {
+        for( T resource : resources ) {
+            String id = idFunction.getId(resource);
+
+            if( id != null && !into.containsKey(id) ) {
+                into.put(id, resource);
+            }
+        }
+    }
+
+    static private @Nonnull <T> Map<String,T> order(@Nonnull Collection<String> wanted, @Nonnull Map<String,T> found) {
+        LinkedHashMap<String,T> ordered = new LinkedHashMap<String, T>();
+
+        for( String id : wanted ) {
+            T resource = found.get(id);
+
+            if( resource != null ) {
+                ordered.put(id, resource);
+            }
+        }
+        return ordered;
+    }
+
+    private BatchLookup() { }
+}
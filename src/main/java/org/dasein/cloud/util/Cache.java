@@ -19,8 +19,13 @@
 
 package org.dasein.cloud.util;
 
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
 import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
 import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.util.event.CloudEvent;
+import org.dasein.cloud.util.event.CloudEvents;
 import org.dasein.util.CalendarWrapper;
 import org.dasein.util.uom.time.Hour;
 import org.dasein.util.uom.time.Millisecond;
@@ -30,9 +35,16 @@ import javax.annotation.Nonnegative;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implements efficient caching of non-changing resources so that you can minimize the number of API calls being made
@@ -57,14 +69,43 @@ import java.util.Set;
  *         return regions;
  *     }
  * </pre>
+ * <p>
+ * When {@link CacheSnapshotStore#DIRECTORY_PROPERTY} is set on the provider context, listings cached with
+ * {@link #put(ProviderContext, Iterable)} are also written to a durable snapshot and read back after a restart.
+ * Snapshots younger than the cache timeout are served like any cached listing; older ones are served by
+ * {@link #get(ProviderContext, Loader)} while it reloads the listing in the background.
+ * </p>
  * <p>Created by George Reese: 11/16/12 4:51 PM</p>
  * @author George Reese
  * @version 2013.01 initial version
+ * @version 2015.09 added an optional durable snapshot tier and stale-while-revalidate loading
  * @since 2013.01
  */
 public final class Cache<T> {
+    static private final Logger logger = Logger.getLogger(Cache.class);
+
     static private final HashMap<String,Cache<?>> caches = new HashMap<String, Cache<?>>();
 
+    /**
+     * Loads the listing to be cached from the cloud.
+     * @param <T> the type of cached item
+     */
+    public interface Loader<T> {
+        public @Nonnull Iterable<T> load() throws CloudException, InternalException;
+    }
+
+    static private final AtomicInteger   threadCount = new AtomicInteger(0);
+    static private final ExecutorService revalidator = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Cache Revalidation " + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     static public class CacheDelegate implements CacheMBean {
         @Override
         public void clear(@Nonnull String cacheName) {
@@ -209,7 +250,7 @@ public final class Cache<T> {
                 c = (Cache<X>)caches.get(name);
             }
             else {
-                c = new Cache<X>(level, timeout);
+                c = new Cache<X>(name, typeClass, level, timeout);
                 caches.put(name, c);
             }
         }
@@ -223,10 +264,19 @@ public final class Cache<T> {
 
     private TimePeriod<Millisecond> cacheTimeout;
     private long                    cacheStart;
+    private String                  name;
+    private Class<T>                typeClass;
+
+    private final HashSet<String>                                revalidating = new HashSet<String>();
+    private final HashMap<String,CacheSnapshotStore.Snapshot<T>> stale        = new HashMap<String, CacheSnapshotStore.Snapshot<T>>();
+    private final HashSet<String>                                checked      = new HashSet<String>();
+    private long                                                 clearedAt    = 0L;
 
     private Cache() { }
 
-    private Cache(CacheLevel level, TimePeriod<?> timeout) {
+    private Cache(String name, Class<T> typeClass, CacheLevel level, TimePeriod<?> timeout) {
+        this.name = name;
+        this.typeClass = typeClass;
         switch( level ) {
             case CLOUD: cloudCache = new HashMap<String, CacheEntry<T>>(); break;
             case CLOUD_ACCOUNT: cloudAccountCache = new HashMap<String, Map<String, CacheEntry<T>>>(); break;
@@ -254,7 +304,15 @@ public final class Cache<T> {
             else if( regionAccountCache != null ) {
                 regionAccountCache.clear();
             }
+            stale.clear();
+            checked.clear();
             cacheStart = System.currentTimeMillis();
+            // snapshots in directories this process has not opened yet are ignored on read
+            clearedAt = cacheStart;
+        }
+        CacheSnapshotStore.deleteEverywhere(name);
+        if( CloudEvents.isEnabled() ) {
+            CloudEvents.publish(CloudEvent.Type.CACHE_EVICT, (ProviderContext)null, name, 0L, -1L, null);
         }
     }
 
@@ -272,6 +330,44 @@ public final class Cache<T> {
                 return null;
             }
         }
+        CacheEntry<T> entry = getEntry(ctx);
+
+        if( entry == null || (entry.items != null && entry.items.get() == null) ) {
+            // nothing in memory, or the memory was reclaimed
+            CacheEntry<T> restored = loadSnapshot(ctx);
+
+            if( restored != null ) {
+                entry = restored;
+            }
+        }
+        if( entry == null ) {
+            if( CloudEvents.isEnabled() ) {
+                CloudEvents.publish(CloudEvent.Type.CACHE_MISS, ctx, name, 0L, -1L, null);
+            }
+            return null;
+        }
+        if( entry.lastCacheClear + cacheTimeout.longValue() < System.currentTimeMillis() ) {
+            synchronized( this ) {
+                entry.items = null;
+            }
+            if( CloudEvents.isEnabled() ) {
+                CloudEvents.publish(CloudEvent.Type.CACHE_EVICT, ctx, name, 0L, -1L, null);
+                CloudEvents.publish(CloudEvent.Type.CACHE_MISS, ctx, name, 0L, -1L, null);
+            }
+            return null;
+        }
+        Iterable<T> items;
+
+        synchronized( this ) {
+            items = (entry.items == null ? null : entry.items.get());
+        }
+        if( CloudEvents.isEnabled() ) {
+            CloudEvents.publish(items == null ? CloudEvent.Type.CACHE_MISS : CloudEvent.Type.CACHE_HIT, ctx, name, 0L, -1L, null);
+        }
+        return items;
+    }
+
+    private synchronized @Nullable CacheEntry<T> getEntry(@Nonnull ProviderContext ctx) {
         CacheEntry<T> entry = null;
         String endpoint = ctx.getCloud().getEndpoint();
 
@@ -303,14 +399,113 @@ public final class Cache<T> {
                 }
             }
         }
-        if( entry == null ) {
+        return entry;
+    }
+
+    /**
+     * Fetches the items cached for the context specified, loading them if nothing is cached. A snapshot that outlived
+     * the cache timeout is served until the first live listing replaces it; that listing is loaded in the background
+     * by the first call to find the snapshot stale.
+     * @param ctx the context for the caching
+     * @param loader loads the items from the cloud
+     * @return the cached, stale or freshly loaded items
+     * @throws CloudException an error occurred with the cloud provider while loading the items
+     * @throws InternalException an error occurred within the Dasein Cloud implementation while loading the items
+     */
+    public @Nonnull Iterable<T> get(@Nonnull final ProviderContext ctx, @Nonnull final Loader<T> loader) throws CloudException, InternalException {
+        Iterable<T> items = get(ctx);
+
+        if( items != null ) {
+            return items;
+        }
+        final String scope = getScope(ctx);
+        CacheSnapshotStore.Snapshot<T> snapshot;
+        boolean revalidate;
+
+        synchronized( this ) {
+            snapshot = stale.get(scope);
+            revalidate = (snapshot != null && revalidating.add(scope));
+        }
+        if( snapshot == null ) {
+            items = loader.load();
+            put(ctx, items);
+            return items;
+        }
+        if( revalidate ) {
+            revalidator.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        put(ctx, loader.load());
+                    }
+                    catch( Throwable t ) {
+                        logger.warn("Unable to revalidate " + name + " for " + scope + ": " + t.getMessage());
+                    }
+                    finally {
+                        synchronized( Cache.this ) {
+                            revalidating.remove(scope);
+                        }
+                    }
+                }
+            });
+        }
+        return snapshot.items;
+    }
+
+    @Nonnull String getScope(@Nonnull ProviderContext ctx) {
+        String endpoint = ctx.getCloud().getEndpoint();
+
+        if( cloudCache != null ) {
+            return endpoint;
+        }
+        else if( regionCache != null ) {
+            return endpoint + "|" + ctx.getRegionId();
+        }
+        else if( cloudAccountCache != null ) {
+            return endpoint + "|" + ctx.getAccountNumber();
+        }
+        return endpoint + "|" + ctx.getRegionId() + "|" + ctx.getAccountNumber();
+    }
+
+    private @Nullable CacheEntry<T> loadSnapshot(@Nonnull ProviderContext ctx) {
+        CacheSnapshotStore store = CacheSnapshotStore.getInstance(ctx);
+
+        if( store == null || typeClass == null ) {
             return null;
         }
-        if( entry.lastCacheClear + cacheTimeout.longValue() < System.currentTimeMillis() ) {
-            entry.items = null;
+        String scope = getScope(ctx);
+
+        long since;
+
+        synchronized( this ) {
+            // only go to disk once per scope until a new snapshot is written
+            if( stale.containsKey(scope) || !checked.add(scope) ) {
+                return null;
+            }
+            since = clearedAt;
+        }
+        CacheSnapshotStore.Snapshot<T> snapshot = store.read(name, scope, typeClass);
+
+        if( snapshot == null ) {
+            return null;
+        }
+        if( snapshot.timestamp < since ) {
+            // written before the cache was cleared
+            store.delete(name, scope);
             return null;
         }
-        return entry.items.get();
+        synchronized( this ) {
+            if( snapshot.timestamp + cacheTimeout.longValue() < System.currentTimeMillis() ) {
+                stale.put(scope, snapshot);
+                return null;
+            }
+        }
+        CacheEntry<T> entry = new CacheEntry<T>();
+
+        entry.items = new SoftReference<Iterable<T>>(snapshot.items);
+        entry.lastCacheClear = snapshot.timestamp;
+        putEntry(ctx, entry);
+        return entry;
     }
 
     /**
@@ -320,10 +515,34 @@ public final class Cache<T> {
      */
     public void put(@Nonnull ProviderContext ctx, @Nonnull Iterable<T> list) {
         CacheEntry<T> entry = new CacheEntry<T>();
-        String endpoint = ctx.getCloud().getEndpoint();
 
         entry.items = new SoftReference<Iterable<T>>(list);
         entry.lastCacheClear = System.currentTimeMillis();
+        putEntry(ctx, entry);
+
+        CacheSnapshotStore store = CacheSnapshotStore.getInstance(ctx);
+        String scope = getScope(ctx);
+
+        synchronized( this ) {
+            stale.remove(scope);
+        }
+        // lazily evaluated listings cannot safely be iterated a second time
+        if( store != null && typeClass != null && list instanceof Collection ) {
+            if( store.write(name, scope, typeClass, new ArrayList<T>((Collection<T>)list), entry.lastCacheClear) ) {
+                synchronized( this ) {
+                    // the new snapshot may be restored once the in-memory copy is reclaimed
+                    checked.remove(scope);
+                }
+            }
+        }
+        if( CloudEvents.isEnabled() ) {
+            CloudEvents.publish(CloudEvent.Type.CACHE_PUT, ctx, name, 0L, -1L, null);
+        }
+    }
+
+    private synchronized void putEntry(@Nonnull ProviderContext ctx, @Nonnull CacheEntry<T> entry) {
+        String endpoint = ctx.getCloud().getEndpoint();
+
         if( cloudCache != null ) {
             cloudCache.put(endpoint, entry);
         }
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnull;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes and reads the items of one type in the persisted snapshots of {@link Cache}. Only caches whose item type
+ * has a codec registered with {@link CacheSnapshotStore#registerCodec(Class, CacheCodec)} are persisted; strings,
+ * enums and the core model types have codecs out of the box. Other types, even serializable ones, are not persisted
+ * unless a codec is registered for them.
+ * @param <T> the type of cached item
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface CacheCodec<T> {
+    /**
+     * Writes an item.
+     * @param out the snapshot being written
+     * @param item the item
+     * @throws IOException the item could not be written
+     */
+    public void write(@Nonnull DataOutputStream out, @Nonnull T item) throws IOException;
+
+    /**
+     * Reads an item written by {@link #write(DataOutputStream, Object)}, leaving the buffer positioned after it.
+     * @param in the mapped snapshot
+     * @return the item
+     * @throws IOException the data is not a valid item
+     */
+    public @Nonnull T read(@Nonnull ByteBuffer in) throws IOException;
+}
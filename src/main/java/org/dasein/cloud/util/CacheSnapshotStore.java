@@ -0,0 +1,506 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.util.codec.ModelCodec;
+import org.dasein.cloud.util.codec.ModelCodecs;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A durable second tier for {@link Cache}: a directory of compact, versioned binary snapshots of cached listings, one
+ * file per cache and {@link CacheLevel} scope. Snapshots are written in the background whenever a listing is cached
+ * and memory-mapped when read, so a restarted process can answer from its previous listings instead of re-listing
+ * every region and account.
+ * <p>
+ * The tier is disabled unless {@link #DIRECTORY_PROPERTY} is set on the provider context. Only caches whose item type
+ * has an explicit codec are persisted: strings, enums, types with a {@link CacheCodec} registered through
+ * {@link #registerCodec(Class, CacheCodec)} and the core model types, whose listings are written with the binary codecs
+ * of {@link org.dasein.cloud.util.codec.ModelCodecs} and share one string table per snapshot.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class CacheSnapshotStore {
+    static private final Logger logger = Logger.getLogger(CacheSnapshotStore.class);
+
+    /**
+     * Custom property on the provider context naming the directory that holds cache snapshots. Snapshots are
+     * disabled unless it is set.
+     */
+    static public final String DIRECTORY_PROPERTY = "cacheSnapshotDirectory";
+
+    static private final int    MAGIC     = 0x4443534E; // "DCSN"
+    static private final int    VERSION   = 2;
+    static private final String EXTENSION = ".snap";
+
+    /**
+     * A listing read back from a snapshot.
+     * @param <T> the type of cached item
+     */
+    static final class Snapshot<T> {
+        final List<T> items;
+        final long    timestamp;
+
+        Snapshot(@Nonnull List<T> items, long timestamp) {
+            this.items = items;
+            this.timestamp = timestamp;
+        }
+    }
+
+    static private class StringCodec implements CacheCodec<String> {
+        @Override
+        public void write(@Nonnull DataOutputStream out, @Nonnull String item) throws IOException {
+            writeString(out, item);
+        }
+
+        @Override
+        public @Nonnull String read(@Nonnull ByteBuffer in) throws IOException {
+            String value = readString(in);
+
+            if( value == null ) {
+                throw new IOException("Unexpected null string");
+            }
+            return value;
+        }
+    }
+
+    static private class EnumCodec<E extends Enum<E>> implements CacheCodec<E> {
+        private final Class<E> type;
+
+        EnumCodec(@Nonnull Class<E> type) {
+            this.type = type;
+        }
+
+        @Override
+        public void write(@Nonnull DataOutputStream out, @Nonnull E item) throws IOException {
+            writeString(out, item.name());
+        }
+
+        @Override
+        public @Nonnull E read(@Nonnull ByteBuffer in) throws IOException {
+            try {
+                return Enum.valueOf(type, readString(in));
+            }
+            catch( RuntimeException e ) {
+                throw new IOException("Unknown " + type.getSimpleName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    static private final ConcurrentHashMap<Class<?>,CacheCodec<?>> codecs = new ConcurrentHashMap<Class<?>, CacheCodec<?>>();
+    static private final HashMap<Class<?>,ModelCodec<?>>           models = new HashMap<Class<?>, ModelCodec<?>>();
+    static private final HashMap<String,CacheSnapshotStore>        stores = new HashMap<String, CacheSnapshotStore>();
+    static private final ExecutorService                           writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Cache Snapshot Writer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static {
+        codecs.put(String.class, new StringCodec());
+        for( ModelCodec<?> codec : ModelCodecs.getCodecs() ) {
+            models.put(codec.getType(), codec);
+        }
+    }
+
+    /**
+     * Deletes the snapshots of every scope of the named cache from every snapshot directory used by this process,
+     * after any pending writes.
+     * @param cacheName the name of the cache
+     */
+    static public void deleteEverywhere(@Nonnull String cacheName) {
+        ArrayList<CacheSnapshotStore> all;
+
+        synchronized( stores ) {
+            all = new ArrayList<CacheSnapshotStore>(stores.values());
+        }
+        for( CacheSnapshotStore store : all ) {
+            store.delete(cacheName);
+        }
+    }
+
+    /**
+     * Provides the snapshot store configured for the specified context.
+     * @param ctx the context whose custom properties configure the store
+     * @return the store, or <code>null</code> if no snapshot directory is configured
+     */
+    static public @Nullable CacheSnapshotStore getInstance(@Nullable ProviderContext ctx) {
+        if( ctx == null ) {
+            return null;
+        }
+        String directory = ctx.getCustomProperties().getProperty(DIRECTORY_PROPERTY);
+
+        return (directory == null ? null : getInstance(new File(directory)));
+    }
+
+    /**
+     * Provides the snapshot store for the specified directory.
+     * @param directory the directory holding the snapshots
+     * @return the store
+     */
+    static public @Nonnull CacheSnapshotStore getInstance(@Nonnull File directory) {
+        String key = directory.getAbsolutePath();
+
+        synchronized( stores ) {
+            CacheSnapshotStore store = stores.get(key);
+
+            if( store == null ) {
+                store = new CacheSnapshotStore(directory);
+                stores.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Registers the codec used to persist cached items of the specified type, replacing any built-in one, including
+     * the binary codec of a core model type.
+     * @param type the type of cached item
+     * @param codec the codec
+     * @param <T> the type of cached item
+     */
+    static public <T> void registerCodec(@Nonnull Class<T> type, @Nonnull CacheCodec<T> codec) {
+        codecs.put(type, codec);
+    }
+
+    /**
+     * Finds the per-item codec for the specified type: a registered one, or the built-in one for strings and enums.
+     * Core model types without a registered codec are persisted through their binary codecs instead.
+     * @param type the type of cached item
+     * @param <T> the type of cached item
+     * @return the codec, or <code>null</code> if there is no per-item codec for the type
+     */
+    @SuppressWarnings("unchecked")
+    static public @Nullable <T> CacheCodec<T> getCodec(@Nonnull Class<T> type) {
+        CacheCodec<?> codec = codecs.get(type);
+
+        if( codec == null ) {
+            if( !type.isEnum() ) {
+                return null;
+            }
+            codec = enumCodec(type);
+            CacheCodec<?> existing = codecs.putIfAbsent(type, codec);
+
+            if( existing != null ) {
+                codec = existing;
+            }
+        }
+        return (CacheCodec<T>)codec;
+    }
+
+    /**
+     * @return a codec for the enum type, which the caller has checked with {@link Class#isEnum()}
+     */
+    @SuppressWarnings("unchecked")
+    static private @Nonnull <E extends Enum<E>> CacheCodec<E> enumCodec(@Nonnull Class<?> type) {
+        return new EnumCodec<E>((Class<E>)type);
+    }
+
+    /**
+     * @return the binary codec persisting listings of the type, or null if the type has a per-item codec or no codec
+     */
+    @SuppressWarnings("unchecked")
+    static private @Nullable <T> ModelCodec<T> getModelCodec(@Nonnull Class<T> type) {
+        if( codecs.containsKey(type) ) {
+            return null;
+        }
+        return (ModelCodec<T>)models.get(type);
+    }
+
+    /**
+     * @param type the type of cached item
+     * @return true if listings of the type can be persisted
+     */
+    static public boolean isPersistable(@Nonnull Class<?> type) {
+        return (getCodec(type) != null || getModelCodec(type) != null);
+    }
+
+    static private void writeString(@Nonnull DataOutputStream out, @Nullable String str) throws IOException {
+        if( str == null ) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = str.getBytes("UTF-8");
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static private @Nullable String readString(@Nonnull ByteBuffer in) throws UnsupportedEncodingException {
+        int length = in.getInt();
+
+        if( length < 0 ) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+
+        in.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    static private @Nonnull String sanitize(@Nonnull String name) {
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private final File directory;
+
+    private CacheSnapshotStore(@Nonnull File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Deletes the snapshots of every scope of the named cache, after any pending writes.
+     * @param cacheName the name of the cache
+     */
+    public void delete(@Nonnull String cacheName) {
+        final String prefix = sanitize(cacheName) + "@";
+
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = directory.listFiles();
+
+                if( files != null ) {
+                    for( File file : files ) {
+                        if( file.getName().startsWith(prefix) && file.getName().endsWith(EXTENSION) && !file.delete() ) {
+                            logger.warn("Unable to delete cache snapshot " + file);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Deletes the snapshot of one scope of the named cache, after any pending writes.
+     * @param cacheName the name of the cache
+     * @param scope the scope within the cache
+     */
+    public void delete(@Nonnull String cacheName, @Nonnull String scope) {
+        final File file = getFile(cacheName, scope);
+
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                if( file.exists() && !file.delete() ) {
+                    logger.warn("Unable to delete cache snapshot " + file);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the snapshots queued for writing to be written.
+     * @throws InterruptedException the wait was interrupted
+     */
+    public void flush() throws InterruptedException {
+        try {
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // everything queued earlier is done
+                }
+            }).get();
+        }
+        catch( ExecutionException e ) {
+            // the barrier itself cannot fail
+        }
+    }
+
+    /**
+     * @return the directory holding the snapshots
+     */
+    public @Nonnull File getDirectory() {
+        return directory;
+    }
+
+    private @Nonnull File getFile(@Nonnull String cacheName, @Nonnull String scope) {
+        return new File(directory, sanitize(cacheName) + "@" + sanitize(scope) + EXTENSION);
+    }
+
+    /**
+     * Reads the snapshot of a cache for one scope. A missing, unreadable or mismatched snapshot reads as nothing.
+     * @param cacheName the name of the cache
+     * @param scope the scope within the cache, as derived from its {@link CacheLevel}
+     * @param type the type of cached item
+     * @param <T> the type of cached item
+     * @return the snapshot, or <code>null</code> if there is none usable
+     */
+    @Nullable <T> Snapshot<T> read(@Nonnull String cacheName, @Nonnull String scope, @Nonnull Class<T> type) {
+        File file = getFile(cacheName, scope);
+        CacheCodec<T> codec = getCodec(type);
+        ModelCodec<T> model = (codec == null ? getModelCodec(type) : null);
+
+        if( (codec == null && model == null) || !file.exists() ) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            MappedByteBuffer in;
+
+            try {
+                // the mapping stays valid after the channel is closed
+                in = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+            finally {
+                raf.close();
+            }
+            if( in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != VERSION ) {
+                logger.warn("Ignoring cache snapshot in an unknown format: " + file);
+                return null;
+            }
+            if( !cacheName.equals(readString(in)) || !scope.equals(readString(in)) || !type.getName().equals(readString(in)) ) {
+                return null;
+            }
+            long timestamp = in.getLong();
+
+            if( in.get() != (model == null ? 0 : 1) ) {
+                // written with a different kind of codec than is registered now
+                return null;
+            }
+            List<T> items;
+
+            if( model == null ) {
+                int count = in.getInt();
+
+                items = new ArrayList<T>(count);
+                for( int i=0; i<count; i++ ) {
+                    items.add(codec.read(in));
+                }
+            }
+            else {
+                items = ModelCodecs.decode(model, in);
+            }
+            return new Snapshot<T>(Collections.unmodifiableList(items), timestamp);
+        }
+        catch( IOException e ) {
+            logger.warn("Ignoring unreadable cache snapshot " + file + ": " + e.getMessage());
+        }
+        catch( RuntimeException e ) {
+            logger.warn("Ignoring corrupt cache snapshot " + file + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Queues a listing to be written as the snapshot of a cache for one scope, replacing any earlier snapshot.
+     * @param cacheName the name of the cache
+     * @param scope the scope within the cache, as derived from its {@link CacheLevel}
+     * @param type the type of cached item
+     * @param items the listing, which must not change after this call
+     * @param timestamp the time in milliseconds since the epoch at which the listing was cached
+     * @param <T> the type of cached item
+     * @return true if the listing was queued, false if items of the type cannot be persisted
+     */
+    <T> boolean write(@Nonnull final String cacheName, @Nonnull final String scope, @Nonnull final Class<T> type, @Nonnull final List<T> items, @Nonnegative final long timestamp) {
+        final CacheCodec<T> codec = getCodec(type);
+        final ModelCodec<T> model = (codec == null ? getModelCodec(type) : null);
+
+        if( codec == null && model == null ) {
+            return false;
+        }
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                File file = getFile(cacheName, scope);
+                File tmp = new File(file.getPath() + ".tmp");
+
+                try {
+                    if( !directory.exists() && !directory.mkdirs() ) {
+                        throw new IOException("Unable to create " + directory);
+                    }
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 65536));
+
+                    try {
+                        out.writeInt(MAGIC);
+                        out.writeInt(VERSION);
+                        writeString(out, cacheName);
+                        writeString(out, scope);
+                        writeString(out, type.getName());
+                        out.writeLong(timestamp);
+                        if( model == null ) {
+                            out.writeByte(0);
+                            out.writeInt(items.size());
+                            for( T item : items ) {
+                                codec.write(out, item);
+                            }
+                        }
+                        else {
+                            // one string table for the whole listing
+                            out.writeByte(1);
+                            out.write(ModelCodecs.encode(model, items));
+                        }
+                    }
+                    finally {
+                        out.close();
+                    }
+                    if( !tmp.renameTo(file) ) {
+                        // some platforms will not replace an existing (possibly mapped) file
+                        if( !file.delete() || !tmp.renameTo(file) ) {
+                            throw new IOException("Unable to replace " + file);
+                        }
+                    }
+                }
+                catch( Throwable t ) {
+                    logger.warn("Unable to write cache snapshot " + file + ": " + t.getMessage());
+                    if( tmp.exists() && !tmp.delete() ) {
+                        logger.debug("Unable to delete " + tmp);
+                    }
+                }
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return "CacheSnapshotStore [" + directory + "]";
+    }
+}
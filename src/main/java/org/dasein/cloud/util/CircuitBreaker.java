@@ -0,0 +1,284 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fails calls to a cloud endpoint fast while it appears to be down. After {@link #getFailureThreshold()} consecutive
+ * outage failures (communication errors and 5xx responses) the breaker opens and {@link #allowRequest()} refuses
+ * calls for {@link #getOpenMillis()}. It then lets a single probe call through: if the probe succeeds the breaker
+ * closes, otherwise it opens again. Client errors such as bad requests or authentication failures say nothing about
+ * the health of the endpoint and never trip the breaker.
+ * <pre>
+ *     CircuitBreaker breaker = CircuitBreaker.getInstance(provider, "ec2.us-east-1.amazonaws.com");
+ *
+ *     if( !breaker.allowRequest() ) {
+ *         throw new CloudException(CloudErrorType.COMMUNICATION, 0, "CircuitOpen", "Endpoint is down");
+ *     }
+ *     try {
+ *         // make the call
+ *         breaker.onSuccess();
+ *     }
+ *     catch( CloudException e ) {
+ *         breaker.onFailure(e);
+ *         throw e;
+ *     }
+ * </pre>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class CircuitBreaker {
+    static private final Logger logger = Logger.getLogger(CircuitBreaker.class);
+
+    /**
+     * Custom property on the provider context that overrides {@link #DEFAULT_FAILURE_THRESHOLD}.
+     */
+    static public final String FAILURE_THRESHOLD_PROPERTY = "circuitBreakerThreshold";
+
+    /**
+     * Custom property on the provider context that overrides {@link #DEFAULT_OPEN_MILLIS}.
+     */
+    static public final String OPEN_MILLIS_PROPERTY = "circuitBreakerOpenMillis";
+
+    static public final int  DEFAULT_FAILURE_THRESHOLD = 5;
+    static public final long DEFAULT_OPEN_MILLIS       = 30000L;
+
+    static public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    static private final ConcurrentHashMap<String,CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    /**
+     * Fetches the shared breaker for the cloud endpoint of the specified provider and the named API family. Breakers
+     * are not specific to an account since an outage affects every account calling the endpoint.
+     * @param provider the provider making the calls
+     * @param apiFamily the group of API calls served by the same endpoint (for example, a service host name)
+     * @return the breaker for the endpoint and family
+     */
+    static public @Nonnull CircuitBreaker getInstance(@Nonnull CloudProvider provider, @Nonnull String apiFamily) {
+        ProviderContext ctx = provider.getContext();
+        String endpoint = "unknown";
+        int threshold = DEFAULT_FAILURE_THRESHOLD;
+        long openMillis = DEFAULT_OPEN_MILLIS;
+
+        if( ctx != null ) {
+            endpoint = ctx.getCloud().getEndpoint();
+
+            String value = ctx.getCustomProperties().getProperty(FAILURE_THRESHOLD_PROPERTY);
+
+            if( value != null ) {
+                try {
+                    threshold = Integer.parseInt(value);
+                }
+                catch( NumberFormatException e ) {
+                    logger.warn("Ignoring invalid " + FAILURE_THRESHOLD_PROPERTY + ": " + value);
+                }
+            }
+            value = ctx.getCustomProperties().getProperty(OPEN_MILLIS_PROPERTY);
+            if( value != null ) {
+                try {
+                    openMillis = Long.parseLong(value);
+                }
+                catch( NumberFormatException e ) {
+                    logger.warn("Ignoring invalid " + OPEN_MILLIS_PROPERTY + ": " + value);
+                }
+            }
+        }
+        return getInstance(endpoint + "|" + apiFamily, threshold, openMillis);
+    }
+
+    /**
+     * Fetches the named breaker, creating it with the specified settings if it does not yet exist.
+     * @param name the unique name of the breaker
+     * @param failureThreshold the number of consecutive outage failures that opens a new breaker
+     * @param openMillis how long a new breaker stays open before letting a probe call through
+     * @return the named breaker
+     */
+    static public @Nonnull CircuitBreaker getInstance(@Nonnull String name, int failureThreshold, long openMillis) {
+        CircuitBreaker breaker = breakers.get(name);
+
+        if( breaker == null ) {
+            breaker = new CircuitBreaker(name, failureThreshold, openMillis);
+
+            CircuitBreaker existing = breakers.putIfAbsent(name, breaker);
+
+            if( existing != null ) {
+                breaker = existing;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Removes all breakers. Intended for tests and for clients reconfiguring their clouds.
+     */
+    static public void clear() {
+        breakers.clear();
+    }
+
+    /**
+     * Indicates whether the specified failure suggests the endpoint itself is unavailable. Throttling responses
+     * (including a 503 classified as throttling) are left to the {@link RateLimiter} and do not count as outages.
+     * @param t the failure
+     * @return true if the failure is a communication error or a server error response other than a throttle
+     */
+    static public boolean isOutage(@Nullable Throwable t) {
+        if( t instanceof CloudException && !RateLimiter.isThrottle(t) ) {
+            CloudException e = (CloudException)t;
+
+            return (CloudErrorType.COMMUNICATION.equals(e.getErrorType()) || e.getHttpCode() >= 500);
+        }
+        return false;
+    }
+
+    private final int    failureThreshold;
+    private final String name;
+    private final long   openMillis;
+
+    // guarded by this
+    private int     failures;
+    private long    openedAt;
+    private boolean probing;
+    private State   state = State.CLOSED;
+
+    private CircuitBreaker(@Nonnull String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0L, openMillis);
+    }
+
+    /**
+     * Indicates whether a call may be made now. While half open, only the first caller is let through as a probe.
+     * @return true if the call may proceed, false if it should fail fast
+     */
+    public synchronized boolean allowRequest() {
+        if( State.OPEN.equals(state) ) {
+            if( System.currentTimeMillis() - openedAt < openMillis ) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if( State.HALF_OPEN.equals(state) ) {
+            if( probing ) {
+                return false;
+            }
+            probing = true;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of consecutive outage failures since the last success
+     */
+    public synchronized @Nonnegative int getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * @return the number of consecutive outage failures that opens the breaker
+     */
+    public @Nonnegative int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * @return the name of this breaker
+     */
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    /**
+     * @return how long the breaker stays open before letting a probe call through
+     */
+    public @Nonnegative long getOpenMillis() {
+        return openMillis;
+    }
+
+    /**
+     * @return the current state of the breaker
+     */
+    public synchronized @Nonnull State getState() {
+        if( State.OPEN.equals(state) && System.currentTimeMillis() - openedAt >= openMillis ) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * Reports a failed call. Outage failures count towards opening the breaker; a failed probe reopens it at once.
+     * Other failures still prove the endpoint is answering and count as a success.
+     * @param t the failure
+     */
+    public void onFailure(@Nullable Throwable t) {
+        if( !isOutage(t) ) {
+            onSuccess();
+            return;
+        }
+        synchronized( this ) {
+            failures++;
+            if( State.HALF_OPEN.equals(state) || failures >= failureThreshold ) {
+                if( !State.OPEN.equals(state) ) {
+                    logger.warn("Opening circuit breaker " + name + " after " + failures + " consecutive failures");
+                }
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                probing = false;
+            }
+        }
+    }
+
+    /**
+     * Reports that a call let through by {@link #allowRequest()} ended without showing whether the endpoint is
+     * healthy, for example because it failed locally or was interrupted. A half-open breaker lets the next caller
+     * through as its probe.
+     */
+    public synchronized void release() {
+        probing = false;
+    }
+
+    /**
+     * Reports a successful call, closing the breaker.
+     */
+    public synchronized void onSuccess() {
+        if( !State.CLOSED.equals(state) ) {
+            logger.info("Closing circuit breaker " + name);
+        }
+        failures = 0;
+        probing = false;
+        state = State.CLOSED;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return name + " [" + getState() + ", " + getFailureCount() + " failures]";
+    }
+}
@@ -0,0 +1,412 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that paces API calls to a single cloud endpoint, account and API family. Callers over the current
+ * rate are queued (they sleep until their slot comes up) rather than failed. The rate adapts with AIMD: every
+ * {@link CloudErrorType#THROTTLING} response halves it (at most once per {@link #THROTTLE_COOL_DOWN_MILLIS}, or per
+ * call interval if that is longer, so the throttles of one burst arriving over a round trip count once) and every successful call nudges it back up towards the maximum.
+ * <p>
+ * Limiting is opt-in: a provider only gets a limiter if its context sets the custom property
+ * {@link #MAX_RATE_PROPERTY}. At most {@link #MAX_LIMITERS} limiters are kept; the least recently used one is
+ * dropped beyond that and starts over at its maximum rate if it is needed again. The limiters are exposed over JMX
+ * as <code>org.dasein:type=RateLimiter</code>.
+ * </p>
+ * <pre>
+ *     RateLimiter limiter = RateLimiter.getInstance(provider, "compute");
+ *
+ *     if( limiter != null ) {
+ *         limiter.acquire();
+ *     }
+ *     try {
+ *         // make the call
+ *         if( limiter != null ) {
+ *             limiter.onSuccess();
+ *         }
+ *     }
+ *     catch( CloudException e ) {
+ *         if( limiter != null ) {
+ *             limiter.onFailure(e);
+ *         }
+ *         throw e;
+ *     }
+ * </pre>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class RateLimiter {
+    static private final Logger logger = Logger.getLogger(RateLimiter.class);
+
+    /**
+     * Custom property on the provider context that turns on limiting for it, with the maximum rate in calls per second.
+     */
+    static public final String MAX_RATE_PROPERTY = "rateLimitPerSecond";
+
+    static public final double DEFAULT_ADDITIVE_INCREASE = 1.0;
+    static public final double DEFAULT_MIN_RATE          = 0.5;
+    static public final int    MAX_LIMITERS              = 1024;
+    static public final double MULTIPLICATIVE_DECREASE   = 0.5;
+
+    /**
+     * The minimum time between two decreases of the rate, long enough to cover the round trip over which the throttle
+     * responses to one burst of calls come back.
+     */
+    static public final long   THROTTLE_COOL_DOWN_MILLIS = 1000L;
+
+    /**
+     * Access ordered so that the least recently used limiter is dropped first.
+     */
+    static private class LimiterMap extends LinkedHashMap<String,RateLimiter> {
+        static private final long serialVersionUID = 1L;
+
+        LimiterMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,RateLimiter> eldest) {
+            return (size() > MAX_LIMITERS);
+        }
+    }
+
+    // guarded by itself
+    static private final Map<String,RateLimiter> limiters = new LimiterMap();
+
+    static public class RateLimiterDelegate implements RateLimiterMBean {
+        private @Nullable RateLimiter get(@Nonnull String limiterName) {
+            synchronized( limiters ) {
+                return limiters.get(limiterName);
+            }
+        }
+
+        @Override
+        public @Nonnull String[] getLimiters() {
+            synchronized( limiters ) {
+                Set<String> names = limiters.keySet();
+
+                return names.toArray(new String[names.size()]);
+            }
+        }
+
+        @Override
+        public double getMaxRate(@Nonnull String limiterName) {
+            RateLimiter limiter = get(limiterName);
+
+            return (limiter == null ? 0.0 : limiter.getMaxRate());
+        }
+
+        @Override
+        public @Nonnegative int getQueueDepth(@Nonnull String limiterName) {
+            RateLimiter limiter = get(limiterName);
+
+            return (limiter == null ? 0 : limiter.getQueueDepth());
+        }
+
+        @Override
+        public double getRate(@Nonnull String limiterName) {
+            RateLimiter limiter = get(limiterName);
+
+            return (limiter == null ? 0.0 : limiter.getRate());
+        }
+
+        @Override
+        public @Nonnegative long getThrottleCount(@Nonnull String limiterName) {
+            RateLimiter limiter = get(limiterName);
+
+            return (limiter == null ? 0L : limiter.getThrottleCount());
+        }
+
+        @Override
+        public void setMaxRate(@Nonnull String limiterName, double callsPerSecond) {
+            RateLimiter limiter = get(limiterName);
+
+            if( limiter != null ) {
+                limiter.setMaxRate(callsPerSecond);
+            }
+        }
+    }
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.dasein:type=RateLimiter");
+
+            // the delegate's name does not follow the standard MBean naming rule, so its interface is given explicitly
+            server.registerMBean(new StandardMBean(new RateLimiterDelegate(), RateLimiterMBean.class), name);
+        }
+        catch( Throwable t ) {
+            logger.error("Unable to set up rate limiter MBean: " + t.getMessage());
+        }
+    }
+
+    /**
+     * Fetches the shared limiter for the cloud endpoint and account of the specified provider and the named API family.
+     * @param provider the provider making the calls
+     * @param apiFamily the group of API calls sharing a provider quota (for example, a service host name)
+     * @return the limiter for the endpoint, account and family, or <code>null</code> if the provider's context does
+     * not turn on limiting with {@link #MAX_RATE_PROPERTY}
+     */
+    static public @Nullable RateLimiter getInstance(@Nonnull CloudProvider provider, @Nonnull String apiFamily) {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            return null;
+        }
+        String value = ctx.getCustomProperties().getProperty(MAX_RATE_PROPERTY);
+
+        if( value == null ) {
+            return null;
+        }
+        double maxRate;
+
+        try {
+            maxRate = Double.parseDouble(value);
+        }
+        catch( NumberFormatException e ) {
+            logger.warn("Ignoring invalid " + MAX_RATE_PROPERTY + ": " + value);
+            return null;
+        }
+        return getInstance(ctx.getCloud().getEndpoint() + "|" + ctx.getAccountNumber() + "|" + apiFamily, maxRate);
+    }
+
+    /**
+     * Fetches the named limiter, creating it with the specified maximum rate if it does not yet exist.
+     * @param name the unique name of the limiter
+     * @param maxRate the maximum (and initial) rate in calls per second for a new limiter
+     * @return the named limiter
+     */
+    static public @Nonnull RateLimiter getInstance(@Nonnull String name, double maxRate) {
+        synchronized( limiters ) {
+            RateLimiter limiter = limiters.get(name);
+
+            if( limiter == null ) {
+                limiter = new RateLimiter(name, maxRate);
+                limiters.put(name, limiter);
+            }
+            return limiter;
+        }
+    }
+
+    /**
+     * Removes all limiters. Intended for tests and for clients reconfiguring their clouds.
+     */
+    static public void clear() {
+        synchronized( limiters ) {
+            limiters.clear();
+        }
+    }
+
+    /**
+     * Indicates whether the specified failure is the cloud provider asking the client to slow down.
+     * @param t the failure
+     * @return true if the failure is a throttling response
+     */
+    static public boolean isThrottle(@Nullable Throwable t) {
+        if( t instanceof CloudException ) {
+            CloudException e = (CloudException)t;
+
+            return (CloudErrorType.THROTTLING.equals(e.getErrorType()) || e.getHttpCode() == 429);
+        }
+        return false;
+    }
+
+    private final String        name;
+    private final AtomicInteger queueDepth    = new AtomicInteger(0);
+    private final AtomicLong    throttleCount = new AtomicLong(0L);
+
+    // guarded by this
+    private boolean decreased;
+    private long    lastDecrease;
+    private long    lastRefill;
+    private double  maxRate;
+    private double  rate;
+    private double  tokens;
+
+    private RateLimiter(@Nonnull String name, double maxRate) {
+        this.name = name;
+        this.maxRate = Math.max(DEFAULT_MIN_RATE, maxRate);
+        this.rate = this.maxRate;
+        this.tokens = getCapacity();
+        this.lastRefill = System.nanoTime();
+        this.decreased = false;
+    }
+
+    /**
+     * Waits until the caller may make a call. Callers are served in the order in which they reserve their slot.
+     * @throws InternalException the thread was interrupted while waiting
+     */
+    public void acquire() throws InternalException {
+        long waitNanos = reserve();
+
+        if( waitNanos > 0L ) {
+            queueDepth.incrementAndGet();
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InternalException(e);
+            }
+            finally {
+                queueDepth.decrementAndGet();
+            }
+        }
+    }
+
+    private double getCapacity() {
+        // allow a one second burst, but never less than a single call
+        return Math.max(1.0, rate);
+    }
+
+    /**
+     * @return the current ceiling on the rate
+     */
+    public synchronized double getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * @return the name of this limiter
+     */
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of callers currently waiting for a slot
+     */
+    public @Nonnegative int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return the current rate in calls per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return the number of throttling responses reported to this limiter
+     */
+    public @Nonnegative long getThrottleCount() {
+        return throttleCount.get();
+    }
+
+    /**
+     * Reports a failed call. Throttling failures reduce the rate; other failures are ignored.
+     * @param t the failure
+     */
+    public void onFailure(@Nullable Throwable t) {
+        if( isThrottle(t) ) {
+            onThrottle();
+        }
+    }
+
+    /**
+     * Reports a successful call, additively increasing the rate back towards the maximum.
+     */
+    public synchronized void onSuccess() {
+        if( rate < maxRate ) {
+            // roughly DEFAULT_ADDITIVE_INCREASE calls per second more for each second of successful calls
+            rate = Math.min(maxRate, rate + (DEFAULT_ADDITIVE_INCREASE / Math.max(1.0, rate)));
+        }
+    }
+
+    /**
+     * Reports a throttling response, multiplicatively decreasing the rate. Throttles arriving within
+     * {@link #THROTTLE_COOL_DOWN_MILLIS} (or one call interval, if longer) of the previous decrease are counted but do
+     * not decrease the rate again since they were caused by the same burst.
+     */
+    public void onThrottle() {
+        throttleCount.incrementAndGet();
+        synchronized( this ) {
+            long now = System.nanoTime();
+            long coolDown = Math.max(TimeUnit.MILLISECONDS.toNanos(THROTTLE_COOL_DOWN_MILLIS), (long)(TimeUnit.SECONDS.toNanos(1L) / rate));
+
+            // nanoTime has an arbitrary origin, so no value of lastDecrease can stand for "never"
+            if( !decreased || now - lastDecrease >= coolDown ) {
+                refill(now);
+                rate = Math.max(DEFAULT_MIN_RATE, rate * MULTIPLICATIVE_DECREASE);
+                tokens = Math.min(tokens, getCapacity());
+                lastDecrease = now;
+                decreased = true;
+                if( logger.isDebugEnabled() ) {
+                    logger.debug("Throttled by " + name + ", reducing rate to " + rate + "/s");
+                }
+            }
+        }
+    }
+
+    private void refill(long now) {
+        double elapsed = (now - lastRefill) / (double)TimeUnit.SECONDS.toNanos(1L);
+
+        tokens = Math.min(getCapacity(), tokens + (elapsed * rate));
+        lastRefill = now;
+    }
+
+    private synchronized long reserve() {
+        long now = System.nanoTime();
+
+        refill(now);
+        tokens -= 1.0;
+        if( tokens >= 0.0 ) {
+            return 0L;
+        }
+        // a negative balance is the queue of callers ahead of us; wait until it is paid off at the current rate
+        return (long)((-tokens / rate) * TimeUnit.SECONDS.toNanos(1L));
+    }
+
+    /**
+     * Changes the ceiling on the rate. The current rate is lowered if it is above the new ceiling.
+     * @param callsPerSecond the new maximum rate in calls per second
+     */
+    public synchronized void setMaxRate(double callsPerSecond) {
+        maxRate = Math.max(DEFAULT_MIN_RATE, callsPerSecond);
+        rate = Math.min(rate, maxRate);
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return name + " [" + getRate() + "/s, " + getQueueDepth() + " queued]";
+    }
+}
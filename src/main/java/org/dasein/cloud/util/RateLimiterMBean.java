@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * JMX view of the adaptive rate limiters that pace API calls to cloud providers. Limiters are named
+ * <code>endpoint|account|family</code>.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface RateLimiterMBean {
+    public @Nonnull String[] getLimiters();
+
+    public double getMaxRate(@Nonnull String limiterName);
+
+    public @Nonnegative int getQueueDepth(@Nonnull String limiterName);
+
+    public double getRate(@Nonnull String limiterName);
+
+    public @Nonnegative long getThrottleCount(@Nonnull String limiterName);
+
+    public void setMaxRate(@Nonnull String limiterName, double callsPerSecond);
+}
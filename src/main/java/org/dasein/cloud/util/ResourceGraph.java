@@ -0,0 +1,595 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.OperationNotSupportedException;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotSupport;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.network.Firewall;
+import org.dasein.cloud.network.FirewallSupport;
+import org.dasein.cloud.network.IPVersion;
+import org.dasein.cloud.network.IpAddress;
+import org.dasein.cloud.network.IpAddressSupport;
+import org.dasein.cloud.network.NetworkInterface;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.network.Subnet;
+import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.network.VLANSupport;
+import org.dasein.cloud.util.watch.ResourceChange;
+import org.dasein.cloud.util.watch.ResourceChangeListener;
+import org.dasein.cloud.util.watch.WatchCheckpoint;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A graph of the relationships between the resources of an account in a region, indexed in both directions so that
+ * reverse questions such as "which virtual machines are protected by this firewall" are answered without scanning
+ * any inventory. Each edge points from the dependent resource to the resource it depends on and belongs to the
+ * dependent resource, so updating a resource replaces exactly the edges it declares.
+ * <p>
+ * {@link #build(CloudProvider)} assembles the graph from one sweep of the compute and network services. It can then be
+ * kept current from listings of individual resources through the <code>update</code> methods or from a
+ * {@link org.dasein.cloud.util.watch.ResourceWatcher} through {@link #getListener(String)}.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ResourceGraph {
+    static private final Logger logger = Logger.getLogger(ResourceGraph.class);
+
+    /**
+     * The kinds of edge in the graph, each read as "source RELATIONSHIP target".
+     */
+    static public enum Relationship {
+        /**
+         * A volume, network interface or IP address attached to a virtual machine, or an IP address assigned to a
+         * network interface.
+         */
+        ATTACHED_TO,
+        /**
+         * A virtual machine launched from a machine image, or a volume created from a snapshot.
+         */
+        CREATED_FROM,
+        /**
+         * A virtual machine using a network interface.
+         */
+        HAS_INTERFACE,
+        /**
+         * A virtual machine or network interface placed in a subnet.
+         */
+        IN_SUBNET,
+        /**
+         * A resource placed in a VLAN.
+         */
+        IN_VLAN,
+        /**
+         * A virtual machine protected by a firewall.
+         */
+        PROTECTED_BY,
+        /**
+         * A snapshot taken of a volume.
+         */
+        SNAPSHOT_OF
+    }
+
+    /**
+     * Sweeps the compute and network services of the specified provider and builds the graph of their resources.
+     * Services the cloud does not offer are skipped.
+     * @param provider the provider whose resources are swept
+     * @return the graph
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    static public @Nonnull ResourceGraph build(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+        ResourceGraph graph = new ResourceGraph();
+        ComputeServices compute = provider.getComputeServices();
+        NetworkServices network = provider.getNetworkServices();
+
+        if( compute != null ) {
+            VirtualMachineSupport vmSupport = compute.getVirtualMachineSupport();
+            VolumeSupport volumeSupport = compute.getVolumeSupport();
+            SnapshotSupport snapshotSupport = compute.getSnapshotSupport();
+
+            if( vmSupport != null ) {
+                try {
+                    for( VirtualMachine vm : vmSupport.listVirtualMachines() ) {
+                        graph.update(vm);
+                    }
+                }
+                catch( OperationNotSupportedException e ) {
+                    logger.debug("Skipping virtual machines: " + e.getMessage());
+                }
+            }
+            if( volumeSupport != null ) {
+                try {
+                    for( Volume volume : volumeSupport.listVolumes() ) {
+                        graph.update(volume);
+                    }
+                }
+                catch( OperationNotSupportedException e ) {
+                    logger.debug("Skipping volumes: " + e.getMessage());
+                }
+            }
+            if( snapshotSupport != null ) {
+                try {
+                    for( Snapshot snapshot : snapshotSupport.listSnapshots() ) {
+                        graph.update(snapshot);
+                    }
+                }
+                catch( OperationNotSupportedException e ) {
+                    logger.debug("Skipping snapshots: " + e.getMessage());
+                }
+            }
+        }
+        if( network != null ) {
+            FirewallSupport firewallSupport = network.getFirewallSupport();
+            VLANSupport vlanSupport = network.getVlanSupport();
+            IpAddressSupport ipSupport = network.getIpAddressSupport();
+
+            if( firewallSupport != null ) {
+                try {
+                    for( Firewall firewall : firewallSupport.list() ) {
+                        graph.update(firewall);
+                    }
+                }
+                catch( OperationNotSupportedException e ) {
+                    logger.debug("Skipping firewalls: " + e.getMessage());
+                }
+            }
+            if( vlanSupport != null ) {
+                try {
+                    for( VLAN vlan : vlanSupport.listVlans() ) {
+                        for( Subnet subnet : vlanSupport.listSubnets(vlan.getProviderVlanId()) ) {
+                            graph.update(subnet);
+                        }
+                    }
+                }
+                catch( OperationNotSupportedException e ) {
+                    logger.debug("Skipping subnets: " + e.getMessage());
+                }
+                try {
+                    for( NetworkInterface nic : vlanSupport.listNetworkInterfaces() ) {
+                        graph.update(nic);
+                    }
+                }
+                catch( OperationNotSupportedException e ) {
+                    logger.debug("Skipping network interfaces: " + e.getMessage());
+                }
+            }
+            if( ipSupport != null ) {
+                try {
+                    for( IpAddress address : ipSupport.listIpPool(IPVersion.IPV4, false) ) {
+                        graph.update(address);
+                    }
+                }
+                catch( OperationNotSupportedException e ) {
+                    logger.debug("Skipping IP addresses: " + e.getMessage());
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * @return an empty graph to be fed through the <code>update</code> methods
+     */
+    static public @Nonnull ResourceGraph getInstance() {
+        return new ResourceGraph();
+    }
+
+    static private void add(@Nonnull Map<Relationship,Set<ResourceReference>> edges, @Nonnull Relationship relationship, @Nonnull String resourceType, @Nullable String resourceId) {
+        if( resourceId == null || resourceId.isEmpty() ) {
+            return;
+        }
+        Set<ResourceReference> targets = edges.get(relationship);
+
+        if( targets == null ) {
+            targets = new LinkedHashSet<ResourceReference>();
+            edges.put(relationship, targets);
+        }
+        targets.add(ResourceReference.getInstance(resourceType, resourceId));
+    }
+
+    static private @Nonnull Map<Relationship,Set<ResourceReference>> edges() {
+        return new EnumMap<Relationship, Set<ResourceReference>>(Relationship.class);
+    }
+
+    private final Map<ResourceReference,Map<Relationship,Set<ResourceReference>>> incoming = new HashMap<ResourceReference, Map<Relationship, Set<ResourceReference>>>();
+    private final ReadWriteLock                                                   lock     = new ReentrantReadWriteLock();
+    private final Map<ResourceReference,Map<Relationship,Set<ResourceReference>>> outgoing = new HashMap<ResourceReference, Map<Relationship, Set<ResourceReference>>>();
+
+    private ResourceGraph() { }
+
+    /**
+     * Finds everything that depends on a resource, directly or through other resources; for a firewall, the virtual
+     * machines it protects and the volumes, interfaces and addresses attached to them.
+     * @param ref the resource
+     * @param maxDepth the maximum number of edges between the resource and a dependent
+     * @return the dependents in breadth first order, excluding the resource itself
+     */
+    public @Nonnull Set<ResourceReference> getDependents(@Nonnull ResourceReference ref, @Nonnegative int maxDepth) {
+        lock.readLock().lock();
+        try {
+            Set<ResourceReference> found = new LinkedHashSet<ResourceReference>();
+            List<ResourceReference> frontier = Collections.singletonList(ref);
+
+            for( int depth=0; depth<maxDepth && !frontier.isEmpty(); depth++ ) {
+                List<ResourceReference> next = new ArrayList<ResourceReference>();
+
+                for( ResourceReference node : frontier ) {
+                    Map<Relationship,Set<ResourceReference>> sources = incoming.get(node);
+
+                    if( sources != null ) {
+                        for( Set<ResourceReference> refs : sources.values() ) {
+                            for( ResourceReference source : refs ) {
+                                if( !source.equals(ref) && found.add(source) ) {
+                                    next.add(source);
+                                }
+                            }
+                        }
+                    }
+                }
+                frontier = next;
+            }
+            return found;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a listener that applies the changes found by a resource watcher to this graph.
+     * @param resourceType the type name of the watched resources, as returned by the watch source
+     * @param <T> the type of resource
+     * @return the listener
+     */
+    public @Nonnull <T> ResourceChangeListener<T> getListener(@Nonnull final String resourceType) {
+        return new ResourceChangeListener<T>() {
+            @Override
+            public void changed(@Nonnull List<ResourceChange<T>> changes, @Nonnull WatchCheckpoint checkpoint) {
+                for( ResourceChange<T> change : changes ) {
+                    T resource = change.getResource();
+
+                    if( ResourceChange.Type.DELETED.equals(change.getType()) || resource == null ) {
+                        remove(ResourceReference.getInstance(resourceType, change.getResourceId()));
+                    }
+                    else {
+                        updateResource(resource);
+                    }
+                }
+            }
+
+            @Override
+            public void failed(@Nonnull Throwable error) {
+                // the graph stays as of the last successful poll
+            }
+        };
+    }
+
+    private @Nonnull Set<ResourceReference> getNeighbors(@Nonnull Map<ResourceReference,Map<Relationship,Set<ResourceReference>>> index, @Nonnull ResourceReference ref, @Nonnull Relationship relationship) {
+        lock.readLock().lock();
+        try {
+            Map<Relationship,Set<ResourceReference>> edges = index.get(ref);
+            Set<ResourceReference> refs = (edges == null ? null : edges.get(relationship));
+
+            if( refs == null || refs.isEmpty() ) {
+                return Collections.emptySet();
+            }
+            return Collections.unmodifiableSet(new LinkedHashSet<ResourceReference>(refs));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Follows an edge backwards: for a firewall and {@link Relationship#PROTECTED_BY}, the virtual machines it protects.
+     * @param ref the target resource
+     * @param relationship the kind of edge
+     * @return the resources with an edge of that kind to the target
+     */
+    public @Nonnull Set<ResourceReference> getSources(@Nonnull ResourceReference ref, @Nonnull Relationship relationship) {
+        return getNeighbors(incoming, ref, relationship);
+    }
+
+    /**
+     * Follows an edge forwards: for a virtual machine and {@link Relationship#PROTECTED_BY}, the firewalls protecting it.
+     * @param ref the source resource
+     * @param relationship the kind of edge
+     * @return the resources the source has an edge of that kind to
+     */
+    public @Nonnull Set<ResourceReference> getTargets(@Nonnull ResourceReference ref, @Nonnull Relationship relationship) {
+        return getNeighbors(outgoing, ref, relationship);
+    }
+
+    /**
+     * Replaces the edges declared by a resource.
+     * @param ref the resource
+     * @param edges its edges by kind, or <code>null</code> to drop them
+     */
+    public void put(@Nonnull ResourceReference ref, @Nullable Map<Relationship,Set<ResourceReference>> edges) {
+        lock.writeLock().lock();
+        try {
+            Map<Relationship,Set<ResourceReference>> old = outgoing.remove(ref);
+
+            if( old != null ) {
+                for( Map.Entry<Relationship,Set<ResourceReference>> entry : old.entrySet() ) {
+                    for( ResourceReference target : entry.getValue() ) {
+                        Map<Relationship,Set<ResourceReference>> sources = incoming.get(target);
+                        Set<ResourceReference> refs = (sources == null ? null : sources.get(entry.getKey()));
+
+                        if( refs != null && refs.remove(ref) && refs.isEmpty() ) {
+                            sources.remove(entry.getKey());
+                            if( sources.isEmpty() ) {
+                                incoming.remove(target);
+                            }
+                        }
+                    }
+                }
+            }
+            if( edges != null && !edges.isEmpty() ) {
+                Map<Relationship,Set<ResourceReference>> copy = edges();
+
+                for( Map.Entry<Relationship,Set<ResourceReference>> entry : edges.entrySet() ) {
+                    if( entry.getValue().isEmpty() ) {
+                        continue;
+                    }
+                    copy.put(entry.getKey(), new LinkedHashSet<ResourceReference>(entry.getValue()));
+                    for( ResourceReference target : entry.getValue() ) {
+                        Map<Relationship,Set<ResourceReference>> sources = incoming.get(target);
+
+                        if( sources == null ) {
+                            sources = edges();
+                            incoming.put(target, sources);
+                        }
+                        Set<ResourceReference> refs = sources.get(entry.getKey());
+
+                        if( refs == null ) {
+                            refs = new HashSet<ResourceReference>();
+                            sources.put(entry.getKey(), refs);
+                        }
+                        refs.add(ref);
+                    }
+                }
+                outgoing.put(ref, copy);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops a deleted resource: the edges it declared and the edges other resources declared to it.
+     * @param ref the resource
+     */
+    public void remove(@Nonnull ResourceReference ref) {
+        lock.writeLock().lock();
+        try {
+            put(ref, null);
+
+            Map<Relationship,Set<ResourceReference>> sources = incoming.remove(ref);
+
+            if( sources != null ) {
+                for( Map.Entry<Relationship,Set<ResourceReference>> entry : sources.entrySet() ) {
+                    for( ResourceReference source : entry.getValue() ) {
+                        Map<Relationship,Set<ResourceReference>> edges = outgoing.get(source);
+                        Set<ResourceReference> refs = (edges == null ? null : edges.get(entry.getKey()));
+
+                        if( refs != null && refs.remove(ref) && refs.isEmpty() ) {
+                            edges.remove(entry.getKey());
+                            if( edges.isEmpty() ) {
+                                outgoing.remove(source);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of resources with at least one edge
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            Set<ResourceReference> nodes = new HashSet<ResourceReference>(outgoing.keySet());
+
+            nodes.addAll(incoming.keySet());
+            return nodes.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the edges of a firewall with those it currently declares.
+     * @param firewall the firewall
+     */
+    public void update(@Nonnull Firewall firewall) {
+        String id = firewall.getProviderFirewallId();
+
+        if( id != null ) {
+            Map<Relationship,Set<ResourceReference>> edges = edges();
+
+            add(edges, Relationship.IN_VLAN, ResourceReference.VLAN, firewall.getProviderVlanId());
+            put(ResourceReference.getInstance(ResourceReference.FIREWALL, id), edges);
+        }
+    }
+
+    /**
+     * Replaces the edges of an IP address with those it currently declares.
+     * @param address the IP address
+     */
+    public void update(@Nonnull IpAddress address) {
+        Map<Relationship,Set<ResourceReference>> edges = edges();
+
+        add(edges, Relationship.ATTACHED_TO, ResourceReference.VIRTUAL_MACHINE, address.getServerId());
+        add(edges, Relationship.ATTACHED_TO, ResourceReference.NETWORK_INTERFACE, address.getProviderNetworkInterfaceId());
+        add(edges, Relationship.IN_VLAN, ResourceReference.VLAN, address.getProviderVlanId());
+        put(ResourceReference.getInstance(ResourceReference.IP_ADDRESS, address.getProviderIpAddressId()), edges);
+    }
+
+    /**
+     * Replaces the edges of a network interface with those it currently declares.
+     * @param nic the network interface
+     */
+    public void update(@Nonnull NetworkInterface nic) {
+        String id = nic.getProviderNetworkInterfaceId();
+
+        if( id != null ) {
+            Map<Relationship,Set<ResourceReference>> edges = edges();
+
+            add(edges, Relationship.ATTACHED_TO, ResourceReference.VIRTUAL_MACHINE, nic.getProviderVirtualMachineId());
+            add(edges, Relationship.IN_SUBNET, ResourceReference.SUBNET, nic.getProviderSubnetId());
+            add(edges, Relationship.IN_VLAN, ResourceReference.VLAN, nic.getProviderVlanId());
+            put(ResourceReference.getInstance(ResourceReference.NETWORK_INTERFACE, id), edges);
+        }
+    }
+
+    /**
+     * Replaces the edges of a snapshot with those it currently declares.
+     * @param snapshot the snapshot
+     */
+    public void update(@Nonnull Snapshot snapshot) {
+        String id = snapshot.getProviderSnapshotId();
+
+        if( id != null ) {
+            Map<Relationship,Set<ResourceReference>> edges = edges();
+
+            add(edges, Relationship.SNAPSHOT_OF, ResourceReference.VOLUME, snapshot.getVolumeId());
+            put(ResourceReference.getInstance(ResourceReference.SNAPSHOT, id), edges);
+        }
+    }
+
+    /**
+     * Replaces the edges of a subnet with those it currently declares.
+     * @param subnet the subnet
+     */
+    public void update(@Nonnull Subnet subnet) {
+        Map<Relationship,Set<ResourceReference>> edges = edges();
+
+        add(edges, Relationship.IN_VLAN, ResourceReference.VLAN, subnet.getProviderVlanId());
+        put(ResourceReference.getInstance(ResourceReference.SUBNET, subnet.getProviderSubnetId()), edges);
+    }
+
+    /**
+     * Replaces the edges of a virtual machine with those it currently declares. Attached volumes are recorded from the
+     * volumes' side, since listing them from the virtual machine may call the cloud.
+     * @param vm the virtual machine
+     */
+    public void update(@Nonnull VirtualMachine vm) {
+        String id = vm.getProviderVirtualMachineId();
+
+        if( id != null ) {
+            Map<Relationship,Set<ResourceReference>> edges = edges();
+            String[] firewallIds = vm.getProviderFirewallIds();
+            String[] nicIds = vm.getProviderNetworkInterfaceIds();
+
+            if( firewallIds != null ) {
+                for( String firewallId : firewallIds ) {
+                    add(edges, Relationship.PROTECTED_BY, ResourceReference.FIREWALL, firewallId);
+                }
+            }
+            if( nicIds != null ) {
+                for( String nicId : nicIds ) {
+                    add(edges, Relationship.HAS_INTERFACE, ResourceReference.NETWORK_INTERFACE, nicId);
+                }
+            }
+            add(edges, Relationship.CREATED_FROM, ResourceReference.MACHINE_IMAGE, vm.getProviderMachineImageId());
+            add(edges, Relationship.IN_SUBNET, ResourceReference.SUBNET, vm.getProviderSubnetId());
+            add(edges, Relationship.IN_VLAN, ResourceReference.VLAN, vm.getProviderVlanId());
+            put(ResourceReference.getInstance(ResourceReference.VIRTUAL_MACHINE, id), edges);
+        }
+    }
+
+    /**
+     * Replaces the edges of a volume with those it currently declares.
+     * @param volume the volume
+     */
+    public void update(@Nonnull Volume volume) {
+        String id = volume.getProviderVolumeId();
+
+        if( id != null ) {
+            Map<Relationship,Set<ResourceReference>> edges = edges();
+
+            add(edges, Relationship.ATTACHED_TO, ResourceReference.VIRTUAL_MACHINE, volume.getProviderVirtualMachineId());
+            add(edges, Relationship.CREATED_FROM, ResourceReference.SNAPSHOT, volume.getProviderSnapshotId());
+            add(edges, Relationship.IN_VLAN, ResourceReference.VLAN, volume.getProviderVlanId());
+            put(ResourceReference.getInstance(ResourceReference.VOLUME, id), edges);
+        }
+    }
+
+    private void updateResource(@Nonnull Object resource) {
+        if( resource instanceof VirtualMachine ) {
+            update((VirtualMachine)resource);
+        }
+        else if( resource instanceof Volume ) {
+            update((Volume)resource);
+        }
+        else if( resource instanceof Snapshot ) {
+            update((Snapshot)resource);
+        }
+        else if( resource instanceof Firewall ) {
+            update((Firewall)resource);
+        }
+        else if( resource instanceof Subnet ) {
+            update((Subnet)resource);
+        }
+        else if( resource instanceof NetworkInterface ) {
+            update((NetworkInterface)resource);
+        }
+        else if( resource instanceof IpAddress ) {
+            update((IpAddress)resource);
+        }
+        else {
+            logger.warn("Ignoring change to a resource the graph does not track: " + resource.getClass().getName());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Identifies a resource of any type by its type name and provider ID, for structures that span services. Type names
+ * are the simple names of the model classes, as in {@link #VIRTUAL_MACHINE}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ResourceReference implements Comparable<ResourceReference> {
+    static public final String BLOB              = "Blob";
+    static public final String DATABASE          = "Database";
+    static public final String FIREWALL          = "Firewall";
+    static public final String IP_ADDRESS        = "IpAddress";
+    static public final String MACHINE_IMAGE     = "MachineImage";
+    static public final String NETWORK_INTERFACE = "NetworkInterface";
+    static public final String SNAPSHOT          = "Snapshot";
+    static public final String SUBNET            = "Subnet";
+    static public final String VIRTUAL_MACHINE   = "VirtualMachine";
+    static public final String VLAN              = "VLAN";
+    static public final String VOLUME            = "Volume";
+
+    /**
+     * @param resourceType the type name of the resource
+     * @param resourceId the provider ID of the resource
+     * @return a reference to the resource
+     */
+    static public @Nonnull ResourceReference getInstance(@Nonnull String resourceType, @Nonnull String resourceId) {
+        return new ResourceReference(resourceType, resourceId);
+    }
+
+    private final String resourceId;
+    private final String resourceType;
+
+    private ResourceReference(@Nonnull String resourceType, @Nonnull String resourceId) {
+        this.resourceType = resourceType;
+        this.resourceId = resourceId;
+    }
+
+    @Override
+    public int compareTo(@Nonnull ResourceReference other) {
+        int c = resourceType.compareTo(other.resourceType);
+
+        return (c != 0 ? c : resourceId.compareTo(other.resourceId));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if( other == this ) {
+            return true;
+        }
+        if( !(other instanceof ResourceReference) ) {
+            return false;
+        }
+        ResourceReference ref = (ResourceReference)other;
+
+        return (resourceType.equals(ref.resourceType) && resourceId.equals(ref.resourceId));
+    }
+
+    /**
+     * @return the provider ID of the resource
+     */
+    public @Nonnull String getResourceId() {
+        return resourceId;
+    }
+
+    /**
+     * @return the type name of the resource
+     */
+    public @Nonnull String getResourceType() {
+        return resourceType;
+    }
+
+    @Override
+    public int hashCode() {
+        return resourceType.hashCode() * 31 + resourceId.hashCode();
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return resourceType + ":" + resourceId;
+    }
+}
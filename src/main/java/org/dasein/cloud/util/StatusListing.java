@@ -0,0 +1,258 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.util.uom.time.Second;
+import org.dasein.util.uom.time.TimePeriod;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+/**
+ * Support for the listXXXStatus() methods. Status listings are projected lazily from whatever listing a provider has,
+ * so a provider with a cheap ID and state call streams {@link ResourceStatus} objects without building full resource
+ * objects, and a provider without one only keeps a single resource alive at a time.
+ * <p>
+ * Caching is opt-in. A context that sets the {@link #TTL_PROPERTY} custom property to a positive number of seconds
+ * has its listings held in a short-lived {@link Cache} per resource type and lifetime, shared by all services of the
+ * same provider class, so frequent polls for the same account and region share a single call to the cloud. A cached
+ * listing still streams from the cloud the first time it is read and is only stored once it has been read to the
+ * end. Nothing invalidates the cache when resources change, so a cached status may be up to the lifetime out of
+ * date after a start, stop, attach or similar change; callers that need to see their own changes at once should
+ * leave caching off or call {@link #invalidate(CloudProvider, String)}.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class StatusListing {
+    static private final Logger logger = Logger.getLogger(StatusListing.class);
+
+    /**
+     * Custom property on the provider context that overrides {@link #DEFAULT_TTL}.
+     */
+    static public final String TTL_PROPERTY = "statusCacheSeconds";
+
+    /**
+     * The default number of seconds a status listing is reused; 0 means listings are not cached.
+     */
+    static public final int DEFAULT_TTL = 0;
+
+    // the lifetimes in use for each resource type, each of which has a cache of its own
+    static private final HashMap<String,TreeSet<Integer>> timesToLive = new HashMap<String, TreeSet<Integer>>();
+
+    /**
+     * Extracts the status of a resource.
+     * @param <T> the type of resource
+     */
+    public interface StatusFunction<T> {
+        public @Nullable ResourceStatus getStatus(@Nonnull T resource);
+    }
+
+    /**
+     * Fetches a status listing from the cloud.
+     */
+    public interface StatusSource {
+        public @Nonnull Iterable<ResourceStatus> listStatus() throws CloudException, InternalException;
+    }
+
+    /**
+     * Projects each resource of a listing onto its status as the listing is iterated. Resources for which the
+     * function returns <code>null</code> are skipped.
+     * @param resources the resources
+     * @param statusFunction extracts the status of each resource
+     * @param <T> the type of resource
+     * @return a view of the listing as statuses
+     */
+    static public @Nonnull <T> Iterable<ResourceStatus> project(final @Nonnull Iterable<T> resources, final @Nonnull StatusFunction<T> statusFunction) {
+        return new Iterable<ResourceStatus>() {
+            @Override
+            public @Nonnull Iterator<ResourceStatus> iterator() {
+                final Iterator<T> it = resources.iterator();
+
+                return new Iterator<ResourceStatus>() {
+                    private ResourceStatus next;
+
+                    @Override
+                    public boolean hasNext() {
+                        while( next == null && it.hasNext() ) {
+                            T resource = it.next();
+
+                            if( resource != null ) {
+                                next = statusFunction.getStatus(resource);
+                            }
+                        }
+                        return (next != null);
+                    }
+
+                    @Override
+                    public ResourceStatus next() {
+                        if( !hasNext() ) {
+                            throw new NoSuchElementException();
+                        }
+                        ResourceStatus status = next;
+
+                        next = null;
+                        return status;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Lists the status of all resources of a type. If the context opts in to caching, a listing made within its cache
+     * lifetime for the same cloud, account and region is reused.
+     * @param provider the provider making the call
+     * @param resourceType a name for the type of resource, such as <code>VirtualMachine</code>
+     * @param source fetches the listing from the cloud on a cache miss
+     * @return the status of each resource
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    static public @Nonnull Iterable<ResourceStatus> list(@Nonnull CloudProvider provider, @Nonnull String resourceType, @Nonnull StatusSource source) throws CloudException, InternalException {
+        ProviderContext ctx = provider.getContext();
+        int ttl = getTimeToLive(ctx);
+
+        if( ctx == null || ttl < 1 ) {
+            return source.listStatus();
+        }
+        synchronized( timesToLive ) {
+            TreeSet<Integer> ttls = timesToLive.get(resourceType);
+
+            if( ttls == null ) {
+                ttls = new TreeSet<Integer>();
+                timesToLive.put(resourceType, ttls);
+            }
+            ttls.add(ttl);
+        }
+        Cache<ResourceStatus> cache = getCache(provider, resourceType, ttl);
+        Iterable<ResourceStatus> status = cache.get(ctx);
+
+        if( status != null ) {
+            return status;
+        }
+        return record(source.listStatus(), cache, ctx);
+    }
+
+    /**
+     * Streams a listing and caches what was read once an iteration reaches the end.
+     */
+    static private @Nonnull Iterable<ResourceStatus> record(final @Nonnull Iterable<ResourceStatus> listing, final @Nonnull Cache<ResourceStatus> cache, final @Nonnull ProviderContext ctx) {
+        return new Iterable<ResourceStatus>() {
+            @Override
+            public @Nonnull Iterator<ResourceStatus> iterator() {
+                final Iterator<ResourceStatus> it = listing.iterator();
+                final ArrayList<ResourceStatus> read = new ArrayList<ResourceStatus>();
+
+                return new Iterator<ResourceStatus>() {
+                    private boolean stored;
+
+                    @Override
+                    public boolean hasNext() {
+                        if( it.hasNext() ) {
+                            return true;
+                        }
+                        if( !stored ) {
+                            stored = true;
+                            cache.put(ctx, Collections.unmodifiableList(read));
+                        }
+                        return false;
+                    }
+
+                    @Override
+                    public ResourceStatus next() {
+                        ResourceStatus status = it.next();
+
+                        read.add(status);
+                        return status;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Discards the cached status listings of a resource type after a change that makes them stale.
+     * @param provider the provider that made the change
+     * @param resourceType the type of resource that changed
+     */
+    static public void invalidate(@Nonnull CloudProvider provider, @Nonnull String resourceType) {
+        ArrayList<Integer> ttls;
+
+        synchronized( timesToLive ) {
+            TreeSet<Integer> used = timesToLive.get(resourceType);
+
+            if( used == null ) {
+                return;
+            }
+            ttls = new ArrayList<Integer>(used);
+        }
+        for( int ttl : ttls ) {
+            getCache(provider, resourceType, ttl).clear();
+        }
+    }
+
+    static private @Nonnull Cache<ResourceStatus> getCache(@Nonnull CloudProvider provider, @Nonnull String resourceType, int ttl) {
+        return Cache.getInstance(provider, "status." + resourceType + "." + ttl, ResourceStatus.class, CacheLevel.REGION_ACCOUNT, new TimePeriod<Second>(ttl, TimePeriod.SECOND));
+    }
+
+    static private int getTimeToLive(@Nullable ProviderContext ctx) {
+        if( ctx == null ) {
+            return DEFAULT_TTL;
+        }
+        String value = ctx.getCustomProperties().getProperty(TTL_PROPERTY);
+
+        if( value == null ) {
+            return DEFAULT_TTL;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch( NumberFormatException e ) {
+            logger.warn("Ignoring invalid " + TTL_PROPERTY + ": " + value);
+            return DEFAULT_TTL;
+        }
+    }
+
+    private StatusListing() { }
+}
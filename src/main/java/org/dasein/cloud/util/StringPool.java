@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.apache.log4j.Logger;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nullable;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, concurrent pool of canonical strings for the low-cardinality identifiers repeated across model objects:
+ * region, data center, owner and product IDs and tag keys. A listing of many thousands of resources otherwise holds a
+ * separate copy of the same region ID in every object. The model setters for those fields pass their values through
+ * {@link #intern(String)}, so every mapping path, whether a requester mapper or hand-written parsing, shares them.
+ * <p>
+ * Unlike {@link String#intern()}, the pool is bounded and lives on the ordinary heap. When it reaches its maximum
+ * size it is flushed and starts over, which costs some sharing but never memory. Strings longer than
+ * {@link #MAX_LENGTH} are never pooled, since they are rarely identifiers.
+ * </p>
+ * <p>
+ * The pool is on unless the system property {@link #ENABLED_PROPERTY} is <code>false</code>, and can be switched on
+ * and off at runtime to compare heap use. Its hit rate and an estimate of the bytes saved are exposed over JMX as
+ * <code>org.dasein:type=StringPool</code>.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class StringPool {
+    static private final Logger logger = Logger.getLogger(StringPool.class);
+
+    /**
+     * System property that disables the pool when set to <code>false</code>.
+     */
+    static public final String ENABLED_PROPERTY  = "dasein.stringPool";
+
+    /**
+     * System property that overrides {@link #DEFAULT_MAX_SIZE}.
+     */
+    static public final String MAX_SIZE_PROPERTY = "dasein.stringPool.maxSize";
+
+    static public final int DEFAULT_MAX_SIZE = 65536;
+    static public final int MAX_LENGTH       = 256;
+
+    static private final ConcurrentHashMap<String,String> pool       = new ConcurrentHashMap<String, String>();
+    static private final AtomicInteger                    size       = new AtomicInteger(0);
+    static private final AtomicLong                       bytesSaved = new AtomicLong(0L);
+    static private final AtomicLong                       flushes    = new AtomicLong(0L);
+    static private final AtomicLong                       hits       = new AtomicLong(0L);
+    static private final AtomicLong                       lookups    = new AtomicLong(0L);
+
+    static private volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+    static private volatile int     maxSize = DEFAULT_MAX_SIZE;
+
+    static public class StringPoolDelegate implements StringPoolMBean {
+        @Override
+        public @Nonnegative long getBytesSaved() {
+            return StringPool.getBytesSaved();
+        }
+
+        @Override
+        public @Nonnegative long getFlushes() {
+            return StringPool.getFlushes();
+        }
+
+        @Override
+        public @Nonnegative long getHits() {
+            return StringPool.getHits();
+        }
+
+        @Override
+        public @Nonnegative long getLookups() {
+            return StringPool.getLookups();
+        }
+
+        @Override
+        public @Nonnegative int getMaxSize() {
+            return StringPool.getMaxSize();
+        }
+
+        @Override
+        public @Nonnegative int getSize() {
+            return StringPool.getSize();
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return StringPool.isEnabled();
+        }
+
+        @Override
+        public void clear() {
+            StringPool.clear();
+        }
+
+        @Override
+        public void reset() {
+            StringPool.reset();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            StringPool.setEnabled(enabled);
+        }
+
+        @Override
+        public void setMaxSize(@Nonnegative int maxSize) {
+            StringPool.setMaxSize(maxSize);
+        }
+    }
+
+    static {
+        String value = System.getProperty(MAX_SIZE_PROPERTY);
+
+        if( value != null ) {
+            try {
+                setMaxSize(Integer.parseInt(value));
+            }
+            catch( NumberFormatException e ) {
+                logger.warn("Ignoring invalid " + MAX_SIZE_PROPERTY + ": " + value);
+            }
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.dasein:type=StringPool");
+
+            // the delegate's name does not follow the standard MBean naming rule, so its interface is given explicitly
+            server.registerMBean(new StandardMBean(new StringPoolDelegate(), StringPoolMBean.class), name);
+        }
+        catch( Throwable t ) {
+            logger.error("Unable to set up string pool MBean: " + t.getMessage());
+        }
+    }
+
+    /**
+     * Provides the canonical instance of the specified string, adding it to the pool if it is not already there.
+     * @param value the string to canonicalize
+     * @return the pooled instance equal to the value, or the value itself if the pool is disabled, the value is too
+     * long or it is <code>null</code>
+     */
+    static public @Nullable String intern(@Nullable String value) {
+        if( value == null || !enabled || value.length() > MAX_LENGTH ) {
+            return value;
+        }
+        lookups.incrementAndGet();
+
+        String pooled = pool.get(value);
+
+        if( pooled == null ) {
+            if( size.get() >= maxSize ) {
+                flush();
+            }
+            pooled = pool.putIfAbsent(value, value);
+            if( pooled == null ) {
+                size.incrementAndGet();
+                return value;
+            }
+        }
+        if( pooled != value ) {
+            hits.incrementAndGet();
+            bytesSaved.addAndGet(sizeOf(value));
+        }
+        return pooled;
+    }
+
+    // a String and its char[] on a 64-bit JVM with compressed references, each padded to 8 bytes
+    static private long sizeOf(String value) {
+        return 24L + ((16L + 2L * value.length() + 7L) & ~7L);
+    }
+
+    static private void flush() {
+        pool.clear();
+        size.set(0);
+        flushes.incrementAndGet();
+    }
+
+    /**
+     * Empties the pool without resetting its statistics.
+     */
+    static public void clear() {
+        pool.clear();
+        size.set(0);
+    }
+
+    /**
+     * @return an estimate of the heap freed by returning pooled instances in place of equal copies
+     */
+    static public @Nonnegative long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return the number of times the pool was flushed for reaching its maximum size
+     */
+    static public @Nonnegative long getFlushes() {
+        return flushes.get();
+    }
+
+    /**
+     * @return the number of lookups that replaced a copy with the pooled instance
+     */
+    static public @Nonnegative long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of strings passed through the pool while it was enabled
+     */
+    static public @Nonnegative long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return the number of strings the pool holds before it is flushed
+     */
+    static public @Nonnegative int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the approximate number of strings in the pool
+     */
+    static public @Nonnegative int getSize() {
+        return size.get();
+    }
+
+    /**
+     * @return true if strings are being canonicalized
+     */
+    static public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Resets the statistics to zero.
+     */
+    static public void reset() {
+        bytesSaved.set(0L);
+        flushes.set(0L);
+        hits.set(0L);
+        lookups.set(0L);
+    }
+
+    /**
+     * Switches canonicalization on or off. Switching it off empties the pool, so the strings it held can be collected
+     * once no model object refers to them.
+     * @param enabled true to canonicalize strings
+     */
+    static public void setEnabled(boolean enabled) {
+        StringPool.enabled = enabled;
+        if( !enabled ) {
+            clear();
+        }
+    }
+
+    /**
+     * Sets the number of strings the pool holds before it is flushed.
+     * @param maxSize the maximum size, at least 1
+     */
+    static public void setMaxSize(@Nonnegative int maxSize) {
+        StringPool.maxSize = Math.max(1, maxSize);
+    }
+
+    private StringPool() { }
+}
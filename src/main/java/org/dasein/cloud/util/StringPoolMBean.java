@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import javax.annotation.Nonnegative;
+
+/**
+ * JMX view of the pool that canonicalizes identifiers repeated across model objects.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface StringPoolMBean {
+    public @Nonnegative long getBytesSaved();
+
+    public @Nonnegative long getFlushes();
+
+    public @Nonnegative long getHits();
+
+    public @Nonnegative long getLookups();
+
+    public @Nonnegative int getMaxSize();
+
+    public @Nonnegative int getSize();
+
+    public boolean isEnabled();
+
+    public void clear();
+
+    public void reset();
+
+    public void setEnabled(boolean enabled);
+
+    public void setMaxSize(@Nonnegative int maxSize);
+}
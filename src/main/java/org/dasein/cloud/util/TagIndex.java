@@ -0,0 +1,517 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.Tag;
+import org.dasein.cloud.Taggable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An optional in-memory inverted index from tags to the resources carrying them, across every {@link Taggable}
+ * resource type of an account in a region. It answers questions such as "everything tagged cost-center=42" without
+ * listing each service in full.
+ * <p>
+ * The index is fed by listings through {@link #refresh(String, Iterable, BatchLookup.IdFunction)}, one resource type
+ * at a time, and kept current between refreshes by the tag mutation methods of the abstract support classes. Each
+ * change is reported once per resource, after the protected hook that applies it in the cloud returns; a support
+ * without tagging reports nothing. Implementations overriding the public tag methods instead of the hooks may report
+ * their changes through {@link #tagsUpdated(CloudProvider, String, String[], Tag...)} and its siblings.
+ * </p>
+ * <p>
+ * As with {@link org.dasein.cloud.CloudProvider#matchesTags(java.util.Map, String, String, java.util.Map)}, keys match
+ * exactly and values match regardless of case.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class TagIndex {
+    static private final ConcurrentHashMap<String,TagIndex> indexes = new ConcurrentHashMap<String, TagIndex>();
+
+    /**
+     * Fetches the index for the account and region of the specified provider, creating it if this is the first use.
+     * @param provider the provider whose resources are indexed
+     * @return the index
+     */
+    static public @Nonnull TagIndex getInstance(@Nonnull CloudProvider provider) {
+        String key = getKey(provider);
+        TagIndex index = indexes.get(key);
+
+        if( index == null ) {
+            index = new TagIndex();
+
+            TagIndex existing = indexes.putIfAbsent(key, index);
+
+            if( existing != null ) {
+                index = existing;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Fetches the index for the account and region of the specified provider without creating one.
+     * @param provider the provider whose resources are indexed
+     * @return the index, or <code>null</code> if nobody asked for one
+     */
+    static public @Nullable TagIndex find(@Nonnull CloudProvider provider) {
+        return indexes.get(getKey(provider));
+    }
+
+    /**
+     * Removes all indexes. Intended for tests and for clients reconfiguring their clouds.
+     */
+    static public void clear() {
+        indexes.clear();
+    }
+
+    static private @Nonnull String getKey(@Nonnull CloudProvider provider) {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            return provider.getClass().getName();
+        }
+        return provider.getClass().getName() + "|" + ctx.getCloud().getEndpoint() + "|" + ctx.getAccountNumber() + "|" + ctx.getRegionId();
+    }
+
+    /**
+     * Reports tags added to or changed on resources to the provider's index, if there is one.
+     * @param provider the provider that changed the tags
+     * @param resourceType the type name of the resources
+     * @param resourceIds the provider IDs of the resources
+     * @param tags the tags set on each resource
+     */
+    static public void tagsUpdated(@Nonnull CloudProvider provider, @Nonnull String resourceType, @Nonnull String[] resourceIds, @Nonnull Tag... tags) {
+        TagIndex index = find(provider);
+
+        if( index != null ) {
+            for( String id : resourceIds ) {
+                index.update(ResourceReference.getInstance(resourceType, id), tags);
+            }
+        }
+    }
+
+    /**
+     * Reports tags removed from resources to the provider's index, if there is one.
+     * @param provider the provider that changed the tags
+     * @param resourceType the type name of the resources
+     * @param resourceIds the provider IDs of the resources
+     * @param tags the tags removed from each resource
+     */
+    static public void tagsRemoved(@Nonnull CloudProvider provider, @Nonnull String resourceType, @Nonnull String[] resourceIds, @Nonnull Tag... tags) {
+        TagIndex index = find(provider);
+
+        if( index != null ) {
+            for( String id : resourceIds ) {
+                index.remove(ResourceReference.getInstance(resourceType, id), tags);
+            }
+        }
+    }
+
+    /**
+     * Reports resources whose tags were replaced to the provider's index, if there is one.
+     * @param provider the provider that changed the tags
+     * @param resourceType the type name of the resources
+     * @param resourceIds the provider IDs of the resources
+     * @param tags the complete set of tags now on each resource
+     */
+    static public void tagsReplaced(@Nonnull CloudProvider provider, @Nonnull String resourceType, @Nonnull String[] resourceIds, @Nonnull Tag... tags) {
+        TagIndex index = find(provider);
+
+        if( index != null ) {
+            Map<String,String> map = new HashMap<String, String>();
+
+            for( Tag tag : tags ) {
+                map.put(tag.getKey(), tag.getValue());
+            }
+            for( String id : resourceIds ) {
+                index.put(ResourceReference.getInstance(resourceType, id), map);
+            }
+        }
+    }
+
+    static private @Nonnull String normalize(@Nullable String value) {
+        return (value == null ? "" : value.toLowerCase());
+    }
+
+    private final ReadWriteLock                                         lock      = new ReentrantReadWriteLock();
+    private final Map<String,TreeMap<String,Set<ResourceReference>>>    postings  = new HashMap<String, TreeMap<String, Set<ResourceReference>>>();
+    private final Map<String,Long>                                      refreshed = new HashMap<String, Long>();
+    private final Map<ResourceReference,Map<String,String>>             resources = new HashMap<ResourceReference, Map<String, String>>();
+
+    private TagIndex() { }
+
+    private void link(@Nonnull ResourceReference ref, @Nonnull String key, @Nullable String value) {
+        TreeMap<String,Set<ResourceReference>> values = postings.get(key);
+
+        if( values == null ) {
+            values = new TreeMap<String, Set<ResourceReference>>();
+            postings.put(key, values);
+        }
+        String v = normalize(value);
+        Set<ResourceReference> refs = values.get(v);
+
+        if( refs == null ) {
+            refs = new HashSet<ResourceReference>();
+            values.put(v, refs);
+        }
+        refs.add(ref);
+    }
+
+    private void unlink(@Nonnull ResourceReference ref, @Nonnull String key, @Nullable String value) {
+        TreeMap<String,Set<ResourceReference>> values = postings.get(key);
+
+        if( values != null ) {
+            String v = normalize(value);
+            Set<ResourceReference> refs = values.get(v);
+
+            if( refs != null && refs.remove(ref) && refs.isEmpty() ) {
+                values.remove(v);
+                if( values.isEmpty() ) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+
+    // callers hold the write lock
+    private void replace(@Nonnull ResourceReference ref, @Nullable Map<String,String> tags) {
+        Map<String,String> old = resources.remove(ref);
+
+        if( old != null ) {
+            for( Map.Entry<String,String> entry : old.entrySet() ) {
+                unlink(ref, entry.getKey(), entry.getValue());
+            }
+        }
+        if( tags != null ) {
+            Map<String,String> copy = new HashMap<String, String>(tags);
+
+            resources.put(ref, copy);
+            for( Map.Entry<String,String> entry : copy.entrySet() ) {
+                link(ref, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Finds the resources carrying all of the specified tags. A <code>null</code> value matches any resource that
+     * has the key.
+     * @param criteria the tags to match
+     * @return the matching resources in type and ID order; every indexed resource if there are no criteria
+     */
+    public @Nonnull SortedSet<ResourceReference> findAll(@Nonnull Map<String,String> criteria) {
+        lock.readLock().lock();
+        try {
+            if( criteria.isEmpty() ) {
+                return new TreeSet<ResourceReference>(resources.keySet());
+            }
+            List<Set<ResourceReference>> matches = new ArrayList<Set<ResourceReference>>();
+
+            for( Map.Entry<String,String> entry : criteria.entrySet() ) {
+                Set<ResourceReference> refs = lookup(entry.getKey(), entry.getValue());
+
+                if( refs.isEmpty() ) {
+                    return new TreeSet<ResourceReference>();
+                }
+                matches.add(refs);
+            }
+            // intersecting from the rarest tag keeps the work proportional to the smallest posting list
+            Set<ResourceReference> smallest = matches.get(0);
+
+            for( Set<ResourceReference> refs : matches ) {
+                if( refs.size() < smallest.size() ) {
+                    smallest = refs;
+                }
+            }
+            TreeSet<ResourceReference> result = new TreeSet<ResourceReference>();
+
+            for( ResourceReference ref : smallest ) {
+                boolean all = true;
+
+                for( Set<ResourceReference> refs : matches ) {
+                    if( refs != smallest && !refs.contains(ref) ) {
+                        all = false;
+                        break;
+                    }
+                }
+                if( all ) {
+                    result.add(ref);
+                }
+            }
+            return result;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the resources carrying any of the specified tags. A <code>null</code> value matches any resource that
+     * has the key.
+     * @param criteria the tags to match
+     * @return the matching resources in type and ID order
+     */
+    public @Nonnull SortedSet<ResourceReference> findAny(@Nonnull Map<String,String> criteria) {
+        lock.readLock().lock();
+        try {
+            TreeSet<ResourceReference> result = new TreeSet<ResourceReference>();
+
+            for( Map.Entry<String,String> entry : criteria.entrySet() ) {
+                result.addAll(lookup(entry.getKey(), entry.getValue()));
+            }
+            return result;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the resources whose value for the specified key starts with the specified prefix.
+     * @param key the tag key
+     * @param valuePrefix the prefix of the value; an empty prefix matches any resource that has the key
+     * @return the matching resources in type and ID order
+     */
+    public @Nonnull SortedSet<ResourceReference> findByPrefix(@Nonnull String key, @Nonnull String valuePrefix) {
+        lock.readLock().lock();
+        try {
+            TreeSet<ResourceReference> result = new TreeSet<ResourceReference>();
+            TreeMap<String,Set<ResourceReference>> values = postings.get(key);
+
+            if( values != null ) {
+                String prefix = normalize(valuePrefix);
+                SortedMap<String,Set<ResourceReference>> range = (prefix.isEmpty() ? values : values.subMap(prefix, prefix + Character.MAX_VALUE));
+
+                for( Set<ResourceReference> refs : range.values() ) {
+                    result.addAll(refs);
+                }
+            }
+            return result;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // callers hold the read lock
+    private @Nonnull Set<ResourceReference> lookup(@Nonnull String key, @Nullable String value) {
+        TreeMap<String,Set<ResourceReference>> values = postings.get(key);
+
+        if( values == null ) {
+            return Collections.emptySet();
+        }
+        if( value != null ) {
+            Set<ResourceReference> refs = values.get(normalize(value));
+
+            return (refs == null ? Collections.<ResourceReference>emptySet() : refs);
+        }
+        Set<ResourceReference> refs = new HashSet<ResourceReference>();
+
+        for( Set<ResourceReference> r : values.values() ) {
+            refs.addAll(r);
+        }
+        return refs;
+    }
+
+    /**
+     * @param resourceType the type name of the resources
+     * @return the time in milliseconds since the epoch of the last refresh of the type, or 0 if it was never refreshed
+     */
+    public long getLastRefresh(@Nonnull String resourceType) {
+        lock.readLock().lock();
+        try {
+            Long when = refreshed.get(resourceType);
+
+            return (when == null ? 0L : when);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param ref the resource
+     * @return the indexed tags of the resource, or <code>null</code> if it is not indexed
+     */
+    public @Nullable Map<String,String> getTags(@Nonnull ResourceReference ref) {
+        lock.readLock().lock();
+        try {
+            Map<String,String> tags = resources.get(ref);
+
+            return (tags == null ? null : Collections.unmodifiableMap(new HashMap<String, String>(tags)));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the complete set of tags of a resource, replacing whatever was indexed for it.
+     * @param ref the resource
+     * @param tags the tags of the resource
+     */
+    public void put(@Nonnull ResourceReference ref, @Nonnull Map<String,String> tags) {
+        lock.writeLock().lock();
+        try {
+            replace(ref, tags);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-indexes a resource type from a full listing of it. Resources of the type missing from the listing are
+     * dropped from the index; other types are untouched, so each service can be refreshed on its own schedule.
+     * @param resourceType the type name of the listed resources
+     * @param listing the full listing of the type
+     * @param idFunction extracts the provider ID of each resource
+     * @param <T> the type of resource
+     * @return the number of resources indexed
+     * @throws CloudException an error occurred with the cloud provider while iterating the listing
+     * @throws InternalException an error occurred within the Dasein Cloud implementation while iterating the listing
+     */
+    public <T extends Taggable> int refresh(@Nonnull String resourceType, @Nonnull Iterable<T> listing, @Nonnull BatchLookup.IdFunction<T> idFunction) throws CloudException, InternalException {
+        long started = System.currentTimeMillis();
+        Map<ResourceReference,Map<String,String>> listed = new HashMap<ResourceReference, Map<String, String>>();
+
+        // the listing may be lazy and call the cloud, so it is read before taking the lock
+        for( T resource : listing ) {
+            String id = idFunction.getId(resource);
+
+            if( id != null ) {
+                listed.put(ResourceReference.getInstance(resourceType, id), resource.getTags());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            List<ResourceReference> stale = new ArrayList<ResourceReference>();
+
+            for( ResourceReference ref : resources.keySet() ) {
+                if( ref.getResourceType().equals(resourceType) && !listed.containsKey(ref) ) {
+                    stale.add(ref);
+                }
+            }
+            for( ResourceReference ref : stale ) {
+                replace(ref, null);
+            }
+            for( Map.Entry<ResourceReference,Map<String,String>> entry : listed.entrySet() ) {
+                replace(entry.getKey(), entry.getValue());
+            }
+            refreshed.put(resourceType, started);
+            return listed.size();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops a resource from the index, typically after it was deleted.
+     * @param ref the resource
+     */
+    public void remove(@Nonnull ResourceReference ref) {
+        lock.writeLock().lock();
+        try {
+            replace(ref, null);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes tags from an indexed resource. Tags are removed by key whatever their value, as most clouds do.
+     * @param ref the resource
+     * @param tags the tags to remove
+     */
+    public void remove(@Nonnull ResourceReference ref, @Nonnull Tag... tags) {
+        lock.writeLock().lock();
+        try {
+            Map<String,String> current = resources.get(ref);
+
+            if( current != null ) {
+                Map<String,String> updated = new HashMap<String, String>(current);
+
+                for( Tag tag : tags ) {
+                    updated.remove(tag.getKey());
+                }
+                replace(ref, updated);
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of indexed resources
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return resources.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds or changes tags on a resource, indexing it if it was not yet known.
+     * @param ref the resource
+     * @param tags the tags to set
+     */
+    public void update(@Nonnull ResourceReference ref, @Nonnull Tag... tags) {
+        lock.writeLock().lock();
+        try {
+            Map<String,String> current = resources.get(ref);
+            Map<String,String> updated = (current == null ? new HashMap<String, String>() : new HashMap<String, String>(current));
+
+            for( Tag tag : tags ) {
+                updated.put(tag.getKey(), tag.getValue());
+            }
+            replace(ref, updated);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.codec;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the binary form written by {@link BinaryWriter} directly from a {@link ByteBuffer}, which may be a slice of a
+ * memory-mapped file; no intermediate copy of the data is made. Strings are decoded once and every later reference
+ * to them returns the same instance.
+ * <p>
+ * Reading past the end of the data or meeting malformed data throws {@link CodecException}.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class BinaryReader {
+    static private final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer        in;
+    private final ArrayList<String> strings = new ArrayList<String>();
+
+    /**
+     * Constructs a reader positioned at the current position of the buffer. The buffer's position advances as values
+     * are read.
+     * @param in the buffer
+     */
+    public BinaryReader(@Nonnull ByteBuffer in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the buffer being read
+     */
+    public @Nonnull ByteBuffer getBuffer() {
+        return in;
+    }
+
+    /**
+     * @return the next flag
+     * @throws CodecException the data ended
+     */
+    public boolean readBoolean() throws CodecException {
+        try {
+            return (in.get() != 0);
+        }
+        catch( BufferUnderflowException e ) {
+            throw new CodecException("Unexpected end of data");
+        }
+    }
+
+    /**
+     * @return the next number written by {@link BinaryWriter#writeDouble(double)}
+     * @throws CodecException the data ended
+     */
+    public double readDouble() throws CodecException {
+        long bits = 0L;
+
+        try {
+            // byte at a time so the buffer's byte order does not matter
+            for( int i=0; i<8; i++ ) {
+                bits = (bits << 8) | (in.get() & 0xFFL);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+        catch( BufferUnderflowException e ) {
+            throw new CodecException("Unexpected end of data");
+        }
+    }
+
+    /**
+     * Reads an enum constant. Names the type does not know, such as constants added by a newer writer, read as
+     * <code>null</code>.
+     * @param type the enum type
+     * @param <E> the enum type
+     * @return the constant, or <code>null</code>
+     * @throws CodecException the data ended or is malformed
+     */
+    public @Nullable <E extends Enum<E>> E readEnum(@Nonnull Class<E> type) throws CodecException {
+        String name = readString();
+
+        if( name == null ) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, name);
+        }
+        catch( IllegalArgumentException e ) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the next signed integer
+     * @throws CodecException the data ended or is malformed
+     */
+    public int readInt() throws CodecException {
+        long v = readUnsigned();
+
+        return (int)((v >>> 1) ^ -(v & 1L));
+    }
+
+    /**
+     * @return the next signed long
+     * @throws CodecException the data ended or is malformed
+     */
+    public long readLong() throws CodecException {
+        long v = readUnsigned();
+
+        return (v >>> 1) ^ -(v & 1L);
+    }
+
+    /**
+     * @return the next string map, or <code>null</code>
+     * @throws CodecException the data ended or is malformed
+     */
+    public @Nullable Map<String,String> readMap() throws CodecException {
+        long count = readUnsigned() - 1L;
+
+        if( count < 0L ) {
+            return null;
+        }
+        if( count > in.remaining() ) {
+            throw new CodecException("Invalid map size: " + count);
+        }
+        Map<String,String> map = new HashMap<String, String>((int)count * 2);
+
+        for( long i=0; i<count; i++ ) {
+            map.put(readString(), readString());
+        }
+        return map;
+    }
+
+    /**
+     * @return the next string, or <code>null</code>
+     * @throws CodecException the data ended or is malformed
+     */
+    public @Nullable String readString() throws CodecException {
+        long tag = readUnsigned();
+
+        if( tag == 0L ) {
+            return null;
+        }
+        if( (tag & 1L) == 1L ) {
+            long index = tag >>> 1;
+
+            if( index >= strings.size() ) {
+                throw new CodecException("Invalid string reference: " + index);
+            }
+            return strings.get((int)index);
+        }
+        long length = (tag >>> 1) - 1L;
+
+        if( length > in.remaining() ) {
+            throw new CodecException("Unexpected end of data");
+        }
+        String value;
+
+        if( in.hasArray() ) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), (int)length, UTF8);
+            in.position(in.position() + (int)length);
+        }
+        else {
+            ByteBuffer slice = in.slice();
+
+            slice.limit((int)length);
+            value = UTF8.decode(slice).toString();
+            in.position(in.position() + (int)length);
+        }
+        strings.add(value);
+        return value;
+    }
+
+    /**
+     * @return the next string array, or <code>null</code>
+     * @throws CodecException the data ended or is malformed
+     */
+    public @Nullable String[] readStrings() throws CodecException {
+        long count = readUnsigned() - 1L;
+
+        if( count < 0L ) {
+            return null;
+        }
+        if( count > in.remaining() ) {
+            throw new CodecException("Invalid array size: " + count);
+        }
+        String[] values = new String[(int)count];
+
+        for( int i=0; i<values.length; i++ ) {
+            values[i] = readString();
+        }
+        return values;
+    }
+
+    /**
+     * @return the next non-negative variable length quantity
+     * @throws CodecException the data ended or the quantity is longer than 64 bits
+     */
+    public long readUnsigned() throws CodecException {
+        long value = 0L;
+
+        try {
+            for( int shift=0; shift<64; shift+=7 ) {
+                byte b = in.get();
+
+                value |= (long)(b & 0x7F) << shift;
+                if( (b & 0x80) == 0 ) {
+                    return value;
+                }
+            }
+        }
+        catch( BufferUnderflowException e ) {
+            throw new CodecException("Unexpected end of data");
+        }
+        throw new CodecException("Malformed variable length quantity");
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.codec;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the compact binary form read by {@link BinaryReader}. Integers are written as variable length quantities,
+ * so timestamps and sizes take as few bytes as their magnitude needs, and each distinct string is written once per
+ * writer: later occurrences are references into a string table that the reader rebuilds as it goes. Repeated IDs,
+ * region names and enum constants therefore cost one or two bytes each.
+ * <p>
+ * A writer is not thread safe. {@link #reset()} empties it, including its string table, so it can be reused without
+ * allocating a new buffer.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class BinaryWriter {
+    private byte[]               buffer;
+    private int                  size;
+    private Map<String,Integer>  strings = new HashMap<String, Integer>();
+
+    /**
+     * Constructs a writer with a small initial buffer.
+     */
+    public BinaryWriter() {
+        this(256);
+    }
+
+    /**
+     * Constructs a writer with the specified initial buffer size.
+     * @param capacity the initial size of the buffer in bytes
+     */
+    public BinaryWriter(@Nonnegative int capacity) {
+        buffer = new byte[Math.max(16, capacity)];
+    }
+
+    private void ensure(int extra) {
+        if( size + extra > buffer.length ) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    /**
+     * Empties the writer and its string table.
+     */
+    public void reset() {
+        size = 0;
+        strings.clear();
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of the bytes written
+     */
+    public @Nonnull byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Writes a flag as a single byte.
+     * @param value the flag
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeBoolean(boolean value) {
+        ensure(1);
+        buffer[size++] = (byte)(value ? 1 : 0);
+        return this;
+    }
+
+    /**
+     * Writes a number in its full eight byte form, for values that are not integers.
+     * @param value the number
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+
+        ensure(8);
+        for( int i=56; i>=0; i-=8 ) {
+            buffer[size++] = (byte)(bits >>> i);
+        }
+        return this;
+    }
+
+    /**
+     * Writes an enum constant by name through the string table, so each constant is spelled out only once.
+     * @param value the constant, which may be <code>null</code>
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeEnum(@Nullable Enum<?> value) {
+        return writeString(value == null ? null : value.name());
+    }
+
+    /**
+     * Writes a signed integer as a zig-zag encoded variable length quantity.
+     * @param value the integer
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeInt(int value) {
+        return writeUnsigned(((long)value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Writes a signed long as a zig-zag encoded variable length quantity; timestamps take six bytes instead of eight.
+     * @param value the long
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeLong(long value) {
+        return writeUnsigned((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes a string map in key order, so equal maps always produce equal bytes.
+     * @param map the map, which may be <code>null</code>
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeMap(@Nullable Map<String,String> map) {
+        if( map == null ) {
+            return writeUnsigned(0);
+        }
+        writeUnsigned(map.size() + 1L);
+        for( Map.Entry<String,String> entry : new TreeMap<String, String>(map).entrySet() ) {
+            writeString(entry.getKey());
+            writeString(entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Writes a string through the string table: the first occurrence is written in UTF-8 and later ones as a reference.
+     * @param value the string, which may be <code>null</code>
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeString(@Nullable String value) {
+        if( value == null ) {
+            return writeUnsigned(0);
+        }
+        Integer index = strings.get(value);
+
+        if( index != null ) {
+            return writeUnsigned(((long)index << 1) | 1L);
+        }
+        strings.put(value, strings.size());
+
+        int length = 0;
+        int chars = value.length();
+
+        for( int i=0; i<chars; i++ ) {
+            char c = value.charAt(i);
+
+            if( c < 0x80 ) {
+                length++;
+            }
+            else if( c < 0x800 ) {
+                length += 2;
+            }
+            else if( Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1)) ) {
+                length += 4;
+                i++;
+            }
+            else {
+                length += 3;
+            }
+        }
+        writeUnsigned(((long)length + 1L) << 1);
+        ensure(length);
+        for( int i=0; i<chars; i++ ) {
+            char c = value.charAt(i);
+
+            if( c < 0x80 ) {
+                buffer[size++] = (byte)c;
+            }
+            else if( c < 0x800 ) {
+                buffer[size++] = (byte)(0xC0 | (c >> 6));
+                buffer[size++] = (byte)(0x80 | (c & 0x3F));
+            }
+            else if( Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1)) ) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+
+                buffer[size++] = (byte)(0xF0 | (cp >> 18));
+                buffer[size++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                buffer[size++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                buffer[size++] = (byte)(0x80 | (cp & 0x3F));
+            }
+            else {
+                buffer[size++] = (byte)(0xE0 | (c >> 12));
+                buffer[size++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte)(0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes a string array, each element through the string table.
+     * @param values the array, which may be <code>null</code>
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeStrings(@Nullable String[] values) {
+        if( values == null ) {
+            return writeUnsigned(0);
+        }
+        writeUnsigned(values.length + 1L);
+        for( String value : values ) {
+            writeString(value);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a non-negative number as a variable length quantity of seven bits per byte.
+     * @param value the number, treated as unsigned
+     * @return this
+     */
+    public @Nonnull BinaryWriter writeUnsigned(long value) {
+        ensure(10);
+        while( (value & ~0x7FL) != 0L ) {
+            buffer[size++] = (byte)((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte)value;
+        return this;
+    }
+
+    /**
+     * Copies the bytes written to a stream.
+     * @param out the stream
+     * @throws IOException the stream failed
+     */
+    public void writeTo(@Nonnull OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+}
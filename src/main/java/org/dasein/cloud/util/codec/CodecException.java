@@ -0,0 +1,37 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.codec;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Thrown when binary data cannot be decoded because it is truncated, malformed or of an unknown version.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class CodecException extends IOException {
+    private static final long serialVersionUID = -2904182358612840129L;
+
+    public CodecException(@Nonnull String message) {
+        super(message);
+    }
+}
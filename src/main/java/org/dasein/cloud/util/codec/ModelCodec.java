@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.codec;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * Writes and reads one model type in the compact binary form of {@link BinaryWriter}. Each codec carries a schema
+ * version that is stored with the data; a codec must go on reading every version it has ever written, so new fields
+ * are appended and read only when the stored version says they are there.
+ * @param <T> the model type
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface ModelCodec<T> {
+    /**
+     * @return the model type this codec handles
+     */
+    public @Nonnull Class<T> getType();
+
+    /**
+     * @return the schema version written by {@link #write(BinaryWriter, Object)}
+     */
+    public @Nonnegative int getVersion();
+
+    /**
+     * Writes an item in the current schema version.
+     * @param out the writer
+     * @param item the item
+     */
+    public void write(@Nonnull BinaryWriter out, @Nonnull T item);
+
+    /**
+     * Reads an item written in the specified schema version.
+     * @param in the reader
+     * @param version the schema version the item was written in, never greater than {@link #getVersion()}
+     * @return the item
+     * @throws CodecException the data is not a valid item
+     */
+    public @Nonnull T read(@Nonnull BinaryReader in, @Nonnegative int version) throws CodecException;
+}
@@ -0,0 +1,783 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.codec;
+
+import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.ImageClass;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.MachineImageFormat;
+import org.dasein.cloud.compute.MachineImageState;
+import org.dasein.cloud.compute.MachineImageType;
+import org.dasein.cloud.compute.MachineImageVolume;
+import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotState;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineLifecycle;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.compute.VmStatus;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeFormat;
+import org.dasein.cloud.compute.VolumeState;
+import org.dasein.cloud.compute.VolumeType;
+import org.dasein.cloud.network.Direction;
+import org.dasein.cloud.network.FirewallRule;
+import org.dasein.cloud.network.IPVersion;
+import org.dasein.cloud.network.Permission;
+import org.dasein.cloud.network.Protocol;
+import org.dasein.cloud.network.RawAddress;
+import org.dasein.cloud.network.RuleTarget;
+import org.dasein.cloud.network.RuleTargetType;
+import org.dasein.cloud.storage.Blob;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary codecs for the core model objects, and methods for encoding and decoding lists of them. A list is written
+ * with one string table, so IDs, regions and enum constants shared by its items are stored once for the whole list.
+ * <p>
+ * Encoding reads every attribute through the model's getters, so a virtual machine or volume listed with only some
+ * of its attributes has its details loaded first. Root passwords are never written. The volumes and volume IDs of a
+ * virtual machine are written when they were set or loaded with its details; volume IDs that were never known are
+ * still listed on demand against a live provider once decoded.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ModelCodecs {
+    /**
+     * The version of the framing written by {@link #encode(ModelCodec, Collection)}. The schema version of the items
+     * follows it, so the items and the framing can evolve separately.
+     */
+    static public final int FORMAT_VERSION = 1;
+
+    static public final ModelCodec<Blob>           BLOB            = new BlobCodec();
+    static public final ModelCodec<FirewallRule>   FIREWALL_RULE   = new FirewallRuleCodec();
+    static public final ModelCodec<MachineImage>   MACHINE_IMAGE   = new MachineImageCodec();
+    static public final ModelCodec<Snapshot>       SNAPSHOT        = new SnapshotCodec();
+    static public final ModelCodec<VirtualMachine> VIRTUAL_MACHINE = new VirtualMachineCodec();
+    static public final ModelCodec<Volume>         VOLUME          = new VolumeCodec();
+
+    /**
+     * @return the codecs for all supported model types
+     */
+    static public @Nonnull List<ModelCodec<?>> getCodecs() {
+        ArrayList<ModelCodec<?>> list = new ArrayList<ModelCodec<?>>();
+
+        list.add(BLOB);
+        list.add(FIREWALL_RULE);
+        list.add(MACHINE_IMAGE);
+        list.add(SNAPSHOT);
+        list.add(VIRTUAL_MACHINE);
+        list.add(VOLUME);
+        return list;
+    }
+
+    /**
+     * Encodes a list of items.
+     * @param codec the codec for the items
+     * @param items the items
+     * @param <T> the model type
+     * @return the encoded items
+     */
+    static public @Nonnull <T> byte[] encode(@Nonnull ModelCodec<T> codec, @Nonnull Collection<T> items) {
+        BinaryWriter out = new BinaryWriter(64 + items.size() * 128);
+
+        out.writeUnsigned(FORMAT_VERSION);
+        out.writeUnsigned(codec.getVersion());
+        out.writeUnsigned(items.size());
+        for( T item : items ) {
+            codec.write(out, item);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a list of items written by {@link #encode(ModelCodec, Collection)} in this or an earlier version.
+     * Strings are read straight out of the buffer, which may be a mapped file.
+     * @param codec the codec for the items
+     * @param in the encoded items, read from its current position
+     * @param <T> the model type
+     * @return the items
+     * @throws CodecException the data is malformed or was written by a newer version
+     */
+    static public @Nonnull <T> List<T> decode(@Nonnull ModelCodec<T> codec, @Nonnull ByteBuffer in) throws CodecException {
+        BinaryReader reader = new BinaryReader(in);
+        long format = reader.readUnsigned();
+
+        if( format != FORMAT_VERSION ) {
+            throw new CodecException("Unsupported format version: " + format);
+        }
+        int version = readVersion(codec, reader);
+        long count = reader.readUnsigned();
+
+        if( count > in.remaining() ) {
+            throw new CodecException("Invalid item count: " + count);
+        }
+        ArrayList<T> items = new ArrayList<T>((int)count);
+
+        for( long i=0; i<count; i++ ) {
+            items.add(codec.read(reader, version));
+        }
+        return items;
+    }
+
+    static private int readVersion(@Nonnull ModelCodec<?> codec, @Nonnull BinaryReader in) throws CodecException {
+        long version = in.readUnsigned();
+
+        if( version > codec.getVersion() ) {
+            throw new CodecException("Unsupported " + codec.getType().getSimpleName() + " schema version: " + version);
+        }
+        return (int)version;
+    }
+
+    static private void writeAddresses(@Nonnull BinaryWriter out, @Nonnull RawAddress[] addresses) {
+        out.writeUnsigned(addresses.length);
+        for( RawAddress address : addresses ) {
+            out.writeString(address.getIpAddress());
+            out.writeEnum(address.getVersion());
+        }
+    }
+
+    static private @Nonnull RawAddress[] readAddresses(@Nonnull BinaryReader in) throws CodecException {
+        long count = in.readUnsigned();
+
+        if( count > in.getBuffer().remaining() ) {
+            throw new CodecException("Invalid address count: " + count);
+        }
+        RawAddress[] addresses = new RawAddress[(int)count];
+
+        for( int i=0; i<addresses.length; i++ ) {
+            String ip = in.readString();
+            IPVersion version = in.readEnum(IPVersion.class);
+
+            if( ip == null ) {
+                throw new CodecException("Missing IP address");
+            }
+            addresses[i] = (version == null ? new RawAddress(ip) : new RawAddress(ip, version));
+        }
+        return addresses;
+    }
+
+    // 0 is null, 1 an integer that follows as a varint and 2 a fraction that follows as a double
+    static private void writeQuantity(@Nonnull BinaryWriter out, @Nullable Storage<?> storage) {
+        Number n = (storage == null ? null : storage.getQuantity());
+
+        if( n == null ) {
+            out.writeUnsigned(0);
+        }
+        else if( n.doubleValue() == (double)n.longValue() ) {
+            out.writeUnsigned(1);
+            out.writeLong(n.longValue());
+        }
+        else {
+            out.writeUnsigned(2);
+            out.writeDouble(n.doubleValue());
+        }
+    }
+
+    static private @Nullable Number readQuantity(@Nonnull BinaryReader in) throws CodecException {
+        long tag = in.readUnsigned();
+
+        if( tag == 0L ) {
+            return null;
+        }
+        else if( tag == 1L ) {
+            long value = in.readLong();
+
+            if( value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ) {
+                return (int)value;
+            }
+            return value;
+        }
+        else if( tag == 2L ) {
+            return in.readDouble();
+        }
+        throw new CodecException("Invalid quantity: " + tag);
+    }
+
+    static private void writeTarget(@Nonnull BinaryWriter out, @Nullable RuleTarget target) {
+        if( target == null ) {
+            out.writeEnum(null);
+            return;
+        }
+        RuleTargetType type = target.getRuleTargetType();
+
+        out.writeEnum(type);
+        switch( type ) {
+            case GLOBAL: out.writeString(target.getProviderFirewallId()); break;
+            case VM: out.writeString(target.getProviderVirtualMachineId()); break;
+            case VLAN: out.writeString(target.getProviderVlanId()); break;
+            default: out.writeString(target.getCidr()); break;
+        }
+    }
+
+    static private @Nonnull RuleTarget readTarget(@Nonnull BinaryReader in) throws CodecException {
+        RuleTargetType type = in.readEnum(RuleTargetType.class);
+
+        if( type == null ) {
+            throw new CodecException("Missing or unknown rule target type");
+        }
+        String value = in.readString();
+
+        if( value == null ) {
+            throw new CodecException("Rule target " + type + " has no value");
+        }
+        switch( type ) {
+            case GLOBAL: return RuleTarget.getGlobal(value);
+            case VM: return RuleTarget.getVirtualMachine(value);
+            case VLAN: return RuleTarget.getVlan(value);
+            default: return RuleTarget.getCIDR(value);
+        }
+    }
+
+    static private final class BlobCodec implements ModelCodec<Blob> {
+        @Override
+        public @Nonnull Class<Blob> getType() {
+            return Blob.class;
+        }
+
+        @Override
+        public @Nonnegative int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(@Nonnull BinaryWriter out, @Nonnull Blob item) {
+            out.writeString(item.getProviderRegionId());
+            out.writeString(item.getLocation());
+            out.writeString(item.getBucketName());
+            out.writeString(item.getObjectName());
+            out.writeLong(item.getCreationTimestamp());
+            writeQuantity(out, item.getSize());
+            out.writeMap(item.getTags());
+        }
+
+        @Override
+        public @Nonnull Blob read(@Nonnull BinaryReader in, @Nonnegative int version) throws CodecException {
+            String regionId = in.readString();
+            String location = in.readString();
+            String bucketName = in.readString();
+            String objectName = in.readString();
+            long created = in.readLong();
+            Number size = readQuantity(in);
+            Blob blob;
+
+            if( objectName == null ) {
+                blob = Blob.getInstance(regionId, location, bucketName, created);
+            }
+            else {
+                blob = Blob.getInstance(regionId, location, bucketName, objectName, created, new Storage<org.dasein.util.uom.storage.Byte>(size == null ? 0 : size, Storage.BYTE));
+            }
+            Map<String,String> tags = in.readMap();
+
+            if( tags != null ) {
+                blob.getTags().putAll(tags);
+            }
+            return blob;
+        }
+    }
+
+    static private final class FirewallRuleCodec implements ModelCodec<FirewallRule> {
+        @Override
+        public @Nonnull Class<FirewallRule> getType() {
+            return FirewallRule.class;
+        }
+
+        @Override
+        public @Nonnegative int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(@Nonnull BinaryWriter out, @Nonnull FirewallRule item) {
+            out.writeString(item.getProviderRuleId());
+            out.writeString(item.getFirewallId());
+            writeTarget(out, item.getSourceEndpoint());
+            writeTarget(out, item.getDestinationEndpoint());
+            out.writeEnum(item.getDirection());
+            out.writeEnum(item.getProtocol());
+            out.writeEnum(item.getPermission());
+            out.writeInt(item.getStartPort());
+            out.writeInt(item.getEndPort());
+            out.writeInt(item.getPrecedence());
+        }
+
+        @Override
+        public @Nonnull FirewallRule read(@Nonnull BinaryReader in, @Nonnegative int version) throws CodecException {
+            String ruleId = in.readString();
+            String firewallId = in.readString();
+            RuleTarget source = readTarget(in);
+            RuleTarget destination = readTarget(in);
+            Direction direction = in.readEnum(Direction.class);
+            Protocol protocol = in.readEnum(Protocol.class);
+            Permission permission = in.readEnum(Permission.class);
+            int startPort = in.readInt();
+            int endPort = in.readInt();
+            int precedence = in.readInt();
+
+            if( firewallId == null || direction == null || protocol == null || permission == null ) {
+                throw new CodecException("Incomplete firewall rule " + ruleId);
+            }
+            return FirewallRule.getInstance(ruleId, firewallId, source, direction, protocol, permission, destination, startPort, endPort).withPrecedence(precedence);
+        }
+    }
+
+    static private final class MachineImageCodec implements ModelCodec<MachineImage> {
+        @Override
+        public @Nonnull Class<MachineImage> getType() {
+            return MachineImage.class;
+        }
+
+        @Override
+        public @Nonnegative int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(@Nonnull BinaryWriter out, @Nonnull MachineImage item) {
+            out.writeString(item.getProviderOwnerId());
+            out.writeString(item.getProviderRegionId());
+            out.writeString(item.getProviderMachineImageId());
+            out.writeEnum(item.getImageClass());
+            out.writeEnum(item.getCurrentState());
+            out.writeString(item.getName());
+            out.writeString(item.getDescription());
+            out.writeEnum(item.getArchitecture());
+            out.writeEnum(item.getPlatform());
+            out.writeEnum(item.getType());
+            out.writeEnum(item.getStorageFormat());
+            out.writeEnum(item.getVisibleScope());
+            out.writeString(item.getKernelImageId());
+            out.writeString(item.getProviderDataCenterId());
+            out.writeString(item.getSoftware());
+            out.writeLong(item.getCreationTimestamp());
+            out.writeLong(item.getMinimumDiskSizeGb());
+            out.writeBoolean(item.isPublic());
+            out.writeMap(item.getTags());
+            out.writeMap(item.getProviderMetadata());
+
+            Iterable<MachineImageVolume> volumes = item.getVolumes();
+
+            if( volumes == null ) {
+                out.writeUnsigned(0);
+            }
+            else {
+                ArrayList<MachineImageVolume> list = new ArrayList<MachineImageVolume>();
+
+                for( MachineImageVolume v : volumes ) {
+                    list.add(v);
+                }
+                out.writeUnsigned(list.size() + 1L);
+                for( MachineImageVolume v : list ) {
+                    out.writeString(v.getDeviceName());
+                    out.writeString(v.getSnapshotId());
+                    out.writeInt(v.getVolumeSize() == null ? -1 : v.getVolumeSize());
+                    out.writeString(v.getVolumeType());
+                    out.writeInt(v.getIops() == null ? -1 : v.getIops());
+                }
+            }
+        }
+
+        @SuppressWarnings("deprecation")
+        @Override
+        public @Nonnull MachineImage read(@Nonnull BinaryReader in, @Nonnegative int version) throws CodecException {
+            MachineImage img = new MachineImage();
+            String value;
+
+            img.setProviderOwnerId(in.readString());
+            img.setProviderRegionId(in.readString());
+            img.setProviderMachineImageId(in.readString());
+            img.setImageClass(in.readEnum(ImageClass.class));
+            img.setCurrentState(in.readEnum(MachineImageState.class));
+            img.setName(in.readString());
+            img.setDescription(in.readString());
+            img.setArchitecture(in.readEnum(Architecture.class));
+            img.setPlatform(in.readEnum(Platform.class));
+            img.setType(in.readEnum(MachineImageType.class));
+            img.setStorageFormat(in.readEnum(MachineImageFormat.class));
+            img.setVisibleScope(in.readEnum(VisibleScope.class));
+            value = in.readString();
+            if( value != null ) {
+                img.setKernelImageId(value);
+            }
+            value = in.readString();
+            if( value != null ) {
+                img.constrainedTo(value);
+            }
+            img.setSoftware(in.readString());
+            img.setCreationTimestamp(in.readLong());
+            img.setMinimumDiskSizeGb(in.readLong());
+            if( in.readBoolean() ) {
+                img.sharedWithPublic();
+            }
+            Map<String,String> map = in.readMap();
+
+            if( map != null ) {
+                img.setTags(map);
+            }
+            map = in.readMap();
+            if( map != null ) {
+                img.withProviderMetadata(map);
+            }
+            long volumes = in.readUnsigned() - 1L;
+
+            if( volumes > in.getBuffer().remaining() ) {
+                throw new CodecException("Invalid volume count: " + volumes);
+            }
+            if( volumes > -1L ) {
+                ArrayList<MachineImageVolume> list = new ArrayList<MachineImageVolume>((int)volumes);
+
+                for( long i=0; i<volumes; i++ ) {
+                    String device = in.readString();
+                    String snapshot = in.readString();
+                    int size = in.readInt();
+                    String type = in.readString();
+                    int iops = in.readInt();
+
+                    list.add(MachineImageVolume.getInstance(device, snapshot, size < 0 ? null : size, type, iops < 0 ? null : iops));
+                }
+                img.withVolumes(list);
+            }
+            return img;
+        }
+    }
+
+    static private final class SnapshotCodec implements ModelCodec<Snapshot> {
+        @Override
+        public @Nonnull Class<Snapshot> getType() {
+            return Snapshot.class;
+        }
+
+        @Override
+        public @Nonnegative int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(@Nonnull BinaryWriter out, @Nonnull Snapshot item) {
+            out.writeString(item.getProviderSnapshotId());
+            out.writeString(item.getRegionId());
+            out.writeString(item.getVolumeId());
+            out.writeString(item.getOwner());
+            out.writeString(item.getName());
+            out.writeString(item.getDescription());
+            out.writeString(item.getProgress());
+            out.writeEnum(item.getCurrentState());
+            out.writeEnum(item.getVisibleScope());
+            out.writeLong(item.getSnapshotTimestamp());
+            out.writeInt(item.getSizeInGb());
+            out.writeMap(item.getTags());
+        }
+
+        @Override
+        public @Nonnull Snapshot read(@Nonnull BinaryReader in, @Nonnegative int version) throws CodecException {
+            Snapshot snapshot = new Snapshot();
+
+            snapshot.setProviderSnapshotId(in.readString());
+            snapshot.setRegionId(in.readString());
+            snapshot.setVolumeId(in.readString());
+            snapshot.setOwner(in.readString());
+            snapshot.setName(in.readString());
+            snapshot.setDescription(in.readString());
+            snapshot.setProgress(in.readString());
+            snapshot.setCurrentState(in.readEnum(SnapshotState.class));
+            snapshot.setVisibleScope(in.readEnum(VisibleScope.class));
+            snapshot.setSnapshotTimestamp(in.readLong());
+            snapshot.setSizeInGb(in.readInt());
+
+            Map<String,String> tags = in.readMap();
+
+            if( tags != null ) {
+                snapshot.setTags(tags);
+            }
+            return snapshot;
+        }
+    }
+
+    static private final class VirtualMachineCodec implements ModelCodec<VirtualMachine> {
+        @Override
+        public @Nonnull Class<VirtualMachine> getType() {
+            return VirtualMachine.class;
+        }
+
+        @Override
+        public @Nonnegative int getVersion() {
+            return 2;
+        }
+
+        @Override
+        public void write(@Nonnull BinaryWriter out, @Nonnull VirtualMachine item) {
+            out.writeString(item.getProviderOwnerId());
+            out.writeString(item.getProviderRegionId());
+            out.writeString(item.getProviderDataCenterId());
+            out.writeString(item.getProviderVirtualMachineId());
+            out.writeString(item.getName());
+            out.writeString(item.getDescription());
+            out.writeString(item.getProductId());
+            out.writeString(item.getProviderMachineImageId());
+            out.writeString(item.getAffinityGroupId());
+            out.writeEnum(item.getArchitecture());
+            out.writeEnum(item.getPlatform());
+            out.writeEnum(item.getCurrentState());
+            out.writeEnum(item.getVisibleScope());
+            out.writeEnum(item.getProviderVmStatus());
+            out.writeEnum(item.getProviderHostStatus());
+            out.writeEnum(item.getLifecycle());
+            out.writeLong(item.getCreationTimestamp());
+            out.writeLong(item.getLastBootTimestamp());
+            out.writeLong(item.getLastPauseTimestamp());
+            out.writeLong(item.getTerminationTimestamp());
+            out.writeBoolean(item.isClonable());
+            out.writeBoolean(item.isImagable());
+            out.writeBoolean(item.isPausable());
+            out.writeBoolean(item.isPersistent());
+            out.writeBoolean(item.isRebootable());
+            out.writeBoolean(item.isIoOptimized());
+            out.writeBoolean(item.isIpForwardingAllowed());
+            out.writeString(item.getPrivateDnsAddress());
+            out.writeString(item.getPublicDnsAddress());
+            writeAddresses(out, item.getPrivateAddresses());
+            writeAddresses(out, item.getPublicAddresses());
+            out.writeString(item.getProviderAssignedIpAddressId());
+            out.writeString(item.getProviderSubnetId());
+            out.writeString(item.getProviderVlanId());
+            out.writeString(item.getProviderKeypairId());
+            out.writeString(item.getProviderKernelImageId());
+            out.writeString(item.getProviderRamdiskImageId());
+            out.writeString(item.getProviderRoleId());
+            out.writeString(item.getRootUser());
+            out.writeString(item.getStateReasonMessage());
+            out.writeString(item.getSpotRequestId());
+            out.writeString(item.getResourcePoolId());
+            out.writeString(item.getClientRequestToken());
+            out.writeStrings(item.getProviderFirewallIds());
+            out.writeStrings(item.getProviderNetworkInterfaceIds());
+            out.writeStrings(item.getProviderShellKeyIds());
+            out.writeStrings(item.getLabels());
+            out.writeMap(item.getTags());
+            // since version 2
+            out.writeStrings(item.getProviderVolumeIds());
+
+            Volume[] volumes = item.getVolumes();
+
+            out.writeUnsigned(VOLUME.getVersion());
+            if( volumes == null ) {
+                out.writeUnsigned(0);
+            }
+            else {
+                out.writeUnsigned(volumes.length + 1L);
+                for( Volume v : volumes ) {
+                    VOLUME.write(out, v);
+                }
+            }
+        }
+
+        @Override
+        public @Nonnull VirtualMachine read(@Nonnull BinaryReader in, @Nonnegative int version) throws CodecException {
+            VirtualMachine vm = new VirtualMachine();
+
+            vm.setProviderOwnerId(in.readString());
+            vm.setProviderRegionId(in.readString());
+            vm.setProviderDataCenterId(in.readString());
+            vm.setProviderVirtualMachineId(in.readString());
+            vm.setName(in.readString());
+            vm.setDescription(in.readString());
+            vm.setProductId(in.readString());
+            vm.setProviderMachineImageId(in.readString());
+            vm.setAffinityGroupId(in.readString());
+            vm.setArchitecture(in.readEnum(Architecture.class));
+            vm.setPlatform(in.readEnum(Platform.class));
+            vm.setCurrentState(in.readEnum(VmState.class));
+            vm.setVisibleScope(in.readEnum(VisibleScope.class));
+            vm.setProviderVmStatus(in.readEnum(VmStatus.class));
+            vm.setProviderHostStatus(in.readEnum(VmStatus.class));
+            vm.setLifecycle(in.readEnum(VirtualMachineLifecycle.class));
+            vm.setCreationTimestamp(in.readLong());
+            vm.setLastBootTimestamp(in.readLong());
+            vm.setLastPauseTimestamp(in.readLong());
+            vm.setTerminationTimestamp(in.readLong());
+            vm.setClonable(in.readBoolean());
+            vm.setImagable(in.readBoolean());
+            vm.setPausable(in.readBoolean());
+            vm.setPersistent(in.readBoolean());
+            vm.setRebootable(in.readBoolean());
+            vm.setIoOptimized(in.readBoolean());
+            vm.setIpForwardingAllowed(in.readBoolean());
+            vm.setPrivateDnsAddress(in.readString());
+            vm.setPublicDnsAddress(in.readString());
+            vm.setPrivateAddresses(readAddresses(in));
+            vm.setPublicAddresses(readAddresses(in));
+            vm.setProviderAssignedIpAddressId(in.readString());
+            vm.setProviderSubnetId(in.readString());
+            vm.setProviderVlanId(in.readString());
+            vm.setProviderKeypairId(in.readString());
+            vm.setProviderKernelImageId(in.readString());
+            vm.setProviderRamdiskImageId(in.readString());
+            vm.setProviderRoleId(in.readString());
+            vm.setRootUser(in.readString());
+            vm.setStateReasonMessage(in.readString());
+            vm.setSpotRequestId(in.readString());
+            vm.setResourcePoolId(in.readString());
+            vm.setClientRequestToken(in.readString());
+            vm.setProviderFirewallIds(in.readStrings());
+            vm.setProviderNetworkInterfaceIds(in.readStrings());
+
+            String[] keys = in.readStrings();
+
+            if( keys != null ) {
+                vm.setProviderShellKeyIds(keys);
+            }
+            vm.setLabels(in.readStrings());
+
+            Map<String,String> tags = in.readMap();
+
+            if( tags != null ) {
+                vm.setTags(tags);
+            }
+            if( version < 2 ) {
+                return vm;
+            }
+            String[] volumeIds = in.readStrings();
+
+            if( volumeIds != null ) {
+                vm.setProviderVolumeIds(volumeIds);
+            }
+            int volumeVersion = (int)in.readUnsigned();
+
+            if( volumeVersion > VOLUME.getVersion() ) {
+                throw new CodecException("Unsupported volume schema version: " + volumeVersion);
+            }
+            long count = in.readUnsigned() - 1L;
+
+            if( count > in.getBuffer().remaining() ) {
+                throw new CodecException("Invalid volume count: " + count);
+            }
+            if( count > -1L ) {
+                Volume[] volumes = new Volume[(int)count];
+
+                for( int k=0; k<volumes.length; k++ ) {
+                    volumes[k] = VOLUME.read(in, volumeVersion);
+                }
+                vm.setVolumes(volumes);
+            }
+            return vm;
+        }
+    }
+
+    static private final class VolumeCodec implements ModelCodec<Volume> {
+        @Override
+        public @Nonnull Class<Volume> getType() {
+            return Volume.class;
+        }
+
+        @Override
+        public @Nonnegative int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void write(@Nonnull BinaryWriter out, @Nonnull Volume item) {
+            Boolean deleteOnTermination = item.isDeleteOnVirtualMachineTermination();
+
+            out.writeString(item.getProviderVolumeId());
+            out.writeString(item.getProviderRegionId());
+            out.writeString(item.getProviderDataCenterId());
+            out.writeString(item.getProviderVirtualMachineId());
+            out.writeString(item.getProviderSnapshotId());
+            out.writeString(item.getProviderProductId());
+            out.writeString(item.getProviderVlanId());
+            out.writeString(item.getName());
+            out.writeString(item.getDescription());
+            out.writeString(item.getDeviceId());
+            out.writeString(item.getMediaLink());
+            out.writeEnum(item.getCurrentState());
+            out.writeEnum(item.getType());
+            out.writeEnum(item.getFormat());
+            out.writeEnum(item.getGuestOperatingSystem());
+            out.writeLong(item.getCreationTimestamp());
+            writeQuantity(out, item.getSize());
+            out.writeInt(item.getIops());
+            out.writeBoolean(item.isRootVolume());
+            out.writeUnsigned(deleteOnTermination == null ? 0 : (deleteOnTermination ? 2 : 1));
+            out.writeMap(item.getTags());
+        }
+
+        @Override
+        public @Nonnull Volume read(@Nonnull BinaryReader in, @Nonnegative int version) throws CodecException {
+            Volume volume = new Volume();
+
+            volume.setProviderVolumeId(in.readString());
+            volume.setProviderRegionId(in.readString());
+            volume.setProviderDataCenterId(in.readString());
+            volume.setProviderVirtualMachineId(in.readString());
+            volume.setProviderSnapshotId(in.readString());
+            volume.setProviderProductId(in.readString());
+            volume.setProviderVlanId(in.readString());
+            volume.setName(in.readString());
+            volume.setDescription(in.readString());
+            volume.setDeviceId(in.readString());
+            volume.setMediaLink(in.readString());
+            volume.setCurrentState(in.readEnum(VolumeState.class));
+            volume.setType(in.readEnum(VolumeType.class));
+
+            VolumeFormat format = in.readEnum(VolumeFormat.class);
+
+            if( format != null ) {
+                volume.setFormat(format);
+            }
+            volume.setGuestOperatingSystem(in.readEnum(Platform.class));
+            volume.setCreationTimestamp(in.readLong());
+
+            Number size = readQuantity(in);
+
+            if( size != null ) {
+                volume.setSize(new Storage<Gigabyte>(size, Storage.GIGABYTE));
+            }
+            volume.setIops(in.readInt());
+            volume.setRootVolume(in.readBoolean());
+
+            long deleteOnTermination = in.readUnsigned();
+
+            if( deleteOnTermination > 0L ) {
+                volume.setDeleteOnVirtualMachineTermination(deleteOnTermination == 2L);
+            }
+            Map<String,String> tags = in.readMap();
+
+            if( tags != null ) {
+                volume.setTags(tags);
+            }
+            return volume;
+        }
+    }
+
+    private ModelCodecs() { }
+}
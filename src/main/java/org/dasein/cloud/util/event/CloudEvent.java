@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.event;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Something Dasein Cloud did on behalf of a client: an operation, an API call, an HTTP request, cache activity, a blob
+ * transfer or a wait for a resource to change state. Events are delivered to {@link CloudEventListener}s registered
+ * with {@link CloudEvents}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class CloudEvent {
+    static public enum Type {
+        /**
+         * An operation bracketed by {@link org.dasein.cloud.util.APITrace#begin} and
+         * {@link org.dasein.cloud.util.APITrace#end}.
+         */
+        OPERATION,
+        /**
+         * A call to the cloud API reported through {@link org.dasein.cloud.util.APITrace#trace}; it has no duration.
+         */
+        API_CALL,
+        /**
+         * An HTTP request made by the requester, including any retries. Bytes are those of the request and response
+         * bodies, where known.
+         */
+        HTTP_REQUEST,
+        CACHE_HIT, CACHE_MISS, CACHE_PUT,
+        /**
+         * Cached items dropped because they expired or the cache was cleared.
+         */
+        CACHE_EVICT,
+        /**
+         * A copy between streams during a blob upload or download.
+         */
+        BLOB_TRANSFER,
+        /**
+         * Time spent waiting for a resource to reach a state, such as a virtual machine stopping.
+         */
+        WAIT
+    }
+
+    private final String accountNumber;
+    private final long   bytes;
+    private final String cloudName;
+    private final long   durationNanos;
+    private final String error;
+    private final String operation;
+    private final String providerName;
+    private final String regionId;
+    private final long   timestamp;
+    private final Type   type;
+
+    CloudEvent(@Nonnull Type type, @Nonnull String operation, @Nullable String providerName, @Nullable String cloudName, @Nullable String accountNumber, @Nullable String regionId, @Nonnegative long durationNanos, long bytes, @Nullable String error) {
+        this.type = type;
+        this.operation = operation;
+        this.providerName = providerName;
+        this.cloudName = cloudName;
+        this.accountNumber = accountNumber;
+        this.regionId = regionId;
+        this.durationNanos = durationNanos;
+        this.bytes = bytes;
+        this.error = error;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public @Nullable String getAccountNumber() {
+        return accountNumber;
+    }
+
+    /**
+     * @return the number of bytes moved, or -1 if the event does not move data or the count is unknown
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public @Nullable String getCloudName() {
+        return cloudName;
+    }
+
+    /**
+     * @return how long the activity took in nanoseconds, 0 for instantaneous events
+     */
+    public @Nonnegative long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return a description of the error that ended the activity, or null if it succeeded
+     */
+    public @Nullable String getError() {
+        return error;
+    }
+
+    /**
+     * @return the operation, API call, URL, cache name or resource the event is about
+     */
+    public @Nonnull String getOperation() {
+        return operation;
+    }
+
+    public @Nullable String getProviderName() {
+        return providerName;
+    }
+
+    public @Nullable String getRegionId() {
+        return regionId;
+    }
+
+    /**
+     * @return when the event was reported, in milliseconds since the epoch
+     */
+    public @Nonnegative long getTimestamp() {
+        return timestamp;
+    }
+
+    public @Nonnull Type getType() {
+        return type;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return type + " " + operation + " [" + providerName + "/" + cloudName + "/" + accountNumber + "/" + regionId + ", " + durationNanos + "ns, " + bytes + " bytes" + (error == null ? "" : ", " + error) + "]";
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.event;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Publishes {@link CloudEvent}s from the instrumented parts of Dasein Cloud (operations, API calls, HTTP requests, the
+ * cache, blob transfers and state waits) to registered listeners. With no listener registered, instrumented code
+ * checks a single volatile field and does nothing else, so the hooks can stay in place in production.
+ * <p>
+ * Dasein Cloud targets Java 6 and therefore does not define Java Flight Recorder event types itself. On a JVM with
+ * JFR, a listener can commit a JFR event for each cloud event so recordings show which Dasein operation caused the
+ * socket and thread activity they capture:
+ * </p>
+ * <pre>
+ *     &#64;Name("org.dasein.CloudEvent") &#64;Label("Dasein Cloud Event")
+ *     class JfrCloudEvent extends jdk.jfr.Event {
+ *         &#64;Label("Type") String type;
+ *         &#64;Label("Operation") String operation;
+ *         &#64;Label("Account") String account;
+ *         &#64;Label("Bytes") &#64;DataAmount long bytes;
+ *         // provider, cloud, region, error...
+ *     }
+ *
+ *     CloudEvents.addListener(new CloudEventListener() {
+ *         public void onEvent(CloudEvent e) {
+ *             JfrCloudEvent jfr = new JfrCloudEvent();
+ *
+ *             if( jfr.isEnabled() ) {
+ *                 jfr.type = e.getType().name();
+ *                 jfr.operation = e.getOperation();
+ *                 jfr.account = e.getAccountNumber();
+ *                 jfr.bytes = e.getBytes();
+ *                 jfr.commit();
+ *             }
+ *         }
+ *     });
+ * </pre>
+ * <p>
+ * Instrumented code follows this pattern:
+ * </p>
+ * <pre>
+ *     long start = CloudEvents.start();
+ *
+ *     // do the work
+ *     if( CloudEvents.isEnabled() ) {
+ *         CloudEvents.publish(CloudEvent.Type.WAIT, provider, "stop " + vmId, start, -1L, null);
+ *     }
+ * </pre>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class CloudEvents {
+    static private final Logger logger = Logger.getLogger(CloudEvents.class);
+
+    static private final CloudEventListener[] NONE = new CloudEventListener[0];
+
+    static private volatile CloudEventListener[] listeners = NONE;
+
+    /**
+     * An operation begun with {@link #beginOperation(CloudProvider, String)}, handed back to
+     * {@link #endOperation(Operation, Throwable)} when it ends.
+     */
+    static public final class Operation {
+        private final String        name;
+        private final CloudProvider provider;
+        private final long          startNanos;
+
+        private Operation(@Nonnull CloudProvider provider, @Nonnull String name, long startNanos) {
+            this.provider = provider;
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * Registers a listener for all events.
+     * @param listener the listener to add
+     */
+    static public synchronized void addListener(@Nonnull CloudEventListener listener) {
+        CloudEventListener[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+
+        copy[listeners.length] = listener;
+        listeners = copy;
+    }
+
+    /**
+     * Marks the start of an operation. The returned token is handed to {@link #endOperation(Operation, Throwable)}
+     * to publish the operation when it ends.
+     * @param provider the provider performing the operation
+     * @param operation the name of the operation
+     * @return the token for the operation, or null if no listener is registered and so nothing needs to be timed
+     */
+    static public @Nullable Operation beginOperation(@Nonnull CloudProvider provider, @Nonnull String operation) {
+        return (isEnabled() ? new Operation(provider, operation, System.nanoTime()) : null);
+    }
+
+    /**
+     * Publishes the operation identified by the specified token to the listeners registered now. Listeners added or
+     * removed while the operation ran therefore never cause another operation to be ended in its place.
+     * @param operation the token returned when the operation began, or null if it began with no listener registered
+     * @param error the error that ended the operation, or null if it succeeded or the outcome is unknown
+     */
+    static public void endOperation(@Nullable Operation operation, @Nullable Throwable error) {
+        if( operation != null ) {
+            publish(CloudEvent.Type.OPERATION, operation.provider, operation.name, operation.startNanos, -1L, error);
+        }
+    }
+
+    /**
+     * @return true if any listener is registered; callers use this to skip building events nobody will see
+     */
+    static public boolean isEnabled() {
+        return (listeners.length > 0);
+    }
+
+    /**
+     * Publishes an event for work done with the specified provider.
+     * @param type the type of event
+     * @param provider the provider the work was done for
+     * @param operation what the work was
+     * @param startNanos the value of {@link #start()} when the work began, or 0 for an instantaneous event
+     * @param bytes the number of bytes moved, or -1 if not applicable or unknown
+     * @param error the error that ended the work, or null if it succeeded
+     */
+    static public void publish(@Nonnull CloudEvent.Type type, @Nullable CloudProvider provider, @Nonnull String operation, long startNanos, long bytes, @Nullable Throwable error) {
+        publish(type, provider == null ? null : provider.getContext(), operation, startNanos, bytes, error);
+    }
+
+    /**
+     * Publishes an event for work done in the specified context.
+     * @param type the type of event
+     * @param ctx the context the work was done in
+     * @param operation what the work was
+     * @param startNanos the value of {@link #start()} when the work began, or 0 for an instantaneous event
+     * @param bytes the number of bytes moved, or -1 if not applicable or unknown
+     * @param error the error that ended the work, or null if it succeeded
+     */
+    static public void publish(@Nonnull CloudEvent.Type type, @Nullable ProviderContext ctx, @Nonnull String operation, long startNanos, long bytes, @Nullable Throwable error) {
+        CloudEventListener[] current = listeners;
+
+        if( current.length < 1 ) {
+            return;
+        }
+        long duration = (startNanos == 0L ? 0L : Math.max(0L, System.nanoTime() - startNanos));
+        String providerName = null, cloudName = null, account = null, region = null;
+
+        if( ctx != null ) {
+            account = ctx.getAccountNumber();
+            region = ctx.getRegionId();
+            if( ctx.getCloud() != null ) {
+                providerName = ctx.getCloud().getProviderName();
+                cloudName = ctx.getCloud().getCloudName();
+            }
+        }
+        CloudEvent event = new CloudEvent(type, operation, providerName, cloudName, account, region, duration, bytes, error == null ? null : error.getClass().getSimpleName() + ": " + error.getMessage());
+
+        for( CloudEventListener listener : current ) {
+            try {
+                listener.onEvent(event);
+            }
+            catch( Throwable t ) {
+                logger.warn("Event listener failed: " + t.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Removes a listener.
+     * @param listener the listener to remove
+     */
+    static public synchronized void removeListener(@Nonnull CloudEventListener listener) {
+        ArrayList<CloudEventListener> list = new ArrayList<CloudEventListener>(Arrays.asList(listeners));
+
+        list.remove(listener);
+        listeners = (list.isEmpty() ? NONE : list.toArray(new CloudEventListener[list.size()]));
+    }
+
+    /**
+     * @return the current {@link System#nanoTime()} if any listener is registered, otherwise 0 without reading the clock
+     */
+    static public long start() {
+        return (isEnabled() ? System.nanoTime() : 0L);
+    }
+
+    private CloudEvents() { }
+}
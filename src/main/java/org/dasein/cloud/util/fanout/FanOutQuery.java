@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.fanout;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.ProviderPool;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.dc.Region;
+import org.dasein.util.Jiterator;
+import org.dasein.util.uom.time.Minute;
+import org.dasein.util.uom.time.TimePeriod;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link ShardQuery} across many shards (account/region contexts) in parallel and streams the per-shard
+ * results back as they complete. Concurrency is bounded per cloud so that a sweep across hundreds of shards does not
+ * hammer a single provider's API. Providers are borrowed from a {@link ProviderPool} so they are reused by later
+ * queries executed through the same instance (or any instance sharing the pool).
+ * <p>
+ * Typical usage:
+ * </p>
+ * <pre>
+ *     FanOutQuery fanOut = FanOutQuery.getInstance().withMaxConcurrencyPerCloud(8);
+ *
+ *     try {
+ *         for( ShardResult&lt;VirtualMachine&gt; result : fanOut.execute(contexts, ShardQueries.virtualMachines(null)) ) {
+ *             if( !result.isSuccessful() ) {
+ *                 // handle result.getError()
+ *             }
+ *             for( VirtualMachine vm : result.getResults() ) {
+ *                 // ...
+ *             }
+ *         }
+ *     }
+ *     finally {
+ *         fanOut.close();
+ *     }
+ * </pre>
+ * <p>
+ * A shard that fails with an exception is reported as an unsuccessful {@link ShardResult}. An {@link Error} is not
+ * captured: it fails the iteration and is rethrown in the worker thread.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class FanOutQuery {
+    static private final Logger logger = Logger.getLogger(FanOutQuery.class);
+
+    static public final int DEFAULT_MAX_CONCURRENCY_PER_CLOUD = 4;
+
+    static private final AtomicInteger   threadCount = new AtomicInteger(0);
+    static private final ExecutorService workers     = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Fan-out Query " + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    static public @Nonnull FanOutQuery getInstance() {
+        return new FanOutQuery();
+    }
+
+    /**
+     * Builds one shard per region for the account of the specified context.
+     * @param baseContext the context whose account and credentials are used for every shard
+     * @param regionIds the regions to include
+     * @return a context for each region
+     * @throws InternalException an error occurred copying the context
+     */
+    static public @Nonnull List<ProviderContext> shards(@Nonnull ProviderContext baseContext, @Nonnull Collection<String> regionIds) throws InternalException {
+        List<ProviderContext> shards = new ArrayList<ProviderContext>();
+
+        for( String regionId : regionIds ) {
+            shards.add(baseContext.copy(regionId));
+        }
+        return shards;
+    }
+
+    /**
+     * Builds one shard for every region the connected provider can see.
+     * @param provider a provider connected to the account to sweep
+     * @return a context for each region of the provider's cloud
+     * @throws CloudException an error occurred listing regions
+     * @throws InternalException an error occurred copying the context
+     */
+    static public @Nonnull List<ProviderContext> shards(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+        ProviderContext ctx = provider.getContext();
+
+        if( ctx == null ) {
+            throw new InternalException("The provider has not been connected");
+        }
+        DataCenterServices services = provider.getDataCenterServices();
+        List<String> regionIds = new ArrayList<String>();
+
+        for( Region region : services.listRegions() ) {
+            regionIds.add(region.getProviderRegionId());
+        }
+        return shards(ctx, regionIds);
+    }
+
+    private int           maxConcurrencyPerCloud = DEFAULT_MAX_CONCURRENCY_PER_CLOUD;
+    private boolean       ownsPool               = true;
+    private ProviderPool  pool                   = ProviderPool.getInstance();
+    private TimePeriod<?> timeout                = new TimePeriod<Minute>(60, TimePeriod.MINUTE);
+
+    private FanOutQuery() { }
+
+    /**
+     * Closes the provider pool if it was created by this fan-out. A pool supplied through
+     * {@link #withProviderPool(ProviderPool)} is left open for its owner to close.
+     */
+    public void close() {
+        if( ownsPool ) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Executes the query against all of the specified shards. The call returns immediately; iterating over the result
+     * blocks until the next shard completes. Results are delivered in completion order, not in shard order.
+     * @param shards the account/region contexts to query
+     * @param query the query to execute in each shard
+     * @param <T> the type of resource returned by the query
+     * @return the per-shard results, one for each shard
+     */
+    public @Nonnull <T> Iterable<ShardResult<T>> execute(@Nonnull Collection<ProviderContext> shards, final @Nonnull ShardQuery<T> query) {
+        final Jiterator<ShardResult<T>> results = new Jiterator<ShardResult<T>>("Fan-out Query", timeout);
+
+        if( shards.isEmpty() ) {
+            results.complete();
+            return results;
+        }
+        Map<Cloud,Queue<ProviderContext>> byCloud = new HashMap<Cloud, Queue<ProviderContext>>();
+
+        for( ProviderContext ctx : shards ) {
+            Queue<ProviderContext> queue = byCloud.get(ctx.getCloud());
+
+            if( queue == null ) {
+                queue = new ConcurrentLinkedQueue<ProviderContext>();
+                byCloud.put(ctx.getCloud(), queue);
+            }
+            queue.add(ctx);
+        }
+        final AtomicInteger remaining = new AtomicInteger(shards.size());
+
+        for( final Queue<ProviderContext> queue : byCloud.values() ) {
+            int count = Math.min(maxConcurrencyPerCloud, queue.size());
+
+            for( int i = 0; i < count; i++ ) {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        ProviderContext ctx;
+
+                        while( (ctx = queue.poll()) != null ) {
+                            try {
+                                results.push(executeShard(ctx, query));
+                            }
+                            catch( Error e ) {
+                                // fail the iteration rather than leave the consumer waiting on a shard that never completes
+                                results.setLoadException(new InternalException("Shard " + ctx.getAccountNumber() + "/" + ctx.getRegionId() + " failed: " + e.getMessage(), e));
+                                throw e;
+                            }
+                            if( remaining.decrementAndGet() == 0 ) {
+                                results.complete();
+                            }
+                        }
+                    }
+                });
+            }
+        }
+        return results;
+    }
+
+    private @Nonnull <T> ShardResult<T> executeShard(@Nonnull ProviderContext ctx, @Nonnull ShardQuery<T> query) {
+        long start = System.currentTimeMillis();
+
+        try {
+            CloudProvider provider = pool.borrow(ctx);
+            boolean valid = true;
+
+            try {
+                List<T> list = new ArrayList<T>();
+
+                for( T item : query.query(provider) ) {
+                    list.add(item);
+                }
+                return ShardResult.getInstance(ctx, list, System.currentTimeMillis() - start);
+            }
+            catch( CloudException e ) {
+                valid = !CloudErrorType.AUTHENTICATION.equals(e.getErrorType());
+                throw e;
+            }
+            finally {
+                if( valid ) {
+                    pool.release(provider);
+                }
+                else {
+                    pool.invalidate(provider);
+                }
+            }
+        }
+        catch( Exception e ) {
+            if( logger.isDebugEnabled() ) {
+                logger.debug("Shard " + ctx.getAccountNumber() + "/" + ctx.getRegionId() + " failed: " + e.getMessage());
+            }
+            return ShardResult.getInstance(ctx, e, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * @return the maximum number of shards of a single cloud queried at the same time
+     */
+    public @Nonnegative int getMaxConcurrencyPerCloud() {
+        return maxConcurrencyPerCloud;
+    }
+
+    /**
+     * @return the pool from which shard providers are borrowed
+     */
+    public @Nonnull ProviderPool getProviderPool() {
+        return pool;
+    }
+
+    /**
+     * @return how long iterating over the results waits for the next shard before giving up
+     */
+    public @Nonnull TimePeriod<?> getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the maximum number of shards of a single cloud queried at the same time.
+     * @param maxConcurrencyPerCloud the concurrency bound, at least 1
+     * @return this
+     */
+    public @Nonnull FanOutQuery withMaxConcurrencyPerCloud(@Nonnegative int maxConcurrencyPerCloud) {
+        this.maxConcurrencyPerCloud = Math.max(1, maxConcurrencyPerCloud);
+        return this;
+    }
+
+    /**
+     * Borrows shard providers from a pool shared with other code instead of a pool private to this fan-out.
+     * @param pool the pool to borrow from
+     * @return this
+     */
+    public @Nonnull FanOutQuery withProviderPool(@Nonnull ProviderPool pool) {
+        if( ownsPool && this.pool != pool ) {
+            this.pool.close();
+        }
+        this.pool = pool;
+        this.ownsPool = false;
+        return this;
+    }
+
+    /**
+     * Sets how long iterating over the results waits for the next shard before giving up.
+     * @param timeout the wait timeout
+     * @return this
+     */
+    public @Nonnull FanOutQuery withTimeout(@Nonnull TimePeriod<?> timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.fanout;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.compute.ImageFilterOptions;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.MachineImageSupport;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotFilterOptions;
+import org.dasein.cloud.compute.SnapshotSupport;
+import org.dasein.cloud.compute.VMFilterOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeFilterOptions;
+import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.network.Firewall;
+import org.dasein.cloud.network.FirewallSupport;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.network.VLANSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+
+/**
+ * Factory for the {@link ShardQuery} instances most commonly used in inventory sweeps. Each query returns an empty
+ * list for shards whose provider does not support the service in question.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ShardQueries {
+    private ShardQueries() { }
+
+    static public @Nonnull ShardQuery<Firewall> firewalls() {
+        return new ShardQuery<Firewall>() {
+            @Override
+            public @Nonnull Iterable<Firewall> query(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+                NetworkServices services = provider.getNetworkServices();
+                FirewallSupport support = (services == null ? null : services.getFirewallSupport());
+
+                if( support == null ) {
+                    return Collections.emptyList();
+                }
+                return support.list();
+            }
+        };
+    }
+
+    static public @Nonnull ShardQuery<MachineImage> images(final @Nullable ImageFilterOptions options) {
+        return new ShardQuery<MachineImage>() {
+            @Override
+            public @Nonnull Iterable<MachineImage> query(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+                ComputeServices services = provider.getComputeServices();
+                MachineImageSupport support = (services == null ? null : services.getImageSupport());
+
+                if( support == null ) {
+                    return Collections.emptyList();
+                }
+                return support.listImages(options);
+            }
+        };
+    }
+
+    static public @Nonnull ShardQuery<Snapshot> snapshots(final @Nullable SnapshotFilterOptions options) {
+        return new ShardQuery<Snapshot>() {
+            @Override
+            public @Nonnull Iterable<Snapshot> query(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+                ComputeServices services = provider.getComputeServices();
+                SnapshotSupport support = (services == null ? null : services.getSnapshotSupport());
+
+                if( support == null ) {
+                    return Collections.emptyList();
+                }
+                return support.listSnapshots(options);
+            }
+        };
+    }
+
+    static public @Nonnull ShardQuery<VirtualMachine> virtualMachines(final @Nullable VMFilterOptions options) {
+        return new ShardQuery<VirtualMachine>() {
+            @Override
+            public @Nonnull Iterable<VirtualMachine> query(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+                ComputeServices services = provider.getComputeServices();
+                VirtualMachineSupport support = (services == null ? null : services.getVirtualMachineSupport());
+
+                if( support == null ) {
+                    return Collections.emptyList();
+                }
+                return support.listVirtualMachines(options);
+            }
+        };
+    }
+
+    static public @Nonnull ShardQuery<VLAN> vlans() {
+        return new ShardQuery<VLAN>() {
+            @Override
+            public @Nonnull Iterable<VLAN> query(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+                NetworkServices services = provider.getNetworkServices();
+                VLANSupport support = (services == null ? null : services.getVlanSupport());
+
+                if( support == null ) {
+                    return Collections.emptyList();
+                }
+                return support.listVlans();
+            }
+        };
+    }
+
+    static public @Nonnull ShardQuery<Volume> volumes(final @Nullable VolumeFilterOptions options) {
+        return new ShardQuery<Volume>() {
+            @Override
+            public @Nonnull Iterable<Volume> query(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+                ComputeServices services = provider.getComputeServices();
+                VolumeSupport support = (services == null ? null : services.getVolumeSupport());
+
+                if( support == null ) {
+                    return Collections.emptyList();
+                }
+                return support.listVolumes(options);
+            }
+        };
+    }
+}
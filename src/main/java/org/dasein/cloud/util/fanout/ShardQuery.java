@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.fanout;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A query executed against a single shard (one account in one region) of a {@link FanOutQuery}. Common queries are
+ * available from {@link ShardQueries}.
+ * @param <T> the type of resource returned by the query
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface ShardQuery<T> {
+    /**
+     * Executes the query against a provider connected to the shard's account and region.
+     * @param provider the connected provider for the shard
+     * @return the resources found in the shard
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull Iterable<T> query(@Nonnull CloudProvider provider) throws CloudException, InternalException;
+}
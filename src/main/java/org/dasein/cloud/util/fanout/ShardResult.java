@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.fanout;
+
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of running a {@link ShardQuery} against a single shard. A shard that fails does not fail the whole
+ * fan-out; instead its error is attached to its result and the results list is empty.
+ * @param <T> the type of resource returned by the query
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ShardResult<T> {
+    static public @Nonnull <T> ShardResult<T> getInstance(@Nonnull ProviderContext context, @Nonnull List<T> results, @Nonnegative long elapsedMillis) {
+        return new ShardResult<T>(context, results, null, elapsedMillis);
+    }
+
+    static public @Nonnull <T> ShardResult<T> getInstance(@Nonnull ProviderContext context, @Nonnull Exception error, @Nonnegative long elapsedMillis) {
+        return new ShardResult<T>(context, Collections.<T>emptyList(), error, elapsedMillis);
+    }
+
+    private ProviderContext context;
+    private long            elapsedMillis;
+    private Exception       error;
+    private List<T>         results;
+
+    private ShardResult(@Nonnull ProviderContext context, @Nonnull List<T> results, @Nullable Exception error, @Nonnegative long elapsedMillis) {
+        this.context = context;
+        this.results = Collections.unmodifiableList(results);
+        this.error = error;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the account number of the shard
+     */
+    public @Nonnull String getAccountNumber() {
+        return context.getAccountNumber();
+    }
+
+    /**
+     * @return the context identifying the shard
+     */
+    public @Nonnull ProviderContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return the time in milliseconds spent connecting to and querying the shard
+     */
+    public @Nonnegative long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the error that caused the shard to fail, or <code>null</code> if the query succeeded
+     */
+    public @Nullable Exception getError() {
+        return error;
+    }
+
+    /**
+     * @return the region ID of the shard
+     */
+    public @Nullable String getRegionId() {
+        return context.getRegionId();
+    }
+
+    /**
+     * @return the resources found in the shard; empty if the shard failed
+     */
+    public @Nonnull List<T> getResults() {
+        return results;
+    }
+
+    /**
+     * @return true if the query against the shard completed without error
+     */
+    public boolean isSuccessful() {
+        return (error == null);
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return getAccountNumber() + "/" + getRegionId() + " [" + (error == null ? results.size() + " results" : error.getMessage()) + "] " + elapsedMillis + "ms";
+    }
+}
@@ -19,16 +19,124 @@
 
 package org.dasein.cloud.util.requester;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
 import org.dasein.cloud.CloudErrorType;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Date;
+
 /**
  * Created by Vlad_Munthiu on 11/20/2014.
  */
 public class CloudResponseException extends ClientProtocolException {
+    /**
+     * Error bodies are only read up to this many bytes; the rest of the body is discarded.
+     */
+    static public final int MAX_ERROR_BODY = 16 * 1024;
+
+    /**
+     * Builds the exception for a non-successful response, classifying its status code and reading at most
+     * {@link #MAX_ERROR_BODY} bytes of the error body.
+     * @param httpResponse the non-successful response
+     * @return an exception describing the response
+     * @throws IOException an error occurred reading the response body
+     */
+    static public @Nonnull CloudResponseException getInstance(@Nonnull HttpResponse httpResponse) throws IOException {
+        int status = httpResponse.getStatusLine().getStatusCode();
+
+        return new CloudResponseException(getErrorType(status), status, httpResponse.getStatusLine().getReasonPhrase(),
+                readErrorBody(httpResponse.getEntity()), getRetryAfter(httpResponse));
+    }
+
+    /**
+     * Classifies an HTTP status code.
+     * @param httpCode the HTTP status code of the response
+     * @return the error type matching the status
+     */
+    static public @Nonnull CloudErrorType getErrorType(int httpCode) {
+        switch( httpCode ) {
+            case HttpStatus.SC_UNAUTHORIZED: case HttpStatus.SC_FORBIDDEN:
+                return CloudErrorType.AUTHENTICATION;
+            case 429: case HttpStatus.SC_SERVICE_UNAVAILABLE:
+                return CloudErrorType.THROTTLING;
+            case HttpStatus.SC_INTERNAL_SERVER_ERROR: case HttpStatus.SC_BAD_GATEWAY: case HttpStatus.SC_GATEWAY_TIMEOUT:
+                return CloudErrorType.COMMUNICATION;
+            default:
+                return CloudErrorType.GENERAL;
+        }
+    }
+
+    /**
+     * Reads the <code>Retry-After</code> header, which may be either a number of seconds or an HTTP date.
+     * @param httpResponse the response
+     * @return the number of milliseconds the server asked the client to wait, or -1 if it did not say
+     */
+    static public long getRetryAfter(@Nonnull HttpResponse httpResponse) {
+        Header header = httpResponse.getFirstHeader("Retry-After");
+
+        if( header == null || header.getValue() == null ) {
+            return -1L;
+        }
+        String value = header.getValue().trim();
+
+        try {
+            return Math.max(0L, Long.parseLong(value) * 1000L);
+        }
+        catch( NumberFormatException ignore ) {
+            // not a delay in seconds, try it as a date
+        }
+        Date when = DateUtils.parseDate(value);
+
+        if( when == null ) {
+            return -1L;
+        }
+        return Math.max(0L, when.getTime() - System.currentTimeMillis());
+    }
+
+    static private @Nonnull String readErrorBody(@Nullable HttpEntity entity) throws IOException {
+        if( entity == null ) {
+            return "";
+        }
+        try {
+            InputStream input = entity.getContent();
+
+            if( input == null ) {
+                return "";
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+
+            while( body.size() < MAX_ERROR_BODY && (count = input.read(buffer, 0, Math.min(buffer.length, MAX_ERROR_BODY - body.size()))) != -1 ) {
+                body.write(buffer, 0, count);
+            }
+            ContentType type = ContentType.get(entity);
+            Charset charset = (type == null ? null : type.getCharset());
+
+            return new String(body.toByteArray(), charset == null ? "ISO-8859-1" : charset.name());
+        }
+        finally {
+            // releases the connection without reading whatever is left of a large error page
+            EntityUtils.consumeQuietly(entity);
+        }
+    }
+
     private CloudErrorType errorType;
     private int            httpCode;
     private String         providerCode;
+    private long           retryAfter = -1L;
 
     public CloudResponseException(CloudErrorType cloudErrorType, int httpCode, String providerCode, String message){
         super(message);
@@ -37,6 +145,11 @@ public class CloudResponseException extends ClientProtocolException {
         this.providerCode = providerCode;
     }
 
+    public CloudResponseException(CloudErrorType cloudErrorType, int httpCode, String providerCode, String message, long retryAfter){
+        this(cloudErrorType, httpCode, providerCode, message);
+        this.retryAfter = retryAfter;
+    }
+
     public CloudErrorType getErrorType() {
         return errorType;
     }
@@ -48,4 +161,11 @@ public class CloudResponseException extends ClientProtocolException {
     public String getProviderCode() {
         return providerCode;
     }
+
+    /**
+     * @return the number of milliseconds the server asked the client to wait before retrying, or -1 if it did not say
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
 }
@@ -0,0 +1,461 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HTTP compression for requester calls, configured per provider through custom properties on the provider context.
+ * Responses are requested with <code>Accept-Encoding: gzip,deflate</code> and decompressed as they are read, so the
+ * {@link org.dasein.cloud.util.requester.streamprocessors.StreamProcessor}s parse straight from the decompressing
+ * stream without the body being buffered. Request entities at or above a configured size can be gzipped before they
+ * are sent, for clouds that accept compressed requests.
+ * <p>
+ * Compressed and raw byte counts in both directions are exposed over JMX as <code>org.dasein:type=Compression</code>.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ContentCompression {
+    static private final Logger logger = Logger.getLogger(ContentCompression.class);
+
+    /**
+     * Custom property on the provider context that turns response compression off when set to <code>false</code>.
+     */
+    static public final String ACCEPT_PROPERTY = "acceptCompression";
+
+    /**
+     * Custom property on the provider context giving the size in bytes at which request entities are gzipped. Request
+     * compression is off unless it is set.
+     */
+    static public final String GZIP_THRESHOLD_PROPERTY = "requestGzipThreshold";
+
+    // set on each request's context so clients built from a shared builder honor the settings of the caller
+    static private final String ACCEPT_ATTRIBUTE = "dasein.compression.accept";
+
+    static private final AtomicLong requestCompressed  = new AtomicLong(0L);
+    static private final AtomicLong requestRaw         = new AtomicLong(0L);
+    static private final AtomicLong responseCompressed = new AtomicLong(0L);
+    static private final AtomicLong responseRaw        = new AtomicLong(0L);
+
+    // builders are often shared by many requests with different settings; the interceptors must only be added once
+    // and decide per request from the context whether to do anything
+    static private final Map<HttpClientBuilder,Boolean> configured = Collections.synchronizedMap(new WeakHashMap<HttpClientBuilder, Boolean>());
+
+    static public class ContentCompressionDelegate implements ContentCompressionMBean {
+        @Override
+        public long getRequestCompressedBytes() {
+            return ContentCompression.getRequestCompressedBytes();
+        }
+
+        @Override
+        public long getRequestRawBytes() {
+            return ContentCompression.getRequestRawBytes();
+        }
+
+        @Override
+        public long getResponseCompressedBytes() {
+            return ContentCompression.getResponseCompressedBytes();
+        }
+
+        @Override
+        public long getResponseRawBytes() {
+            return ContentCompression.getResponseRawBytes();
+        }
+
+        @Override
+        public void reset() {
+            ContentCompression.reset();
+        }
+    }
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.dasein:type=Compression");
+
+            // the delegate's name does not follow the standard MBean naming rule, so its interface is given explicitly
+            server.registerMBean(new StandardMBean(new ContentCompressionDelegate(), ContentCompressionMBean.class), name);
+        }
+        catch( Throwable t ) {
+            logger.error("Unable to set up compression MBean: " + t.getMessage());
+        }
+    }
+
+    /**
+     * Reads the compression settings for the specified provider.
+     * @param provider the provider making the calls
+     * @return the compression settings from the provider context's custom properties
+     */
+    static public @Nonnull ContentCompression getInstance(@Nonnull CloudProvider provider) {
+        ProviderContext ctx = provider.getContext();
+        boolean accept = true;
+        long threshold = -1L;
+
+        if( ctx != null ) {
+            Properties props = ctx.getCustomProperties();
+            String value = props.getProperty(ACCEPT_PROPERTY);
+
+            if( value != null ) {
+                accept = !value.trim().equalsIgnoreCase("false");
+            }
+            value = props.getProperty(GZIP_THRESHOLD_PROPERTY);
+            if( value != null ) {
+                try {
+                    threshold = Long.parseLong(value.trim());
+                }
+                catch( NumberFormatException e ) {
+                    logger.warn("Ignoring invalid " + GZIP_THRESHOLD_PROPERTY + ": " + value);
+                }
+            }
+        }
+        return new ContentCompression(accept, threshold);
+    }
+
+    /**
+     * Builds compression settings directly.
+     * @param acceptCompression true to ask for compressed responses
+     * @param gzipThreshold the entity size in bytes at which requests are gzipped, or a negative number never to do so
+     * @return the compression settings
+     */
+    static public @Nonnull ContentCompression getInstance(boolean acceptCompression, long gzipThreshold) {
+        return new ContentCompression(acceptCompression, gzipThreshold);
+    }
+
+    /**
+     * @return the number of bytes sent for request entities that were gzipped
+     */
+    static public @Nonnegative long getRequestCompressedBytes() {
+        return requestCompressed.get();
+    }
+
+    /**
+     * @return the size before compression of the request entities that were gzipped
+     */
+    static public @Nonnegative long getRequestRawBytes() {
+        return requestRaw.get();
+    }
+
+    /**
+     * @return the number of compressed bytes read for compressed responses
+     */
+    static public @Nonnegative long getResponseCompressedBytes() {
+        return responseCompressed.get();
+    }
+
+    /**
+     * @return the number of bytes compressed responses decompressed to
+     */
+    static public @Nonnegative long getResponseRawBytes() {
+        return responseRaw.get();
+    }
+
+    /**
+     * Resets the byte counters.
+     */
+    static public void reset() {
+        requestCompressed.set(0L);
+        requestRaw.set(0L);
+        responseCompressed.set(0L);
+        responseRaw.set(0L);
+    }
+
+    /**
+     * Counts the bytes read through it and reports the total once, at the end of the stream or when it is closed.
+     */
+    static private class CountingInputStream extends FilterInputStream {
+        private final AtomicLong total;
+        private long             count;
+        private boolean          reported;
+
+        CountingInputStream(@Nonnull InputStream in, @Nonnull AtomicLong total) {
+            super(in);
+            this.total = total;
+        }
+
+        @Override
+        public void close() throws IOException {
+            report();
+            super.close();
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if( b == -1 ) {
+                report();
+            }
+            else {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+
+            if( n == -1 ) {
+                report();
+            }
+            else {
+                count += n;
+            }
+            return n;
+        }
+
+        private void report() {
+            if( !reported ) {
+                reported = true;
+                total.addAndGet(count);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Replaces a gzip or deflate encoded entity with one whose content is decompressed as it is read.
+     */
+    static private class DecompressingEntity extends HttpEntityWrapper {
+        private final boolean gzip;
+        private InputStream   content;
+
+        DecompressingEntity(@Nonnull HttpEntity entity, boolean gzip) {
+            super(entity);
+            this.gzip = gzip;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            // the underlying stream can only be read once, so hand out the same stream every time like the wrapped entity
+            if( content == null ) {
+                InputStream wire = new CountingInputStream(wrappedEntity.getContent(), responseCompressed);
+                InputStream raw = (gzip ? new GZIPInputStream(wire) : new DeflateInputStream(wire));
+
+                content = new CountingInputStream(raw, responseRaw);
+            }
+            return content;
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1L;
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            InputStream in = getContent();
+
+            try {
+                byte[] buffer = new byte[4096];
+                int n;
+
+                while( (n = in.read(buffer)) != -1 ) {
+                    out.write(buffer, 0, n);
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+    }
+
+    static private final HttpRequestInterceptor acceptEncoding = new HttpRequestInterceptor() {
+        @Override
+        public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+            if( isAccepted(context) && !request.containsHeader("Accept-Encoding") ) {
+                request.addHeader("Accept-Encoding", "gzip,deflate");
+            }
+        }
+    };
+
+    static private final HttpResponseInterceptor contentEncoding = new HttpResponseInterceptor() {
+        @Override
+        public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
+            HttpEntity entity = response.getEntity();
+
+            if( !isAccepted(context) || entity == null || entity.getContentLength() == 0L ) {
+                return;
+            }
+            Header encoding = entity.getContentEncoding();
+
+            if( encoding == null ) {
+                return;
+            }
+            for( HeaderElement element : encoding.getElements() ) {
+                String codec = element.getName().toLowerCase();
+
+                if( codec.equals("gzip") || codec.equals("x-gzip") || codec.equals("deflate") ) {
+                    response.setEntity(new DecompressingEntity(entity, !codec.equals("deflate")));
+                    response.removeHeaders("Content-Length");
+                    response.removeHeaders("Content-Encoding");
+                    response.removeHeaders("Content-MD5");
+                    return;
+                }
+                else if( !codec.equals("identity") ) {
+                    throw new HttpException("Unsupported Content-Encoding: " + element.getName());
+                }
+            }
+        }
+    };
+
+    static private boolean isAccepted(@Nonnull HttpContext context) {
+        return Boolean.TRUE.equals(context.getAttribute(ACCEPT_ATTRIBUTE));
+    }
+
+    private final boolean acceptCompression;
+    private final long    gzipThreshold;
+
+    private ContentCompression(boolean acceptCompression, long gzipThreshold) {
+        this.acceptCompression = acceptCompression;
+        this.gzipThreshold = gzipThreshold;
+    }
+
+    /**
+     * Gzips the entity of the specified request if it is at least as large as the threshold. Entities that are already
+     * encoded, streamed or of unknown length are left alone. The compressed entity is buffered and so repeatable.
+     * @param request the request about to be sent
+     * @throws IOException an error occurred reading or compressing the entity
+     */
+    public void compress(@Nonnull HttpUriRequest request) throws IOException {
+        if( gzipThreshold < 0L || !(request instanceof HttpEntityEnclosingRequest) ) {
+            return;
+        }
+        HttpEntityEnclosingRequest r = (HttpEntityEnclosingRequest)request;
+        HttpEntity entity = r.getEntity();
+
+        if( entity == null || entity.getContentEncoding() != null || !entity.isRepeatable() ) {
+            return;
+        }
+        long length = entity.getContentLength();
+
+        if( length < 0L || length < gzipThreshold ) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int)Math.min(length, Integer.MAX_VALUE));
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+
+        try {
+            entity.writeTo(gzip);
+        }
+        finally {
+            gzip.close();
+        }
+        ByteArrayEntity compressed = new ByteArrayEntity(bytes.toByteArray());
+
+        compressed.setContentType(entity.getContentType());
+        compressed.setContentEncoding("gzip");
+        r.setEntity(compressed);
+        requestRaw.addAndGet(length);
+        requestCompressed.addAndGet(compressed.getContentLength());
+    }
+
+    /**
+     * Sets up response compression on the specified client builder. HttpClient's own compression support is replaced
+     * so the bytes can be counted and so it can be turned off through the provider context. The interceptors added here
+     * do nothing unless {@link #prepare(HttpContext)} has turned compression on for the request, so a builder shared by
+     * providers with different settings behaves correctly for each of them.
+     * @param builder the builder of the client that will send the request
+     */
+    public void configure(@Nonnull HttpClientBuilder builder) {
+        builder.disableContentCompression();
+        if( configured.put(builder, Boolean.TRUE) == null ) {
+            builder.addInterceptorLast(acceptEncoding);
+            builder.addInterceptorFirst(contentEncoding);
+        }
+    }
+
+    /**
+     * Records on the context of a request whether compressed responses should be asked for and decoded.
+     * @param context the context the request will be executed with
+     */
+    public void prepare(@Nonnull HttpContext context) {
+        context.setAttribute(ACCEPT_ATTRIBUTE, acceptCompression);
+    }
+
+    /**
+     * @return the entity size in bytes at which requests are gzipped, or a negative number if they never are
+     */
+    public long getGzipThreshold() {
+        return gzipThreshold;
+    }
+
+    /**
+     * @return true if compressed responses are requested
+     */
+    public boolean isAcceptCompression() {
+        return acceptCompression;
+    }
+}
@@ -19,17 +19,44 @@
 
 package org.dasein.cloud.util.requester;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.DefaultProxyRoutePlanner;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.RequestTrackingStrategy;
+import org.dasein.cloud.util.CircuitBreaker;
+import org.dasein.cloud.util.RateLimiter;
 import org.dasein.cloud.util.requester.fluent.Requester;
+import org.dasein.cloud.util.event.CloudEvent;
+import org.dasein.cloud.util.event.CloudEvents;
+import org.dasein.cloud.util.trace.Tracer;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
 import java.util.Properties;
 
  /**
@@ -37,10 +64,13 @@ import java.util.Properties;
  */
 
 public class DaseinRequestExecutor<T> implements Requester<T> {
+    static private final Logger logger = Logger.getLogger(DaseinRequestExecutor.class);
+
     private CloudProvider provider;
     private HttpClientBuilder httpClientBuilder;
     private HttpUriRequest httpUriRequest;
     private ResponseHandler<T> responseHandler;
+    private ResponseCache responseCache;
 
     public DaseinRequestExecutor(CloudProvider provider, HttpClientBuilder httpClientBuilder, HttpUriRequest httpUriRequest, ResponseHandler<T> responseHandler){
         this.provider = provider;
@@ -49,6 +79,28 @@ public class DaseinRequestExecutor<T> implements Requester<T> {
         this.responseHandler = responseHandler;
     }
 
+    /**
+     * Caches the results of GET requests in the specified cache. Later executions of the same request are sent with
+     * <code>If-None-Match</code> and <code>If-Modified-Since</code> and, when the cloud answers
+     * <code>304 Not Modified</code>, return the cached result without parsing or mapping anything.
+     * @param responseCache the cache to use, or null to stop caching
+     * @return this executor
+     */
+    public DaseinRequestExecutor<T> withResponseCache(@Nullable ResponseCache responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    /**
+     * Sends the request and handles the response. Failures are classified and retried according to the provider's
+     * {@link RetryPolicy}, calls are paced by the endpoint's {@link RateLimiter} if the context turns one on, and
+     * calls to an endpoint that keeps failing are refused by its {@link CircuitBreaker} until it recovers. Responses
+     * are compressed in transit as configured by {@link ContentCompression}. The request ID of the context's
+     * {@link RequestTrackingStrategy} is sent as a header if the strategy asks for it, and sampled calls are recorded
+     * as {@link Tracer} spans whose trace and span IDs are sent as B3 headers.
+     * @return the handled response
+     * @throws CloudException the request failed and will not be retried
+     */
     public T execute() throws CloudException {
         HttpProxyConfig httpProxyConfig = getHttpProxyConfigData();
         if(httpProxyConfig != null){
@@ -57,19 +109,206 @@ public class DaseinRequestExecutor<T> implements Requester<T> {
             httpClientBuilder.setRoutePlanner(routePlanner);
         }
 
+        String family = getApiFamily();
+        RateLimiter limiter = RateLimiter.getInstance(provider, family);
+        CircuitBreaker breaker = CircuitBreaker.getInstance(provider, family);
+        RetryPolicy policy = RetryPolicy.getInstance(provider);
+        ContentCompression compression = ContentCompression.getInstance(provider);
+
+        compression.configure(httpClientBuilder);
+        try {
+            compression.compress(httpUriRequest);
+        } catch (IOException e) {
+            throw new CloudException(e);
+        }
+
+        if( policy.getMaxAttempts() > 1 ) {
+            // retries happen here, with backoff; the client's own immediate retries would multiply them
+            httpClientBuilder.disableAutomaticRetries();
+        }
+
+        ResponseHandler<T> handler = this.responseHandler;
+
+        if( responseCache != null && "GET".equalsIgnoreCase(httpUriRequest.getMethod()) ) {
+            handler = new ConditionalResponseHandler(getCacheKey());
+        }
+
+        ProviderContext ctx = provider.getContext();
+        RequestTrackingStrategy strategy = (ctx == null ? null : ctx.getRequestTrackingStrategy());
+
+        if( strategy != null && strategy.getSendAsHeader() && strategy.getHeaderName() != null ) {
+            httpUriRequest.setHeader(strategy.getHeaderName(), strategy.getRequestId());
+        }
+        long start = CloudEvents.start();
+        CloudException error = null;
+
+        Tracer.begin(provider, "HTTP " + httpUriRequest.getMethod());
+        try {
+            if( Tracer.isRecording() ) {
+                Tracer.addTag("http.method", httpUriRequest.getMethod());
+                Tracer.addTag("http.url", getTraceUrl());
+                HttpTracing.configure(httpClientBuilder);
+            }
+            return send(handler, family, limiter, breaker, policy, compression);
+        }
+        catch( CloudException e ) {
+            error = e;
+            throw e;
+        }
+        finally {
+            Tracer.end();
+            if( CloudEvents.isEnabled() ) {
+                CloudEvents.publish(CloudEvent.Type.HTTP_REQUEST, provider, httpUriRequest.getMethod() + " " + getTraceUrl(), start, getRequestLength(), error);
+            }
+        }
+    }
+
+    /**
+     * @return the length of the request body as sent, or -1 if there is none or it is unknown
+     */
+    private long getRequestLength() {
+        if( httpUriRequest instanceof HttpEntityEnclosingRequest ) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest)httpUriRequest).getEntity();
+
+            return (entity == null ? -1L : entity.getContentLength());
+        }
+        return -1L;
+    }
+
+    private T send(ResponseHandler<T> handler, String family, RateLimiter limiter, CircuitBreaker breaker, RetryPolicy policy, ContentCompression compression) throws CloudException {
         try {
             CloseableHttpClient httpClient = this.httpClientBuilder.build();
+
             try {
-                return httpClient.execute(this.httpUriRequest, this.responseHandler);
+                for( int attempt=1; ; attempt++ ) {
+                    if( !breaker.allowRequest() ) {
+                        throw new CloudException(CloudErrorType.COMMUNICATION, 0, "CircuitOpen", "Calls to " + family + " are failing fast after repeated failures");
+                    }
+                    CloudException failure = null;
+                    long retryAfter = -1L;
+                    boolean reported = false;
+
+                    try {
+                        if( limiter != null ) {
+                            try {
+                                limiter.acquire();
+                            } catch (InternalException e) {
+                                throw new CloudException(e);
+                            }
+                        }
+                        HttpContext context = new BasicHttpContext();
+
+                        compression.prepare(context);
+                        Tracer.beginChild("attempt");
+                        try {
+                            Tracer.addTag("attempt", String.valueOf(attempt));
+                            HttpTracing.propagate(this.httpUriRequest);
+                            context.setAttribute(HttpTracing.ATTEMPT_START, System.nanoTime());
+                            T result = httpClient.execute(this.httpUriRequest, handler, context);
+
+                            if( limiter != null ) {
+                                limiter.onSuccess();
+                            }
+                            breaker.onSuccess();
+                            reported = true;
+                            return result;
+                        } catch (CloudResponseException e) {
+                            failure = new CloudException(e.getErrorType(), e.getHttpCode(), e.getProviderCode(), e.getMessage(), e);
+                            retryAfter = e.getRetryAfter();
+                            Tracer.addTag("http.status_code", String.valueOf(e.getHttpCode()));
+                        } catch (ClientProtocolException e) {
+                            throw new CloudException(e.getMessage(), e);
+                        } catch (IOException e) {
+                            if( !RetryPolicy.isTransient(e) ) {
+                                throw new CloudException(e.getMessage(), e);
+                            }
+                            failure = new CloudException(CloudErrorType.COMMUNICATION, 0, e.getClass().getSimpleName(), String.valueOf(e.getMessage()), e);
+                        } finally {
+                            Tracer.end();
+                        }
+                        if( limiter != null ) {
+                            limiter.onFailure(failure);
+                        }
+                        breaker.onFailure(failure);
+                        reported = true;
+                    } finally {
+                        if( !reported ) {
+                            // the attempt ended without showing whether the endpoint is healthy, so let another caller probe it
+                            breaker.release();
+                        }
+                    }
+
+                    long delay = policy.getRetryDelay(this.httpUriRequest, failure, retryAfter, attempt);
+
+                    if( delay < 0L ) {
+                        throw failure;
+                    }
+                    if( logger.isDebugEnabled() ) {
+                        logger.debug("Retrying " + httpUriRequest.getMethod() + " " + httpUriRequest.getURI() + " in " + delay + "ms after: " + failure.getMessage());
+                    }
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw failure;
+                    }
+                    if( this.httpUriRequest instanceof HttpRequestBase ) {
+                        ((HttpRequestBase)this.httpUriRequest).reset();
+                    }
+                }
             }
             finally{
                 httpClient.close();
             }
-        } catch (CloudResponseException e){
-            throw new CloudException(e.getErrorType(), e.getHttpCode(), e.getProviderCode(), e.getMessage());
+        } catch (CloudException e) {
+            throw e;
         } catch (Exception e) {
-            throw new CloudException(e.getMessage());
+            throw new CloudException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The query string is left out since some clouds sign requests with it.
+     */
+    private String getTraceUrl() {
+        URI uri = httpUriRequest.getURI();
+
+        if( uri == null ) {
+            return "";
         }
+        return uri.getScheme() + "://" + uri.getAuthority() + (uri.getRawPath() == null ? "" : uri.getRawPath());
+    }
+
+    /**
+     * Results differ by account, region, URI and by what the response handler turns the body into.
+     */
+    private String getCacheKey() {
+        ProviderContext ctx = provider.getContext();
+        StringBuilder key = new StringBuilder();
+
+        if( ctx != null ) {
+            key.append(ctx.getCloud().getEndpoint()).append('|').append(ctx.getAccountNumber()).append('|').append(ctx.getRegionId()).append('|');
+        }
+        key.append(ResponseCache.getRequestKey(httpUriRequest.getURI())).append('|');
+        if( responseHandler instanceof DaseinResponseHandler ) {
+            key.append(((DaseinResponseHandler<?>)responseHandler).getResultKey());
+        }
+        else if( responseHandler instanceof DaseinResponseHandlerWithMapper ) {
+            key.append(((DaseinResponseHandlerWithMapper<?,?>)responseHandler).getResultKey());
+        }
+        else {
+            key.append(responseHandler.getClass().getName());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Calls to the same host share a provider quota, so the host names the rate limiter's API family.
+     */
+    private String getApiFamily() {
+        String host = (httpUriRequest.getURI() == null ? null : httpUriRequest.getURI().getHost());
+
+        return (host == null ? "default" : host);
     }
 
     private HttpProxyConfig getHttpProxyConfigData()
@@ -93,6 +332,99 @@ public class DaseinRequestExecutor<T> implements Requester<T> {
         return httpProxyConfig;
     }
 
+    /**
+     * Adds the cached validators to the request and answers a 304 with the cached result. Full successful responses
+     * are handled by the wrapped handler and their results cached if the cloud sent validators.
+     */
+    private class ConditionalResponseHandler implements ResponseHandler<T> {
+        private final Object cached;
+        private final String key;
+
+        public ConditionalResponseHandler(String key) {
+            ResponseCache.Entry entry = responseCache.get(key);
+
+            this.key = key;
+            // hold the result strongly while the request is in flight so a 304 always has something to return
+            this.cached = (entry == null ? null : entry.getResult());
+            httpUriRequest.removeHeaders("If-None-Match");
+            httpUriRequest.removeHeaders("If-Modified-Since");
+            if( cached != null ) {
+                if( entry.getETag() != null ) {
+                    httpUriRequest.setHeader("If-None-Match", entry.getETag());
+                }
+                if( entry.getLastModified() != null ) {
+                    httpUriRequest.setHeader("If-Modified-Since", entry.getLastModified());
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T handleResponse(HttpResponse httpResponse) throws IOException {
+            int status = httpResponse.getStatusLine().getStatusCode();
+
+            if( status == HttpStatus.SC_NOT_MODIFIED && cached != null ) {
+                EntityUtils.consumeQuietly(httpResponse.getEntity());
+                responseCache.onHit();
+                return (T)cached;
+            }
+            CountingEntity counted = null;
+
+            if( httpResponse.getEntity() != null ) {
+                // the declared length is -1 for chunked and decompressed bodies, so weigh what the handler actually reads
+                counted = new CountingEntity(httpResponse.getEntity());
+                httpResponse.setEntity(counted);
+            }
+            T result = responseHandler.handleResponse(httpResponse);
+            long weight = (counted == null ? 0L : counted.getByteCount());
+
+            if( status == HttpStatus.SC_OK ) {
+                Header eTag = httpResponse.getFirstHeader("ETag");
+                Header lastModified = httpResponse.getFirstHeader("Last-Modified");
+
+                responseCache.onMiss();
+                responseCache.put(key, eTag == null ? null : eTag.getValue(), lastModified == null ? null : lastModified.getValue(), result, weight);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the wrapped entity's content.
+     */
+    static private class CountingEntity extends HttpEntityWrapper {
+        private CountingInputStream content;
+
+        public CountingEntity(HttpEntity entity) {
+            super(entity);
+        }
+
+        public long getByteCount() {
+            return (content == null ? 0L : content.getByteCount());
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            // the wrapped stream can only be read once, so hand out the same stream every time
+            if( content == null ) {
+                content = new CountingInputStream(wrappedEntity.getContent());
+            }
+            return content;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            InputStream in = getContent();
+
+            try {
+                IOUtils.copy(in, out);
+            }
+            finally {
+                in.close();
+            }
+        }
+    }
+
     private class HttpProxyConfig
     {
         private String host;
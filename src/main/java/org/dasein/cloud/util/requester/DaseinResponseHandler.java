@@ -23,10 +23,9 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
-import org.apache.http.util.EntityUtils;
-import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.util.requester.streamprocessors.StreamProcessor;
+import org.dasein.cloud.util.trace.Tracer;
 
 import java.io.IOException;
 
@@ -43,20 +42,32 @@ public class DaseinResponseHandler<T> implements ResponseHandler<T> {
         this.classType = classType;
     }
 
+    /**
+     * @return identifies what this handler turns a response into, for caching its results
+     */
+    String getResultKey() {
+        return processor.getClass().getName() + "|" + String.valueOf(classType);
+    }
+
     @Override
     public T handleResponse(HttpResponse httpResponse) throws ClientProtocolException, IOException {
         if( httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_NO_CONTENT
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_ACCEPTED ) {
-            throw new CloudResponseException(CloudErrorType.GENERAL, httpResponse.getStatusLine().getStatusCode(),
-                    httpResponse.getStatusLine().getReasonPhrase(), EntityUtils.toString(httpResponse.getEntity()));
+            throw CloudResponseException.getInstance(httpResponse);
         }
         else {
             if(httpResponse.getEntity() == null)
                 return null;
 
-            return processor.read(httpResponse.getEntity().getContent(), classType);
+            Tracer.beginChild("parse");
+            try {
+                return processor.read(httpResponse.getEntity().getContent(), classType);
+            }
+            finally {
+                Tracer.end();
+            }
         }
     }
  }
@@ -23,10 +23,9 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
-import org.apache.http.util.EntityUtils;
-import org.dasein.cloud.CloudErrorType;
 import org.dasein.cloud.CloudException;
 import org.dasein.cloud.util.requester.streamprocessors.StreamProcessor;
+import org.dasein.cloud.util.trace.Tracer;
 
 import java.io.IOException;
 
@@ -45,24 +44,44 @@ public class DaseinResponseHandlerWithMapper<T, V> implements ResponseHandler<V>
         this.classType = classType;
     }
 
+    /**
+     * @return identifies what this handler turns a response into, for caching its results
+     */
+    String getResultKey() {
+        return processor.getClass().getName() + "|" + String.valueOf(classType) + "|" + mapper.getClass().getName();
+    }
+
     @Override
     public V handleResponse(HttpResponse httpResponse) throws ClientProtocolException, IOException {
         if( httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_OK
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_NO_CONTENT
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_CREATED
                 && httpResponse.getStatusLine().getStatusCode() != HttpStatus.SC_ACCEPTED ) {
-            throw new CloudResponseException(CloudErrorType.GENERAL, httpResponse.getStatusLine().getStatusCode(),
-                    httpResponse.getStatusLine().getReasonPhrase(), EntityUtils.toString(httpResponse.getEntity()));
+            throw CloudResponseException.getInstance(httpResponse);
         }
         else {
             if(httpResponse.getEntity() == null)
                 return null;
 
-            T responseObject = processor.read(httpResponse.getEntity().getContent(), classType);
+            T responseObject;
+
+            Tracer.beginChild("parse");
+            try {
+                responseObject = processor.read(httpResponse.getEntity().getContent(), classType);
+            }
+            finally {
+                Tracer.end();
+            }
             if (responseObject == null)
                 return null;
 
-            return mapper.mapFrom(responseObject);
+            Tracer.beginChild("map");
+            try {
+                return mapper.mapFrom(responseObject);
+            }
+            finally {
+                Tracer.end();
+            }
         }
     }
  }
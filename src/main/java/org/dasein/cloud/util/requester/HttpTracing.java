@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.dasein.cloud.util.trace.Span;
+import org.dasein.cloud.util.trace.Tracer;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+
+/**
+ * Hooks into HttpClient to time the phases of a traced HTTP call as children of the current {@link Tracer} span:
+ * <code>connect</code> (leasing a connection, which for a new connection includes the DNS lookup and the TCP and TLS
+ * handshakes), <code>send</code> (writing the request) and <code>ttfb</code> (waiting for the response headers).
+ * Reading and parsing the body is timed by the response handlers. Each attempt also carries the trace and span IDs
+ * as B3 headers.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+final class HttpTracing {
+    /**
+     * Context attribute holding the {@link System#nanoTime()} at which the current attempt started.
+     */
+    static final String ATTEMPT_START = "dasein.trace.attemptStart";
+
+    static final String PARENT_SPAN_ID_HEADER = "X-B3-ParentSpanId";
+    static final String SAMPLED_HEADER        = "X-B3-Sampled";
+    static final String SPAN_ID_HEADER        = "X-B3-SpanId";
+    static final String TRACE_ID_HEADER       = "X-B3-TraceId";
+
+    static private class TracingRequestExecutor extends HttpRequestExecutor {
+        @Override
+        protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+            long start = System.nanoTime();
+            Object attemptStart = context.getAttribute(ATTEMPT_START);
+
+            if( attemptStart instanceof Long ) {
+                Tracer.record("connect", (Long)attemptStart, start);
+            }
+            try {
+                return super.doSendRequest(request, conn, context);
+            }
+            finally {
+                Tracer.record("send", start, System.nanoTime());
+            }
+        }
+
+        @Override
+        protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+            long start = System.nanoTime();
+
+            try {
+                return super.doReceiveResponse(request, conn, context);
+            }
+            finally {
+                Tracer.record("ttfb", start, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Installs the timing hooks on the specified builder. They record nothing unless the calling thread is in a
+     * sampled trace, so they may stay on a builder that is reused for untraced calls.
+     * @param builder the builder of the client that will send the request
+     */
+    static void configure(@Nonnull HttpClientBuilder builder) {
+        builder.setRequestExecutor(new TracingRequestExecutor());
+    }
+
+    /**
+     * Sends the identity of the current span with the request as Zipkin B3 headers so the cloud side, or a proxy in
+     * between, can join its own spans to the trace. Nothing is sent unless the calling thread is in a sampled trace.
+     * @param request the request about to be sent
+     */
+    static void propagate(@Nonnull HttpUriRequest request) {
+        Span span = Tracer.getCurrentSpan();
+
+        request.removeHeaders(TRACE_ID_HEADER);
+        request.removeHeaders(SPAN_ID_HEADER);
+        request.removeHeaders(PARENT_SPAN_ID_HEADER);
+        request.removeHeaders(SAMPLED_HEADER);
+        if( span != null ) {
+            request.setHeader(TRACE_ID_HEADER, span.getTraceId());
+            request.setHeader(SPAN_ID_HEADER, span.getId());
+            if( span.getParentId() != null ) {
+                request.setHeader(PARENT_SPAN_ID_HEADER, span.getParentId());
+            }
+            request.setHeader(SAMPLED_HEADER, "1");
+        }
+    }
+
+    private HttpTracing() { }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.requester;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the validators (<code>ETag</code> and <code>Last-Modified</code>) and the parsed and mapped result of GET
+ * responses so that {@link DaseinRequestExecutor} can send conditional requests and, when the cloud answers
+ * <code>304 Not Modified</code>, return the cached result without reading, parsing or mapping a body.
+ * <p>
+ * The cache is bounded by weight, the sum of the sizes of the response bodies behind the cached results, and evicts
+ * the least recently used entries first. Results are also held through soft references so the garbage collector can
+ * reclaim them under memory pressure. Cached results are shared between callers and must be treated as read-only.
+ * </p>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ResponseCache {
+    static public final long DEFAULT_ENTRY_WEIGHT = 4096L;
+    static public final long DEFAULT_MAX_WEIGHT   = 16L * 1024L * 1024L;
+
+    static private final ResponseCache shared = new ResponseCache(DEFAULT_MAX_WEIGHT);
+
+    // lower case names of query parameters that sign or timestamp a request rather than select what it returns
+    static private final Set<String> volatileParameters = new HashSet<String>(Arrays.asList(
+            "signature", "signaturemethod", "signatureversion", "timestamp", "expires", "nonce", "_",
+            "x-amz-signature", "x-amz-date", "x-amz-expires", "x-amz-credential", "x-amz-security-token",
+            "sig", "se", "st"));
+
+    /**
+     * @return the cache shared by all requesters that do not specify their own
+     */
+    static public @Nonnull ResponseCache getInstance() {
+        return shared;
+    }
+
+    /**
+     * Constructs a new cache independent of the shared one.
+     * @param maxWeight the maximum total weight in bytes of the cached entries
+     * @return a new, empty cache
+     */
+    static public @Nonnull ResponseCache getInstance(@Nonnegative long maxWeight) {
+        return new ResponseCache(maxWeight);
+    }
+
+    /**
+     * Builds the part of a cache key that identifies the requested resource. Query parameters that only sign or
+     * timestamp the request are dropped so that the same resource fetched through freshly signed URLs maps to the
+     * same entry. The fragment is dropped as well since it is never sent.
+     * @param uri the request URI
+     * @return the URI without its volatile query parameters
+     */
+    static public @Nonnull String getRequestKey(@Nonnull URI uri) {
+        String query = uri.getRawQuery();
+        StringBuilder key = new StringBuilder();
+
+        if( uri.getScheme() != null ) {
+            key.append(uri.getScheme()).append("://");
+        }
+        if( uri.getRawAuthority() != null ) {
+            key.append(uri.getRawAuthority());
+        }
+        if( uri.getRawPath() != null ) {
+            key.append(uri.getRawPath());
+        }
+        if( query != null ) {
+            char separator = '?';
+
+            for( String parameter : query.split("&") ) {
+                int idx = parameter.indexOf('=');
+                String name = (idx < 0 ? parameter : parameter.substring(0, idx));
+
+                if( parameter.length() < 1 || volatileParameters.contains(name.toLowerCase(Locale.ENGLISH)) ) {
+                    continue;
+                }
+                key.append(separator).append(parameter);
+                separator = '&';
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * A cached result along with the validators needed to revalidate it.
+     */
+    static public class Entry {
+        private final String                eTag;
+        private final String                lastModified;
+        private final SoftReference<Object> result;
+        private final long                  weight;
+
+        private Entry(@Nullable String eTag, @Nullable String lastModified, @Nullable Object result, @Nonnegative long weight) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.result = new SoftReference<Object>(result);
+            this.weight = weight;
+        }
+
+        public @Nullable String getETag() {
+            return eTag;
+        }
+
+        public @Nullable String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return the cached result, or null if it has been reclaimed by the garbage collector
+         */
+        public @Nullable Object getResult() {
+            return result.get();
+        }
+
+        public @Nonnegative long getWeight() {
+            return weight;
+        }
+    }
+
+    private final AtomicLong hits   = new AtomicLong(0L);
+    private final AtomicLong misses = new AtomicLong(0L);
+    private final long       maxWeight;
+
+    // guarded by this
+    private final LinkedHashMap<String,Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long weight;
+
+    private ResponseCache(@Nonnegative long maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0L;
+    }
+
+    /**
+     * Fetches the entry for the specified request key, dropping it if its result has been reclaimed.
+     * @param key the request key
+     * @return the entry, or null if there is no usable entry
+     */
+    public synchronized @Nullable Entry get(@Nonnull String key) {
+        Entry entry = entries.get(key);
+
+        if( entry != null && entry.getResult() == null ) {
+            remove(key);
+            entry = null;
+        }
+        return entry;
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    public @Nonnegative long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the maximum total weight of the cached entries
+     */
+    public @Nonnegative long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * @return the number of cacheable requests for which the cloud sent a full response
+     */
+    public @Nonnegative long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the current total weight of the cached entries
+     */
+    public synchronized @Nonnegative long getWeight() {
+        return weight;
+    }
+
+    void onHit() {
+        hits.incrementAndGet();
+    }
+
+    void onMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * Stores a result with its validators. Responses with neither validator cannot be revalidated and are not cached.
+     * Entries heavier than the whole cache are not cached either.
+     * @param key the request key
+     * @param eTag the value of the <code>ETag</code> header of the response
+     * @param lastModified the value of the <code>Last-Modified</code> header of the response
+     * @param result the parsed and mapped result
+     * @param entryWeight the number of body bytes read to build the result, or a negative number if it is unknown
+     */
+    public synchronized void put(@Nonnull String key, @Nullable String eTag, @Nullable String lastModified, @Nullable Object result, long entryWeight) {
+        remove(key);
+        if( (eTag == null && lastModified == null) || result == null ) {
+            return;
+        }
+        long w = (entryWeight < 0L ? DEFAULT_ENTRY_WEIGHT : entryWeight);
+
+        if( w > maxWeight ) {
+            return;
+        }
+        entries.put(key, new Entry(eTag, lastModified, result, w));
+        weight += w;
+
+        Iterator<Map.Entry<String,Entry>> it = entries.entrySet().iterator();
+
+        // iteration runs from the least recently used entry
+        while( weight > maxWeight && it.hasNext() ) {
+            Entry evicted = it.next().getValue();
+
+            it.remove();
+            weight -= evicted.getWeight();
+        }
+    }
+
+    /**
+     * Removes the entry for the specified request key.
+     * @param key the request key
+     */
+    public synchronized void remove(@Nonnull String key) {
+        Entry entry = entries.remove(key);
+
+        if( entry != null ) {
+            weight -= entry.getWeight();
+        }
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public synchronized @Nonnegative int size() {
+        return entries.size();
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return "ResponseCache [" + size() + " entries, " + getWeight() + "/" + maxWeight + " bytes]";
+    }
+}
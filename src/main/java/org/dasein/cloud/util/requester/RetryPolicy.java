@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Decides whether and when a failed request is sent again. Throttling responses (429 and 503), server errors
+ * (500, 502 and 504) and dropped connections are retried with exponential backoff and full jitter; a
+ * <code>Retry-After</code> header from the server replaces the computed delay. Requests that are not idempotent
+ * (POST and PATCH) are only retried when the failure proves the server did not act on them: a throttling response or
+ * a connection that was never established. Requests whose entity cannot be sent twice are never retried.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class RetryPolicy {
+    static private final Logger logger = Logger.getLogger(RetryPolicy.class);
+
+    /**
+     * Custom property on the provider context that overrides {@link #DEFAULT_MAX_ATTEMPTS}. A value of 1 disables
+     * retries.
+     */
+    static public final String MAX_ATTEMPTS_PROPERTY = "retryMaxAttempts";
+
+    /**
+     * Custom property on the provider context that overrides {@link #DEFAULT_BASE_DELAY}.
+     */
+    static public final String BASE_DELAY_PROPERTY = "retryBaseDelayMillis";
+
+    static public final int  DEFAULT_MAX_ATTEMPTS = 3;
+    static public final long DEFAULT_BASE_DELAY   = 250L;
+    static public final long DEFAULT_MAX_DELAY    = 20000L;
+
+    static private final Random random = new Random();
+
+    /**
+     * Builds the retry policy configured for the specified provider.
+     * @param provider the provider making the calls
+     * @return the policy matching the provider context's custom properties
+     */
+    static public @Nonnull RetryPolicy getInstance(@Nonnull CloudProvider provider) {
+        ProviderContext ctx = provider.getContext();
+        int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        long baseDelay = DEFAULT_BASE_DELAY;
+
+        if( ctx != null ) {
+            Properties props = ctx.getCustomProperties();
+            String value = props.getProperty(MAX_ATTEMPTS_PROPERTY);
+
+            if( value != null ) {
+                try {
+                    maxAttempts = Integer.parseInt(value);
+                }
+                catch( NumberFormatException e ) {
+                    logger.warn("Ignoring invalid " + MAX_ATTEMPTS_PROPERTY + ": " + value);
+                }
+            }
+            value = props.getProperty(BASE_DELAY_PROPERTY);
+            if( value != null ) {
+                try {
+                    baseDelay = Long.parseLong(value);
+                }
+                catch( NumberFormatException e ) {
+                    logger.warn("Ignoring invalid " + BASE_DELAY_PROPERTY + ": " + value);
+                }
+            }
+        }
+        return getInstance(maxAttempts, baseDelay, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Builds a retry policy with the specified settings.
+     * @param maxAttempts the total number of times a request may be sent, including the first
+     * @param baseDelay the upper bound in milliseconds of the delay before the first retry; it doubles for each retry
+     * @param maxDelay the cap in milliseconds on any delay; a <code>Retry-After</code> beyond it is not waited for
+     * @return the policy
+     */
+    static public @Nonnull RetryPolicy getInstance(int maxAttempts, long baseDelay, long maxDelay) {
+        return new RetryPolicy(maxAttempts, baseDelay, maxDelay);
+    }
+
+    /**
+     * Indicates whether sending the request twice has the same effect as sending it once.
+     * @param request the request
+     * @return true for GET, HEAD, OPTIONS, TRACE, PUT and DELETE
+     */
+    static public boolean isIdempotent(@Nonnull HttpUriRequest request) {
+        String method = request.getMethod();
+
+        return ("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method) || "OPTIONS".equalsIgnoreCase(method)
+                || "TRACE".equalsIgnoreCase(method) || "PUT".equalsIgnoreCase(method) || "DELETE".equalsIgnoreCase(method));
+    }
+
+    /**
+     * Indicates whether the request can be sent again, which is only true if any entity it carries is repeatable.
+     * @param request the request
+     * @return true if the request can be sent again
+     */
+    static public boolean isRepeatable(@Nonnull HttpUriRequest request) {
+        if( request instanceof HttpEntityEnclosingRequest ) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+
+            return (entity == null || entity.isRepeatable());
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether an I/O failure is a transient network problem (a reset, refused or timed out connection or a
+     * server that dropped the connection without answering) as opposed to a problem that will not go away on its own,
+     * such as an unknown host or a TLS failure.
+     * @param e the I/O failure
+     * @return true if the failure is worth retrying
+     */
+    static public boolean isTransient(@Nonnull IOException e) {
+        return (e instanceof SocketException || e instanceof NoHttpResponseException
+                || e instanceof ConnectTimeoutException || e instanceof SocketTimeoutException);
+    }
+
+    /**
+     * Indicates whether the failure proves the server never acted on the request, making it safe to send again even
+     * if it is not idempotent.
+     * @param failure the failure
+     * @return true if the request was throttled or never reached the server
+     */
+    static public boolean isUnprocessed(@Nonnull CloudException failure) {
+        if( CloudErrorType.THROTTLING.equals(failure.getErrorType()) || failure.getHttpCode() == 429 ) {
+            return true;
+        }
+        Throwable cause = failure.getCause();
+
+        return (cause instanceof ConnectException || cause instanceof ConnectTimeoutException);
+    }
+
+    /**
+     * Indicates whether the failure is of a kind that may succeed if the request is sent again.
+     * @param failure the failure
+     * @return true for throttling, server errors and transient communication errors
+     */
+    static public boolean isRetryable(@Nonnull CloudException failure) {
+        int code = failure.getHttpCode();
+
+        if( CloudErrorType.THROTTLING.equals(failure.getErrorType()) || code == 429 ) {
+            return true;
+        }
+        if( code == 500 || code == 502 || code == 503 || code == 504 ) {
+            return true;
+        }
+        // connection level failures carry no HTTP status
+        return (code == 0 && CloudErrorType.COMMUNICATION.equals(failure.getErrorType()));
+    }
+
+    private final long baseDelay;
+    private final int  maxAttempts;
+    private final long maxDelay;
+
+    private RetryPolicy(int maxAttempts, long baseDelay, long maxDelay) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelay = Math.max(0L, baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, maxDelay);
+    }
+
+    /**
+     * @return the upper bound in milliseconds of the delay before the first retry
+     */
+    public @Nonnegative long getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * Computes the backoff before the specified retry: a random delay between zero and the base delay doubled once
+     * for each earlier retry, capped at the maximum delay.
+     * @param attempt the number of attempts already made (1 after the first failure)
+     * @return the delay in milliseconds
+     */
+    public @Nonnegative long getBackoff(@Nonnegative int attempt) {
+        long ceiling = baseDelay;
+
+        for( int i=1; i<attempt && ceiling < maxDelay; i++ ) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, maxDelay);
+        return (ceiling < 1L ? 0L : (long)(random.nextDouble() * (ceiling + 1)));
+    }
+
+    /**
+     * @return the total number of times a request may be sent, including the first
+     */
+    public @Nonnegative int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return the cap in milliseconds on any delay
+     */
+    public @Nonnegative long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Decides whether a failed request should be sent again and, if so, how long to wait first.
+     * @param request the request that failed
+     * @param failure the failure
+     * @param retryAfter the delay in milliseconds requested by the server, or -1 if it did not say
+     * @param attempt the number of attempts already made (1 after the first failure)
+     * @return the delay in milliseconds before sending the request again, or -1 if it should not be retried
+     */
+    public long getRetryDelay(@Nonnull HttpUriRequest request, @Nonnull CloudException failure, long retryAfter, @Nonnegative int attempt) {
+        if( attempt >= maxAttempts || !isRetryable(failure) || !isRepeatable(request) ) {
+            return -1L;
+        }
+        if( !isIdempotent(request) && !isUnprocessed(failure) ) {
+            return -1L;
+        }
+        if( retryAfter >= 0L ) {
+            // waiting longer than we would ever back off is better left to the caller
+            return (retryAfter > maxDelay ? -1L : retryAfter);
+        }
+        return getBackoff(attempt);
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return "RetryPolicy [" + maxAttempts + " attempts, " + baseDelay + "-" + maxDelay + "ms]";
+    }
+}
@@ -43,7 +43,8 @@ public abstract class DaseinEntity<T> extends AbstractHttpEntity implements Clon
 
     @Override
     public boolean isRepeatable() {
-        return false;
+        // the content is buffered, so the entity can be sent again when a request is retried
+        return true;
     }
 
     @Override
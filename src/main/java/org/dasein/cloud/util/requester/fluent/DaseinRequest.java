@@ -46,6 +46,7 @@ public class DaseinRequest implements CompositeRequester {
     private CloudProvider provider;
     private HttpClientBuilder httpClientBuilder;
     private HttpUriRequest httpUriRequestBuilder;
+    private ResponseCache responseCache;
 
     /**
      * Constructs a new DaseinRequest instance, ready to execute http calls to a specified Uri.
@@ -60,6 +61,19 @@ public class DaseinRequest implements CompositeRequester {
         this.httpUriRequestBuilder = httpUriRequestBuilder;
     }
 
+    /**
+     * Caches the parsed results of this GET request, revalidating them with the cloud through ETag and Last-Modified
+     * so an unchanged response is neither downloaded nor parsed again. Cached results are shared and must not be
+     * modified by the caller.
+     *
+     * @param responseCache the cache holding the results, usually {@link ResponseCache#getInstance()}
+     * @return this request
+     */
+    public DaseinRequest withResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
     /**
      * Constructs a instance of a DaseinRequestExecutor with a XML stream processor that, once the HTTP request has been
      * finished, will perform a deserialization of the XML response into the specified type T.
@@ -74,7 +88,7 @@ public class DaseinRequest implements CompositeRequester {
     @Override
     public <T> Requester<T> withXmlProcessor(Class<T> classType) {
         return new DaseinRequestExecutor<T>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
-                new DaseinResponseHandler<T>(new XmlStreamToObjectProcessor(), classType));
+                new DaseinResponseHandler<T>(new XmlStreamToObjectProcessor(), classType)).withResponseCache(this.responseCache);
     }
 
     /**
@@ -100,7 +114,7 @@ public class DaseinRequest implements CompositeRequester {
     @Override
     public <T, V> Requester<V> withXmlProcessor(DriverToCoreMapper<T, V> mapper, Class<T> classType) {
         return new DaseinRequestExecutor<V>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
-                new DaseinResponseHandlerWithMapper<T, V>(new XmlStreamToObjectProcessor(), mapper, classType));
+                new DaseinResponseHandlerWithMapper<T, V>(new XmlStreamToObjectProcessor(), mapper, classType)).withResponseCache(this.responseCache);
     }
 
     /**
@@ -117,7 +131,7 @@ public class DaseinRequest implements CompositeRequester {
     @Override
     public <T> Requester<T> withJsonProcessor(Class<T> classType) {
         return new DaseinRequestExecutor<T>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
-                new DaseinResponseHandler<T>(new JsonStreamToObjectProcessor(), classType));
+                new DaseinResponseHandler<T>(new JsonStreamToObjectProcessor(), classType)).withResponseCache(this.responseCache);
     }
 
     /**
@@ -143,7 +157,7 @@ public class DaseinRequest implements CompositeRequester {
     @Override
     public <T, V> Requester<V> withJsonProcessor(DriverToCoreMapper<T, V> mapper, Class<T> classType) {
         return new DaseinRequestExecutor<V>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
-                new DaseinResponseHandlerWithMapper<T, V>(new JsonStreamToObjectProcessor(), mapper, classType));
+                new DaseinResponseHandlerWithMapper<T, V>(new JsonStreamToObjectProcessor(), mapper, classType)).withResponseCache(this.responseCache);
     }
 
     /**
@@ -157,7 +171,7 @@ public class DaseinRequest implements CompositeRequester {
     @Override
     public <T> DaseinRequestExecutor<Document> withDocumentProcessor() {
         return new DaseinRequestExecutor<Document>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
-                new DaseinResponseHandler<Document>(new StreamToDocumentProcessor(), Document.class));
+                new DaseinResponseHandler<Document>(new StreamToDocumentProcessor(), Document.class)).withResponseCache(this.responseCache);
     }
 
     /**
@@ -171,7 +185,7 @@ public class DaseinRequest implements CompositeRequester {
     @Override
     public <T> DaseinRequestExecutor<JSONObject> withJSONObjectProcessor() {
         return new DaseinRequestExecutor<JSONObject>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
-                new DaseinResponseHandler<JSONObject>(new StreamToJSONObjectProcessor(), JSONObject.class));
+                new DaseinResponseHandler<JSONObject>(new StreamToJSONObjectProcessor(), JSONObject.class)).withResponseCache(this.responseCache);
     }
 
     /**
@@ -186,6 +200,6 @@ public class DaseinRequest implements CompositeRequester {
     @Override
     public String execute() throws CloudException {
         return new DaseinRequestExecutor<String>(this.provider, this.httpClientBuilder, this.httpUriRequestBuilder,
-                new DaseinResponseHandler<String>(new StreamToStringProcessor(), String.class)).execute();
+                new DaseinResponseHandler<String>(new StreamToStringProcessor(), String.class)).withResponseCache(this.responseCache).execute();
     }
 }
@@ -20,21 +20,86 @@
 package org.dasein.cloud.util.requester.streamprocessors;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyName;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import org.dasein.cloud.util.requester.streamprocessors.StreamProcessor;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
  /**
+ * Reads JSON responses into driver model objects. Properties the caller does not need, typically because of a
+ * projection on the filter options, can be skipped with {@link #skipping(Class, String...)}; the parser then steps
+ * over their values without building any objects for them.
  * @author Vlad Munthiu
+ * @version 2015.09 added skipping of unneeded properties and reuse of the object mapper
  */
 public class JsonStreamToObjectProcessor<T> implements StreamProcessor<T> {
+    private final Map<Class<?>,Set<String>> skipped = new HashMap<Class<?>, Set<String>>();
+    private volatile ObjectMapper objectMapper;
+
+    /**
+     * Skips the specified JSON properties whenever an object of the specified driver model type is read.
+     * @param type the driver model class declaring the properties
+     * @param properties the JSON names of the properties to skip
+     * @return this
+     */
+    public synchronized @Nonnull JsonStreamToObjectProcessor<T> skipping(@Nonnull Class<?> type, @Nonnull String... properties) {
+        Set<String> names = skipped.get(type);
+
+        if( names == null ) {
+            names = new HashSet<String>();
+            skipped.put(type, names);
+        }
+        names.addAll(Arrays.asList(properties));
+        objectMapper = null;
+        return this;
+    }
+
+    private synchronized @Nonnull ObjectMapper getObjectMapper() {
+        if( objectMapper == null ) {
+            ObjectMapper mapper = new ObjectMapper();
+
+            if( !skipped.isEmpty() ) {
+                final Map<Class<?>,Set<String>> skip = new HashMap<Class<?>, Set<String>>(skipped);
+                SimpleModule module = new SimpleModule();
+
+                module.setDeserializerModifier(new BeanDeserializerModifier() {
+                    @Override
+                    public BeanDeserializerBuilder updateBuilder(DeserializationConfig config, BeanDescription beanDesc, BeanDeserializerBuilder builder) {
+                        Set<String> names = skip.get(beanDesc.getBeanClass());
+
+                        if( names != null ) {
+                            for( String name : names ) {
+                                builder.removeProperty(new PropertyName(name));
+                                builder.addIgnorable(name);
+                            }
+                        }
+                        return builder;
+                    }
+                });
+                mapper.registerModule(module);
+            }
+            objectMapper = mapper;
+        }
+        return objectMapper;
+    }
+
     public @Nullable T read(InputStream inputStream, Class<T> classType){
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.readValue(inputStream, classType);
+            return getObjectMapper().readValue(inputStream, classType);
         } catch (Exception ex) {
             throw new RuntimeException("Error deserializing response input stream into dasein object", ex);
         }
@@ -42,8 +107,7 @@ public class JsonStreamToObjectProcessor<T> implements StreamProcessor<T> {
 
     public @Nullable String write(T object){
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            return objectMapper.writeValueAsString(object);
+            return getObjectMapper().writeValueAsString(object);
         } catch (Exception ex) {
             throw new RuntimeException("Error serializing dasein object into string", ex);
         }
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.stream;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The publish and subscribe contract for streaming listings with back pressure. It mirrors the
+ * <code>java.util.concurrent.Flow</code> interfaces of Java 9 and the Reactive Streams specification, whose rules
+ * apply here too, so that adapting to either later is a matter of wrapping.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class Flow {
+    /**
+     * A source of items that emits them to a subscriber only as fast as it asks for them.
+     * @param <T> the type of item
+     */
+    public interface Publisher<T> {
+        /**
+         * Adds a subscriber. The subscriber's {@link Subscriber#onSubscribe(Subscription)} is always called first.
+         * @param subscriber the subscriber
+         */
+        public void subscribe(@Nonnull Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Receives the items of a publisher. Calls to a subscriber are never concurrent.
+     * @param <T> the type of item
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called before any other method with the subscription used to ask for items or to cancel.
+         * @param subscription the subscription
+         */
+        public void onSubscribe(@Nonnull Subscription subscription);
+
+        /**
+         * Receives the next item; it is never called more often than items were requested.
+         * @param item the item
+         */
+        public void onNext(@Nonnull T item);
+
+        /**
+         * Called once if the listing failed; no other method is called afterwards.
+         * @param error the failure
+         */
+        public void onError(@Nonnull Throwable error);
+
+        /**
+         * Called once after the last item; no other method is called afterwards.
+         */
+        public void onComplete();
+    }
+
+    /**
+     * The link between a publisher and one subscriber.
+     */
+    public interface Subscription {
+        /**
+         * Asks for up to <code>n</code> more items. A request that is not positive fails the subscription.
+         * @param n the number of additional items wanted
+         */
+        public void request(long n);
+
+        /**
+         * Stops the flow of items. Paging stops and a page being fetched is abandoned.
+         */
+        public void cancel();
+    }
+
+    private Flow() { }
+}
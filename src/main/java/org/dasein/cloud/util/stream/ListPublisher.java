@@ -0,0 +1,413 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.stream;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.util.JiteratorLoadException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes a listing with back pressure. Items are emitted only as the subscriber requests them and the next page is
+ * not fetched until the current one has been emitted and more items are wanted, so a slow consumer pauses paging
+ * instead of filling an unbounded buffer the way a {@link org.dasein.util.PopulatorThread} does. Cancelling a
+ * subscription stops paging and interrupts a page fetch in progress. Every subscription starts the listing over.
+ * <p>
+ * Providers with a paged API publish it through {@link #forPages(PagedListing)}; any existing listing can be
+ * published through {@link #forListing(Listing)}, which emits on demand but fetches it the way it always has.
+ * {@link #toIterable(Flow.Publisher, int)} turns a publisher back into a bounded, blocking {@link Iterable}.
+ * </p>
+ * @param <T> the type of item
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ListPublisher<T> implements Flow.Publisher<T> {
+    static private final Logger logger = Logger.getLogger(ListPublisher.class);
+
+    /**
+     * A listing fetched in one go, such as any of the list methods of the support interfaces.
+     * @param <T> the type of item
+     */
+    public interface Listing<T> {
+        public @Nonnull Iterable<T> list() throws CloudException, InternalException;
+    }
+
+    static private final AtomicInteger   threadCount = new AtomicInteger(0);
+    static private final ExecutorService workers     = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("List Publisher " + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Publishes a paged listing, fetching each page only when the subscriber wants more items.
+     * @param listing the paged listing
+     * @param <T> the type of item
+     * @return a publisher of the listing
+     */
+    static public @Nonnull <T> ListPublisher<T> forPages(@Nonnull PagedListing<T> listing) {
+        return new ListPublisher<T>(listing);
+    }
+
+    /**
+     * Publishes a listing that is not paged. The listing is fetched when the first item is requested.
+     * @param listing the listing
+     * @param <T> the type of item
+     * @return a publisher of the listing
+     */
+    static public @Nonnull <T> ListPublisher<T> forListing(final @Nonnull Listing<T> listing) {
+        return new ListPublisher<T>(new PagedListing<T>() {
+            @Override
+            public @Nonnull Page<T> getPage(@Nullable String pageToken) throws CloudException, InternalException {
+                return Page.getInstance(listing.list(), null);
+            }
+        });
+    }
+
+    /**
+     * Consumes a publisher through a blocking iterable. Each iterator subscribes anew and holds at most
+     * <code>batchSize</code> items that have not been read yet. A failed listing surfaces as a
+     * {@link JiteratorLoadException} from the iterator, as it does for listings loaded by a populator thread.
+     * @param publisher the publisher
+     * @param batchSize the most items to request ahead of the consumer
+     * @param <T> the type of item
+     * @return an iterable over the published items
+     */
+    static public @Nonnull <T> Iterable<T> toIterable(final @Nonnull Flow.Publisher<T> publisher, final @Nonnegative int batchSize) {
+        if( batchSize < 1 ) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        return new Iterable<T>() {
+            @Override
+            public @Nonnull Iterator<T> iterator() {
+                IterableSubscriber<T> subscriber = new IterableSubscriber<T>(batchSize);
+
+                publisher.subscribe(subscriber);
+                return subscriber;
+            }
+        };
+    }
+
+    private final PagedListing<T> listing;
+
+    private ListPublisher(@Nonnull PagedListing<T> listing) {
+        this.listing = listing;
+    }
+
+    @Override
+    public void subscribe(@Nonnull Flow.Subscriber<? super T> subscriber) {
+        PagingSubscription<T> subscription = new PagingSubscription<T>(listing, subscriber);
+
+        try {
+            subscriber.onSubscribe(subscription);
+        }
+        catch( Throwable t ) {
+            logger.warn("Subscriber failed in onSubscribe: " + t.getMessage());
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Emits the pages of a listing on a worker thread. Requests and cancellations may come from any thread, but only
+     * one worker at a time drains the subscription, so the subscriber is never called concurrently.
+     */
+    static private class PagingSubscription<T> implements Flow.Subscription, Runnable {
+        private final AtomicLong                 demand    = new AtomicLong(0L);
+        // guards fetcher, so an interrupt from cancel() only reaches a thread still fetching for this subscription
+        private final Object                     fetchLock = new Object();
+        private final PagedListing<T>            listing;
+        private final AtomicInteger              pending   = new AtomicInteger(0);
+        private final Flow.Subscriber<? super T> subscriber;
+
+        private volatile boolean   cancelled = false;
+        private Thread             fetcher;
+        private volatile Throwable invalidRequest;
+
+        // only touched by the draining worker
+        private boolean     done = false;
+        private Iterator<T> items;
+        private boolean     lastPage = false;
+        private String      nextPageToken;
+
+        PagingSubscription(@Nonnull PagedListing<T> listing, @Nonnull Flow.Subscriber<? super T> subscriber) {
+            this.listing = listing;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if( n < 1 ) {
+                invalidRequest = new IllegalArgumentException("Requested item count must be positive: " + n);
+            }
+            else {
+                long current, updated;
+
+                do {
+                    current = demand.get();
+                    updated = current + n;
+                    if( updated < 0L ) {
+                        updated = Long.MAX_VALUE;
+                    }
+                } while( !demand.compareAndSet(current, updated) );
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized( fetchLock ) {
+                cancelled = true;
+                if( fetcher != null ) {
+                    fetcher.interrupt();
+                }
+            }
+        }
+
+        private void schedule() {
+            if( pending.getAndIncrement() == 0 ) {
+                workers.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+
+            do {
+                drain();
+                missed = pending.addAndGet(-missed);
+            } while( missed != 0 );
+        }
+
+        private void drain() {
+            if( done ) {
+                return;
+            }
+            if( invalidRequest != null && !cancelled ) {
+                done = true;
+                cancelled = true;
+                signalError(invalidRequest);
+                return;
+            }
+            while( !cancelled ) {
+                T item;
+
+                try {
+                    if( items == null || !items.hasNext() ) {
+                        if( lastPage ) {
+                            done = true;
+                            subscriber.onComplete();
+                            return;
+                        }
+                        if( demand.get() < 1L ) {
+                            // wait for demand before fetching the next page
+                            return;
+                        }
+                        Page<T> page = fetch();
+
+                        if( page == null ) {
+                            break;
+                        }
+                        items = page.getItems().iterator();
+                        nextPageToken = page.getNextPageToken();
+                        lastPage = page.isLastPage();
+                        continue;
+                    }
+                    if( demand.get() < 1L ) {
+                        return;
+                    }
+                    item = items.next();
+                }
+                catch( Throwable t ) {
+                    done = true;
+                    if( !cancelled ) {
+                        cancelled = true;
+                        signalError(t);
+                    }
+                    return;
+                }
+                if( item == null ) {
+                    continue;
+                }
+                demand.decrementAndGet();
+                try {
+                    subscriber.onNext(item);
+                }
+                catch( Throwable t ) {
+                    logger.warn("Subscriber failed in onNext, cancelling: " + t.getMessage());
+                    cancelled = true;
+                }
+            }
+            done = true;
+        }
+
+        private @Nullable Page<T> fetch() throws CloudException, InternalException {
+            synchronized( fetchLock ) {
+                if( cancelled ) {
+                    return null;
+                }
+                fetcher = Thread.currentThread();
+            }
+            try {
+                Page<T> page = listing.getPage(nextPageToken);
+
+                return (cancelled ? null : page);
+            }
+            finally {
+                synchronized( fetchLock ) {
+                    fetcher = null;
+                    // an interrupt from cancel() is not meant for whatever this thread does next
+                    //noinspection ResultOfMethodCallIgnored
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private void signalError(@Nonnull Throwable error) {
+            try {
+                subscriber.onError(error);
+            }
+            catch( Throwable t ) {
+                logger.warn("Subscriber failed in onError: " + t.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Buffers at most a batch of items for a blocking iterator and asks for more as they are read.
+     */
+    static private class IterableSubscriber<T> implements Flow.Subscriber<T>, Iterator<T> {
+        static private final Object COMPLETE = new Object();
+
+        static private class Failure {
+            private final Throwable error;
+
+            Failure(@Nonnull Throwable error) {
+                this.error = error;
+            }
+        }
+
+        private final int                         batchSize;
+        private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+        private final int                         replenishAt;
+
+        private volatile Flow.Subscription subscription;
+
+        // only touched by the consuming thread
+        private int     consumed = 0;
+        private boolean finished = false;
+        private Object  next;
+
+        IterableSubscriber(int batchSize) {
+            this.batchSize = batchSize;
+            this.replenishAt = Math.max(1, batchSize / 2);
+        }
+
+        @Override
+        public void onSubscribe(@Nonnull Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(@Nonnull T item) {
+            queue.offer(item);
+        }
+
+        @Override
+        public void onError(@Nonnull Throwable error) {
+            queue.offer(new Failure(error));
+        }
+
+        @Override
+        public void onComplete() {
+            queue.offer(COMPLETE);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if( next != null ) {
+                return true;
+            }
+            if( finished ) {
+                return false;
+            }
+            Object o;
+
+            try {
+                o = queue.take();
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                finished = true;
+                subscription.cancel();
+                throw new JiteratorLoadException(e);
+            }
+            if( o == COMPLETE ) {
+                finished = true;
+                return false;
+            }
+            if( o instanceof Failure ) {
+                finished = true;
+                throw new JiteratorLoadException(((Failure)o).error);
+            }
+            next = o;
+            if( ++consumed >= replenishAt ) {
+                subscription.request(consumed);
+                consumed = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            @SuppressWarnings("unchecked") T item = (T)next;
+
+            next = null;
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Published items cannot be removed");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+
+/**
+ * One page of a paged listing along with the token for fetching the page after it.
+ * @param <T> the type of item
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class Page<T> {
+    /**
+     * Constructs a page.
+     * @param items the items on the page
+     * @param nextPageToken the token for fetching the next page, or <code>null</code> if this is the last page
+     * @param <T> the type of item
+     * @return the page
+     */
+    static public @Nonnull <T> Page<T> getInstance(@Nonnull Iterable<T> items, @Nullable String nextPageToken) {
+        return new Page<T>(items, nextPageToken);
+    }
+
+    /**
+     * @param <T> the type of item
+     * @return an empty last page
+     */
+    static public @Nonnull <T> Page<T> empty() {
+        return new Page<T>(Collections.<T>emptyList(), null);
+    }
+
+    private final Iterable<T> items;
+    private final String      nextPageToken;
+
+    private Page(@Nonnull Iterable<T> items, @Nullable String nextPageToken) {
+        this.items = items;
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * @return the items on this page
+     */
+    public @Nonnull Iterable<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the token for fetching the next page, or <code>null</code> if this is the last page
+     */
+    public @Nullable String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    /**
+     * @return true if no page follows this one
+     */
+    public boolean isLastPage() {
+        return (nextPageToken == null);
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return "Page [next=" + nextPageToken + "]";
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.stream;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A listing that a provider fetches from the cloud one page at a time, typically one API call per page.
+ * @param <T> the type of item
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface PagedListing<T> {
+    /**
+     * Fetches a page. Implementations should let an interrupt abort the call so that cancelled subscriptions stop
+     * promptly.
+     * @param pageToken the token returned with the previous page, or <code>null</code> for the first page
+     * @return the page
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull Page<T> getPage(@Nullable String pageToken) throws CloudException, InternalException;
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.trace;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A timed unit of work within a trace: an operation started through {@link org.dasein.cloud.util.APITrace}, an HTTP
+ * call made by the requester, or a phase of that call. Spans are created and finished by the {@link Tracer} and
+ * exported in the Zipkin v2 JSON format.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class Span {
+    static public class Annotation {
+        private final long   timestamp;
+        private final String value;
+
+        private Annotation(@Nonnegative long timestamp, @Nonnull String value) {
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+        /**
+         * @return the time of the annotation in microseconds since the epoch
+         */
+        public @Nonnegative long getTimestamp() {
+            return timestamp;
+        }
+
+        public @Nonnull String getValue() {
+            return value;
+        }
+    }
+
+    private final String                  id;
+    private final String                  name;
+    private final String                  parentId;
+    private final long                    startNanos;
+    private final long                    timestamp;
+    private final String                  traceId;
+
+    private List<Annotation>              annotations;
+    private long                          duration = -1L;
+    private final Map<String,String>      tags = new LinkedHashMap<String, String>();
+
+    Span(@Nonnull String traceId, @Nullable String parentId, @Nonnull String id, @Nonnull String name, @Nonnegative long timestamp, long startNanos) {
+        this.traceId = traceId;
+        this.parentId = parentId;
+        this.id = id;
+        this.name = name;
+        this.timestamp = timestamp;
+        this.startNanos = startNanos;
+    }
+
+    synchronized void annotate(@Nonnegative long when, @Nonnull String value) {
+        if( annotations == null ) {
+            annotations = new ArrayList<Annotation>();
+        }
+        annotations.add(new Annotation(when, value));
+    }
+
+    void finish(@Nonnegative long durationMicros) {
+        this.duration = durationMicros;
+    }
+
+    /**
+     * @return the annotations recorded while the span was open
+     */
+    public synchronized @Nonnull List<Annotation> getAnnotations() {
+        if( annotations == null ) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<Annotation>(annotations));
+    }
+
+    /**
+     * @return the duration of the span in microseconds, or -1 if it has not finished
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return the 64-bit ID of this span as 16 hexadecimal characters
+     */
+    public @Nonnull String getId() {
+        return id;
+    }
+
+    public @Nonnull String getName() {
+        return name;
+    }
+
+    /**
+     * @return the ID of the enclosing span, or null for the root span of a trace
+     */
+    public @Nullable String getParentId() {
+        return parentId;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return the tags (key/value metadata) of the span
+     */
+    public synchronized @Nonnull Map<String,String> getTags() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, String>(tags));
+    }
+
+    /**
+     * @return the start of the span in microseconds since the epoch
+     */
+    public @Nonnegative long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the ID shared by all spans of a trace as 16 hexadecimal characters
+     */
+    public @Nonnull String getTraceId() {
+        return traceId;
+    }
+
+    synchronized void tag(@Nonnull String key, @Nullable String value) {
+        if( value != null ) {
+            tags.put(key, value);
+        }
+    }
+
+    /**
+     * Renders the span in the Zipkin v2 JSON format.
+     * @param serviceName the name of the local service recording the span
+     * @return the span as a JSON object
+     * @throws JSONException the span could not be rendered
+     */
+    public @Nonnull JSONObject toJSON(@Nonnull String serviceName) throws JSONException {
+        JSONObject json = new JSONObject();
+
+        json.put("traceId", traceId);
+        if( parentId != null ) {
+            json.put("parentId", parentId);
+        }
+        json.put("id", id);
+        json.put("name", name);
+        json.put("timestamp", timestamp);
+        if( duration >= 0L ) {
+            json.put("duration", duration);
+        }
+        json.put("localEndpoint", new JSONObject().put("serviceName", serviceName));
+
+        List<Annotation> list = getAnnotations();
+
+        if( !list.isEmpty() ) {
+            JSONArray array = new JSONArray();
+
+            for( Annotation a : list ) {
+                array.put(new JSONObject().put("timestamp", a.getTimestamp()).put("value", a.getValue()));
+            }
+            json.put("annotations", array);
+        }
+        Map<String,String> t = getTags();
+
+        if( !t.isEmpty() ) {
+            json.put("tags", new JSONObject(t));
+        }
+        return json;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return name + " [" + traceId + "/" + id + ", " + duration + "us]";
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.trace;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Receives the spans of each finished, sampled trace. Exporters are called on the thread that finished the trace and
+ * should hand slow work (such as posting to a collector) off to another thread.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface SpanExporter {
+    /**
+     * Exports the spans of a finished trace.
+     * @param spans the spans of the trace, in the order in which they finished
+     */
+    public void export(@Nonnull List<Span> spans);
+}
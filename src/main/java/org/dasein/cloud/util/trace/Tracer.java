@@ -0,0 +1,479 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.trace;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.RequestTrackingStrategy;
+import org.json.JSONArray;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records traces of Dasein operations. A trace starts when an operation begins on a thread with no open span (usually
+ * through {@link org.dasein.cloud.util.APITrace#begin(CloudProvider, String)}); every operation and HTTP call started
+ * on that thread before it ends becomes a child span. When the root span ends, the spans of a sampled trace are handed
+ * to the {@link SpanExporter}, by default one that logs them as Zipkin v2 JSON to this class's logger at INFO level.
+ * <p>
+ * Sampling is decided once per trace, using the <code>traceSampleRate</code> custom property of the provider context
+ * (a fraction between 0 and 1) or the default set with {@link #setDefaultSampleRate(double)}. The default rate is 0,
+ * in which case tracing costs a thread-local lookup and a counter per span.
+ * </p>
+ * <p>
+ * The per-thread state is dropped as soon as the outermost span ends, so threads returned to a pool carry nothing
+ * over. Should begin and end calls become unbalanced, the open spans of a thread are discarded once they nest deeper
+ * than {@link #MAX_DEPTH}.
+ * </p>
+ * <pre>
+ *     Tracer.begin(provider, "listVirtualMachines");
+ *     try {
+ *         // make the calls
+ *     }
+ *     finally {
+ *         Tracer.end();
+ *     }
+ * </pre>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class Tracer {
+    static private final Logger logger = Logger.getLogger(Tracer.class);
+
+    /**
+     * Custom property on the provider context holding the fraction of its traces to record.
+     */
+    static public final String SAMPLE_RATE_PROPERTY = "traceSampleRate";
+
+    /**
+     * Upper bound on the spans kept for a single trace, so a long-running operation cannot grow without limit.
+     */
+    static public final int MAX_SPANS_PER_TRACE = 1000;
+
+    /**
+     * Upper bound on the spans open at once on a thread. Deeper nesting means end calls are missing.
+     */
+    static public final int MAX_DEPTH = 256;
+
+    static private final String SERVICE_NAME = "dasein-cloud";
+
+    static private final SpanExporter logExporter = new SpanExporter() {
+        @Override
+        public void export(@Nonnull List<Span> spans) {
+            if( logger.isInfoEnabled() ) {
+                try {
+                    JSONArray array = new JSONArray();
+
+                    for( Span span : spans ) {
+                        array.put(span.toJSON(SERVICE_NAME));
+                    }
+                    logger.info(array.toString());
+                }
+                catch( Throwable t ) {
+                    logger.warn("Unable to export trace: " + t.getMessage());
+                }
+            }
+        }
+    };
+
+    static private final Random random = new Random();
+
+    static private volatile double       defaultSampleRate = 0.0;
+    static private volatile SpanExporter exporter          = logExporter;
+
+    /**
+     * The spans recorded for one trace.
+     */
+    static private class Trace {
+        final List<Span> finished = new ArrayList<Span>();
+        final String     traceId;
+
+        Trace(@Nonnull String traceId) {
+            this.traceId = traceId;
+        }
+
+        synchronized void add(@Nonnull Span span) {
+            if( finished.size() < MAX_SPANS_PER_TRACE ) {
+                finished.add(span);
+            }
+        }
+    }
+
+    /**
+     * An open span of a recorded trace.
+     */
+    static private class Frame {
+        final Span  span;
+        final Trace trace;
+
+        Frame(@Nonnull Span span, @Nonnull Trace trace) {
+            this.span = span;
+            this.trace = trace;
+        }
+    }
+
+    /**
+     * The spans open on a thread. A recorded trace stacks its frames; an unsampled one only counts its depth so that
+     * begin and end stay balanced without pushing anything.
+     */
+    static private class ThreadState {
+        final ArrayList<Frame> frames = new ArrayList<Frame>();
+        int                    unsampled;
+        // the bottom frame (or unsampled level) was attached from another thread and is never ended here
+        boolean                attached;
+
+        boolean isEmpty() {
+            return (frames.isEmpty() && unsampled == 0);
+        }
+
+        boolean isAttachedOnly() {
+            return (attached && frames.size() + unsampled == 1);
+        }
+    }
+
+    /**
+     * The trace open on a thread at the moment it was captured, for continuing it on other threads.
+     * @see #capture()
+     * @see #attach(Context)
+     */
+    static public final class Context {
+        private final Frame frame;
+
+        private Context(@Nullable Frame frame) {
+            this.frame = frame;
+        }
+    }
+
+    static private final ThreadLocal<ThreadState> states = new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+            return new ThreadState();
+        }
+    };
+
+    /**
+     * Adds a tag to the current span, if it is being recorded.
+     * @param key the tag name
+     * @param value the tag value
+     */
+    static public void addTag(@Nonnull String key, @Nullable String value) {
+        Span span = getCurrentSpan();
+
+        if( span != null ) {
+            span.tag(key, value);
+        }
+    }
+
+    /**
+     * Adds a timestamped annotation to the current span, if it is being recorded.
+     * @param value the annotation
+     */
+    static public void annotate(@Nonnull String value) {
+        Span span = getCurrentSpan();
+
+        if( span != null ) {
+            span.annotate(now(), value);
+        }
+    }
+
+    /**
+     * Continues a trace captured on another thread. Spans begun on this thread until {@link #detach()} become
+     * children of the span that was open when the trace was captured. Any state left on this thread is discarded, so
+     * this belongs at the top of a task handed to another thread:
+     * <pre>
+     *     final Tracer.Context trace = Tracer.capture();
+     *
+     *     executor.execute(new Runnable() {
+     *         public void run() {
+     *             Tracer.attach(trace);
+     *             try {
+     *                 // make the calls
+     *             }
+     *             finally {
+     *                 Tracer.detach();
+     *             }
+     *         }
+     *     });
+     * </pre>
+     * Spans that end after the trace's root span has ended and been exported are not exported.
+     * @param context the captured trace, or null if no trace was open when it was captured
+     */
+    static public void attach(@Nullable Context context) {
+        if( context == null ) {
+            states.remove();
+            return;
+        }
+        ThreadState state = new ThreadState();
+
+        if( context.frame == null ) {
+            state.unsampled = 1;
+        }
+        else {
+            state.frames.add(context.frame);
+        }
+        state.attached = true;
+        states.set(state);
+    }
+
+    /**
+     * Starts a span for an operation performed with the specified provider. If no span is open on this thread, this
+     * starts a new trace and decides whether to sample it.
+     * @param provider the provider performing the operation
+     * @param name the name of the operation
+     */
+    static public void begin(@Nonnull CloudProvider provider, @Nonnull String name) {
+        ThreadState state = getState();
+
+        if( !state.isEmpty() ) {
+            push(state, name);
+            return;
+        }
+        ProviderContext ctx = provider.getContext();
+
+        if( !isSampled(ctx) ) {
+            state.unsampled = 1;
+            return;
+        }
+        Trace trace = new Trace(newId());
+        Span span = new Span(trace.traceId, null, newId(), name, now(), System.nanoTime());
+
+        span.tag("dasein.provider", provider.getProviderName());
+        span.tag("dasein.cloud", provider.getCloudName());
+        if( ctx != null ) {
+            RequestTrackingStrategy strategy = ctx.getRequestTrackingStrategy();
+
+            span.tag("dasein.account", ctx.getAccountNumber());
+            span.tag("dasein.region", ctx.getRegionId());
+            if( strategy != null ) {
+                span.tag("dasein.requestId", strategy.getRequestId());
+            }
+        }
+        state.frames.add(new Frame(span, trace));
+    }
+
+    /**
+     * Starts a child span of the current span. Outside of a recorded trace this only keeps begin and end balanced.
+     * @param name the name of the child span
+     */
+    static public void beginChild(@Nonnull String name) {
+        ThreadState state = getState();
+
+        if( state.isEmpty() ) {
+            state.unsampled = 1;
+        }
+        else {
+            push(state, name);
+        }
+    }
+
+    /**
+     * Captures the trace open on this thread so that work done for it on other threads can be recorded as part of it.
+     * @return the open trace, or null if no trace is open on this thread
+     * @see #attach(Context)
+     */
+    static public @Nullable Context capture() {
+        ThreadState state = states.get();
+
+        if( state.isEmpty() ) {
+            return null;
+        }
+        return new Context(state.unsampled > 0 ? null : state.frames.get(state.frames.size() - 1));
+    }
+
+    /**
+     * Stops continuing a trace attached with {@link #attach(Context)} and discards whatever this thread left open.
+     */
+    static public void detach() {
+        states.remove();
+    }
+
+    /**
+     * Finishes the current span. Finishing the root span of a sampled trace exports the trace.
+     */
+    static public void end() {
+        ThreadState state = states.get();
+
+        if( state.isAttachedOnly() ) {
+            // the attached span belongs to the thread that captured it
+            return;
+        }
+        if( state.unsampled > 0 ) {
+            state.unsampled--;
+        }
+        else if( !state.frames.isEmpty() ) {
+            Frame frame = state.frames.remove(state.frames.size() - 1);
+
+            frame.span.finish(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - frame.span.getStartNanos()));
+            frame.trace.add(frame.span);
+            if( state.frames.isEmpty() ) {
+                export(frame.trace);
+            }
+        }
+        if( state.isEmpty() ) {
+            states.remove();
+        }
+    }
+
+    static private void export(@Nonnull Trace trace) {
+        List<Span> spans;
+
+        synchronized( trace ) {
+            spans = new ArrayList<Span>(trace.finished);
+        }
+        try {
+            exporter.export(spans);
+        }
+        catch( Throwable t ) {
+            logger.warn("Span exporter failed: " + t.getMessage());
+        }
+    }
+
+    /**
+     * @return the span open on this thread if it is being recorded, otherwise null
+     */
+    static public @Nullable Span getCurrentSpan() {
+        Frame frame = getCurrentFrame();
+
+        return (frame == null ? null : frame.span);
+    }
+
+    static private @Nullable Frame getCurrentFrame() {
+        ArrayList<Frame> frames = states.get().frames;
+
+        return (frames.isEmpty() ? null : frames.get(frames.size() - 1));
+    }
+
+    /**
+     * Fetches the state of this thread, discarding it first if its spans nest so deep that end calls must be missing.
+     * @return the state of this thread
+     */
+    static private @Nonnull ThreadState getState() {
+        ThreadState state = states.get();
+        int depth = state.frames.size() + state.unsampled;
+
+        if( depth >= MAX_DEPTH ) {
+            logger.warn("Discarding " + depth + " unbalanced trace spans on " + Thread.currentThread().getName());
+            state = new ThreadState();
+            states.set(state);
+        }
+        return state;
+    }
+
+    /**
+     * @return the sample rate used for contexts that do not set {@link #SAMPLE_RATE_PROPERTY}
+     */
+    static public double getDefaultSampleRate() {
+        return defaultSampleRate;
+    }
+
+    /**
+     * @return true if the span open on this thread is being recorded
+     */
+    static public boolean isRecording() {
+        return (getCurrentSpan() != null);
+    }
+
+    static private boolean isSampled(@Nullable ProviderContext ctx) {
+        double rate = defaultSampleRate;
+
+        if( ctx != null ) {
+            String value = ctx.getCustomProperties().getProperty(SAMPLE_RATE_PROPERTY);
+
+            if( value != null ) {
+                try {
+                    rate = Double.parseDouble(value);
+                }
+                catch( NumberFormatException e ) {
+                    logger.warn("Ignoring invalid " + SAMPLE_RATE_PROPERTY + ": " + value);
+                }
+            }
+        }
+        return (rate >= 1.0 || (rate > 0.0 && random.nextDouble() < rate));
+    }
+
+    static private @Nonnull String newId() {
+        long id;
+
+        do {
+            id = random.nextLong();
+        } while( id == 0L );
+        String hex = Long.toHexString(id);
+
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    static private long now() {
+        return TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    }
+
+    static private void push(@Nonnull ThreadState state, @Nonnull String name) {
+        if( state.unsampled > 0 ) {
+            state.unsampled++;
+        }
+        else {
+            Frame parent = state.frames.get(state.frames.size() - 1);
+
+            state.frames.add(new Frame(new Span(parent.trace.traceId, parent.span.getId(), newId(), name, now(), System.nanoTime()), parent.trace));
+        }
+    }
+
+    /**
+     * Records an already finished child of the current span, for phases timed by code that cannot open spans itself.
+     * @param name the name of the phase
+     * @param startNanos the start of the phase as given by {@link System#nanoTime()}
+     * @param endNanos the end of the phase as given by {@link System#nanoTime()}
+     */
+    static public void record(@Nonnull String name, long startNanos, long endNanos) {
+        Frame parent = getCurrentFrame();
+
+        if( parent != null ) {
+            long start = now() - TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            Span span = new Span(parent.trace.traceId, parent.span.getId(), newId(), name, start, startNanos);
+
+            span.finish(TimeUnit.NANOSECONDS.toMicros(Math.max(0L, endNanos - startNanos)));
+            parent.trace.add(span);
+        }
+    }
+
+    /**
+     * Sets the fraction of traces recorded for contexts that do not set {@link #SAMPLE_RATE_PROPERTY}.
+     * @param rate the fraction of traces to record, between 0 and 1
+     */
+    static public void setDefaultSampleRate(@Nonnegative double rate) {
+        defaultSampleRate = rate;
+    }
+
+    /**
+     * Replaces the exporter receiving finished traces.
+     * @param spanExporter the new exporter, or null to restore the default logging exporter
+     */
+    static public void setExporter(@Nullable SpanExporter spanExporter) {
+        exporter = (spanExporter == null ? logExporter : spanExporter);
+    }
+
+    private Tracer() { }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds a 64-bit FNV-1a hash over the values that make up the observable state of a resource. Two listings of an
+ * unchanged resource produce the same fingerprint, so a watcher can keep fingerprints instead of whole resources.
+ * The order in which values are added matters; map entries are hashed in key order.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class Fingerprint {
+    static private final long OFFSET = 0xcbf29ce484222325L;
+    static private final long PRIME  = 0x100000001b3L;
+
+    /**
+     * @return an empty fingerprint
+     */
+    static public @Nonnull Fingerprint getInstance() {
+        return new Fingerprint();
+    }
+
+    private long hash = OFFSET;
+
+    private Fingerprint() { }
+
+    private void mix(int b) {
+        hash ^= (b & 0xff);
+        hash *= PRIME;
+    }
+
+    /**
+     * Adds a value to the fingerprint.
+     * @param value the value, which may be <code>null</code>
+     * @return this
+     */
+    public @Nonnull Fingerprint add(@Nullable Object value) {
+        if( value == null ) {
+            mix(0);
+            return this;
+        }
+        String s = value.toString();
+
+        mix(1);
+        for( int i=0; i<s.length(); i++ ) {
+            char c = s.charAt(i);
+
+            mix(c);
+            mix(c >>> 8);
+        }
+        // separates "ab","c" from "a","bc"
+        mix(0xff);
+        return this;
+    }
+
+    /**
+     * Adds a number to the fingerprint.
+     * @param value the number
+     * @return this
+     */
+    public @Nonnull Fingerprint add(long value) {
+        for( int i=0; i<8; i++ ) {
+            mix((int)(value >>> (i * 8)));
+        }
+        return this;
+    }
+
+    /**
+     * Adds a flag to the fingerprint.
+     * @param value the flag
+     * @return this
+     */
+    public @Nonnull Fingerprint add(boolean value) {
+        mix(value ? 3 : 2);
+        return this;
+    }
+
+    /**
+     * Adds each value of an array to the fingerprint.
+     * @param values the values, which may be <code>null</code>
+     * @return this
+     */
+    public @Nonnull Fingerprint addAll(@Nullable Object[] values) {
+        if( values == null ) {
+            return add((Object)null);
+        }
+        add(values.length);
+        for( Object value : values ) {
+            add(value);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the entries of a map to the fingerprint in key order.
+     * @param values the map, which may be <code>null</code>
+     * @return this
+     */
+    public @Nonnull Fingerprint addAll(@Nullable Map<String,?> values) {
+        if( values == null ) {
+            return add((Object)null);
+        }
+        add(values.size());
+        for( Map.Entry<String,?> entry : new TreeMap<String,Object>(values).entrySet() ) {
+            add(entry.getKey());
+            add(entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * @return the fingerprint of the values added so far
+     */
+    public long get() {
+        return hash;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return Long.toHexString(hash);
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+
+/**
+ * A watch source for clouds whose API can list only the resources changed since a point in time. The watcher uses it
+ * between full listings; because such filters cannot report deletions, a full listing still runs periodically to
+ * catch them (see {@link ResourceWatcher#withFullListingEvery(int)}).
+ * @param <T> the type of resource
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface IncrementalWatchSource<T> extends WatchSource<T> {
+    /**
+     * Lists the resources created or changed at or after the specified time.
+     * @param timestamp the time in milliseconds since the epoch, already adjusted for clock skew by the watcher
+     * @return the changed resources
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull Iterable<T> listChangedSince(@Nonnegative long timestamp) throws CloudException, InternalException;
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A change to a watched resource detected between two polls.
+ * @param <T> the type of resource
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ResourceChange<T> {
+    public enum Type {
+        /**
+         * The resource appeared since the last poll.
+         */
+        CREATED,
+        /**
+         * The fingerprint of the resource changed since the last poll.
+         */
+        UPDATED,
+        /**
+         * The resource no longer appears in the listing.
+         */
+        DELETED
+    }
+
+    static public @Nonnull <T> ResourceChange<T> getInstance(@Nonnull Type type, @Nonnull String resourceId, @Nullable T resource, long fingerprint) {
+        return new ResourceChange<T>(type, resourceId, resource, fingerprint);
+    }
+
+    private final long   fingerprint;
+    private final T      resource;
+    private final String resourceId;
+    private final Type   type;
+
+    private ResourceChange(@Nonnull Type type, @Nonnull String resourceId, @Nullable T resource, long fingerprint) {
+        this.type = type;
+        this.resourceId = resourceId;
+        this.resource = resource;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return the fingerprint of the resource as of this change; for deletions, the last one seen
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the resource as currently listed, or <code>null</code> for deletions
+     */
+    public @Nullable T getResource() {
+        return resource;
+    }
+
+    /**
+     * @return the provider ID of the resource
+     */
+    public @Nonnull String getResourceId() {
+        return resourceId;
+    }
+
+    /**
+     * @return the kind of change
+     */
+    public @Nonnull Type getType() {
+        return type;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return type + " " + resourceId;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+
+/**
+ * Receives the changes detected by a {@link ResourceWatcher} polling in the background.
+ * @param <T> the type of resource
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface ResourceChangeListener<T> {
+    /**
+     * Called once per poll that found changes, after the watcher's checkpoint covers them.
+     * @param changes the changes, in the order the resources were listed with deletions last
+     * @param checkpoint the checkpoint from which a new watcher would resume after these changes
+     */
+    public void changed(@Nonnull List<ResourceChange<T>> changes, @Nonnull WatchCheckpoint checkpoint);
+
+    /**
+     * Called when a poll failed; the watcher keeps its checkpoint and tries again at the next poll.
+     * @param error the failure
+     */
+    public void failed(@Nonnull Throwable error);
+}
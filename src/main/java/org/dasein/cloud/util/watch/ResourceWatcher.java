@@ -0,0 +1,367 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import org.apache.log4j.Logger;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns periodic listings of a resource type into a feed of created, updated and deleted events. Each poll lists the
+ * resources, compares the {@link WatchSource#getFingerprint(Object) fingerprint} of each with the one seen by the
+ * previous poll and reports the differences. Only fingerprints are retained between polls, so watching costs a few
+ * dozen bytes per resource.
+ * <p>
+ * When the source is an {@link IncrementalWatchSource}, polls between full listings ask the cloud only for the
+ * resources changed since the last poll. Deletions are detected on the full listings, which run on the first poll
+ * and then every {@link #DEFAULT_FULL_LISTING_EVERY} polls unless configured otherwise.
+ * </p>
+ * <p>
+ * A watcher can be resumed from a {@link WatchCheckpoint} taken from an earlier watcher, in which case it reports
+ * only what changed since that checkpoint rather than every resource as new.
+ * </p>
+ * @param <T> the type of resource
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class ResourceWatcher<T> {
+    static private final Logger logger = Logger.getLogger(ResourceWatcher.class);
+
+    /**
+     * The number of polls per full listing when the source supports incremental listings.
+     */
+    static public final int  DEFAULT_FULL_LISTING_EVERY = 10;
+
+    /**
+     * How far in milliseconds before the last poll an incremental listing starts, to cover clock skew between this
+     * host and the cloud.
+     */
+    static public final long DEFAULT_SKEW = 60000L;
+
+    static private final AtomicInteger            threadCount = new AtomicInteger(0);
+    // only times the polls; each poll runs on a thread of its own so that a slow one does not hold up the others
+    static private final ScheduledExecutorService timer       = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Resource Watcher Timer");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    static private final ExecutorService          pollers     = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread t = new Thread(r);
+
+            t.setName("Resource Watcher " + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * Builds a watcher that reports every existing resource as created on its first poll.
+     * @param source the source of the resources to watch
+     * @param <T> the type of resource
+     * @return the watcher
+     */
+    static public @Nonnull <T> ResourceWatcher<T> getInstance(@Nonnull WatchSource<T> source) {
+        return new ResourceWatcher<T>(source);
+    }
+
+    /**
+     * The outcome of one poll: the changes found and the checkpoint as of the end of that poll.
+     */
+    private class Poll {
+        private final List<ResourceChange<T>> changes;
+        private final WatchCheckpoint         checkpoint;
+
+        Poll(@Nonnull List<ResourceChange<T>> changes, @Nonnull WatchCheckpoint checkpoint) {
+            this.changes = changes;
+            this.checkpoint = checkpoint;
+        }
+
+        @Nonnull List<ResourceChange<T>> getChanges() {
+            return changes;
+        }
+
+        @Nonnull WatchCheckpoint getCheckpoint() {
+            return checkpoint;
+        }
+    }
+
+    private Map<String,Long>      fingerprints     = new HashMap<String, Long>();
+    private int                   fullListingEvery = DEFAULT_FULL_LISTING_EVERY;
+    // identifies the current start() so that a poll finishing after a stop() does not schedule another
+    private int                   generation       = 0;
+    private int                   pollsSinceFull   = 0;
+    // held for a whole poll so that polls run one at a time; the monitor is only held to read and swap the state
+    private final Object          polling          = new Object();
+    private ScheduledFuture<?>    schedule;
+    private long                  skew             = DEFAULT_SKEW;
+    private final WatchSource<T>  source;
+    private long                  timestamp        = 0L;
+
+    private ResourceWatcher(@Nonnull WatchSource<T> source) {
+        this.source = source;
+    }
+
+    /**
+     * Resumes from a checkpoint taken by an earlier watcher of the same resource type. The next poll is always a full
+     * listing so that deletions since the checkpoint are reported.
+     * @param checkpoint the checkpoint
+     * @return this
+     */
+    public @Nonnull ResourceWatcher<T> withCheckpoint(@Nonnull WatchCheckpoint checkpoint) {
+        if( checkpoint.getTimestamp() > 0L && !checkpoint.getResourceType().equals(source.getResourceType()) ) {
+            throw new IllegalArgumentException("Checkpoint for " + checkpoint.getResourceType() + " cannot resume a watch of " + source.getResourceType());
+        }
+        // waits for a poll in progress so that its results do not overwrite the checkpoint
+        synchronized( polling ) {
+            synchronized( this ) {
+                fingerprints = new HashMap<String, Long>(checkpoint.getFingerprints());
+                timestamp = checkpoint.getTimestamp();
+                pollsSinceFull = fullListingEvery;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Sets how often a full listing runs when the source supports incremental listings.
+     * @param polls the number of polls per full listing; 1 makes every poll a full listing
+     * @return this
+     */
+    public synchronized @Nonnull ResourceWatcher<T> withFullListingEvery(@Nonnegative int polls) {
+        fullListingEvery = Math.max(1, polls);
+        return this;
+    }
+
+    /**
+     * Sets how far before the last poll an incremental listing starts.
+     * @param skew the margin in milliseconds
+     * @return this
+     */
+    public synchronized @Nonnull ResourceWatcher<T> withSkew(@Nonnegative long skew) {
+        this.skew = Math.max(0L, skew);
+        return this;
+    }
+
+    /**
+     * @return the state from which a new watcher would resume, as of the last successful poll
+     */
+    public synchronized @Nonnull WatchCheckpoint getCheckpoint() {
+        return WatchCheckpoint.getInstance(source.getResourceType(), timestamp, fingerprints);
+    }
+
+    /**
+     * @return the source of the resources being watched
+     */
+    public @Nonnull WatchSource<T> getSource() {
+        return source;
+    }
+
+    /**
+     * @return true if the watcher is polling in the background
+     */
+    public synchronized boolean isStarted() {
+        return (schedule != null);
+    }
+
+    /**
+     * Lists the resources and reports what changed since the previous poll. A failed poll leaves the watcher's state
+     * untouched, so the changes it would have found are reported by the next successful one. Polls of the same watcher
+     * run one at a time, but the listing is done without holding the watcher's monitor, so a slow cloud does not hold
+     * up {@link #getCheckpoint()}, {@link #isStarted()} or {@link #stop()}.
+     * @return the changes, in listing order with deletions last
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull List<ResourceChange<T>> poll() throws CloudException, InternalException {
+        synchronized( polling ) {
+            return list().getChanges();
+        }
+    }
+
+    // callers must hold polling, so that fingerprints, timestamp and pollsSinceFull change only here between reads
+    private @Nonnull Poll list() throws CloudException, InternalException {
+        long started = System.currentTimeMillis();
+        Map<String,Long> previousFingerprints;
+        boolean full;
+        long since;
+
+        synchronized( this ) {
+            previousFingerprints = fingerprints;
+            full = (!(source instanceof IncrementalWatchSource) || timestamp < 1L || pollsSinceFull + 1 >= fullListingEvery);
+            since = Math.max(0L, timestamp - skew);
+        }
+        Iterable<T> listing;
+
+        if( full ) {
+            listing = source.list();
+        }
+        else {
+            listing = ((IncrementalWatchSource<T>)source).listChangedSince(since);
+        }
+        Map<String,Long> current = (full ? new HashMap<String, Long>(Math.max(16, previousFingerprints.size() * 2)) : new HashMap<String, Long>(previousFingerprints));
+        List<ResourceChange<T>> changes = new ArrayList<ResourceChange<T>>();
+
+        for( T resource : listing ) {
+            String id = source.getId(resource);
+
+            if( id == null ) {
+                continue;
+            }
+            long fingerprint = source.getFingerprint(resource);
+            Long previous = previousFingerprints.get(id);
+
+            current.put(id, fingerprint);
+            if( previous == null ) {
+                changes.add(ResourceChange.getInstance(ResourceChange.Type.CREATED, id, resource, fingerprint));
+            }
+            else if( previous != fingerprint ) {
+                changes.add(ResourceChange.getInstance(ResourceChange.Type.UPDATED, id, resource, fingerprint));
+            }
+        }
+        if( full ) {
+            for( Map.Entry<String,Long> entry : previousFingerprints.entrySet() ) {
+                if( !current.containsKey(entry.getKey()) ) {
+                    changes.add(ResourceChange.<T>getInstance(ResourceChange.Type.DELETED, entry.getKey(), null, entry.getValue()));
+                }
+            }
+        }
+        WatchCheckpoint checkpoint;
+
+        synchronized( this ) {
+            fingerprints = current;
+            timestamp = started;
+            pollsSinceFull = (full ? 0 : pollsSinceFull + 1);
+            checkpoint = WatchCheckpoint.getInstance(source.getResourceType(), timestamp, fingerprints);
+        }
+        if( logger.isDebugEnabled() ) {
+            logger.debug("Watch of " + source.getResourceType() + " (" + (full ? "full" : "incremental") + "): " + changes.size() + " changes");
+        }
+        return new Poll(changes, checkpoint);
+    }
+
+    /**
+     * Starts polling in the background. The first poll runs immediately and each subsequent one the specified period
+     * after the previous one finished. Polls of different watchers run on separate threads, so a slow cloud delays
+     * only the watchers that list from it.
+     * @param period the delay between polls
+     * @param unit the unit of the period
+     * @param listener the listener notified of each poll that found changes or failed
+     * @throws IllegalStateException the watcher is already started
+     */
+    public synchronized void start(@Nonnegative long period, @Nonnull TimeUnit unit, @Nonnull ResourceChangeListener<T> listener) {
+        if( schedule != null ) {
+            throw new IllegalStateException("Watch of " + source.getResourceType() + " is already started");
+        }
+        generation++;
+        scheduleNext(generation, 0L, Math.max(1L, period), unit, listener);
+    }
+
+    private synchronized void scheduleNext(final int startedAs, long delay, final long period, final @Nonnull TimeUnit unit, final @Nonnull ResourceChangeListener<T> listener) {
+        if( startedAs != generation ) {
+            return;
+        }
+        schedule = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                pollers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            pollAndNotify(listener);
+                        }
+                        finally {
+                            scheduleNext(startedAs, period, period, unit, listener);
+                        }
+                    }
+                });
+            }
+        }, delay, unit);
+    }
+
+    private void pollAndNotify(@Nonnull ResourceChangeListener<T> listener) {
+        Poll result;
+
+        try {
+            synchronized( polling ) {
+                result = list();
+            }
+        }
+        catch( Throwable t ) {
+            logger.warn("Watch of " + source.getResourceType() + " failed: " + t.getMessage());
+            notifyFailure(listener, t);
+            return;
+        }
+        if( !result.getChanges().isEmpty() ) {
+            try {
+                listener.changed(result.getChanges(), result.getCheckpoint());
+            }
+            catch( Throwable t ) {
+                logger.error("Listener for watch of " + source.getResourceType() + " failed: " + t.getMessage(), t);
+            }
+        }
+    }
+
+    private void notifyFailure(@Nonnull ResourceChangeListener<T> listener, @Nonnull Throwable error) {
+        try {
+            listener.failed(error);
+        }
+        catch( Throwable t ) {
+            logger.error("Listener for watch of " + source.getResourceType() + " failed: " + t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Stops polling in the background. A poll already in progress still completes and reports its changes.
+     */
+    public synchronized void stop() {
+        if( schedule != null ) {
+            schedule.cancel(false);
+            schedule = null;
+            generation++;
+        }
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return "ResourceWatcher [" + source.getResourceType() + "]";
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The state a {@link ResourceWatcher} needs to resume without reporting every resource as new: the time of the poll
+ * and the fingerprint of each resource it saw. Checkpoints are immutable and serialize to a compact byte form so
+ * callers can persist them wherever they like.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class WatchCheckpoint {
+    static private final int VERSION = 1;
+
+    /**
+     * @return a checkpoint from which a watcher reports every resource as created
+     */
+    static public @Nonnull WatchCheckpoint empty() {
+        return new WatchCheckpoint("", 0L, Collections.<String,Long>emptyMap());
+    }
+
+    /**
+     * Reads a checkpoint written by {@link #toBytes()}.
+     * @param data the serialized checkpoint
+     * @return the checkpoint
+     * @throws InternalException the data is not a valid checkpoint
+     */
+    static public @Nonnull WatchCheckpoint fromBytes(@Nonnull byte[] data) throws InternalException {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            int version = in.readInt();
+
+            if( version != VERSION ) {
+                throw new InternalException("Unsupported watch checkpoint version: " + version);
+            }
+            String resourceType = in.readUTF();
+            long timestamp = in.readLong();
+            int count = in.readInt();
+            Map<String,Long> fingerprints = new HashMap<String, Long>(Math.max(16, count * 2));
+
+            for( int i=0; i<count; i++ ) {
+                String id = in.readUTF();
+
+                fingerprints.put(id, in.readLong());
+            }
+            return new WatchCheckpoint(resourceType, timestamp, fingerprints);
+        }
+        catch( IOException e ) {
+            throw new InternalException("Invalid watch checkpoint: " + e.getMessage(), e);
+        }
+    }
+
+    static @Nonnull WatchCheckpoint getInstance(@Nonnull String resourceType, long timestamp, @Nonnull Map<String,Long> fingerprints) {
+        return new WatchCheckpoint(resourceType, timestamp, new HashMap<String, Long>(fingerprints));
+    }
+
+    private final Map<String,Long> fingerprints;
+    private final String           resourceType;
+    private final long             timestamp;
+
+    private WatchCheckpoint(@Nonnull String resourceType, long timestamp, @Nonnull Map<String,Long> fingerprints) {
+        this.resourceType = resourceType;
+        this.timestamp = timestamp;
+        this.fingerprints = Collections.unmodifiableMap(fingerprints);
+    }
+
+    /**
+     * @return the fingerprint of each resource seen as of this checkpoint, keyed by resource ID
+     */
+    public @Nonnull Map<String,Long> getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * @return the type of resource the checkpoint was taken for, or an empty string for {@link #empty()}
+     */
+    public @Nonnull String getResourceType() {
+        return resourceType;
+    }
+
+    /**
+     * @return the time in milliseconds since the epoch at which the poll behind this checkpoint started, or 0 if none
+     */
+    public @Nonnegative long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the checkpoint in a form {@link #fromBytes(byte[])} can read back
+     */
+    public @Nonnull byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + fingerprints.size() * 40);
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(VERSION);
+            out.writeUTF(resourceType);
+            out.writeLong(timestamp);
+            out.writeInt(fingerprints.size());
+            for( Map.Entry<String,Long> entry : fingerprints.entrySet() ) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch( IOException e ) {
+            // a byte array stream does not fail
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public @Nonnull String toString() {
+        return "WatchCheckpoint [" + resourceType + " @ " + timestamp + ", " + fingerprints.size() + " resources]";
+    }
+}
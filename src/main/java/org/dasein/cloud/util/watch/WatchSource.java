@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Supplies the resources a {@link ResourceWatcher} watches and how to identify and fingerprint them.
+ * See {@link WatchSources} for the sources of the standard resource types.
+ * @param <T> the type of resource
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public interface WatchSource<T> {
+    /**
+     * @return the type name of the resource, as in {@link org.dasein.cloud.util.ResourceReference}, used in logs and checkpoints
+     */
+    public @Nonnull String getResourceType();
+
+    /**
+     * @param resource a listed resource
+     * @return the provider ID of the resource, or <code>null</code> to ignore it
+     */
+    public @Nullable String getId(@Nonnull T resource);
+
+    /**
+     * @param resource a listed resource
+     * @return a hash of the state and content of the resource, usually built with {@link Fingerprint}
+     */
+    public long getFingerprint(@Nonnull T resource);
+
+    /**
+     * Lists all of the resources.
+     * @return the resources
+     * @throws CloudException an error occurred with the cloud provider
+     * @throws InternalException an error occurred within the Dasein Cloud implementation
+     */
+    public @Nonnull Iterable<T> list() throws CloudException, InternalException;
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeSupport;
+import org.dasein.cloud.network.Firewall;
+import org.dasein.cloud.network.FirewallRule;
+import org.dasein.cloud.network.FirewallSupport;
+import org.dasein.cloud.util.ResourceReference;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Watch sources for the standard resource types. The fingerprints cover the state and the user visible attributes of
+ * each resource, but not timestamps or other values a cloud may recompute on every listing.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public final class WatchSources {
+    private WatchSources() { }
+
+    /**
+     * Clouds do not promise a stable order for lists of addresses or IDs, so they are fingerprinted in sorted order.
+     */
+    static private @Nullable String[] sorted(@Nullable Object[] values) {
+        if( values == null ) {
+            return null;
+        }
+        String[] strings = new String[values.length];
+
+        for( int i=0; i<values.length; i++ ) {
+            strings[i] = (values[i] == null ? null : values[i].toString());
+        }
+        Arrays.sort(strings, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                if( a == null ) {
+                    return (b == null ? 0 : -1);
+                }
+                return (b == null ? 1 : a.compareTo(b));
+            }
+        });
+        return strings;
+    }
+
+    /**
+     * @param support the firewall support of the cloud to watch
+     * @return a source of the firewalls in the current region
+     */
+    static public @Nonnull WatchSource<Firewall> forFirewalls(@Nonnull final FirewallSupport support) {
+        return new WatchSource<Firewall>() {
+            @Override
+            public @Nonnull String getResourceType() {
+                return ResourceReference.FIREWALL;
+            }
+
+            @Override
+            public @Nullable String getId(@Nonnull Firewall firewall) {
+                return firewall.getProviderFirewallId();
+            }
+
+            @Override
+            public long getFingerprint(@Nonnull Firewall firewall) {
+                List<String> ruleIds = new ArrayList<String>();
+
+                for( FirewallRule rule : firewall.getRules() ) {
+                    ruleIds.add(rule.getProviderRuleId());
+                }
+                Collections.sort(ruleIds);
+                return Fingerprint.getInstance().add(firewall.getName()).add(firewall.getDescription())
+                        .add(firewall.isActive()).add(firewall.isAvailable()).add(firewall.getProviderVlanId())
+                        .addAll(ruleIds.toArray()).addAll(firewall.getTags()).get();
+            }
+
+            @Override
+            public @Nonnull Iterable<Firewall> list() throws CloudException, InternalException {
+                return support.list();
+            }
+        };
+    }
+
+    /**
+     * @param support the virtual machine support of the cloud to watch
+     * @return a source of the virtual machines in the current region
+     */
+    static public @Nonnull WatchSource<VirtualMachine> forVirtualMachines(@Nonnull final VirtualMachineSupport support) {
+        return new WatchSource<VirtualMachine>() {
+            @Override
+            public @Nonnull String getResourceType() {
+                return ResourceReference.VIRTUAL_MACHINE;
+            }
+
+            @Override
+            public @Nullable String getId(@Nonnull VirtualMachine vm) {
+                return vm.getProviderVirtualMachineId();
+            }
+
+            @Override
+            public long getFingerprint(@Nonnull VirtualMachine vm) {
+                return Fingerprint.getInstance().add(vm.getCurrentState()).add(vm.getName()).add(vm.getDescription())
+                        .add(vm.getProductId()).add(vm.getProviderDataCenterId()).add(vm.getProviderMachineImageId())
+                        .addAll(sorted(vm.getPublicAddresses())).addAll(sorted(vm.getPrivateAddresses()))
+                        .addAll(sorted(vm.getProviderFirewallIds())).addAll(vm.getTags()).get();
+            }
+
+            @Override
+            public @Nonnull Iterable<VirtualMachine> list() throws CloudException, InternalException {
+                return support.listVirtualMachines();
+            }
+        };
+    }
+
+    /**
+     * @param support the volume support of the cloud to watch
+     * @return a source of the volumes in the current region
+     */
+    static public @Nonnull WatchSource<Volume> forVolumes(@Nonnull final VolumeSupport support) {
+        return new WatchSource<Volume>() {
+            @Override
+            public @Nonnull String getResourceType() {
+                return ResourceReference.VOLUME;
+            }
+
+            @Override
+            public @Nullable String getId(@Nonnull Volume volume) {
+                return volume.getProviderVolumeId();
+            }
+
+            @Override
+            public long getFingerprint(@Nonnull Volume volume) {
+                return Fingerprint.getInstance().add(volume.getCurrentState()).add(volume.getName())
+                        .add(volume.getDescription()).add(volume.getSize()).add(volume.getProviderProductId())
+                        .add(volume.getProviderVirtualMachineId()).add(volume.getDeviceId()).addAll(volume.getTags()).get();
+            }
+
+            @Override
+            public @Nonnull Iterable<Volume> list() throws CloudException, InternalException {
+                return support.listVolumes();
+            }
+        };
+    }
+}
@@ -28,6 +28,7 @@ import org.junit.Test;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
@@ -524,4 +525,61 @@ public class CloudConnectTestCase {
 
         assertNull("The default context test in the test provider should always return null", p.testContext());
     }
+
+    @Test
+    public void registerConcurrentlyReturnsOneCloud() throws Exception {
+        final Cloud[] results = new Cloud[16];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[results.length];
+
+        for( int i = 0; i < threads.length; i++ ) {
+            final int idx = i;
+
+            threads[i] = new Thread() {
+                public void run() {
+                    try { start.await(); }
+                    catch( InterruptedException ignore ) { }
+                    results[idx] = Cloud.register(providerName, cloudName, endpoint + "/concurrent", TestNewCloudProvider.class);
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for( Thread t : threads ) {
+            t.join();
+        }
+        for( Cloud cloud : results ) {
+            assertSame("Concurrent registrations produced different clouds", results[0], cloud);
+        }
+        int count = 0;
+
+        for( Cloud cloud : Cloud.getInstances(providerName, cloudName) ) {
+            if( cloud.getEndpoint().equals(endpoint + "/concurrent") ) {
+                count++;
+            }
+        }
+        assertEquals("The cloud was indexed more than once", 1, count);
+    }
+
+    @Test
+    public void getCloudByProviderAndCloudName() {
+        Cloud cloud = Cloud.register(providerName, cloudName, endpoint, TestNewCloudProvider.class);
+
+        assertSame("Lookup by provider and cloud name failed", cloud, Cloud.getInstance(providerName.toUpperCase(), cloudName.toLowerCase()));
+        assertTrue("Lookup by provider name failed", Cloud.getInstances(providerName).contains(cloud));
+        assertTrue("The cloud is missing from the registry", Cloud.getInstances().contains(cloud));
+        assertNull("A bogus cloud was surprisingly found", Cloud.getInstance(providerName, "bogus"));
+    }
+
+    @Test
+    public void contextRequirementsAreCached() throws InternalException {
+        Cloud cloud = Cloud.register(providerName, cloudName, endpoint, TestNewCloudProvider.class);
+
+        assertSame("Context requirements should be computed once", cloud.getContextRequirements(), cloud.getContextRequirements());
+
+        ProviderContext copy = cloud.createContext(ACCOUNT, REGION, KEYS, VERSION).copy("other");
+
+        assertEquals("The copy is in the wrong region", "other", copy.getRegionId());
+        assertEquals("The copy lost its configuration", "1", copy.getConfigurationValue("version"));
+    }
 }
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud;
+
+import org.dasein.cloud.test.TestNewCloudProvider;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests borrowing, reuse, eviction and health checking of pooled providers.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ProviderPoolTestCase {
+    private Cloud        cloud;
+    private ProviderPool pool;
+
+    @Before
+    public void setUp() {
+        cloud = Cloud.register("Simulator", "Pool", "sim://pool", SimulatedCloudProvider.class);
+        pool = ProviderPool.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Test
+    public void reusesReleasedProvider() throws Exception {
+        CloudProvider first = pool.borrow(cloud.createContext("acct", "region-1"));
+
+        assertEquals("Borrowed count is wrong", 1, pool.getBorrowedCount());
+        pool.release(first);
+        assertEquals("Released provider should be idle", 1, pool.getIdleCount());
+
+        CloudProvider second = pool.borrow(cloud.createContext("acct", "region-1"));
+
+        assertSame("The pool should hand back the warm provider", first, second);
+        assertTrue("Reused provider should still be connected", second.isConnected());
+        pool.release(second);
+    }
+
+    @Test
+    public void keysByRegionAndCredentials() throws Exception {
+        ProviderContext.Value<?> keys1 = new ProviderContext.Value<byte[][]>("apiKeys", new byte[][] { "a".getBytes(), "b".getBytes() });
+        ProviderContext.Value<?> keys2 = new ProviderContext.Value<byte[][]>("apiKeys", new byte[][] { "a".getBytes(), "c".getBytes() });
+
+        assertFalse("Regions must not share a key", pool.getKey(cloud.createContext("acct", "region-1")).equals(pool.getKey(cloud.createContext("acct", "region-2"))));
+        assertFalse("Credentials must not share a key", pool.getKey(cloud.createContext("acct", "region-1", keys1)).equals(pool.getKey(cloud.createContext("acct", "region-1", keys2))));
+        assertEquals("Identical contexts must share a key", pool.getKey(cloud.createContext("acct", "region-1", keys1)), pool.getKey(cloud.createContext("acct", "region-1", keys1)));
+
+        ProviderPool other = ProviderPool.getInstance();
+
+        try {
+            assertFalse("Fingerprints must be keyed per pool", pool.getKey(cloud.createContext("acct", "region-1", keys1)).equals(other.getKey(cloud.createContext("acct", "region-1", keys1))));
+        }
+        finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void concurrentReleasesRespectIdleLimit() throws Exception {
+        final int count = 16;
+        final List<CloudProvider> providers = new ArrayList<CloudProvider>();
+        final CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        pool.withMaxIdlePerKey(2);
+        for( int i = 0; i < count; i++ ) {
+            providers.add(pool.borrow(cloud.createContext("acct", "region-1")));
+        }
+        for( final CloudProvider provider : providers ) {
+            Thread t = new Thread() {
+                public void run() {
+                    try {
+                        go.await();
+                    }
+                    catch( InterruptedException ignore ) {
+                        return;
+                    }
+                    pool.release(provider);
+                }
+            };
+
+            t.start();
+            threads.add(t);
+        }
+        go.countDown();
+        for( Thread t : threads ) {
+            t.join();
+        }
+        assertEquals("Concurrent releases must not exceed the idle limit", 2, pool.getIdleCount());
+    }
+
+    @Test
+    public void releasesRacingCloseAreNeverParked() throws Exception {
+        for( int round = 0; round < 20; round++ ) {
+            final ProviderPool racing = ProviderPool.getInstance();
+            final List<CloudProvider> providers = new ArrayList<CloudProvider>();
+            final CountDownLatch go = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<Thread>();
+
+            for( int i = 0; i < 8; i++ ) {
+                providers.add(racing.borrow(cloud.createContext("acct", "region-" + i)));
+            }
+            for( final CloudProvider provider : providers ) {
+                Thread t = new Thread() {
+                    public void run() {
+                        try {
+                            go.await();
+                        }
+                        catch( InterruptedException ignore ) {
+                            return;
+                        }
+                        racing.release(provider);
+                    }
+                };
+
+                t.start();
+                threads.add(t);
+            }
+            go.countDown();
+            racing.close();
+            for( Thread t : threads ) {
+                t.join();
+            }
+            assertEquals("A closed pool must not keep idle providers", 0, racing.getIdleCount());
+            for( CloudProvider provider : providers ) {
+                assertFalse("Every provider released to a closed pool must be closed", provider.isConnected());
+            }
+        }
+    }
+
+    @Test
+    public void evictsIdleProviders() throws Exception {
+        pool.withIdleTimeout(1L);
+
+        CloudProvider first = pool.borrow(cloud.createContext("acct", "region-1"));
+
+        pool.release(first);
+        Thread.sleep(10L);
+
+        CloudProvider second = pool.borrow(cloud.createContext("acct", "region-1"));
+
+        assertNotSame("An expired provider must not be reused", first, second);
+        assertFalse("An expired provider should have been closed", first.isConnected());
+        pool.release(second);
+    }
+
+    @Test
+    public void discardsUnhealthyProviders() throws Exception {
+        Cloud unhealthy = Cloud.register("Test", "Unhealthy", "test://pool", TestNewCloudProvider.class);
+
+        pool.withValidationInterval(0L);
+
+        CloudProvider first = pool.borrow(unhealthy.createContext("acct", "region-1"));
+
+        pool.release(first);
+        Thread.sleep(5L);
+
+        CloudProvider second = pool.borrow(unhealthy.createContext("acct", "region-1"));
+
+        assertNotSame("A provider failing testContext() must not be reused", first, second);
+        pool.invalidate(second);
+        assertEquals("Invalidated provider should not be pooled", 0, pool.getIdleCount());
+    }
+
+    @Test
+    public void closeDrainsHoldsWithoutPolling() throws Exception {
+        final CloudProvider provider = cloud.createContext("acct", "region-1").connect();
+
+        provider.hold();
+        provider.close();
+        assertTrue("Close should wait for the hold to drain", provider.isConnected());
+
+        long start = System.currentTimeMillis();
+
+        provider.release();
+        while( provider.isConnected() && System.currentTimeMillis() - start < 5000L ) {
+            Thread.sleep(5L);
+        }
+        assertFalse("Provider should be closed once the hold is released", provider.isConnected());
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.compute;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the merged own and public image search of {@link AbstractImageSupport}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ImageSearchTestCase {
+    static private final String ACCOUNT  = "123456789";
+    static private final String ENDPOINT = "sim://image-search";
+    static private final String REGION   = "sim-1";
+
+    private CloudProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Image Search", ENDPOINT, SimulatedCloudProvider.class);
+
+        SimulatedCloud.reset(ENDPOINT);
+        provider = cloud.createContext(ACCOUNT, REGION).connect();
+    }
+
+    @After
+    public void tearDown() {
+        if( provider != null ) {
+            provider.close();
+        }
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    @Test
+    public void mergesOwnAndPublicImagesById() throws Exception {
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        sim.populate(ACCOUNT, REGION, 0, 0, 0, 50, 0, 0);
+        sim.populatePublicImages(REGION, 500);
+
+        // one of our own images is also published
+        MachineImage shared = sim.getRegion(ACCOUNT, REGION).images.values().iterator().next();
+
+        shared.setImageClass(ImageClass.MACHINE);
+        sim.getPublicImages(REGION).put(shared.getProviderMachineImageId(), shared);
+
+        //noinspection ConstantConditions
+        MachineImageSupport support = provider.getComputeServices().getImageSupport();
+        List<String> own = new ArrayList<String>();
+        HashSet<String> expected = new HashSet<String>();
+
+        //noinspection ConstantConditions
+        for( MachineImage img : support.searchImages(null, null, null, null, ImageClass.MACHINE) ) {
+            own.add(img.getProviderMachineImageId());
+            expected.add(img.getProviderMachineImageId());
+        }
+        for( MachineImage img : support.searchPublicImages(null, null, null, ImageClass.MACHINE) ) {
+            expected.add(img.getProviderMachineImageId());
+        }
+        assertTrue("The shared image should be among our own", own.contains(shared.getProviderMachineImageId()));
+
+        List<String> merged = new ArrayList<String>();
+
+        for( MachineImage img : support.searchMachineImages(null, null, null) ) {
+            merged.add(img.getProviderMachineImageId());
+        }
+        assertEquals("Each image should appear exactly once", expected.size(), merged.size());
+        assertEquals(expected, new HashSet<String>(merged));
+        assertEquals("Own images should come first", own, merged.subList(0, own.size()));
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.compute;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.network.RawAddress;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests attribute projection on filter options and the deferred loading of skipped attributes.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ProjectionTestCase {
+    static private final String ACCOUNT  = "123456789";
+    static private final String ENDPOINT = "sim://projection";
+    static private final String REGION   = "sim-1";
+
+    private CloudProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Projection", ENDPOINT, SimulatedCloudProvider.class);
+
+        SimulatedCloud.reset(ENDPOINT);
+        SimulatedCloud.getInstance(ENDPOINT).populate(ACCOUNT, REGION, 5, 5, 0, 0, 0, 0);
+        provider = cloud.createContext(ACCOUNT, REGION).connect();
+    }
+
+    @After
+    public void tearDown() {
+        if( provider != null ) {
+            provider.close();
+        }
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    @Test
+    public void everythingIsRequestedWithoutProjection() {
+        assertNull(VMFilterOptions.getInstance().getAttributes());
+        assertTrue(VMFilterOptions.getInstance().isRequested("privateAddresses"));
+        assertTrue(ImageFilterOptions.getInstance().isRequested("volumes"));
+        assertTrue(VolumeFilterOptions.getInstance().isRequested("tags"));
+    }
+
+    @Test
+    public void criteriaPullInTheAttributesTheyTest() {
+        VMFilterOptions options = VMFilterOptions.getInstance().withAttributes("name", "currentState");
+
+        assertTrue(options.isRequested("name"));
+        assertFalse(options.isRequested("tags"));
+        assertFalse(options.isRequested("privateAddresses"));
+        options.withTags(Collections.singletonMap("env", "prod"));
+        assertTrue(options.isRequested("tags"));
+
+        VolumeFilterOptions volumes = VolumeFilterOptions.getInstance().withAttributes("name");
+
+        assertFalse(volumes.isRequested("providerVirtualMachineId"));
+        volumes.attachedTo("i-1");
+        assertTrue(volumes.isRequested("providerVirtualMachineId"));
+
+        ImageFilterOptions images = ImageFilterOptions.getInstance(ImageClass.MACHINE).withAttributes("name");
+
+        assertTrue(images.isRequested("imageClass"));
+        assertFalse(images.isRequested("platform"));
+    }
+
+    @Test
+    public void skippedAttributesLoadOnceOnFirstUse() {
+        final AtomicInteger calls = new AtomicInteger(0);
+        VirtualMachine partial = new VirtualMachine();
+
+        partial.setProviderVirtualMachineId("i-1");
+        partial.setDetailsCallback(new Callable<VirtualMachine>() {
+            @Override
+            public VirtualMachine call() {
+                VirtualMachine full = new VirtualMachine();
+
+                calls.incrementAndGet();
+                full.setProviderVirtualMachineId("i-1");
+                full.setTag("env", "prod");
+                full.setPrivateAddresses(new RawAddress("10.0.0.5"));
+                full.setProviderFirewallIds(new String[] { "sg-1" });
+                return full;
+            }
+        });
+        assertEquals(0, calls.get());
+        assertEquals("prod", partial.getTags().get("env"));
+        assertEquals("10.0.0.5", partial.getPrivateAddresses()[0].getIpAddress());
+        assertArrayEquals(new String[] { "sg-1" }, partial.getProviderFirewallIds());
+        assertEquals(0, partial.getLabels().length);
+        assertEquals(1, calls.get());
+        assertNull(partial.getDetailsCallback());
+    }
+
+    @Test
+    public void failedLoadsAreRetried() {
+        final AtomicInteger calls = new AtomicInteger(0);
+        Volume partial = new Volume();
+
+        partial.setProviderVolumeId("vol-1");
+        partial.setDetailsCallback(new Callable<Volume>() {
+            @Override
+            public Volume call() throws Exception {
+                if( calls.incrementAndGet() == 1 ) {
+                    throw new java.io.IOException("Connection reset");
+                }
+                Volume full = new Volume();
+
+                full.setProviderVolumeId("vol-1");
+                full.setTag("env", "prod");
+                return full;
+            }
+        });
+        // a failed load leaves the tags empty for this call but keeps the callback for the next
+        assertNull(partial.getTag("env"));
+        assertNotNull("The callback should survive a failed load", partial.getDetailsCallback());
+        assertEquals("prod", partial.getTag("env"));
+        assertEquals(2, calls.get());
+        assertNull(partial.getDetailsCallback());
+        assertEquals("prod", partial.getTag("env"));
+        assertEquals("A successful load should not be repeated", 2, calls.get());
+    }
+
+    @Test
+    public void deferredDetailsComeFromTheCloud() throws Exception {
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+        //noinspection ConstantConditions
+        AbstractVMSupport<?> support = (AbstractVMSupport<?>)provider.getComputeServices().getVirtualMachineSupport();
+        VirtualMachine full = sim.getRegion(ACCOUNT, REGION).virtualMachines.values().iterator().next();
+
+        full.setTag("role", "web");
+        VirtualMachine partial = new VirtualMachine();
+
+        partial.setProviderVirtualMachineId(full.getProviderVirtualMachineId());
+        partial.setCurrentState(full.getCurrentState());
+        assertSame(partial, support.deferDetails(partial));
+
+        long before = sim.getTotalCalls();
+
+        assertEquals("web", partial.getTags().get("role"));
+        assertEquals(1, sim.getTotalCalls() - before);
+
+        //noinspection ConstantConditions
+        AbstractVolumeSupport<?> volumes = (AbstractVolumeSupport<?>)provider.getComputeServices().getVolumeSupport();
+        Volume fullVolume = sim.getRegion(ACCOUNT, REGION).volumes.values().iterator().next();
+        Volume partialVolume = new Volume();
+
+        fullVolume.setTag("tier", "gold");
+        partialVolume.setProviderVolumeId(fullVolume.getProviderVolumeId());
+        volumes.deferDetails(partialVolume);
+        assertEquals("gold", partialVolume.getTag("tier"));
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.compute;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that searches answered by a {@link PublicImageIndex} match live searches of the public library.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class PublicImageIndexTestCase {
+    static private final String ENDPOINT = "sim://public-image-index";
+    static private final String REGION   = "sim-1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Cloud         cloud;
+    private CloudProvider live;
+    private CloudProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        cloud = Cloud.register("Simulator", "Public Image Index", ENDPOINT, SimulatedCloudProvider.class);
+
+        SimulatedCloud.reset(ENDPOINT);
+        PublicImageIndex.clear();
+        SimulatedCloud.getInstance(ENDPOINT).populatePublicImages(REGION, 3000);
+        provider = cloud.createContext("acct", REGION, new ProviderContext.Value<String>(PublicImageIndex.DIRECTORY_PROPERTY, folder.getRoot().getAbsolutePath())).connect();
+        live = cloud.createContext("acct", REGION).connect();
+    }
+
+    @After
+    public void tearDown() {
+        if( provider != null ) {
+            provider.close();
+        }
+        if( live != null ) {
+            live.close();
+        }
+        PublicImageIndex.clear();
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    static private List<String> ids(Iterable<MachineImage> images) {
+        List<String> ids = new ArrayList<String>();
+
+        for( MachineImage img : images ) {
+            ids.add(img.getProviderMachineImageId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void matchesLiveSearch() throws Exception {
+        //noinspection ConstantConditions
+        MachineImageSupport support = provider.getComputeServices().getImageSupport();
+        //noinspection ConstantConditions
+        MachineImageSupport liveSupport = live.getComputeServices().getImageSupport();
+        PublicImageIndex index = PublicImageIndex.getInstance(provider);
+        ImageFilterOptions[] queries = new ImageFilterOptions[] {
+                ImageFilterOptions.getInstance(),
+                ImageFilterOptions.getInstance(".*buntu.*"),
+                ImageFilterOptions.getInstance("public-image-12.*"),
+                ImageFilterOptions.getInstance(".*WINDOWS.*").withArchitecture(Architecture.I32),
+                ImageFilterOptions.getInstance(ImageClass.MACHINE).onPlatform(Platform.RHEL).withArchitecture(Architecture.I64),
+                ImageFilterOptions.getInstance(true).onPlatform(Platform.WINDOWS).withArchitecture(Architecture.I32),
+                ImageFilterOptions.getInstance().withAccountNumber("someone-else"),
+                ImageFilterOptions.getInstance().withTags(java.util.Collections.singletonMap("os", "rhel"))
+        };
+
+        assertNotNull("The index should be enabled by the custom property", index);
+        assertNull("The index should be disabled without the custom property", PublicImageIndex.getInstance(live));
+        //noinspection ConstantConditions
+        for( ImageFilterOptions options : queries ) {
+            List<String> expected = ids(liveSupport.searchPublicImages(options));
+
+            assertEquals("Mismatch for " + options, expected, ids(index.search(provider, options)));
+            assertEquals("Mismatch through the image support for " + options, expected, ids(support.searchPublicImages(options)));
+        }
+        assertEquals(3000, index.size());
+        assertTrue("The index file should have been written", index.getFile().length() > 0);
+    }
+
+    @Test
+    public void searchesWithoutCallingTheCloud() throws Exception {
+        //noinspection ConstantConditions
+        MachineImageSupport support = provider.getComputeServices().getImageSupport();
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        //noinspection ConstantConditions
+        int expected = ids(support.searchPublicImages(".*", Platform.UBUNTU, null, ImageClass.MACHINE)).size();
+        long calls = sim.getTotalCalls();
+
+        assertEquals(expected, ids(support.searchPublicImages(".*", Platform.UBUNTU, null, ImageClass.MACHINE)).size());
+        assertEquals(expected, ids(support.searchPublicImages(ImageFilterOptions.getInstance(ImageClass.MACHINE).onPlatform(Platform.UBUNTU))).size());
+        assertEquals("A fresh index should answer without going to the cloud", calls, sim.getTotalCalls());
+
+        // a new process would load the index from disk
+        PublicImageIndex.clear();
+        //noinspection ConstantConditions
+        assertEquals(expected, ids(PublicImageIndex.getInstance(provider).search(provider, ImageFilterOptions.getInstance(ImageClass.MACHINE).onPlatform(Platform.UBUNTU).matchingRegex(".*"))).size());
+        assertEquals("The index file should be reused", calls, sim.getTotalCalls());
+    }
+
+    @Test
+    public void refreshesWithItsOwnProvider() throws Exception {
+        CloudProvider caller = cloud.createContext("acct", REGION,
+                new ProviderContext.Value<String>(PublicImageIndex.DIRECTORY_PROPERTY, folder.getRoot().getAbsolutePath()),
+                new ProviderContext.Value<String>(PublicImageIndex.REFRESH_PROPERTY, "0")).connect();
+        PublicImageIndex index = PublicImageIndex.getInstance(caller);
+
+        assertNotNull(index);
+        //noinspection ConstantConditions
+        index.search(caller, ImageFilterOptions.getInstance());
+        long first = index.getLastRefresh();
+
+        Thread.sleep(5L);
+        // a stale index answers at once and refreshes in the background after the caller is done with its provider
+        //noinspection ConstantConditions
+        assertEquals(3000, ids(index.search(caller, ImageFilterOptions.getInstance())).size());
+        caller.close();
+        for( int i=0; i<200 && index.getLastRefresh() == first; i++ ) {
+            Thread.sleep(25L);
+        }
+        assertTrue("The index should have been refreshed", index.getLastRefresh() > first);
+        assertEquals(3000, index.size());
+    }
+
+    @Test
+    public void droppedIndexesReopenFromTheirFiles() throws Exception {
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+        PublicImageIndex index = PublicImageIndex.getInstance(provider);
+
+        //noinspection ConstantConditions
+        int expected = ids(index.search(provider, ImageFilterOptions.getInstance(".*buntu.*"))).size();
+        long calls = sim.getTotalCalls();
+
+        index.close();
+        assertEquals("A closed index should release its loaded version", 0, index.size());
+        PublicImageIndex reopened = PublicImageIndex.getInstance(provider);
+
+        assertNotSame("A closed index should be dropped from the open indexes", index, reopened);
+        //noinspection ConstantConditions
+        assertEquals(expected, ids(reopened.search(provider, ImageFilterOptions.getInstance(".*buntu.*"))).size());
+        assertEquals("The reopened index should be read from its file", calls, sim.getTotalCalls());
+
+        for( int i=0; i<PublicImageIndex.MAX_OPEN_INDEXES; i++ ) {
+            CloudProvider other = cloud.createContext("acct", REGION, new ProviderContext.Value<String>(PublicImageIndex.DIRECTORY_PROPERTY, folder.newFolder("other-" + i).getAbsolutePath())).connect();
+
+            try {
+                assertNotNull(PublicImageIndex.getInstance(other));
+            }
+            finally {
+                other.close();
+            }
+        }
+        assertNotSame("The least recently used index should have been dropped", reopened, PublicImageIndex.getInstance(provider));
+    }
+}
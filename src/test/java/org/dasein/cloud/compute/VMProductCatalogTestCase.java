@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.compute;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test cases for the pre-indexed vmproducts.json catalog using the default products packaged with dasein-cloud-core.
+ * @version 2015.09 initial version
+ */
+public class VMProductCatalogTestCase {
+    static private final String STD = "/org/dasein/cloud/std/vmproducts.json";
+
+    @Test
+    public void verifyCatalogIsSharedPerResource() throws Exception {
+        VMProductCatalog c1 = VMProductCatalog.getInstance(STD);
+        VMProductCatalog c2 = VMProductCatalog.getInstance(STD);
+
+        assertNotNull("The standard catalog should be found", c1);
+        assertSame("The catalog should only be parsed once per resource", c1, c2);
+    }
+
+    @Test
+    public void verifyMissingResource() throws Exception {
+        assertNull("A missing resource should yield no catalog", VMProductCatalog.getInstance("/org/dasein/cloud/nosuchcloud/vmproducts.json"));
+    }
+
+    @Test
+    public void verifyArchitectureIndex() throws Exception {
+        VMProductCatalog catalog = VMProductCatalog.getInstance(STD);
+
+        assertNotNull(catalog);
+        List<VirtualMachineProduct> all = catalog.listProducts("Unknown", "Unknown", null, null, null);
+        List<VirtualMachineProduct> i32 = catalog.listProducts("Unknown", "Unknown", Architecture.I32, null, null);
+        List<VirtualMachineProduct> i64 = catalog.listProducts("Unknown", "Unknown", Architecture.I64, null, null);
+
+        assertFalse("The default product set should have been used", all.isEmpty());
+        assertTrue("There should be fewer 32-bit products than total products", i32.size() < all.size());
+        assertTrue("There should be no more 64-bit products than total products", i64.size() <= all.size());
+        for( VirtualMachineProduct p : i32 ) {
+            assertTrue("32-bit products should also be in the full list", all.contains(p));
+        }
+    }
+
+    @Test
+    public void verifyFilterOptions() throws Exception {
+        VMProductCatalog catalog = VMProductCatalog.getInstance(STD);
+
+        assertNotNull(catalog);
+        List<VirtualMachineProduct> single = catalog.listProducts("Unknown", "Unknown", null, null, VirtualMachineProductFilterOptions.getInstance().withCpuCount(1));
+
+        for( VirtualMachineProduct p : single ) {
+            assertEquals("Only single CPU products should match", 1, p.getCpuCount());
+        }
+    }
+
+    @Test
+    public void verifyListingsAreCopies() throws Exception {
+        VMProductCatalog catalog = VMProductCatalog.getInstance(STD);
+
+        assertNotNull(catalog);
+        List<VirtualMachineProduct> first = catalog.listProducts("Unknown", "Unknown", null, null, null);
+
+        assertFalse("The catalog should have products", first.isEmpty());
+
+        String name = first.get(0).getName();
+
+        first.get(0).setName("changed by a caller");
+
+        List<VirtualMachineProduct> second = catalog.listProducts("Unknown", "Unknown", null, null, null);
+
+        assertNotSame("Each listing should return its own instances", first.get(0), second.get(0));
+        assertEquals("One caller's changes should not be seen by others", name, second.get(0).getName());
+    }
+}
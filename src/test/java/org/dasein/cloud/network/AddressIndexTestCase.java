@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.network;
+
+import org.dasein.cloud.compute.VirtualMachine;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests lookups in an {@link AddressIndex}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class AddressIndexTestCase {
+    @Test
+    public void findsCoveringBlocks() {
+        AddressIndex<String> index = new AddressIndex<String>();
+
+        for( String cidr : new String[] { "0.0.0.0/0", "10.0.0.0/8", "10.1.0.0/16", "10.1.2.0/24", "10.2.0.0/16", "192.168.0.0/16", "2001:db8::/32" } ) {
+            assertTrue(index.add(cidr, cidr));
+        }
+        assertFalse("Invalid strings are not indexed", index.add("sg-1", "sg-1"));
+        assertEquals(7, index.size());
+        assertEquals(Arrays.asList("0.0.0.0/0", "10.0.0.0/8", "10.1.0.0/16", "10.1.2.0/24"), index.getCovering("10.1.2.3"));
+        assertEquals(Arrays.asList("0.0.0.0/0", "10.0.0.0/8"), index.getCovering("10.3.0.1"));
+        assertEquals(Arrays.asList("0.0.0.0/0", "10.0.0.0/8", "10.1.0.0/16"), index.getCovering("10.1.0.0/16"));
+        assertEquals(Arrays.asList("10.1.2.0/24"), index.getLongestMatch(CidrBlock.parse("10.1.2.200")));
+        assertEquals(Arrays.asList("2001:db8::/32"), index.getCovering("2001:db8::5"));
+        assertTrue(index.getCovering("2001:db9::5").isEmpty());
+
+        List<String> covered = index.getCovered("10.0.0.0/8");
+
+        assertEquals(4, covered.size());
+        assertTrue(covered.containsAll(Arrays.asList("10.0.0.0/8", "10.1.0.0/16", "10.1.2.0/24", "10.2.0.0/16")));
+
+        assertTrue(index.remove(CidrBlock.parse("10.1.0.0/16"), "10.1.0.0/16"));
+        assertFalse(index.remove(CidrBlock.parse("10.1.0.0/16"), "10.1.0.0/16"));
+        assertEquals(Arrays.asList("0.0.0.0/0", "10.0.0.0/8", "10.1.2.0/24"), index.getCovering("10.1.2.3"));
+        assertEquals(6, index.size());
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        java.util.Random random = new java.util.Random(42L);
+        AddressIndex<CidrBlock> index = new AddressIndex<CidrBlock>();
+        List<CidrBlock> blocks = new ArrayList<CidrBlock>();
+
+        for( int i=0; i<2000; i++ ) {
+            int prefix = 4 + random.nextInt(29);
+            CidrBlock block = CidrBlock.getInstance(IPVersion.IPV4, ((long)(random.nextInt() & 0x0FFFFFFF)) << 32, 0L, prefix);
+
+            blocks.add(block);
+            index.add(block, block);
+        }
+        for( int i=0; i<500; i++ ) {
+            CidrBlock address = CidrBlock.getInstance(IPVersion.IPV4, ((long)(random.nextInt() & 0x0FFFFFFF)) << 32, 0L, 32);
+            List<CidrBlock> expected = new ArrayList<CidrBlock>();
+
+            for( CidrBlock block : blocks ) {
+                if( block.contains(address) ) {
+                    expected.add(block);
+                }
+            }
+            List<CidrBlock> actual = index.getCovering(address);
+
+            assertEquals("Mismatch for " + address, expected.size(), actual.size());
+            assertTrue(actual.containsAll(expected));
+        }
+    }
+
+    @Test
+    public void indexesModelObjects() {
+        Subnet subnet = Subnet.getInstance("me", "region", "vlan", "subnet-1", SubnetState.AVAILABLE, "sub", "sub", "10.0.1.0/24");
+        FirewallRule rule = FirewallRule.getInstance(null, "fw", "10.0.0.0/16", Protocol.TCP, 22);
+        FirewallRule byGroup = FirewallRule.getInstance(null, "fw", "sg-other", Protocol.TCP, 22);
+        VirtualMachine vm = new VirtualMachine();
+
+        vm.setProviderVirtualMachineId("vm-1");
+        vm.setPrivateAddresses(new RawAddress("10.0.1.7"));
+        vm.setPublicAddresses(new RawAddress("203.0.113.9"));
+
+        assertEquals(Arrays.asList(subnet), AddressIndex.forSubnets(Arrays.asList(subnet)).getCovering("10.0.1.7"));
+        assertEquals(Arrays.asList(rule), AddressIndex.forFirewallRules(Arrays.asList(rule, byGroup)).getCovering("10.0.1.7"));
+        assertEquals(Arrays.asList(vm), AddressIndex.forVirtualMachines(Arrays.asList(vm)).getCovered(subnet.getCidrBlock()));
+        assertEquals(RuleTargetType.GLOBAL, byGroup.getSourceEndpoint().getRuleTargetType());
+    }
+}
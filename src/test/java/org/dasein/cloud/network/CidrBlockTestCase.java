@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests parsing, formatting and containment of {@link CidrBlock}s and their use by {@link RawAddress}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class CidrBlockTestCase {
+    @Test
+    public void parsesIPv4() {
+        CidrBlock block = CidrBlock.parse("10.1.2.3/16");
+
+        assertNotNull("Valid block did not parse", block);
+        assertEquals(IPVersion.IPV4, block.getVersion());
+        assertEquals(16, block.getPrefixLength());
+        assertEquals("Host bits should be cleared", "10.1.0.0/16", block.toString());
+        assertTrue("A bare address should be a /32", CidrBlock.parse("192.0.2.1").isAddress());
+        assertEquals("0.0.0.0/0", CidrBlock.parse("0.0.0.0/0").toString());
+    }
+
+    @Test
+    public void parsesIPv6() {
+        assertEquals("2001:db8::1/128", CidrBlock.parse("2001:0DB8:0:0:0:0:0:1").toString());
+        assertEquals("::/0", CidrBlock.parse("::/0").toString());
+        assertEquals("::1/128", CidrBlock.parse("::1").toString());
+        assertEquals("fe80::/10", CidrBlock.parse("fe80::1%eth0/10").toString());
+        assertEquals("::ffff:c000:201/128", CidrBlock.parse("::ffff:192.0.2.1").toString());
+        assertEquals("2001:db8:0:1::/64", CidrBlock.parse("2001:db8:0:1:ffff::/64").toString());
+        assertEquals("1:0:0:2::3/128", CidrBlock.parse("1:0:0:2:0:0:0:3").toString());
+    }
+
+    @Test
+    public void rejectsInvalidStrings() {
+        String[] invalid = { "", "sg-12345", "10.0.0", "10.0.0.256", "10.0.0.0/33", "1.2.3.4.5", "10..0.1", "1::2::3",
+                "1:2:3:4:5:6:7:8:9", "12345::", "1:2:3:4:5:6:7", ":1::", "1::/129", "10.0.0.0/" };
+
+        for( String str : invalid ) {
+            assertNull("Should not have parsed: " + str, CidrBlock.parse(str));
+        }
+    }
+
+    @Test
+    public void containment() {
+        CidrBlock wide = CidrBlock.parse("10.0.0.0/8");
+
+        assertTrue(wide.contains("10.200.3.4"));
+        assertTrue(wide.contains("10.16.0.0/12"));
+        assertFalse(wide.contains("11.0.0.1"));
+        assertFalse("A wider block is not contained", wide.contains("0.0.0.0/0"));
+        assertFalse("Versions never contain each other", CidrBlock.parse("::/0").contains("10.0.0.1"));
+        assertTrue(CidrBlock.parse("2001:db8::/32").contains("2001:db8:ffff::1"));
+        assertEquals(CidrBlock.parse("10.1.0.0/16"), CidrBlock.parse("10.1.9.9/16"));
+    }
+
+    @Test
+    public void rawAddressesUseBinaryForm() {
+        assertEquals(IPVersion.IPV4, new RawAddress("192.0.2.1").getVersion());
+        assertEquals(IPVersion.IPV6, new RawAddress("2001:db8::1").getVersion());
+        assertFalse(new RawAddress("172.20.1.1").isPublicIpAddress());
+        assertTrue(new RawAddress("172.32.1.1").isPublicIpAddress());
+        assertFalse(new RawAddress("192.168.0.10").isPublicIpAddress());
+        assertFalse(new RawAddress("fd12:3456::1").isPublicIpAddress());
+        assertFalse("Link-local addresses are not public", new RawAddress("fe80::1").isPublicIpAddress());
+        assertFalse(new RawAddress("169.254.1.1").isPublicIpAddress());
+        assertTrue(new RawAddress("2001:db8::1").isPublicIpAddress());
+        assertNull("Host names have no binary form", new RawAddress("host.example.com").getCidrBlock());
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.network;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests rule lookup and desired-state diffs in {@link FirewallRuleIndex} and rule sync by {@link AbstractFirewallSupport}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class FirewallRuleIndexTestCase {
+    static private final String ENDPOINT = "sim://firewall-sync";
+
+    private CloudProvider provider;
+
+    @After
+    public void tearDown() {
+        if( provider != null ) {
+            provider.close();
+        }
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    static private FirewallRuleCreateOptions ingress(String cidr, int port) {
+        return FirewallRuleCreateOptions.getInstance(Direction.INGRESS, Permission.ALLOW, RuleTarget.getCIDR(cidr), Protocol.TCP, null, port, port);
+    }
+
+    static private FirewallRule rule(String id, String cidr, int port) {
+        return FirewallRule.getInstance(id, "sg-1", RuleTarget.getCIDR(cidr), Direction.INGRESS, Protocol.TCP, Permission.ALLOW, RuleTarget.getGlobal("sg-1"), port, port);
+    }
+
+    @Test
+    public void findsRulesByTuple() {
+        FirewallRule ssh = rule("r1", "10.0.0.0/8", 22);
+        FirewallRuleIndex index = FirewallRuleIndex.getInstance(Arrays.asList(ssh, rule("r2", "10.0.0.0/8", 80)));
+
+        assertEquals(ssh, index.find(Direction.INGRESS, Permission.ALLOW, RuleTarget.getCIDR("10.0.0.0/8"), Protocol.TCP, RuleTarget.getGlobal("sg-1"), 22, 22));
+        assertEquals("CIDRs should match in canonical form", ssh, index.find(Direction.INGRESS, Permission.ALLOW, RuleTarget.getCIDR("10.1.2.3/8"), Protocol.TCP, RuleTarget.getGlobal("sg-1"), 22, 22));
+        assertNull(index.find(Direction.INGRESS, Permission.DENY, RuleTarget.getCIDR("10.0.0.0/8"), Protocol.TCP, RuleTarget.getGlobal("sg-1"), 22, 22));
+        assertNull(index.find(Direction.INGRESS, Permission.ALLOW, RuleTarget.getCIDR("10.0.0.0/8"), Protocol.TCP, RuleTarget.getGlobal("sg-2"), 22, 22));
+        assertTrue(index.remove(ssh));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void computesMinimalDelta() {
+        FirewallRule keep = rule("r1", "10.0.0.0/8", 22);
+        FirewallRule duplicate = rule("r2", "10.0.0.0/8", 22);
+        FirewallRule stale = rule("r3", "0.0.0.0/0", 23);
+        FirewallRuleIndex index = FirewallRuleIndex.getInstance(Arrays.asList(keep, duplicate, stale));
+        FirewallRuleCreateOptions https = ingress("0.0.0.0/0", 443);
+
+        FirewallRuleDelta delta = index.diff("sg-1", Arrays.asList(ingress("10.0.0.0/8", 22), https, ingress("0.0.0.0/0", 443)));
+
+        assertEquals(Arrays.asList(https), delta.getRulesToAuthorize());
+        assertEquals(2, delta.getRulesToRevoke().size());
+        assertTrue(delta.getRulesToRevoke().contains(stale));
+        assertFalse("One copy of a desired rule must be kept", delta.getRulesToRevoke().containsAll(Arrays.asList(keep, duplicate)));
+        assertTrue(index.diff("sg-1", Arrays.asList(ingress("10.0.0.0/8", 22), ingress("0.0.0.0/0", 23))).getRulesToRevoke().size() == 1);
+    }
+
+    @Test
+    public void syncsRulesWithOneFetch() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Firewall Sync", ENDPOINT, SimulatedCloudProvider.class);
+
+        SimulatedCloud.reset(ENDPOINT);
+        provider = cloud.createContext("acct", "sim-1").connect();
+
+        //noinspection ConstantConditions
+        FirewallSupport support = provider.getNetworkServices().getFirewallSupport();
+        //noinspection ConstantConditions
+        String fwId = support.create(FirewallCreateOptions.getInstance("web", "web"));
+
+        support.authorize(fwId, ingress("0.0.0.0/0", 80));
+        support.authorize(fwId, ingress("0.0.0.0/0", 23));
+
+        List<FirewallRuleCreateOptions> desired = new ArrayList<FirewallRuleCreateOptions>();
+
+        desired.add(ingress("0.0.0.0/0", 80));
+        desired.add(ingress("0.0.0.0/0", 443));
+        desired.add(ingress("10.0.0.0/8", 22));
+
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+        long before = sim.getTotalCalls();
+        FirewallRuleDelta delta = support.syncRules(fwId, desired);
+
+        assertEquals(2, delta.getRulesToAuthorize().size());
+        assertEquals(1, delta.getRulesToRevoke().size());
+        assertEquals("Expected one fetch, two authorizations and one revocation", 4L, sim.getTotalCalls() - before);
+        assertTrue("The firewall should now match the desired state", support.syncRules(fwId, desired).isEmpty());
+    }
+}
@@ -0,0 +1,305 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.storage.AbstractBlobStoreSupport;
+import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.storage.BlobStoreCapabilities;
+import org.dasein.cloud.storage.FileTransfer;
+import org.dasein.util.uom.storage.Byte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Object storage for the simulated cloud. Object content lives in memory, so keep objects small.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedBlobStoreSupport extends AbstractBlobStoreSupport<SimulatedCloudProvider> {
+    static private final String ROOT = "";
+
+    public SimulatedBlobStoreSupport(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    private void call(@Nonnull String operation) throws CloudException {
+        getProvider().getSimulatedCloud().call(getProvider(), operation);
+    }
+
+    private @Nonnull SimulatedCloud.RegionState getState() throws InternalException {
+        return getProvider().getSimulatedCloud().getRegion(getContext());
+    }
+
+    private @Nonnull ConcurrentMap<String,byte[]> getObjects(@Nullable String bucket) throws CloudException, InternalException {
+        if( bucket == null ) {
+            bucket = ROOT;
+        }
+        ConcurrentMap<String,byte[]> objects = getState().objects.get(bucket);
+
+        if( objects == null ) {
+            if( !bucket.equals(ROOT) ) {
+                throw new CloudException("No such bucket: " + bucket);
+            }
+            getState().objects.putIfAbsent(ROOT, new ConcurrentHashMap<String, byte[]>());
+            objects = getState().objects.get(ROOT);
+        }
+        return objects;
+    }
+
+    private @Nonnull byte[] getRequiredContent(@Nullable String bucket, @Nonnull String object) throws CloudException, InternalException {
+        byte[] content = getObjects(bucket).get(object);
+
+        if( content == null ) {
+            throw new CloudException("No such object: " + bucket + "/" + object);
+        }
+        return content;
+    }
+
+    private @Nonnull Blob toBlob(@Nullable String bucket, @Nonnull String object, @Nonnull byte[] content) throws InternalException {
+        //noinspection ConstantConditions
+        return Blob.getInstance(getContext().getRegionId(), "sim://" + bucket + "/" + object, bucket, object, System.currentTimeMillis(), new Storage<Byte>(content.length, Storage.BYTE));
+    }
+
+    @Override
+    public @Nonnull Blob createBucket(@Nonnull String bucket, boolean findFreeName) throws InternalException, CloudException {
+        call("CreateBucket");
+        String name = bucket;
+        int i = 1;
+
+        while( getState().objects.putIfAbsent(name, new ConcurrentHashMap<String, byte[]>()) != null ) {
+            if( !findFreeName ) {
+                throw new CloudException("Bucket already exists: " + bucket);
+            }
+            name = bucket + "-" + (i++);
+        }
+        //noinspection ConstantConditions
+        Blob blob = Blob.getInstance(getContext().getRegionId(), "sim://" + name, name, System.currentTimeMillis());
+
+        getState().buckets.put(name, blob);
+        return blob;
+    }
+
+    @Override
+    public boolean exists(@Nonnull String bucket) throws InternalException, CloudException {
+        call("HeadBucket");
+        return getState().buckets.containsKey(bucket);
+    }
+
+    @Override
+    protected void get(@Nullable String bucket, @Nonnull String object, @Nonnull File toFile, @Nullable FileTransfer transfer) throws InternalException, CloudException {
+        call("GetObject");
+        byte[] content = getRequiredContent(bucket, object);
+
+        try {
+            OutputStream out = new FileOutputStream(toFile);
+
+            try {
+                out.write(content);
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    @Override
+    public @Nullable Blob getBucket(@Nonnull String bucketName) throws InternalException, CloudException {
+        call("HeadBucket");
+        return getState().buckets.get(bucketName);
+    }
+
+    @Override
+    public @Nonnull BlobStoreCapabilities getCapabilities() throws CloudException, InternalException {
+        return SimulatedCapabilities.getInstance(getProvider(), BlobStoreCapabilities.class);
+    }
+
+    @Override
+    public @Nullable Blob getObject(@Nullable String bucketName, @Nonnull String objectName) throws InternalException, CloudException {
+        call("HeadObject");
+        byte[] content = getObjects(bucketName).get(objectName);
+
+        return (content == null ? null : toBlob(bucketName, objectName, content));
+    }
+
+    @Override
+    public @Nullable Storage<Byte> getObjectSize(@Nullable String bucketName, @Nullable String objectName) throws InternalException, CloudException {
+        if( objectName == null ) {
+            return null;
+        }
+        Blob blob = getObject(bucketName, objectName);
+
+        return (blob == null ? null : blob.getSize());
+    }
+
+    @Override
+    public @Nullable String getSignedObjectUrl(@Nonnull String bucket, @Nonnull String object, @Nonnull String expiresEpochInSeconds) throws InternalException, CloudException {
+        return "sim://" + bucket + "/" + object + "?expires=" + expiresEpochInSeconds;
+    }
+
+    @Override
+    public boolean isPublic(@Nullable String bucket, @Nullable String object) throws CloudException, InternalException {
+        return false;
+    }
+
+    @Override
+    public boolean isSubscribed() throws CloudException, InternalException {
+        return true;
+    }
+
+    @Override
+    public @Nonnull Iterable<Blob> list(@Nullable String bucket) throws CloudException, InternalException {
+        call("ListObjects");
+        List<Blob> blobs = new ArrayList<Blob>();
+
+        if( bucket == null ) {
+            blobs.addAll(getState().buckets.values());
+        }
+        for( Map.Entry<String,byte[]> entry : getObjects(bucket).entrySet() ) {
+            blobs.add(toBlob(bucket, entry.getKey(), entry.getValue()));
+        }
+        return blobs;
+    }
+
+    @Override
+    public void makePublic(@Nonnull String bucket) throws InternalException, CloudException {
+        call("PutBucketAcl");
+    }
+
+    @Override
+    public void makePublic(@Nullable String bucket, @Nonnull String object) throws InternalException, CloudException {
+        call("PutObjectAcl");
+    }
+
+    @Override
+    public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
+        return new String[0];
+    }
+
+    @Override
+    public void move(@Nullable String fromBucket, @Nullable String objectName, @Nullable String toBucket) throws InternalException, CloudException {
+        if( objectName == null ) {
+            throw new CloudException("No object was specified");
+        }
+        call("CopyObject");
+        byte[] content = getRequiredContent(fromBucket, objectName);
+
+        getObjects(toBucket).put(objectName, content);
+        getObjects(fromBucket).remove(objectName);
+    }
+
+    @Override
+    protected void put(@Nullable String bucket, @Nonnull String objectName, @Nonnull File file) throws InternalException, CloudException {
+        call("PutObject");
+        try {
+            InputStream in = new FileInputStream(file);
+
+            try {
+                byte[] content = new byte[(int)file.length()];
+                int offset = 0;
+
+                while( offset < content.length ) {
+                    int count = in.read(content, offset, content.length - offset);
+
+                    if( count < 0 ) {
+                        break;
+                    }
+                    offset += count;
+                }
+                getObjects(bucket).put(objectName, content);
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch( IOException e ) {
+            throw new InternalException(e);
+        }
+    }
+
+    @Override
+    protected void put(@Nullable String bucketName, @Nonnull String objectName, @Nonnull String content) throws InternalException, CloudException {
+        call("PutObject");
+        getObjects(bucketName).put(objectName, content.getBytes(Charset.forName("utf-8")));
+    }
+
+    @Override
+    public void removeBucket(@Nonnull String bucket) throws CloudException, InternalException {
+        call("DeleteBucket");
+        if( !getObjects(bucket).isEmpty() ) {
+            throw new CloudException("Bucket is not empty: " + bucket);
+        }
+        getState().objects.remove(bucket);
+        getState().buckets.remove(bucket);
+    }
+
+    @Override
+    public void removeObject(@Nullable String bucket, @Nonnull String object) throws CloudException, InternalException {
+        call("DeleteObject");
+        getObjects(bucket).remove(object);
+    }
+
+    @Override
+    public @Nonnull String renameBucket(@Nonnull String oldName, @Nonnull String newName, boolean findFreeName) throws CloudException, InternalException {
+        Blob bucket = createBucket(newName, findFreeName);
+        String name = bucket.getBucketName();
+
+        //noinspection ConstantConditions
+        getObjects(name).putAll(getObjects(oldName));
+        getObjects(oldName).clear();
+        removeBucket(oldName);
+        return name;
+    }
+
+    @Override
+    public void renameObject(@Nullable String bucket, @Nonnull String oldName, @Nonnull String newName) throws CloudException, InternalException {
+        call("CopyObject");
+        ConcurrentMap<String,byte[]> objects = getObjects(bucket);
+        byte[] content = getRequiredContent(bucket, oldName);
+
+        objects.put(newName, content);
+        objects.remove(oldName);
+    }
+
+    @Override
+    public @Nonnull Blob upload(@Nonnull File sourceFile, @Nullable String bucket, @Nonnull String objectName) throws CloudException, InternalException {
+        put(bucket, objectName, sourceFile);
+        return toBlob(bucket, objectName, getRequiredContent(bucket, objectName));
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.Capabilities;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.Requirement;
+import org.dasein.cloud.util.NamingConstraints;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Builds capabilities objects for the simulated services. The capabilities interfaces are large and a simulated cloud
+ * supports nearly everything, so rather than implementing each interface by hand, the simulator answers capabilities
+ * queries through a dynamic proxy that derives a permissive answer from the return type of each method.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedCapabilities implements InvocationHandler {
+    static public @Nonnull <T extends Capabilities> T getInstance(@Nonnull SimulatedCloudProvider provider, @Nonnull Class<T> type) {
+        //noinspection unchecked
+        return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new SimulatedCapabilities(provider, type));
+    }
+
+    private SimulatedCloudProvider provider;
+    private Class<?>               type;
+
+    private SimulatedCapabilities(@Nonnull SimulatedCloudProvider provider, @Nonnull Class<?> type) {
+        this.provider = provider;
+        this.type = type;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        Class<?> rt = method.getReturnType();
+
+        if( name.equals("equals") && args != null && args.length == 1 ) {
+            return (proxy == args[0]);
+        }
+        else if( name.equals("hashCode") && (args == null || args.length == 0) ) {
+            return System.identityHashCode(proxy);
+        }
+        else if( name.equals("toString") && (args == null || args.length == 0) ) {
+            return "Simulated " + type.getSimpleName();
+        }
+        else if( name.equals("getAccountNumber") ) {
+            ProviderContext ctx = provider.getContext();
+
+            return (ctx == null ? "" : ctx.getAccountNumber());
+        }
+        else if( name.equals("getRegionId") ) {
+            ProviderContext ctx = provider.getContext();
+
+            return (ctx == null ? "" : ctx.getRegionId());
+        }
+        else if( name.startsWith("getProviderTermFor") ) {
+            return name.substring("getProviderTermFor".length()).toLowerCase();
+        }
+        else if( rt.equals(Boolean.TYPE) || rt.equals(Boolean.class) ) {
+            return (name.startsWith("supports") || name.startsWith("allows") || name.startsWith("can"));
+        }
+        else if( rt.equals(Integer.TYPE) || rt.equals(Integer.class) ) {
+            return Capabilities.LIMIT_UNLIMITED;
+        }
+        else if( rt.equals(Long.TYPE) || rt.equals(Long.class) ) {
+            return (long)Capabilities.LIMIT_UNLIMITED;
+        }
+        else if( rt.equals(Float.TYPE) || rt.equals(Float.class) ) {
+            return 0.0f;
+        }
+        else if( rt.equals(Double.TYPE) || rt.equals(Double.class) ) {
+            return 0.0;
+        }
+        else if( rt.equals(Requirement.class) ) {
+            return Requirement.OPTIONAL;
+        }
+        else if( rt.equals(NamingConstraints.class) ) {
+            return NamingConstraints.getAlphaNumeric(1, 255);
+        }
+        else if( rt.equals(Storage.class) ) {
+            return new Storage<Gigabyte>(name.contains("Min") ? 1 : 1024, Storage.GIGABYTE);
+        }
+        else if( rt.isEnum() ) {
+            Object[] values = rt.getEnumConstants();
+
+            return (values.length > 0 ? values[0] : null);
+        }
+        else if( Iterable.class.isAssignableFrom(rt) ) {
+            Type t = method.getGenericReturnType();
+
+            if( t instanceof ParameterizedType ) {
+                Type[] params = ((ParameterizedType)t).getActualTypeArguments();
+
+                if( params.length == 1 && params[0] instanceof Class && ((Class<?>)params[0]).isEnum() ) {
+                    return Arrays.asList(((Class<?>)params[0]).getEnumConstants());
+                }
+            }
+            return Collections.emptyList();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,558 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.ImageClass;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.MachineImageState;
+import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotState;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeState;
+import org.dasein.cloud.compute.VolumeType;
+import org.dasein.cloud.network.Direction;
+import org.dasein.cloud.network.DNSRecord;
+import org.dasein.cloud.network.DNSZone;
+import org.dasein.cloud.network.Firewall;
+import org.dasein.cloud.network.FirewallRule;
+import org.dasein.cloud.network.Permission;
+import org.dasein.cloud.network.Protocol;
+import org.dasein.cloud.network.RawAddress;
+import org.dasein.cloud.network.RuleTarget;
+import org.dasein.cloud.network.Subnet;
+import org.dasein.cloud.network.SubnetState;
+import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.network.VLANState;
+import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.util.APITrace;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The in-memory state behind a {@link SimulatedCloudProvider}. A simulated cloud is shared by every provider connected
+ * to the same endpoint so that multiple contexts (accounts and regions) see a consistent view of the world. Resources
+ * are kept per account and region in concurrent maps, and every API call made by the simulated services passes through
+ * {@link #call(CloudProvider, String)} where the latency, error and throttling behaviour described by the current
+ * {@link SimulationSettings} is injected.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedCloud {
+    static public final String PUBLIC_OWNER = "simulator";
+
+    static private final String[] PRODUCTS = { "t1.micro", "m1.small", "m1.medium", "m1.large", "m1.xlarge" };
+
+    static private final ConcurrentMap<String,SimulatedCloud> clouds = new ConcurrentHashMap<String, SimulatedCloud>();
+
+    /**
+     * Provides the simulated cloud behind the specified endpoint, creating an empty one if none exists yet.
+     * @param endpoint the endpoint of the simulated cloud
+     * @return the simulated cloud for the endpoint
+     */
+    static public @Nonnull SimulatedCloud getInstance(@Nonnull String endpoint) {
+        SimulatedCloud cloud = clouds.get(endpoint);
+
+        if( cloud == null ) {
+            SimulatedCloud c = new SimulatedCloud();
+
+            cloud = clouds.putIfAbsent(endpoint, c);
+            if( cloud == null ) {
+                cloud = c;
+            }
+        }
+        return cloud;
+    }
+
+    /**
+     * Throws away all state for the simulated cloud behind the specified endpoint.
+     * @param endpoint the endpoint of the simulated cloud
+     */
+    static public void reset(@Nonnull String endpoint) {
+        clouds.remove(endpoint);
+    }
+
+    /**
+     * The resources belonging to a single account in a single region.
+     */
+    static public class RegionState {
+        public final ConcurrentMap<String,Blob>                                  buckets         = new ConcurrentHashMap<String, Blob>();
+        public final ConcurrentMap<String,Firewall>                              firewalls       = new ConcurrentHashMap<String, Firewall>();
+        public final ConcurrentMap<String,ConcurrentMap<String,FirewallRule>>    firewallRules   = new ConcurrentHashMap<String, ConcurrentMap<String, FirewallRule>>();
+        public final ConcurrentMap<String,MachineImage>                          images          = new ConcurrentHashMap<String, MachineImage>();
+        public final ConcurrentMap<String,ConcurrentMap<String,byte[]>>          objects         = new ConcurrentHashMap<String, ConcurrentMap<String, byte[]>>();
+        public final ConcurrentMap<String,Snapshot>                              snapshots       = new ConcurrentHashMap<String, Snapshot>();
+        public final ConcurrentMap<String,Subnet>                                subnets         = new ConcurrentHashMap<String, Subnet>();
+        public final ConcurrentMap<String,VirtualMachine>                        virtualMachines = new ConcurrentHashMap<String, VirtualMachine>();
+        public final ConcurrentMap<String,VLAN>                                  vlans           = new ConcurrentHashMap<String, VLAN>();
+        public final ConcurrentMap<String,Volume>                                volumes         = new ConcurrentHashMap<String, Volume>();
+
+        private final ConcurrentMap<String,AtomicLong> ids = new ConcurrentHashMap<String, AtomicLong>();
+
+        /**
+         * Generates a new resource ID, unique within this account and region. Each region and resource type counts on
+         * its own, so the IDs a test sees do not depend on what other tests sharing the simulated cloud have created.
+         * @param prefix the resource type prefix for the ID (e.g. "i" for virtual machines)
+         * @return a unique resource ID
+         */
+        public @Nonnull String nextId(@Nonnull String prefix) {
+            AtomicLong counter = ids.get(prefix);
+
+            if( counter == null ) {
+                AtomicLong c = new AtomicLong(0L);
+
+                counter = ids.putIfAbsent(prefix, c);
+                if( counter == null ) {
+                    counter = c;
+                }
+            }
+            return prefix + "-" + Long.toHexString(counter.incrementAndGet());
+        }
+
+        public @Nonnull ConcurrentMap<String,FirewallRule> getRules(@Nonnull String firewallId) {
+            ConcurrentMap<String,FirewallRule> rules = firewallRules.get(firewallId);
+
+            if( rules == null ) {
+                ConcurrentMap<String,FirewallRule> r = new ConcurrentHashMap<String, FirewallRule>();
+
+                rules = firewallRules.putIfAbsent(firewallId, r);
+                if( rules == null ) {
+                    rules = r;
+                }
+            }
+            return rules;
+        }
+    }
+
+    /**
+     * The resources belonging to an account independent of region.
+     */
+    static public class AccountState {
+        public final ConcurrentMap<String,List<DNSRecord>> dnsRecords = new ConcurrentHashMap<String, List<DNSRecord>>();
+        public final ConcurrentMap<String,DNSZone>         dnsZones   = new ConcurrentHashMap<String, DNSZone>();
+    }
+
+    private final ConcurrentMap<String,AccountState>                       accounts       = new ConcurrentHashMap<String, AccountState>();
+    private final AtomicLong                                               failedCalls    = new AtomicLong(0L);
+    private final AtomicLong                                               ids            = new AtomicLong(0L);
+    private final ConcurrentMap<String,ConcurrentMap<String,MachineImage>> publicImages   = new ConcurrentHashMap<String, ConcurrentMap<String, MachineImage>>();
+    private final Random                                                   random;
+    private final ConcurrentMap<String,RegionState>                        regions        = new ConcurrentHashMap<String, RegionState>();
+    private final ConcurrentMap<String,Boolean>                            regionIds      = new ConcurrentHashMap<String, Boolean>();
+    private volatile SimulationSettings                                    settings;
+    private final AtomicLong                                               throttledCalls = new AtomicLong(0L);
+    private final AtomicLong                                               totalCalls     = new AtomicLong(0L);
+    private final AtomicInteger                                            windowCalls    = new AtomicInteger(0);
+    private final AtomicLong                                               windowStart    = new AtomicLong(0L);
+
+    private SimulatedCloud() {
+        settings = SimulationSettings.getInstance();
+        random = new Random(settings.getSeed());
+    }
+
+    /**
+     * Simulates a single API call against this cloud. The call is recorded with {@link APITrace}, delayed by the
+     * configured latency and then possibly rejected as throttled or failed.
+     * @param provider the provider making the call
+     * @param operation the name of the API operation being simulated
+     * @throws CloudException the simulated cloud rejected the call
+     */
+    public void call(@Nonnull CloudProvider provider, @Nonnull String operation) throws CloudException {
+        SimulationSettings s = settings;
+
+        APITrace.trace(provider, operation);
+        totalCalls.incrementAndGet();
+        long latency = s.getLatencyInMillis(operation);
+
+        if( s.getLatencyJitterInMillis() > 0L ) {
+            latency += (long)(random.nextDouble() * s.getLatencyJitterInMillis());
+        }
+        if( latency > 0L ) {
+            try {
+                Thread.sleep(latency);
+            }
+            catch( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new CloudException(CloudErrorType.COMMUNICATION, 0, null, "Interrupted while calling " + operation, e);
+            }
+        }
+        if( isRateExceeded(s) || (s.getThrottleRate() > 0.0 && random.nextDouble() < s.getThrottleRate()) ) {
+            throttledCalls.incrementAndGet();
+            throw new CloudException(CloudErrorType.THROTTLING, 429, "Throttling", "Rate exceeded for " + operation);
+        }
+        if( s.getErrorRate() > 0.0 && random.nextDouble() < s.getErrorRate() ) {
+            failedCalls.incrementAndGet();
+            throw new CloudException(CloudErrorType.GENERAL, 500, "InternalError", "Simulated failure in " + operation);
+        }
+    }
+
+    private boolean isRateExceeded(@Nonnull SimulationSettings s) {
+        int max = s.getMaxCallsPerSecond();
+
+        if( max < 1 ) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        long start = windowStart.get();
+
+        if( now - start >= 1000L && windowStart.compareAndSet(start, now) ) {
+            windowCalls.set(0);
+        }
+        return (windowCalls.incrementAndGet() > max);
+    }
+
+    public @Nonnull AccountState getAccount(@Nonnull String accountNumber) {
+        AccountState state = accounts.get(accountNumber);
+
+        if( state == null ) {
+            AccountState s = new AccountState();
+
+            state = accounts.putIfAbsent(accountNumber, s);
+            if( state == null ) {
+                state = s;
+            }
+        }
+        return state;
+    }
+
+    public @Nonnull AccountState getAccount(@Nonnull ProviderContext ctx) {
+        return getAccount(ctx.getAccountNumber());
+    }
+
+    public @Nonnegative long getFailedCalls() {
+        return failedCalls.get();
+    }
+
+    public @Nonnull ConcurrentMap<String,MachineImage> getPublicImages(@Nonnull String regionId) {
+        ConcurrentMap<String,MachineImage> images = publicImages.get(regionId);
+
+        if( images == null ) {
+            ConcurrentMap<String,MachineImage> i = new ConcurrentHashMap<String, MachineImage>();
+
+            images = publicImages.putIfAbsent(regionId, i);
+            if( images == null ) {
+                images = i;
+            }
+        }
+        return images;
+    }
+
+    public @Nonnull RegionState getRegion(@Nonnull String accountNumber, @Nonnull String regionId) {
+        String key = accountNumber + ":" + regionId;
+        RegionState state = regions.get(key);
+
+        if( state == null ) {
+            RegionState s = new RegionState();
+
+            state = regions.putIfAbsent(key, s);
+            if( state == null ) {
+                state = s;
+            }
+            regionIds.put(regionId, Boolean.TRUE);
+        }
+        return state;
+    }
+
+    public @Nonnull RegionState getRegion(@Nonnull ProviderContext ctx) {
+        String regionId = ctx.getRegionId();
+
+        return getRegion(ctx.getAccountNumber(), regionId == null ? "" : regionId);
+    }
+
+    /**
+     * @return the IDs of all regions in which any account has resources
+     */
+    public @Nonnull Collection<String> getRegionIds() {
+        return Collections.unmodifiableSet(regionIds.keySet());
+    }
+
+    public @Nonnull SimulationSettings getSettings() {
+        return settings;
+    }
+
+    public @Nonnegative long getThrottledCalls() {
+        return throttledCalls.get();
+    }
+
+    public @Nonnegative long getTotalCalls() {
+        return totalCalls.get();
+    }
+
+    /**
+     * Generates a new, unique resource ID for a resource that does not belong to a region, such as a DNS zone or a
+     * public image. Regional resources take their IDs from {@link RegionState#nextId(String)}.
+     * @param prefix the resource type prefix for the ID (e.g. "i" for virtual machines)
+     * @return a unique resource ID
+     */
+    public @Nonnull String nextId(@Nonnull String prefix) {
+        return prefix + "-" + Long.toHexString(ids.incrementAndGet());
+    }
+
+    /**
+     * Replaces the behavioural settings for this cloud. Fault injection uses a random number generator seeded from the
+     * new settings.
+     * @param settings the new settings
+     */
+    public void configure(@Nonnull SimulationSettings settings) {
+        this.settings = settings;
+        random.setSeed(settings.getSeed());
+    }
+
+    /**
+     * Populates an account and region with a data set proportional to the requested number of virtual machines:
+     * two volumes and one snapshot per virtual machine, one image per 100, one firewall per 50 and one VLAN per 500.
+     * @param accountNumber the account to populate
+     * @param regionId the region to populate
+     * @param virtualMachines the number of virtual machines to generate
+     */
+    public void populate(@Nonnull String accountNumber, @Nonnull String regionId, @Nonnegative int virtualMachines) {
+        populate(accountNumber, regionId, virtualMachines, virtualMachines * 2, virtualMachines, Math.max(1, virtualMachines / 100), Math.max(1, virtualMachines / 50), Math.max(1, virtualMachines / 500));
+    }
+
+    /**
+     * Populates an account and region with a deterministic data set. The same settings seed, account and region always
+     * generate the same resources and relationships between them.
+     * @param accountNumber the account to populate
+     * @param regionId the region to populate
+     * @param virtualMachines the number of virtual machines to generate
+     * @param volumes the number of volumes to generate
+     * @param snapshots the number of snapshots to generate
+     * @param images the number of private images to generate
+     * @param firewalls the number of firewalls to generate
+     * @param vlans the number of VLANs (each with a single subnet) to generate
+     */
+    public void populate(@Nonnull String accountNumber, @Nonnull String regionId, @Nonnegative int virtualMachines, @Nonnegative int volumes, @Nonnegative int snapshots, @Nonnegative int images, @Nonnegative int firewalls, @Nonnegative int vlans) {
+        Random r = new Random(settings.getSeed() ^ (accountNumber + ":" + regionId).hashCode());
+        RegionState state = getRegion(accountNumber, regionId);
+        long now = System.currentTimeMillis();
+        List<String> imageIds = new ArrayList<String>();
+        List<String> firewallIds = new ArrayList<String>();
+        List<String> vlanIds = new ArrayList<String>();
+        List<String> subnetIds = new ArrayList<String>();
+        List<String> vmIds = new ArrayList<String>();
+        List<String> volumeIds = new ArrayList<String>();
+        Map<String,List<String>> attachments = new HashMap<String, List<String>>();
+
+        for( int i = 0; i < images; i++ ) {
+            MachineImage img = newImage(accountNumber, regionId, state.nextId("ami"), "image-" + i, r);
+
+            state.images.put(img.getProviderMachineImageId(), img);
+            imageIds.add(img.getProviderMachineImageId());
+        }
+        for( int i = 0; i < vlans; i++ ) {
+            VLAN vlan = new VLAN();
+            String vlanId = state.nextId("vpc");
+            String cidr = "10." + (i % 256) + ".0.0/16";
+
+            vlan.setProviderVlanId(vlanId);
+            vlan.setProviderOwnerId(accountNumber);
+            vlan.setProviderRegionId(regionId);
+            vlan.setName("vlan-" + i);
+            vlan.setDescription("Simulated VLAN " + i);
+            vlan.setCidr(cidr);
+            vlan.setCurrentState(VLANState.AVAILABLE);
+            vlan.setTag("env", (i % 2 == 0 ? "prod" : "dev"));
+            state.vlans.put(vlanId, vlan);
+            vlanIds.add(vlanId);
+
+            Subnet subnet = Subnet.getInstance(accountNumber, regionId, vlanId, state.nextId("subnet"), SubnetState.AVAILABLE, "subnet-" + i, "Simulated subnet " + i, "10." + (i % 256) + ".0.0/24");
+
+            subnet.constrainedToDataCenter(regionId + "a");
+            state.subnets.put(subnet.getProviderSubnetId(), subnet);
+            subnetIds.add(subnet.getProviderSubnetId());
+        }
+        for( int i = 0; i < firewalls; i++ ) {
+            Firewall fw = new Firewall();
+            String fwId = state.nextId("sg");
+
+            fw.setProviderFirewallId(fwId);
+            fw.setRegionId(regionId);
+            fw.setName("firewall-" + i);
+            fw.setDescription("Simulated firewall " + i);
+            fw.setActive(true);
+            fw.setAvailable(true);
+            fw.setVisibleScope(VisibleScope.ACCOUNT_REGION);
+            if( !vlanIds.isEmpty() ) {
+                fw.setProviderVlanId(vlanIds.get(i % vlanIds.size()));
+            }
+            state.firewalls.put(fwId, fw);
+            firewallIds.add(fwId);
+
+            ConcurrentMap<String,FirewallRule> rules = state.getRules(fwId);
+
+            for( int j = 0; j < 5; j++ ) {
+                String source = (10 + r.nextInt(200)) + "." + r.nextInt(256) + "." + r.nextInt(256) + ".0/24";
+                int port = 1024 + r.nextInt(60000);
+                FirewallRule rule = FirewallRule.getInstance(null, fwId, RuleTarget.getCIDR(source), Direction.INGRESS, Protocol.TCP, Permission.ALLOW, RuleTarget.getGlobal(fwId), port, port);
+
+                rules.put(rule.getProviderRuleId(), rule);
+            }
+        }
+        for( int i = 0; i < virtualMachines; i++ ) {
+            VirtualMachine vm = new VirtualMachine();
+            String vmId = state.nextId("i");
+
+            vm.setProviderVirtualMachineId(vmId);
+            vm.setProviderOwnerId(accountNumber);
+            vm.setProviderRegionId(regionId);
+            vm.setProviderDataCenterId(regionId + (char)('a' + r.nextInt(3)));
+            vm.setName("vm-" + i);
+            vm.setDescription("Simulated virtual machine " + i);
+            vm.setArchitecture(Architecture.I64);
+            vm.setPlatform(r.nextInt(5) == 0 ? Platform.WINDOWS : Platform.UBUNTU);
+            vm.setProductId(PRODUCTS[r.nextInt(PRODUCTS.length)]);
+            vm.setCurrentState(r.nextInt(10) == 0 ? VmState.STOPPED : VmState.RUNNING);
+            vm.setCreationTimestamp(now - r.nextInt(Integer.MAX_VALUE));
+            vm.setPersistent(true);
+            vm.setRebootable(true);
+            vm.setImagable(true);
+            vm.setClonable(false);
+            vm.setPausable(false);
+            if( !imageIds.isEmpty() ) {
+                vm.setProviderMachineImageId(imageIds.get(r.nextInt(imageIds.size())));
+            }
+            if( !firewallIds.isEmpty() ) {
+                vm.setProviderFirewallIds(new String[] { firewallIds.get(r.nextInt(firewallIds.size())) });
+            }
+            if( !vlanIds.isEmpty() ) {
+                int v = r.nextInt(vlanIds.size());
+
+                vm.setProviderVlanId(vlanIds.get(v));
+                vm.setProviderSubnetId(subnetIds.get(v));
+            }
+            vm.setPrivateAddresses(new RawAddress("10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF)));
+            vm.setTag("Name", "vm-" + i);
+            vm.setTag("cost-center", String.valueOf(r.nextInt(100)));
+            vm.setTag("env", (r.nextBoolean() ? "prod" : "dev"));
+            state.virtualMachines.put(vmId, vm);
+            vmIds.add(vmId);
+        }
+        for( int i = 0; i < volumes; i++ ) {
+            Volume volume = new Volume();
+            String volumeId = state.nextId("vol");
+
+            volume.setProviderVolumeId(volumeId);
+            volume.setProviderRegionId(regionId);
+            volume.setProviderDataCenterId(regionId + "a");
+            volume.setName("volume-" + i);
+            volume.setDescription("Simulated volume " + i);
+            volume.setSize(new Storage<Gigabyte>(1 + r.nextInt(1024), Storage.GIGABYTE));
+            volume.setType(r.nextBoolean() ? VolumeType.SSD : VolumeType.HDD);
+            volume.setCreationTimestamp(now - r.nextInt(Integer.MAX_VALUE));
+            // VolumeState has no in-use state; an attached volume is AVAILABLE with a virtual machine ID
+            volume.setCurrentState(VolumeState.AVAILABLE);
+            if( !vmIds.isEmpty() && r.nextInt(4) != 0 ) {
+                String vmId = vmIds.get(r.nextInt(vmIds.size()));
+                List<String> ids = attachments.get(vmId);
+
+                if( ids == null ) {
+                    ids = new ArrayList<String>();
+                    attachments.put(vmId, ids);
+                }
+                ids.add(volumeId);
+                volume.setProviderVirtualMachineId(vmId);
+                volume.setDeviceId("/dev/sd" + (char)('f' + ids.size() - 1));
+            }
+            volume.setTag("cost-center", String.valueOf(r.nextInt(100)));
+            state.volumes.put(volumeId, volume);
+            volumeIds.add(volumeId);
+        }
+        for( String vmId : vmIds ) {
+            List<String> ids = attachments.get(vmId);
+
+            if( ids == null ) {
+                state.virtualMachines.get(vmId).setProviderVolumeIds();
+            }
+            else {
+                state.virtualMachines.get(vmId).setProviderVolumeIds(ids.toArray(new String[ids.size()]));
+            }
+        }
+        for( int i = 0; i < snapshots; i++ ) {
+            Snapshot snapshot = new Snapshot();
+            String snapshotId = state.nextId("snap");
+
+            snapshot.setProviderSnapshotId(snapshotId);
+            snapshot.setOwner(accountNumber);
+            snapshot.setRegionId(regionId);
+            snapshot.setName("snapshot-" + i);
+            snapshot.setDescription("Simulated snapshot " + i);
+            snapshot.setCurrentState(SnapshotState.AVAILABLE);
+            snapshot.setSnapshotTimestamp(now - r.nextInt(Integer.MAX_VALUE));
+            snapshot.setVisibleScope(VisibleScope.ACCOUNT_REGION);
+            if( !volumeIds.isEmpty() ) {
+                Volume volume = state.volumes.get(volumeIds.get(r.nextInt(volumeIds.size())));
+
+                snapshot.setVolumeId(volume.getProviderVolumeId());
+                snapshot.setSizeInGb(volume.getSizeInGigabytes());
+            }
+            snapshot.setTag("cost-center", String.valueOf(r.nextInt(100)));
+            state.snapshots.put(snapshotId, snapshot);
+        }
+    }
+
+    /**
+     * Populates the public image library shared by all accounts in the specified region.
+     * @param regionId the region whose public library is being populated
+     * @param images the number of public images to generate
+     */
+    public void populatePublicImages(@Nonnull String regionId, @Nonnegative int images) {
+        Random r = new Random(settings.getSeed() ^ regionId.hashCode());
+        ConcurrentMap<String,MachineImage> library = getPublicImages(regionId);
+
+        for( int i = 0; i < images; i++ ) {
+            MachineImage img = newImage(PUBLIC_OWNER, regionId, nextId("ami-pub"), "public-image-" + i, r);
+
+            img.sharedWithPublic();
+            library.put(img.getProviderMachineImageId(), img);
+        }
+    }
+
+    private @Nonnull MachineImage newImage(@Nonnull String ownerId, @Nonnull String regionId, @Nonnull String imageId, @Nonnull String name, @Nonnull Random r) {
+        Platform platform = (r.nextInt(5) == 0 ? Platform.WINDOWS : (r.nextBoolean() ? Platform.UBUNTU : Platform.RHEL));
+        Architecture architecture = (r.nextInt(4) == 0 ? Architecture.I32 : Architecture.I64);
+        MachineImage img = MachineImage.getInstance(ownerId, regionId, imageId, ImageClass.MACHINE, MachineImageState.ACTIVE, name, platform.name() + " " + architecture.name() + " " + name, architecture, platform);
+
+        img.setTag("os", platform.name().toLowerCase());
+        return img;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.AbstractCloud;
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.ContextRequirements;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.ComputeServices;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.network.NetworkServices;
+import org.dasein.cloud.storage.StorageServices;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory reference implementation of a cloud provider for load and performance testing. Compute (virtual
+ * machines, volumes, snapshots and images), network (firewalls, VLANs and DNS) and blob storage services are backed by
+ * a {@link SimulatedCloud} shared among all providers connected to the same endpoint. Latency, errors and throttling
+ * are injected according to the {@link SimulationSettings} of that cloud.
+ * <p>
+ * Typical usage:
+ * </p>
+ * <pre>
+ *     Cloud cloud = Cloud.register("Simulator", "Sim", "sim://perf", SimulatedCloudProvider.class);
+ *     SimulatedCloud.getInstance("sim://perf").populate("12345", "sim-1", 100000);
+ *     CloudProvider provider = cloud.createContext("12345", "sim-1").connect();
+ * </pre>
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedCloudProvider extends AbstractCloud {
+    @Override
+    public @Nonnull String getCloudName() {
+        ProviderContext ctx = getContext();
+        Cloud cloud = (ctx == null ? null : ctx.getCloud());
+        String name = (cloud == null ? null : cloud.getCloudName());
+
+        if( name == null ) {
+            return "Simulated Cloud";
+        }
+        return name;
+    }
+
+    @Override
+    public @Nonnull ContextRequirements getContextRequirements() {
+        return new ContextRequirements(
+                new ContextRequirements.Field("apiKeys", ContextRequirements.FieldType.KEYPAIR, false)
+        );
+    }
+
+    @Override
+    public @Nonnull ComputeServices getComputeServices() {
+        return new SimulatedComputeServices(this);
+    }
+
+    @Override
+    public @Nonnull DataCenterServices getDataCenterServices() {
+        return new SimulatedDataCenterServices(this);
+    }
+
+    @Override
+    public @Nonnull NetworkServices getNetworkServices() {
+        return new SimulatedNetworkServices(this);
+    }
+
+    @Override
+    public @Nonnull String getProviderName() {
+        ProviderContext ctx = getContext();
+        Cloud cloud = (ctx == null ? null : ctx.getCloud());
+        String name = (cloud == null ? null : cloud.getProviderName());
+
+        if( name == null ) {
+            return "Simulator";
+        }
+        return name;
+    }
+
+    /**
+     * @return the in-memory cloud behind this provider's current context
+     * @throws IllegalStateException the provider is not connected
+     */
+    public @Nonnull SimulatedCloud getSimulatedCloud() {
+        ProviderContext ctx = getContext();
+
+        if( ctx == null ) {
+            throw new IllegalStateException("The simulated provider is not connected");
+        }
+        Cloud cloud = ctx.getCloud();
+        //noinspection deprecation
+        String endpoint = (cloud == null ? ctx.getEndpoint() : cloud.getEndpoint());
+
+        return SimulatedCloud.getInstance(endpoint == null ? "" : endpoint);
+    }
+
+    @Override
+    public @Nullable StorageServices getStorageServices() {
+        return new SimulatedStorageServices(this);
+    }
+
+    @Override
+    public @Nonnull String testContext() {
+        ProviderContext ctx = getContext();
+
+        if( ctx == null ) {
+            throw new IllegalStateException("The simulated provider is not connected");
+        }
+        return ctx.getAccountNumber();
+    }
+}
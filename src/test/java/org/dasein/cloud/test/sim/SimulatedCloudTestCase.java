@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.compute.VMLaunchOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.network.Firewall;
+import org.dasein.cloud.network.FirewallSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies the in-memory simulated cloud behaves like a cloud provider.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedCloudTestCase {
+    static private final String ACCOUNT  = "123456789";
+    static private final String ENDPOINT = "sim://test";
+    static private final String REGION   = "sim-1";
+
+    private CloudProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Simulated Cloud", ENDPOINT, SimulatedCloudProvider.class);
+
+        SimulatedCloud.reset(ENDPOINT);
+        provider = cloud.createContext(ACCOUNT, REGION).connect();
+    }
+
+    @After
+    public void tearDown() {
+        if( provider != null ) {
+            provider.close();
+        }
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    @Test
+    public void listsPopulatedInventory() throws Exception {
+        SimulatedCloud.getInstance(ENDPOINT).populate(ACCOUNT, REGION, 10000);
+
+        VirtualMachineSupport support = provider.getComputeServices().getVirtualMachineSupport();
+        int count = 0;
+
+        //noinspection ConstantConditions
+        for( VirtualMachine vm : support.listVirtualMachines() ) {
+            assertNotNull("Virtual machine has no ID", vm.getProviderVirtualMachineId());
+            count++;
+        }
+        assertEquals("The number of virtual machines does not match the population", 10000, count);
+
+        FirewallSupport firewalls = provider.getNetworkServices().getFirewallSupport();
+
+        //noinspection ConstantConditions
+        for( Firewall fw : firewalls.list() ) {
+            //noinspection ConstantConditions
+            assertTrue("Each simulated firewall should have rules", firewalls.getRules(fw.getProviderFirewallId()).iterator().hasNext());
+        }
+    }
+
+    @Test
+    public void launchAndTerminate() throws Exception {
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        sim.populatePublicImages(REGION, 10);
+
+        String imageId = sim.getPublicImages(REGION).keySet().iterator().next();
+        VirtualMachineSupport support = provider.getComputeServices().getVirtualMachineSupport();
+
+        //noinspection ConstantConditions
+        VirtualMachine vm = support.launch(VMLaunchOptions.getInstance("m1.small", imageId, "test", "test"));
+
+        assertEquals("Newly launched VM should be running", VmState.RUNNING, vm.getCurrentState());
+        support.terminate(vm.getProviderVirtualMachineId());
+
+        VirtualMachine terminated = support.getVirtualMachine(vm.getProviderVirtualMachineId());
+
+        assertTrue("Terminated VM should be gone or terminated", terminated == null || VmState.TERMINATED.equals(terminated.getCurrentState()));
+        assertTrue("Calls were not counted", sim.getTotalCalls() >= 3);
+    }
+
+    @Test
+    public void injectsThrottling() throws Exception {
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        sim.configure(SimulationSettings.getInstance().withThrottleRate(1.0));
+        try {
+            //noinspection ConstantConditions
+            provider.getComputeServices().getVirtualMachineSupport().listVirtualMachines();
+            fail("Expected the simulator to throttle the request");
+        }
+        catch( CloudException e ) {
+            assertEquals("Unexpected error type", CloudErrorType.THROTTLING, e.getErrorType());
+            assertEquals("Unexpected HTTP code", 429, e.getHttpCode());
+        }
+        assertEquals("Throttled call was not counted", 1, sim.getThrottledCalls());
+    }
+
+    @Test
+    public void resourceIdsArePerRegion() throws Exception {
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        sim.populate(ACCOUNT, "other-region", 5);
+        sim.populate(ACCOUNT, REGION, 5);
+        assertTrue("The first VM in a region should not depend on other regions", sim.getRegion(ACCOUNT, REGION).virtualMachines.containsKey("i-1"));
+        assertTrue("The first VM in a region should not depend on other regions", sim.getRegion(ACCOUNT, "other-region").virtualMachines.containsKey("i-1"));
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.compute.AbstractComputeServices;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Compute services for the simulated cloud.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedComputeServices extends AbstractComputeServices<SimulatedCloudProvider> {
+    public SimulatedComputeServices(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    @Override
+    public @Nonnull SimulatedImageSupport getImageSupport() {
+        return new SimulatedImageSupport(getProvider());
+    }
+
+    @Override
+    public @Nonnull SimulatedSnapshotSupport getSnapshotSupport() {
+        return new SimulatedSnapshotSupport(getProvider());
+    }
+
+    @Override
+    public @Nonnull SimulatedVMSupport getVirtualMachineSupport() {
+        return new SimulatedVMSupport(getProvider());
+    }
+
+    @Override
+    public @Nonnull SimulatedVolumeSupport getVolumeSupport() {
+        return new SimulatedVolumeSupport(getProvider());
+    }
+}
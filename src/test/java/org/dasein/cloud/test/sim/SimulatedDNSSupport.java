@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.identity.ServiceAction;
+import org.dasein.cloud.network.DNSRecord;
+import org.dasein.cloud.network.DNSRecordType;
+import org.dasein.cloud.network.DNSSupport;
+import org.dasein.cloud.network.DNSZone;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * DNS support for the simulated cloud. Zones are global to an account rather than tied to a region.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedDNSSupport implements DNSSupport {
+    private SimulatedCloudProvider provider;
+
+    public SimulatedDNSSupport(@Nonnull SimulatedCloudProvider provider) {
+        this.provider = provider;
+    }
+
+    private void call(@Nonnull String operation) throws CloudException {
+        provider.getSimulatedCloud().call(provider, operation);
+    }
+
+    private @Nonnull SimulatedCloud.AccountState getState() {
+        //noinspection ConstantConditions
+        return provider.getSimulatedCloud().getAccount(provider.getContext());
+    }
+
+    private @Nonnull List<DNSRecord> getRecords(@Nonnull String zoneId) throws CloudException {
+        List<DNSRecord> records = getState().dnsRecords.get(zoneId);
+
+        if( records == null ) {
+            throw new CloudException("No such DNS zone: " + zoneId);
+        }
+        return records;
+    }
+
+    @Override
+    public @Nonnull DNSRecord addDnsRecord(@Nonnull String providerDnsZoneId, @Nonnull DNSRecordType recordType, @Nonnull String name, @Nonnegative int ttl, @Nonnull String... values) throws CloudException, InternalException {
+        call("ChangeResourceRecordSets");
+        DNSRecord record = new DNSRecord();
+
+        record.setProviderZoneId(providerDnsZoneId);
+        record.setType(recordType);
+        record.setName(name);
+        record.setTtl(ttl);
+        record.setValues(values);
+        getRecords(providerDnsZoneId).add(record);
+        return record;
+    }
+
+    @Override
+    public @Nonnull String createDnsZone(@Nonnull String domainName, @Nonnull String name, @Nonnull String description) throws CloudException, InternalException {
+        call("CreateHostedZone");
+        DNSZone zone = new DNSZone();
+        String zoneId = provider.getSimulatedCloud().nextId("zone");
+
+        zone.setProviderDnsZoneId(zoneId);
+        zone.setProviderOwnerId(provider.getContext().getAccountNumber());
+        zone.setDomainName(domainName);
+        zone.setName(name);
+        zone.setDescription(description);
+        zone.setNameservers(new String[] { "ns1." + domainName, "ns2." + domainName });
+        getState().dnsRecords.put(zoneId, new CopyOnWriteArrayList<DNSRecord>());
+        getState().dnsZones.put(zoneId, zone);
+        return zoneId;
+    }
+
+    @Override
+    public void deleteDnsRecords(@Nonnull DNSRecord... dnsRecords) throws CloudException, InternalException {
+        call("ChangeResourceRecordSets");
+        for( DNSRecord record : dnsRecords ) {
+            getRecords(record.getProviderZoneId()).remove(record);
+        }
+    }
+
+    @Override
+    public void deleteDnsZone(@Nonnull String providerDnsZoneId) throws CloudException, InternalException {
+        call("DeleteHostedZone");
+        if( getState().dnsZones.remove(providerDnsZoneId) == null ) {
+            throw new CloudException("No such DNS zone: " + providerDnsZoneId);
+        }
+        getState().dnsRecords.remove(providerDnsZoneId);
+    }
+
+    @Override
+    public @Nullable DNSZone getDnsZone(@Nonnull String providerDnsZoneId) throws CloudException, InternalException {
+        call("GetHostedZone");
+        return getState().dnsZones.get(providerDnsZoneId);
+    }
+
+    @Override
+    public @Nonnull String getProviderTermForRecord(@Nonnull Locale locale) {
+        return "record";
+    }
+
+    @Override
+    public @Nonnull String getProviderTermForZone(@Nonnull Locale locale) {
+        return "zone";
+    }
+
+    @Override
+    public @Nonnull Iterable<DNSRecord> listDnsRecords(@Nonnull String providerDnsZoneId, @Nullable DNSRecordType forType, @Nullable String name) throws CloudException, InternalException {
+        call("ListResourceRecordSets");
+        List<DNSRecord> records = new ArrayList<DNSRecord>();
+
+        for( DNSRecord record : getRecords(providerDnsZoneId) ) {
+            if( forType != null && !forType.equals(record.getType()) ) {
+                continue;
+            }
+            if( name != null && !name.equals(record.getName()) ) {
+                continue;
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Override
+    public @Nonnull Iterable<ResourceStatus> listDnsZoneStatus() throws CloudException, InternalException {
+        call("ListHostedZones");
+        List<ResourceStatus> status = new ArrayList<ResourceStatus>();
+
+        for( String zoneId : getState().dnsZones.keySet() ) {
+            status.add(new ResourceStatus(zoneId, true));
+        }
+        return status;
+    }
+
+    @Override
+    public @Nonnull Iterable<DNSZone> listDnsZones() throws CloudException, InternalException {
+        call("ListHostedZones");
+        return new ArrayList<DNSZone>(getState().dnsZones.values());
+    }
+
+    @Override
+    public boolean isSubscribed() throws CloudException, InternalException {
+        return true;
+    }
+
+    @Override
+    public @Nonnull String[] mapServiceAction(@Nonnull ServiceAction action) {
+        return new String[0];
+    }
+}
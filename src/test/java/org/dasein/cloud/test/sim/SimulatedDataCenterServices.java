@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.dc.DataCenter;
+import org.dasein.cloud.dc.DataCenterCapabilities;
+import org.dasein.cloud.dc.DataCenterServices;
+import org.dasein.cloud.dc.Folder;
+import org.dasein.cloud.dc.Region;
+import org.dasein.cloud.dc.ResourcePool;
+import org.dasein.cloud.dc.StoragePool;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+/**
+ * Data center services for the simulated cloud. The regions are those in which any account has resources plus the
+ * region of the current context, and every region has three data centers suffixed a, b and c.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedDataCenterServices implements DataCenterServices {
+    private SimulatedCloudProvider provider;
+
+    public SimulatedDataCenterServices(@Nonnull SimulatedCloudProvider provider) {
+        this.provider = provider;
+    }
+
+    @Override
+    public @Nonnull DataCenterCapabilities getCapabilities() throws InternalException, CloudException {
+        return SimulatedCapabilities.getInstance(provider, DataCenterCapabilities.class);
+    }
+
+    @Override
+    public @Nullable DataCenter getDataCenter(@Nonnull String providerDataCenterId) throws InternalException, CloudException {
+        if( providerDataCenterId.length() < 2 ) {
+            return null;
+        }
+        String regionId = providerDataCenterId.substring(0, providerDataCenterId.length() - 1);
+
+        for( DataCenter dc : listDataCenters(regionId) ) {
+            if( dc.getProviderDataCenterId().equals(providerDataCenterId) ) {
+                return dc;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public @Nonnull String getProviderTermForDataCenter(@Nonnull Locale locale) {
+        return "zone";
+    }
+
+    @Override
+    public @Nonnull String getProviderTermForRegion(@Nonnull Locale locale) {
+        return "region";
+    }
+
+    @Override
+    public @Nullable Region getRegion(@Nonnull String providerRegionId) throws InternalException, CloudException {
+        for( Region r : listRegions() ) {
+            if( r.getProviderRegionId().equals(providerRegionId) ) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public @Nonnull Collection<DataCenter> listDataCenters(@Nonnull String providerRegionId) throws InternalException, CloudException {
+        provider.getSimulatedCloud().call(provider, "DC.listDataCenters");
+        List<DataCenter> dataCenters = new ArrayList<DataCenter>();
+
+        for( char c = 'a'; c <= 'c'; c++ ) {
+            dataCenters.add(new DataCenter(providerRegionId + c, providerRegionId + c, providerRegionId, true, true));
+        }
+        return dataCenters;
+    }
+
+    @Override
+    public @Nonnull Collection<Region> listRegions() throws InternalException, CloudException {
+        SimulatedCloud cloud = provider.getSimulatedCloud();
+
+        cloud.call(provider, "DC.listRegions");
+        TreeSet<String> ids = new TreeSet<String>(cloud.getRegionIds());
+        String current = provider.getContext().getRegionId();
+
+        if( current != null ) {
+            ids.add(current);
+        }
+        List<Region> regions = new ArrayList<Region>();
+
+        for( String id : ids ) {
+            regions.add(new Region(id, id, true, true));
+        }
+        return regions;
+    }
+
+    @Override
+    public @Nonnull Collection<ResourcePool> listResourcePools(@Nullable String providerDataCenterId) throws InternalException, CloudException {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public @Nullable ResourcePool getResourcePool(@Nullable String providerResourcePoolId) throws InternalException, CloudException {
+        return null;
+    }
+
+    @Override
+    public @Nonnull Collection<StoragePool> listStoragePools() throws InternalException, CloudException {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public @Nullable StoragePool getStoragePool(@Nonnull String providerStoragePoolId) throws InternalException, CloudException {
+        return null;
+    }
+
+    @Override
+    public @Nonnull Collection<Folder> listVMFolders() throws InternalException, CloudException {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public @Nullable Folder getVMFolder(@Nonnull String providerVMFolderId) throws InternalException, CloudException {
+        return null;
+    }
+}
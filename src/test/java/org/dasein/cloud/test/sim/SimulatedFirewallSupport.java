@@ -0,0 +1,145 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.network.AbstractFirewallSupport;
+import org.dasein.cloud.network.Direction;
+import org.dasein.cloud.network.Firewall;
+import org.dasein.cloud.network.FirewallCapabilities;
+import org.dasein.cloud.network.FirewallCreateOptions;
+import org.dasein.cloud.network.FirewallRule;
+import org.dasein.cloud.network.FirewallRuleCreateOptions;
+import org.dasein.cloud.network.Permission;
+import org.dasein.cloud.network.Protocol;
+import org.dasein.cloud.network.RuleTarget;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Firewall support for the simulated cloud.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedFirewallSupport extends AbstractFirewallSupport<SimulatedCloudProvider> {
+    public SimulatedFirewallSupport(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    private void call(@Nonnull String operation) throws CloudException {
+        getProvider().getSimulatedCloud().call(getProvider(), operation);
+    }
+
+    private @Nonnull SimulatedCloud.RegionState getState() throws InternalException {
+        return getProvider().getSimulatedCloud().getRegion(getContext());
+    }
+
+    @Override
+    public @Nonnull String authorize(@Nonnull String firewallId, @Nonnull Direction direction, @Nonnull Permission permission, @Nonnull RuleTarget sourceEndpoint, @Nonnull Protocol protocol, @Nonnull RuleTarget destinationEndpoint, int beginPort, int endPort, @Nonnegative int precedence) throws CloudException, InternalException {
+        call("AuthorizeSecurityGroupIngress");
+        if( !getState().firewalls.containsKey(firewallId) ) {
+            throw new CloudException("No such firewall: " + firewallId);
+        }
+        FirewallRule rule = FirewallRule.getInstance(null, firewallId, sourceEndpoint, direction, protocol, permission, destinationEndpoint, beginPort, endPort);
+
+        getState().getRules(firewallId).put(rule.getProviderRuleId(), rule);
+        return rule.getProviderRuleId();
+    }
+
+    @Override
+    public @Nonnull String create(@Nonnull FirewallCreateOptions options) throws InternalException, CloudException {
+        call("CreateSecurityGroup");
+        Firewall fw = new Firewall();
+        String fwId = getState().nextId("sg");
+
+        fw.setProviderFirewallId(fwId);
+        //noinspection ConstantConditions
+        fw.setRegionId(getContext().getRegionId());
+        fw.setName(options.getName());
+        fw.setDescription(options.getDescription());
+        fw.setProviderVlanId(options.getProviderVlanId());
+        fw.setActive(true);
+        fw.setAvailable(true);
+        fw.setVisibleScope(VisibleScope.ACCOUNT_REGION);
+        for( Map.Entry<String,String> entry : options.getMetaData().entrySet() ) {
+            fw.setTag(entry.getKey(), entry.getValue());
+        }
+        getState().firewalls.put(fwId, fw);
+        for( FirewallRuleCreateOptions rule : options.getInitialRules() ) {
+            authorize(fwId, rule);
+        }
+        return fwId;
+    }
+
+    @Override
+    public void delete(@Nonnull String firewallId) throws InternalException, CloudException {
+        call("DeleteSecurityGroup");
+        if( getState().firewalls.remove(firewallId) == null ) {
+            throw new CloudException("No such firewall: " + firewallId);
+        }
+        getState().firewallRules.remove(firewallId);
+    }
+
+    @Override
+    public @Nonnull FirewallCapabilities getCapabilities() throws CloudException, InternalException {
+        return SimulatedCapabilities.getInstance(getProvider(), FirewallCapabilities.class);
+    }
+
+    @Override
+    public @Nullable Firewall getFirewall(@Nonnull String firewallId) throws InternalException, CloudException {
+        call("DescribeSecurityGroups");
+        return getState().firewalls.get(firewallId);
+    }
+
+    @Override
+    public @Nonnull Iterable<FirewallRule> getRules(@Nonnull String firewallId) throws InternalException, CloudException {
+        call("DescribeSecurityGroups");
+        return new ArrayList<FirewallRule>(getState().getRules(firewallId).values());
+    }
+
+    @Override
+    public boolean isSubscribed() throws CloudException, InternalException {
+        return true;
+    }
+
+    @Override
+    public @Nonnull Collection<Firewall> list() throws InternalException, CloudException {
+        call("DescribeSecurityGroups");
+        return new ArrayList<Firewall>(getState().firewalls.values());
+    }
+
+    @Override
+    public void revoke(@Nonnull String providerFirewallRuleId) throws InternalException, CloudException {
+        call("RevokeSecurityGroupIngress");
+        for( Map<String,FirewallRule> rules : getState().firewallRules.values() ) {
+            if( rules.remove(providerFirewallRuleId) != null ) {
+                return;
+            }
+        }
+        throw new CloudException("No such firewall rule: " + providerFirewallRuleId);
+    }
+}
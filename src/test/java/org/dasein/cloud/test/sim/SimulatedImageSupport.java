@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.Tag;
+import org.dasein.cloud.compute.AbstractImageSupport;
+import org.dasein.cloud.compute.ImageCapabilities;
+import org.dasein.cloud.compute.ImageFilterOptions;
+import org.dasein.cloud.compute.MachineImage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Machine image support for the simulated cloud. Besides the images owned by the current account, each region has a
+ * public library shared by all accounts that is populated through {@link SimulatedCloud#populatePublicImages(String, int)}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedImageSupport extends AbstractImageSupport<SimulatedCloudProvider> {
+    public SimulatedImageSupport(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    private void call(@Nonnull String operation) throws CloudException {
+        getProvider().getSimulatedCloud().call(getProvider(), operation);
+    }
+
+    private @Nonnull SimulatedCloud.RegionState getState() throws InternalException {
+        return getProvider().getSimulatedCloud().getRegion(getContext());
+    }
+
+    private @Nonnull MachineImage getRequiredImage(@Nonnull String imageId) throws CloudException, InternalException {
+        MachineImage img = getState().images.get(imageId);
+
+        if( img == null ) {
+            throw new CloudException("No such image: " + imageId);
+        }
+        return img;
+    }
+
+    @Override
+    public @Nonnull ImageCapabilities getCapabilities() throws CloudException, InternalException {
+        return SimulatedCapabilities.getInstance(getProvider(), ImageCapabilities.class);
+    }
+
+    @Override
+    public @Nullable MachineImage getImage(@Nonnull String providerImageId) throws CloudException, InternalException {
+        call("DescribeImages");
+        MachineImage img = getState().images.get(providerImageId);
+        String regionId = getContext().getRegionId();
+
+        if( img == null && regionId != null ) {
+            img = getProvider().getSimulatedCloud().getPublicImages(regionId).get(providerImageId);
+        }
+        return img;
+    }
+
+    @Override
+    public boolean isSubscribed() throws CloudException, InternalException {
+        return true;
+    }
+
+    @Override
+    public @Nonnull Iterable<MachineImage> listImages(@Nullable ImageFilterOptions options) throws CloudException, InternalException {
+        call("DescribeImages");
+        List<MachineImage> images = new ArrayList<MachineImage>();
+
+        for( MachineImage img : getState().images.values() ) {
+            if( options == null || options.matches(img) ) {
+                images.add(img);
+            }
+        }
+        return images;
+    }
+
+    @Override
+    public void remove(@Nonnull String providerImageId, boolean checkState) throws CloudException, InternalException {
+        call("DeregisterImage");
+        getRequiredImage(providerImageId);
+        getState().images.remove(providerImageId);
+    }
+
+    @Override
+    protected @Nonnull Iterable<MachineImage> searchPublicImageLibrary(@Nonnull ImageFilterOptions options) throws CloudException, InternalException {
+        call("DescribeImages");
+        String regionId = getContext().getRegionId();
+        List<MachineImage> images = new ArrayList<MachineImage>();
+
+        if( regionId != null ) {
+            for( MachineImage img : getProvider().getSimulatedCloud().getPublicImages(regionId).values() ) {
+                if( options.matches(img) ) {
+                    images.add(img);
+                }
+            }
+        }
+        return images;
+    }
+
+    @Override
+    protected void updateTagsInCloud(@Nonnull String imageId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        call("CreateTags");
+        MachineImage img = getRequiredImage(imageId);
+
+        for( Tag t : tags ) {
+            img.setTag(t.getKey(), t.getValue());
+        }
+    }
+
+    @Override
+    protected void removeTagsInCloud(@Nonnull String imageId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        call("DeleteTags");
+        MachineImage img = getRequiredImage(imageId);
+
+        for( Tag t : tags ) {
+            img.getTags().remove(t.getKey());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.Tag;
+import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.compute.AbstractSnapshotSupport;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotCapabilities;
+import org.dasein.cloud.compute.SnapshotCreateOptions;
+import org.dasein.cloud.compute.SnapshotState;
+import org.dasein.cloud.compute.Volume;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Snapshot support for the simulated cloud. Snapshots complete the moment they are created.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedSnapshotSupport extends AbstractSnapshotSupport<SimulatedCloudProvider> {
+    public SimulatedSnapshotSupport(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    private void call(@Nonnull String operation) throws CloudException {
+        getProvider().getSimulatedCloud().call(getProvider(), operation);
+    }
+
+    private @Nonnull SimulatedCloud.RegionState getState() throws InternalException {
+        return getProvider().getSimulatedCloud().getRegion(getContext());
+    }
+
+    private @Nonnull Snapshot getRequiredSnapshot(@Nonnull String snapshotId) throws CloudException, InternalException {
+        Snapshot snapshot = getState().snapshots.get(snapshotId);
+
+        if( snapshot == null ) {
+            throw new CloudException("No such snapshot: " + snapshotId);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public @Nullable String createSnapshot(@Nonnull SnapshotCreateOptions options) throws CloudException, InternalException {
+        call("CreateSnapshot");
+        ProviderContext ctx = getContext();
+        String volumeId = options.getVolumeId();
+        Snapshot snapshot = new Snapshot();
+
+        if( volumeId != null ) {
+            Volume volume = getState().volumes.get(volumeId);
+
+            if( volume == null ) {
+                throw new CloudException("No such volume: " + volumeId);
+            }
+            snapshot.setVolumeId(volumeId);
+            snapshot.setSizeInGb(volume.getSizeInGigabytes());
+        }
+        else {
+            String regionId = options.getRegionId();
+            Snapshot source = (regionId == null ? null : getProvider().getSimulatedCloud().getRegion(ctx.getAccountNumber(), regionId).snapshots.get(options.getSnapshotId()));
+
+            if( source == null ) {
+                throw new CloudException("No such snapshot: " + options.getSnapshotId());
+            }
+            snapshot.setVolumeId(source.getVolumeId());
+            snapshot.setSizeInGb(source.getSizeInGb());
+        }
+        snapshot.setProviderSnapshotId(getState().nextId("snap"));
+        snapshot.setOwner(ctx.getAccountNumber());
+        snapshot.setRegionId(ctx.getRegionId());
+        snapshot.setName(options.getName());
+        snapshot.setDescription(options.getDescription());
+        snapshot.setCurrentState(SnapshotState.AVAILABLE);
+        snapshot.setSnapshotTimestamp(System.currentTimeMillis());
+        snapshot.setVisibleScope(VisibleScope.ACCOUNT_REGION);
+        for( Map.Entry<String,String> entry : options.getMetaData().entrySet() ) {
+            if( entry.getValue() != null ) {
+                snapshot.setTag(entry.getKey(), entry.getValue());
+            }
+        }
+        getState().snapshots.put(snapshot.getProviderSnapshotId(), snapshot);
+        return snapshot.getProviderSnapshotId();
+    }
+
+    @Override
+    public @Nonnull SnapshotCapabilities getCapabilities() throws CloudException, InternalException {
+        return SimulatedCapabilities.getInstance(getProvider(), SnapshotCapabilities.class);
+    }
+
+    @Override
+    public @Nullable Snapshot getSnapshot(@Nonnull String snapshotId) throws InternalException, CloudException {
+        call("DescribeSnapshots");
+        return getState().snapshots.get(snapshotId);
+    }
+
+    @Override
+    public boolean isSubscribed() throws InternalException, CloudException {
+        return true;
+    }
+
+    @Override
+    public @Nonnull Iterable<Snapshot> listSnapshots() throws InternalException, CloudException {
+        call("DescribeSnapshots");
+        return new ArrayList<Snapshot>(getState().snapshots.values());
+    }
+
+    @Override
+    public void remove(@Nonnull String snapshotId) throws InternalException, CloudException {
+        call("DeleteSnapshot");
+        getRequiredSnapshot(snapshotId).setCurrentState(SnapshotState.DELETED);
+        getState().snapshots.remove(snapshotId);
+    }
+
+    @Override
+    protected void updateTagsInCloud(@Nonnull String snapshotId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        call("CreateTags");
+        Snapshot snapshot = getRequiredSnapshot(snapshotId);
+
+        for( Tag t : tags ) {
+            snapshot.setTag(t.getKey(), t.getValue());
+        }
+    }
+
+    @Override
+    protected void removeTagsInCloud(@Nonnull String snapshotId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        call("DeleteTags");
+        Snapshot snapshot = getRequiredSnapshot(snapshotId);
+
+        for( Tag t : tags ) {
+            snapshot.getTags().remove(t.getKey());
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.storage.AbstractStorageServices;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Storage services for the simulated cloud.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedStorageServices extends AbstractStorageServices<SimulatedCloudProvider> {
+    public SimulatedStorageServices(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    @Override
+    public @Nonnull SimulatedBlobStoreSupport getOnlineStorageSupport() {
+        return new SimulatedBlobStoreSupport(getProvider());
+    }
+}
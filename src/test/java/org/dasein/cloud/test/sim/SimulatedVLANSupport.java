@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.network.AbstractVLANSupport;
+import org.dasein.cloud.network.Subnet;
+import org.dasein.cloud.network.SubnetCreateOptions;
+import org.dasein.cloud.network.SubnetState;
+import org.dasein.cloud.network.VLAN;
+import org.dasein.cloud.network.VLANCapabilities;
+import org.dasein.cloud.network.VLANState;
+import org.dasein.cloud.network.VlanCreateOptions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * VLAN and subnet support for the simulated cloud.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedVLANSupport extends AbstractVLANSupport<SimulatedCloudProvider> {
+    public SimulatedVLANSupport(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    private void call(@Nonnull String operation) throws CloudException {
+        getProvider().getSimulatedCloud().call(getProvider(), operation);
+    }
+
+    private @Nonnull SimulatedCloud.RegionState getState() throws InternalException {
+        return getProvider().getSimulatedCloud().getRegion(getContext());
+    }
+
+    @Override
+    public @Nonnull Subnet createSubnet(@Nonnull SubnetCreateOptions options) throws CloudException, InternalException {
+        call("CreateSubnet");
+        if( !getState().vlans.containsKey(options.getProviderVlanId()) ) {
+            throw new CloudException("No such VLAN: " + options.getProviderVlanId());
+        }
+        //noinspection ConstantConditions
+        Subnet subnet = Subnet.getInstance(getContext().getAccountNumber(), getContext().getRegionId(), options.getProviderVlanId(), getState().nextId("subnet"), SubnetState.AVAILABLE, options.getName(), options.getDescription(), options.getCidr());
+
+        if( options.getProviderDataCenterId() != null ) {
+            subnet.constrainedToDataCenter(options.getProviderDataCenterId());
+        }
+        for( Map.Entry<String,Object> entry : options.getMetaData().entrySet() ) {
+            subnet.setTag(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        getState().subnets.put(subnet.getProviderSubnetId(), subnet);
+        return subnet;
+    }
+
+    @Override
+    public @Nonnull VLAN createVlan(@Nonnull VlanCreateOptions options) throws CloudException, InternalException {
+        call("CreateVpc");
+        VLAN vlan = new VLAN();
+        String vlanId = getState().nextId("vpc");
+
+        vlan.setProviderVlanId(vlanId);
+        vlan.setProviderOwnerId(getContext().getAccountNumber());
+        vlan.setProviderRegionId(getContext().getRegionId());
+        vlan.setName(options.getName());
+        vlan.setDescription(options.getDescription());
+        vlan.setCidr(options.getCidr());
+        vlan.setDomainName(options.getDomain());
+        vlan.setDnsServers(options.getDnsServers());
+        vlan.setNtpServers(options.getNtpServers());
+        vlan.setCurrentState(VLANState.AVAILABLE);
+        getState().vlans.put(vlanId, vlan);
+        return vlan;
+    }
+
+    @Override
+    public @Nonnull VLANCapabilities getCapabilities() throws CloudException, InternalException {
+        return SimulatedCapabilities.getInstance(getProvider(), VLANCapabilities.class);
+    }
+
+    @Override
+    public @Nonnull String getProviderTermForNetworkInterface(@Nonnull Locale locale) {
+        return "network interface";
+    }
+
+    @Override
+    public @Nonnull String getProviderTermForSubnet(@Nonnull Locale locale) {
+        return "subnet";
+    }
+
+    @Override
+    public @Nonnull String getProviderTermForVlan(@Nonnull Locale locale) {
+        return "vlan";
+    }
+
+    @Override
+    public @Nullable Subnet getSubnet(@Nonnull String subnetId) throws CloudException, InternalException {
+        call("DescribeSubnets");
+        return getState().subnets.get(subnetId);
+    }
+
+    @Override
+    public @Nullable VLAN getVlan(@Nonnull String vlanId) throws CloudException, InternalException {
+        call("DescribeVpcs");
+        return getState().vlans.get(vlanId);
+    }
+
+    @Override
+    public boolean isSubscribed() throws CloudException, InternalException {
+        return true;
+    }
+
+    @Override
+    public @Nonnull Iterable<Subnet> listSubnets(@Nullable String vlanId) throws CloudException, InternalException {
+        call("DescribeSubnets");
+        List<Subnet> subnets = new ArrayList<Subnet>();
+
+        for( Subnet subnet : getState().subnets.values() ) {
+            if( vlanId == null || vlanId.equals(subnet.getProviderVlanId()) ) {
+                subnets.add(subnet);
+            }
+        }
+        return subnets;
+    }
+
+    @Override
+    public @Nonnull Iterable<VLAN> listVlans() throws CloudException, InternalException {
+        call("DescribeVpcs");
+        return new ArrayList<VLAN>(getState().vlans.values());
+    }
+
+    @Override
+    public void removeSubnet(String providerSubnetId) throws CloudException, InternalException {
+        call("DeleteSubnet");
+        if( getState().subnets.remove(providerSubnetId) == null ) {
+            throw new CloudException("No such subnet: " + providerSubnetId);
+        }
+    }
+
+    @Override
+    public void removeVlan(String vlanId) throws CloudException, InternalException {
+        call("DeleteVpc");
+        for( Subnet subnet : getState().subnets.values() ) {
+            if( vlanId.equals(subnet.getProviderVlanId()) ) {
+                throw new CloudException("VLAN " + vlanId + " still has subnets");
+            }
+        }
+        if( getState().vlans.remove(vlanId) == null ) {
+            throw new CloudException("No such VLAN: " + vlanId);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.Tag;
+import org.dasein.cloud.compute.AbstractVMSupport;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.compute.VMLaunchOptions;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineCapabilities;
+import org.dasein.cloud.compute.VmState;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Virtual machine support for the simulated cloud. State transitions happen immediately.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedVMSupport extends AbstractVMSupport<SimulatedCloudProvider> {
+    public SimulatedVMSupport(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    private @Nonnull Map<String,VirtualMachine> getVirtualMachines() throws InternalException {
+        return getProvider().getSimulatedCloud().getRegion(getContext()).virtualMachines;
+    }
+
+    private @Nonnull VirtualMachine getRequiredVirtualMachine(@Nonnull String vmId) throws CloudException, InternalException {
+        VirtualMachine vm = getVirtualMachines().get(vmId);
+
+        if( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) ) {
+            throw new CloudException("No such virtual machine: " + vmId);
+        }
+        return vm;
+    }
+
+    private void call(@Nonnull String operation) throws CloudException {
+        getProvider().getSimulatedCloud().call(getProvider(), operation);
+    }
+
+    @Override
+    public @Nonnull VirtualMachineCapabilities getCapabilities() throws InternalException, CloudException {
+        return SimulatedCapabilities.getInstance(getProvider(), VirtualMachineCapabilities.class);
+    }
+
+    @Override
+    public @Nullable VirtualMachine getVirtualMachine(@Nonnull String vmId) throws InternalException, CloudException {
+        call("DescribeInstances");
+        VirtualMachine vm = getVirtualMachines().get(vmId);
+
+        if( vm == null || VmState.TERMINATED.equals(vm.getCurrentState()) ) {
+            return null;
+        }
+        return vm;
+    }
+
+    @Override
+    public boolean isSubscribed() throws CloudException, InternalException {
+        return true;
+    }
+
+    @Override
+    public @Nonnull VirtualMachine launch(@Nonnull VMLaunchOptions withLaunchOptions) throws CloudException, InternalException {
+        call("RunInstances");
+        SimulatedCloud cloud = getProvider().getSimulatedCloud();
+        ProviderContext ctx = getContext();
+        String regionId = ctx.getRegionId();
+        MachineImage img = cloud.getRegion(ctx).images.get(withLaunchOptions.getMachineImageId());
+
+        if( img == null && regionId != null ) {
+            img = cloud.getPublicImages(regionId).get(withLaunchOptions.getMachineImageId());
+        }
+        if( img == null ) {
+            throw new CloudException("No such machine image: " + withLaunchOptions.getMachineImageId());
+        }
+        VirtualMachine vm = new VirtualMachine();
+        String dcId = withLaunchOptions.getDataCenterId();
+
+        vm.setProviderVirtualMachineId(cloud.getRegion(ctx).nextId("i"));
+        vm.setProviderOwnerId(ctx.getAccountNumber());
+        vm.setProviderRegionId(regionId);
+        vm.setProviderDataCenterId(dcId == null ? regionId + "a" : dcId);
+        vm.setName(withLaunchOptions.getFriendlyName());
+        vm.setDescription(withLaunchOptions.getDescription());
+        vm.setProviderMachineImageId(img.getProviderMachineImageId());
+        vm.setArchitecture(img.getArchitecture() == null ? Architecture.I64 : img.getArchitecture());
+        vm.setPlatform(img.getPlatform() == null ? Platform.UNKNOWN : img.getPlatform());
+        vm.setProductId(withLaunchOptions.getStandardProductId());
+        vm.setProviderVlanId(withLaunchOptions.getVlanId());
+        vm.setProviderSubnetId(withLaunchOptions.getSubnetId());
+        vm.setProviderFirewallIds(withLaunchOptions.getFirewallIds());
+        vm.setCurrentState(VmState.RUNNING);
+        vm.setCreationTimestamp(System.currentTimeMillis());
+        vm.setLastBootTimestamp(vm.getCreationTimestamp());
+        vm.setPersistent(true);
+        vm.setRebootable(true);
+        vm.setImagable(true);
+        vm.setProviderVolumeIds();
+        Map<String,Object> meta = withLaunchOptions.getMetaData();
+
+        for( Map.Entry<String,Object> entry : meta.entrySet() ) {
+            if( entry.getValue() != null ) {
+                vm.setTag(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        getVirtualMachines().put(vm.getProviderVirtualMachineId(), vm);
+        return vm;
+    }
+
+    @Override
+    public @Nonnull Iterable<VirtualMachine> listVirtualMachines() throws InternalException, CloudException {
+        call("DescribeInstances");
+        Collection<VirtualMachine> all = getVirtualMachines().values();
+        List<VirtualMachine> vms = new ArrayList<VirtualMachine>(all.size());
+
+        for( VirtualMachine vm : all ) {
+            if( !VmState.TERMINATED.equals(vm.getCurrentState()) ) {
+                vms.add(vm);
+            }
+        }
+        return vms;
+    }
+
+    @Override
+    public void reboot(@Nonnull String vmId) throws CloudException, InternalException {
+        call("RebootInstances");
+        VirtualMachine vm = getRequiredVirtualMachine(vmId);
+
+        vm.setCurrentState(VmState.RUNNING);
+        vm.setLastBootTimestamp(System.currentTimeMillis());
+    }
+
+    @Override
+    public void start(@Nonnull String vmId) throws InternalException, CloudException {
+        call("StartInstances");
+        VirtualMachine vm = getRequiredVirtualMachine(vmId);
+
+        vm.setCurrentState(VmState.RUNNING);
+        vm.setLastBootTimestamp(System.currentTimeMillis());
+    }
+
+    @Override
+    public void stop(@Nonnull String vmId, boolean force) throws InternalException, CloudException {
+        call("StopInstances");
+        getRequiredVirtualMachine(vmId).setCurrentState(VmState.STOPPED);
+    }
+
+    @Override
+    public void terminate(@Nonnull String vmId, @Nullable String explanation) throws InternalException, CloudException {
+        call("TerminateInstances");
+        VirtualMachine vm = getRequiredVirtualMachine(vmId);
+
+        vm.setCurrentState(VmState.TERMINATED);
+        vm.setTerminationTimestamp(System.currentTimeMillis());
+        getVirtualMachines().remove(vmId);
+    }
+
+    @Override
+    protected void updateTagsInCloud(@Nonnull String vmId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        call("CreateTags");
+        VirtualMachine vm = getRequiredVirtualMachine(vmId);
+
+        for( Tag t : tags ) {
+            vm.setTag(t.getKey(), t.getValue());
+        }
+    }
+
+    @Override
+    protected void removeTagsInCloud(@Nonnull String vmId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        call("DeleteTags");
+        VirtualMachine vm = getRequiredVirtualMachine(vmId);
+
+        for( Tag t : tags ) {
+            vm.getTags().remove(t.getKey());
+        }
+    }
+}
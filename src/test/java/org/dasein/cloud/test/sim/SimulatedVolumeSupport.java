@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.Tag;
+import org.dasein.cloud.compute.AbstractVolumeSupport;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.compute.VolumeCapabilities;
+import org.dasein.cloud.compute.VolumeCreateOptions;
+import org.dasein.cloud.compute.VolumeState;
+import org.dasein.cloud.compute.VolumeType;
+import org.dasein.util.uom.storage.Gigabyte;
+import org.dasein.util.uom.storage.Storage;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Volume support for the simulated cloud. Attaching and detaching volumes keeps the volume IDs of the affected
+ * virtual machines in sync.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulatedVolumeSupport extends AbstractVolumeSupport<SimulatedCloudProvider> {
+    public SimulatedVolumeSupport(@Nonnull SimulatedCloudProvider provider) {
+        super(provider);
+    }
+
+    private void call(@Nonnull String operation) throws CloudException {
+        getProvider().getSimulatedCloud().call(getProvider(), operation);
+    }
+
+    private @Nonnull SimulatedCloud.RegionState getState() throws InternalException {
+        return getProvider().getSimulatedCloud().getRegion(getContext());
+    }
+
+    private @Nonnull Volume getRequiredVolume(@Nonnull String volumeId) throws CloudException, InternalException {
+        Volume volume = getState().volumes.get(volumeId);
+
+        if( volume == null ) {
+            throw new CloudException("No such volume: " + volumeId);
+        }
+        return volume;
+    }
+
+    @Override
+    public void attach(@Nonnull String volumeId, @Nonnull String toServer, @Nonnull String deviceId) throws InternalException, CloudException {
+        call("AttachVolume");
+        Volume volume = getRequiredVolume(volumeId);
+        VirtualMachine vm = getState().virtualMachines.get(toServer);
+
+        if( vm == null ) {
+            throw new CloudException("No such virtual machine: " + toServer);
+        }
+        if( volume.getProviderVirtualMachineId() != null ) {
+            throw new CloudException("Volume " + volumeId + " is already attached to " + volume.getProviderVirtualMachineId());
+        }
+        synchronized( vm ) {
+            String[] current = vm.getProviderVolumeIds(getProvider());
+            String[] ids = new String[current == null ? 1 : current.length + 1];
+
+            if( current != null ) {
+                System.arraycopy(current, 0, ids, 0, current.length);
+            }
+            ids[ids.length - 1] = volumeId;
+            vm.setProviderVolumeIds(ids);
+        }
+        volume.setProviderVirtualMachineId(toServer);
+        volume.setDeviceId(deviceId);
+    }
+
+    @Override
+    public @Nonnull String createVolume(@Nonnull VolumeCreateOptions options) throws InternalException, CloudException {
+        call("CreateVolume");
+        ProviderContext ctx = getContext();
+        Volume volume = new Volume();
+        Storage<Gigabyte> size = options.getVolumeSize();
+        String snapshotId = options.getSnapshotId();
+
+        if( snapshotId != null ) {
+            Snapshot snapshot = getState().snapshots.get(snapshotId);
+
+            if( snapshot == null ) {
+                throw new CloudException("No such snapshot: " + snapshotId);
+            }
+            volume.setProviderSnapshotId(snapshotId);
+        }
+        volume.setProviderVolumeId(getState().nextId("vol"));
+        volume.setProviderRegionId(ctx.getRegionId());
+        volume.setProviderDataCenterId(options.getDataCenterId() == null ? ctx.getRegionId() + "a" : options.getDataCenterId());
+        volume.setName(options.getName());
+        volume.setDescription(options.getDescription());
+        volume.setSize(size == null ? new Storage<Gigabyte>(1, Storage.GIGABYTE) : size);
+        volume.setType(VolumeType.SSD);
+        volume.setProviderProductId(options.getVolumeProductId());
+        volume.setProviderVlanId(options.getVlanId());
+        volume.setIops(options.getIops());
+        volume.setCurrentState(VolumeState.AVAILABLE);
+        volume.setCreationTimestamp(System.currentTimeMillis());
+        for( Map.Entry<String,Object> entry : options.getMetaData().entrySet() ) {
+            if( entry.getValue() != null ) {
+                volume.setTag(entry.getKey(), entry.getValue().toString());
+            }
+        }
+        getState().volumes.put(volume.getProviderVolumeId(), volume);
+        return volume.getProviderVolumeId();
+    }
+
+    @Override
+    public void detach(@Nonnull String volumeId, boolean force) throws InternalException, CloudException {
+        call("DetachVolume");
+        Volume volume = getRequiredVolume(volumeId);
+        String vmId = volume.getProviderVirtualMachineId();
+
+        if( vmId == null ) {
+            throw new CloudException("Volume " + volumeId + " is not attached");
+        }
+        VirtualMachine vm = getState().virtualMachines.get(vmId);
+
+        if( vm != null ) {
+            synchronized( vm ) {
+                String[] current = vm.getProviderVolumeIds(getProvider());
+                List<String> ids = new ArrayList<String>();
+
+                if( current != null ) {
+                    for( String id : current ) {
+                        if( !id.equals(volumeId) ) {
+                            ids.add(id);
+                        }
+                    }
+                }
+                vm.setProviderVolumeIds(ids.toArray(new String[ids.size()]));
+            }
+        }
+        volume.setProviderVirtualMachineId(null);
+        volume.setDeviceId(null);
+    }
+
+    @Override
+    public @Nonnull VolumeCapabilities getCapabilities() throws CloudException, InternalException {
+        return SimulatedCapabilities.getInstance(getProvider(), VolumeCapabilities.class);
+    }
+
+    @Override
+    public @Nullable Volume getVolume(@Nonnull String volumeId) throws InternalException, CloudException {
+        call("DescribeVolumes");
+        return getState().volumes.get(volumeId);
+    }
+
+    @Override
+    public boolean isSubscribed() throws CloudException, InternalException {
+        return true;
+    }
+
+    @Override
+    public @Nonnull Iterable<Volume> listVolumes() throws InternalException, CloudException {
+        call("DescribeVolumes");
+        Collection<Volume> all = getState().volumes.values();
+
+        return new ArrayList<Volume>(all);
+    }
+
+    @Override
+    public void remove(@Nonnull String volumeId) throws InternalException, CloudException {
+        call("DeleteVolume");
+        Volume volume = getRequiredVolume(volumeId);
+
+        if( volume.getProviderVirtualMachineId() != null ) {
+            throw new CloudException("Volume " + volumeId + " is attached to " + volume.getProviderVirtualMachineId());
+        }
+        volume.setCurrentState(VolumeState.DELETED);
+        getState().volumes.remove(volumeId);
+    }
+
+    @Override
+    protected void updateTagsInCloud(@Nonnull String volumeId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        call("CreateTags");
+        Volume volume = getRequiredVolume(volumeId);
+
+        for( Tag t : tags ) {
+            volume.setTag(t.getKey(), t.getValue());
+        }
+    }
+
+    @Override
+    protected void removeTagsInCloud(@Nonnull String volumeId, @Nonnull Tag... tags) throws CloudException, InternalException {
+        call("DeleteTags");
+        Volume volume = getRequiredVolume(volumeId);
+
+        for( Tag t : tags ) {
+            volume.getTags().remove(t.getKey());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.test.sim;
+
+import javax.annotation.Nonnegative;
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Describes the behaviour of a {@link SimulatedCloud}: how long each API call takes, how often calls fail or are
+ * throttled, and the seed used when generating data sets. All values default to a perfectly behaved cloud that answers
+ * instantly.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class SimulationSettings {
+    static public @Nonnull SimulationSettings getInstance() {
+        return new SimulationSettings();
+    }
+
+    private double           errorRate             = 0.0;
+    private long             latencyInMillis       = 0L;
+    private long             latencyJitterInMillis = 0L;
+    private int              maxCallsPerSecond     = 0;
+    private Map<String,Long> operationLatency      = new HashMap<String, Long>();
+    private long             seed                  = 42L;
+    private double           throttleRate          = 0.0;
+
+    private SimulationSettings() { }
+
+    /**
+     * @return the fraction of calls (0.0 to 1.0) that fail with a general server error
+     */
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * @param operation the simulated API operation being invoked
+     * @return the base latency for the operation in milliseconds
+     */
+    public @Nonnegative long getLatencyInMillis(@Nonnull String operation) {
+        Long l = operationLatency.get(operation);
+
+        return (l == null ? latencyInMillis : l);
+    }
+
+    /**
+     * @return the maximum amount of random latency added to the base latency of each call
+     */
+    public @Nonnegative long getLatencyJitterInMillis() {
+        return latencyJitterInMillis;
+    }
+
+    /**
+     * @return the number of calls per second the simulated cloud accepts before throttling, 0 for no limit
+     */
+    public @Nonnegative int getMaxCallsPerSecond() {
+        return maxCallsPerSecond;
+    }
+
+    /**
+     * @return the seed for the random number generator driving data generation and fault injection
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the fraction of calls (0.0 to 1.0) that are randomly throttled regardless of call rate
+     */
+    public double getThrottleRate() {
+        return throttleRate;
+    }
+
+    public @Nonnull SimulationSettings withErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public @Nonnull SimulationSettings withLatency(@Nonnegative long latencyInMillis, @Nonnegative long jitterInMillis) {
+        this.latencyInMillis = latencyInMillis;
+        this.latencyJitterInMillis = jitterInMillis;
+        return this;
+    }
+
+    public @Nonnull SimulationSettings withMaxCallsPerSecond(@Nonnegative int maxCallsPerSecond) {
+        this.maxCallsPerSecond = maxCallsPerSecond;
+        return this;
+    }
+
+    public @Nonnull SimulationSettings withOperationLatency(@Nonnull String operation, @Nonnegative long latencyInMillis) {
+        operationLatency.put(operation, latencyInMillis);
+        return this;
+    }
+
+    public @Nonnull SimulationSettings withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public @Nonnull SimulationSettings withThrottleRate(double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+}
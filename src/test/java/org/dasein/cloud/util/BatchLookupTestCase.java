@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the batch lookup helpers and the default batch lookups built on them.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class BatchLookupTestCase {
+    static private final BatchLookup.IdFunction<String> IDENTITY = new BatchLookup.IdFunction<String>() {
+        @Override
+        public String getId(@Nonnull String resource) {
+            return resource;
+        }
+    };
+
+    @Test
+    public void indexKeepsRequestOrderAndSkipsMissing() {
+        Map<String,String> found = BatchLookup.index(Arrays.asList("c", "x", "a", "c"), Arrays.asList("a", "b", "c"), IDENTITY);
+
+        assertEquals(Arrays.asList("c", "a"), new ArrayList<String>(found.keySet()));
+    }
+
+    @Test
+    public void indexStopsOnceEverythingIsFound() {
+        final AtomicInteger read = new AtomicInteger(0);
+        final List<String> listing = Arrays.asList("a", "b", "c", "d", "e");
+        Iterable<String> counting = new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                final Iterator<String> it = listing.iterator();
+
+                return new Iterator<String>() {
+                    public boolean hasNext() { return it.hasNext(); }
+                    public String next() { read.incrementAndGet(); return it.next(); }
+                    public void remove() { throw new UnsupportedOperationException(); }
+                };
+            }
+        };
+
+        assertEquals(2, BatchLookup.index(Arrays.asList("b", "a"), counting, IDENTITY).size());
+        assertEquals(2, read.get());
+    }
+
+    @Test
+    public void chunksRespectTheChunkSize() throws Exception {
+        final AtomicInteger calls = new AtomicInteger(0);
+        List<String> ids = new ArrayList<String>();
+
+        for( int i=0; i<95; i++ ) {
+            ids.add("id-" + i);
+        }
+        Map<String,String> found = BatchLookup.lookupInChunks(ids, 20, 4, new BatchLookup.ChunkLookup<String>() {
+            @Override
+            public @Nonnull Iterable<String> lookup(@Nonnull List<String> chunk) {
+                calls.incrementAndGet();
+                assertTrue(chunk.size() <= 20);
+                // the cloud does not know about every tenth ID
+                List<String> result = new ArrayList<String>();
+
+                for( String id : chunk ) {
+                    if( !id.endsWith("0") ) {
+                        result.add(id);
+                    }
+                }
+                return result;
+            }
+        }, IDENTITY);
+
+        assertEquals(5, calls.get());
+        assertEquals(85, found.size());
+        assertEquals("id-1", found.keySet().iterator().next());
+    }
+
+    @Test
+    public void firstFailureIsThrown() throws Exception {
+        try {
+            BatchLookup.lookupInChunks(Arrays.asList("a", "b", "c"), 1, 2, new BatchLookup.ChunkLookup<String>() {
+                @Override
+                public @Nonnull Iterable<String> lookup(@Nonnull List<String> chunk) throws CloudException {
+                    if( chunk.contains("b") ) {
+                        throw new CloudException("Boom");
+                    }
+                    return chunk;
+                }
+            }, IDENTITY);
+            fail("The chunk failure should propagate");
+        }
+        catch( CloudException expected ) {
+            assertEquals("Boom", expected.getMessage());
+        }
+    }
+
+    @Test(expected=InternalException.class)
+    public void rejectsEmptyChunks() throws Exception {
+        BatchLookup.lookupInChunks(Collections.singletonList("a"), 0, 1, new BatchLookup.ChunkLookup<String>() {
+            @Override
+            public @Nonnull Iterable<String> lookup(@Nonnull List<String> chunk) {
+                return chunk;
+            }
+        }, IDENTITY);
+    }
+
+    @Test
+    public void defaultVirtualMachineLookupListsOnce() throws Exception {
+        String endpoint = "sim://batch-lookup";
+        Cloud cloud = Cloud.register("Simulator", "Batch Lookup", endpoint, SimulatedCloudProvider.class);
+
+        SimulatedCloud.reset(endpoint);
+        SimulatedCloud sim = SimulatedCloud.getInstance(endpoint);
+
+        sim.populate("123456789", "sim-1", 50);
+        CloudProvider provider = cloud.createContext("123456789", "sim-1").connect();
+
+        try {
+            List<String> ids = new ArrayList<String>(sim.getRegion("123456789", "sim-1").virtualMachines.keySet()).subList(0, 10);
+
+            ids.add("i-missing");
+            //noinspection ConstantConditions
+            VirtualMachineSupport support = provider.getComputeServices().getVirtualMachineSupport();
+            long before = sim.getTotalCalls();
+            Map<String,VirtualMachine> vms = support.getVirtualMachines(ids);
+
+            assertEquals(1, sim.getTotalCalls() - before);
+            assertEquals(ids.subList(0, 10), new ArrayList<String>(vms.keySet()));
+        }
+        finally {
+            provider.close();
+            SimulatedCloud.reset(endpoint);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the durable snapshot tier of {@link Cache}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class CacheSnapshotStoreTestCase {
+    static private final String ENDPOINT = "sim://cache-snapshot";
+    static private final String REGION   = "sim-1";
+
+    static private final AtomicInteger names = new AtomicInteger(0);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CloudProvider      provider;
+    private CacheSnapshotStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Cache Snapshot", ENDPOINT, SimulatedCloudProvider.class);
+
+        provider = cloud.createContext("acct", REGION, new ProviderContext.Value<String>(CacheSnapshotStore.DIRECTORY_PROPERTY, folder.getRoot().getAbsolutePath())).connect();
+        store = CacheSnapshotStore.getInstance(provider.getContext());
+        assertNotNull(store);
+    }
+
+    @After
+    public void tearDown() {
+        if( provider != null ) {
+            provider.close();
+        }
+    }
+
+    private @Nonnull String nextName() {
+        return "snapshot-test-" + names.incrementAndGet();
+    }
+
+    private @Nonnull String fullName(@Nonnull String name) {
+        return provider.getClass().getName() + "." + name;
+    }
+
+    static private @Nonnull <T> List<T> list(@Nonnull Iterable<T> items) {
+        List<T> list = new ArrayList<T>();
+
+        for( T item : items ) {
+            list.add(item);
+        }
+        return list;
+    }
+
+    @Test
+    public void putWritesSnapshot() throws Exception {
+        String name = nextName();
+        Cache<String> cache = Cache.getInstance(provider, name, String.class, CacheLevel.REGION_ACCOUNT);
+        //noinspection ConstantConditions
+        ProviderContext ctx = provider.getContext();
+
+        cache.put(ctx, Arrays.asList("a", "b", "c"));
+        store.flush();
+
+        CacheSnapshotStore.Snapshot<String> snapshot = store.read(fullName(name), cache.getScope(ctx), String.class);
+
+        assertNotNull(snapshot);
+        assertEquals(Arrays.asList("a", "b", "c"), snapshot.items);
+        assertNull(store.read(fullName(name), cache.getScope(ctx), Integer.class));
+    }
+
+    @Test
+    public void freshSnapshotIsServedAfterRestart() throws Exception {
+        String name = nextName();
+        Cache<Architecture> cache = Cache.getInstance(provider, name, Architecture.class, CacheLevel.REGION);
+        //noinspection ConstantConditions
+        ProviderContext ctx = provider.getContext();
+
+        // a previous process cached the listing; this process has never seen the cache
+        store.write(fullName(name), cache.getScope(ctx), Architecture.class, Arrays.asList(Architecture.I64, Architecture.POWER), System.currentTimeMillis());
+        store.flush();
+
+        Iterable<Architecture> items = cache.get(ctx);
+
+        assertNotNull(items);
+        assertEquals(Arrays.asList(Architecture.I64, Architecture.POWER), list(items));
+    }
+
+    @Test
+    public void staleSnapshotIsServedWhileRevalidating() throws Exception {
+        String name = nextName();
+        Cache<String> cache = Cache.getInstance(provider, name, String.class, CacheLevel.CLOUD_ACCOUNT);
+        //noinspection ConstantConditions
+        final ProviderContext ctx = provider.getContext();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger(0);
+        Cache.Loader<String> loader = new Cache.Loader<String>() {
+            @Override
+            public @Nonnull Iterable<String> load() {
+                loads.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch( InterruptedException ignore ) {
+                    // give up waiting
+                }
+                return Arrays.asList("live");
+            }
+        };
+
+        store.write(fullName(name), cache.getScope(ctx), String.class, Arrays.asList("stale"), System.currentTimeMillis() - 2L * 60L * 60L * 1000L);
+        store.flush();
+
+        assertNull(cache.get(ctx));
+        assertEquals(Arrays.asList("stale"), list(cache.get(ctx, loader)));
+        assertEquals(Arrays.asList("stale"), list(cache.get(ctx, loader)));
+        release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        Iterable<String> items = cache.get(ctx);
+
+        while( items == null && System.currentTimeMillis() < deadline ) {
+            Thread.sleep(10L);
+            items = cache.get(ctx);
+        }
+        assertNotNull(items);
+        assertEquals(Arrays.asList("live"), list(items));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void missWithoutSnapshotLoadsSynchronously() throws Exception {
+        Cache<String> cache = Cache.getInstance(provider, nextName(), String.class, CacheLevel.CLOUD);
+        //noinspection ConstantConditions
+        ProviderContext ctx = provider.getContext();
+
+        assertEquals(Arrays.asList("x"), list(cache.get(ctx, new Cache.Loader<String>() {
+            @Override
+            public @Nonnull Iterable<String> load() {
+                return Arrays.asList("x");
+            }
+        })));
+        assertEquals(Arrays.asList("x"), list(cache.get(ctx)));
+    }
+
+    @Test
+    public void lazyListingsAreNotPersisted() throws Exception {
+        String name = nextName();
+        Cache<String> cache = Cache.getInstance(provider, name, String.class, CacheLevel.REGION_ACCOUNT);
+        //noinspection ConstantConditions
+        ProviderContext ctx = provider.getContext();
+
+        cache.put(ctx, new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return Arrays.asList("once").iterator();
+            }
+        });
+        store.flush();
+        assertNull(store.read(fullName(name), cache.getScope(ctx), String.class));
+    }
+
+    @Test
+    public void clearDeletesSnapshots() throws Exception {
+        String name = nextName();
+        Cache<String> cache = Cache.getInstance(provider, name, String.class, CacheLevel.REGION_ACCOUNT);
+        //noinspection ConstantConditions
+        ProviderContext ctx = provider.getContext();
+
+        cache.put(ctx, Arrays.asList("a"));
+        store.flush();
+        assertNotNull(store.read(fullName(name), cache.getScope(ctx), String.class));
+        cache.clear();
+        store.flush();
+        assertNull(store.read(fullName(name), cache.getScope(ctx), String.class));
+        assertNull(cache.get(ctx));
+    }
+
+    @Test
+    public void clearDeletesSnapshotsThisCacheNeverRead() throws Exception {
+        String name = nextName();
+        Cache<String> cache = Cache.getInstance(provider, name, String.class, CacheLevel.REGION_ACCOUNT);
+        //noinspection ConstantConditions
+        ProviderContext ctx = provider.getContext();
+
+        // written by a previous process
+        store.write(fullName(name), cache.getScope(ctx), String.class, Arrays.asList("a"), System.currentTimeMillis() - 1000L);
+        store.flush();
+        cache.clear();
+        store.flush();
+        assertNull(store.read(fullName(name), cache.getScope(ctx), String.class));
+        assertNull(cache.get(ctx));
+    }
+
+    @Test
+    public void snapshotsAreReadOncePerScope() throws Exception {
+        String name = nextName();
+        Cache<String> cache = Cache.getInstance(provider, name, String.class, CacheLevel.REGION_ACCOUNT);
+        //noinspection ConstantConditions
+        ProviderContext ctx = provider.getContext();
+
+        assertNull(cache.get(ctx));
+        // a snapshot appearing behind the cache's back is not looked for again
+        store.write(fullName(name), cache.getScope(ctx), String.class, Arrays.asList("a"), System.currentTimeMillis());
+        store.flush();
+        assertNull(cache.get(ctx));
+    }
+
+    @Test
+    public void modelListingsRoundTrip() throws Exception {
+        String name = nextName();
+        List<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+
+        for( int i=0; i<20; i++ ) {
+            VirtualMachine vm = new VirtualMachine();
+
+            vm.setProviderVirtualMachineId("vm-" + i);
+            vm.setName("vm " + i);
+            vm.setProviderRegionId(REGION);
+            vm.setCurrentState(VmState.RUNNING);
+            vms.add(vm);
+        }
+        store.write(name, "scope", VirtualMachine.class, vms, 1234L);
+        store.flush();
+
+        CacheSnapshotStore.Snapshot<VirtualMachine> snapshot = store.read(name, "scope", VirtualMachine.class);
+
+        assertNotNull(snapshot);
+        assertEquals(1234L, snapshot.timestamp);
+        assertEquals(vms.size(), snapshot.items.size());
+        for( int i=0; i<vms.size(); i++ ) {
+            assertEquals(vms.get(i).getProviderVirtualMachineId(), snapshot.items.get(i).getProviderVirtualMachineId());
+            assertEquals(VmState.RUNNING, snapshot.items.get(i).getCurrentState());
+        }
+    }
+
+    @Test
+    public void disabledWithoutDirectory() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Cache Snapshot", ENDPOINT, SimulatedCloudProvider.class);
+
+        assertNull(CacheSnapshotStore.getInstance(cloud.createContext("acct", REGION)));
+        assertNull(CacheSnapshotStore.getCodec(Object.class));
+        assertNotNull(CacheSnapshotStore.getCodec(Architecture.class));
+        // serializable types need an explicit codec
+        assertNull(CacheSnapshotStore.getCodec(Integer.class));
+        assertFalse(CacheSnapshotStore.isPersistable(Integer.class));
+        assertTrue(CacheSnapshotStore.isPersistable(VirtualMachine.class));
+    }
+}
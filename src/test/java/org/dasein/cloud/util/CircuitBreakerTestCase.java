@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the state transitions of {@link CircuitBreaker}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class CircuitBreakerTestCase {
+    private final CloudException outage = new CloudException(CloudErrorType.COMMUNICATION, 502, "BadGateway", "Down");
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.clear();
+    }
+
+    @Test
+    public void opensAfterConsecutiveOutages() {
+        CircuitBreaker breaker = CircuitBreaker.getInstance("open", 3, 60000L);
+
+        breaker.onFailure(outage);
+        breaker.onFailure(outage);
+        breaker.onSuccess();
+        breaker.onFailure(outage);
+        breaker.onFailure(outage);
+        assertTrue("Failures that were not consecutive should not open the breaker", breaker.allowRequest());
+        breaker.onFailure(outage);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse("Open breaker should refuse calls", breaker.allowRequest());
+    }
+
+    @Test
+    public void clientErrorsDoNotTrip() {
+        CircuitBreaker breaker = CircuitBreaker.getInstance("client", 1, 60000L);
+
+        breaker.onFailure(new CloudException(CloudErrorType.AUTHENTICATION, 403, "Forbidden", "No"));
+        breaker.onFailure(new CloudException(CloudErrorType.GENERAL, 404, "NotFound", "No"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpenLetsOneProbeThrough() throws InterruptedException {
+        CircuitBreaker breaker = CircuitBreaker.getInstance("probe", 1, 50L);
+
+        breaker.onFailure(outage);
+        assertFalse(breaker.allowRequest());
+        Thread.sleep(100L);
+        assertTrue("First call after the open period should be let through", breaker.allowRequest());
+        assertFalse("Only one probe should be let through", breaker.allowRequest());
+        breaker.onFailure(outage);
+        assertEquals("Failed probe should reopen the breaker", CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(100L);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals("Successful probe should close the breaker", CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void throttlesAreNotOutages() {
+        CircuitBreaker breaker = CircuitBreaker.getInstance("throttle", 1, 60000L);
+
+        breaker.onFailure(new CloudException(CloudErrorType.THROTTLING, 503, "ServiceUnavailable", "Slow down"));
+        assertEquals("A 503 throttle belongs to the rate limiter, not the breaker", CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void releaseFreesTheProbe() throws InterruptedException {
+        CircuitBreaker breaker = CircuitBreaker.getInstance("release", 1, 50L);
+
+        breaker.onFailure(outage);
+        Thread.sleep(100L);
+        assertTrue("First call after the open period should be let through", breaker.allowRequest());
+        assertFalse("Only one probe should be let through", breaker.allowRequest());
+        breaker.release();
+        assertTrue("A released probe should let the next caller through", breaker.allowRequest());
+    }
+}
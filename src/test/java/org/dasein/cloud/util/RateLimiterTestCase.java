@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the token bucket pacing and AIMD adaptation of {@link RateLimiter}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class RateLimiterTestCase {
+    @After
+    public void tearDown() {
+        RateLimiter.clear();
+    }
+
+    @Test
+    public void sharesInstancesByName() {
+        assertSame("Limiters with the same name should be shared", RateLimiter.getInstance("test", 10.0), RateLimiter.getInstance("test", 20.0));
+    }
+
+    @Test
+    public void limitingIsOptIn() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Rate Limiter", "sim://ratelimiter", SimulatedCloudProvider.class);
+        CloudProvider plain = cloud.createContext("acct", "region-1").connect();
+        CloudProvider limited = cloud.createContext("acct", "region-1", new ProviderContext.Value<String>(RateLimiter.MAX_RATE_PROPERTY, "5")).connect();
+
+        assertNull("Contexts without a rate should not be limited", RateLimiter.getInstance(plain, "compute"));
+
+        RateLimiter limiter = RateLimiter.getInstance(limited, "compute");
+
+        assertNotNull("A context with a rate should be limited", limiter);
+        assertEquals("The context's rate should be the maximum", 5.0, limiter.getMaxRate(), 0.001);
+    }
+
+    @Test
+    public void boundsTheNumberOfLimiters() {
+        RateLimiter first = RateLimiter.getInstance("first", 10.0);
+
+        for( int i = 0; i < RateLimiter.MAX_LIMITERS; i++ ) {
+            RateLimiter.getInstance("limiter-" + i, 10.0);
+        }
+        assertEquals("Limiters beyond the maximum should be dropped", RateLimiter.MAX_LIMITERS, new RateLimiter.RateLimiterDelegate().getLimiters().length);
+        assertNotSame("The least recently used limiter should have been dropped", first, RateLimiter.getInstance("first", 10.0));
+    }
+
+    @Test
+    public void queuesCallersOverTheRate() throws Exception {
+        RateLimiter limiter = RateLimiter.getInstance("pace", 20.0);
+        long start = System.currentTimeMillis();
+
+        // the first 20 calls drain the one second burst, the next 5 must wait roughly 50ms each
+        for( int i = 0; i < 25; i++ ) {
+            limiter.acquire();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("Calls over the rate were not paced: " + elapsed + "ms", elapsed >= 200L);
+        assertTrue("Calls were paced far too slowly: " + elapsed + "ms", elapsed < 2000L);
+    }
+
+    @Test
+    public void throttlingHalvesRateOncePerBurst() {
+        RateLimiter limiter = RateLimiter.getInstance("aimd", 10.0);
+        CloudException throttle = new CloudException(CloudErrorType.THROTTLING, 503, "Throttling", "Slow down");
+
+        limiter.onFailure(throttle);
+        assertEquals("Throttle should halve the rate", 5.0, limiter.getRate(), 0.001);
+        limiter.onFailure(new CloudException(CloudErrorType.GENERAL, 429, "TooManyRequests", "Slow down"));
+        assertEquals("A second throttle in the same burst should not decrease again", 5.0, limiter.getRate(), 0.001);
+        assertEquals("Both throttles should be counted", 2, limiter.getThrottleCount());
+        limiter.onFailure(new CloudException(CloudErrorType.GENERAL, 500, "InternalError", "Oops"));
+        assertEquals("Non-throttle failures must not count", 2, limiter.getThrottleCount());
+    }
+
+    @Test
+    public void throttlesAcrossARoundTripDecreaseOnce() throws Exception {
+        RateLimiter limiter = RateLimiter.getInstance("burst", 100.0);
+
+        // the responses to one burst straggle in over a round trip, far longer than one call interval at 100/s
+        for( int i=0; i<10; i++ ) {
+            limiter.onThrottle();
+            Thread.sleep(10L);
+        }
+        assertEquals("One burst should halve the rate exactly once", 50.0, limiter.getRate(), 0.001);
+        assertEquals(10, limiter.getThrottleCount());
+        Thread.sleep(RateLimiter.THROTTLE_COOL_DOWN_MILLIS);
+        limiter.onThrottle();
+        assertEquals("A later burst should halve the rate again", 25.0, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void successRecoversTowardsMaximum() {
+        RateLimiter limiter = RateLimiter.getInstance("recover", 10.0);
+
+        limiter.onThrottle();
+        for( int i = 0; i < 1000; i++ ) {
+            limiter.onSuccess();
+        }
+        assertEquals("Rate should recover to the maximum", 10.0, limiter.getRate(), 0.001);
+        limiter.setMaxRate(4.0);
+        assertEquals("Lowering the maximum should lower the rate", 4.0, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void exposesLimitersOverJmx() throws Exception {
+        RateLimiter.getInstance("jmx", 10.0).onThrottle();
+
+        RateLimiter.RateLimiterDelegate delegate = new RateLimiter.RateLimiterDelegate();
+
+        assertTrue("Limiter should be listed", Arrays.asList(delegate.getLimiters()).contains("jmx"));
+        assertEquals("Rate should be visible", 5.0, delegate.getRate("jmx"), 0.001);
+        assertEquals("Queue should be empty", 0, delegate.getQueueDepth("jmx"));
+        assertTrue("MBean should be registered", ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName("org.dasein:type=RateLimiter")));
+    }
+}
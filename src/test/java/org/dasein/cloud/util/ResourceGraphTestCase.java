@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.network.Subnet;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.dasein.cloud.util.watch.ResourceChangeListener;
+import org.dasein.cloud.util.watch.ResourceWatcher;
+import org.dasein.cloud.util.watch.WatchSources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the resource relationship graph and its reverse lookups.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ResourceGraphTestCase {
+    static private final String ACCOUNT  = "123456789";
+    static private final String ENDPOINT = "sim://resource-graph";
+    static private final String REGION   = "sim-1";
+
+    private Cloud         cloud;
+    private CloudProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        cloud = Cloud.register("Simulator", "Resource Graph", ENDPOINT, SimulatedCloudProvider.class);
+        SimulatedCloud.reset(ENDPOINT);
+        SimulatedCloud.getInstance(ENDPOINT).populate(ACCOUNT, REGION, 30, 40, 20, 3, 4, 2);
+        provider = cloud.createContext(ACCOUNT, REGION).connect();
+    }
+
+    @After
+    public void tearDown() {
+        provider.close();
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    private @Nonnull SimulatedCloud.RegionState region() {
+        return SimulatedCloud.getInstance(ENDPOINT).getRegion(ACCOUNT, REGION);
+    }
+
+    static private @Nonnull ResourceReference ref(@Nonnull String type, @Nonnull String id) {
+        return ResourceReference.getInstance(type, id);
+    }
+
+    @Test
+    public void answersReverseQueriesFromOneSweep() throws Exception {
+        ResourceGraph graph = ResourceGraph.build(provider);
+        int protectedCount = 0;
+
+        for( String firewallId : region().firewalls.keySet() ) {
+            Set<ResourceReference> expected = new HashSet<ResourceReference>();
+
+            for( VirtualMachine vm : region().virtualMachines.values() ) {
+                if( vm.getProviderFirewallIds() != null && Arrays.asList(vm.getProviderFirewallIds()).contains(firewallId) ) {
+                    expected.add(ref(ResourceReference.VIRTUAL_MACHINE, vm.getProviderVirtualMachineId()));
+                }
+            }
+            assertEquals(expected, graph.getSources(ref(ResourceReference.FIREWALL, firewallId), ResourceGraph.Relationship.PROTECTED_BY));
+            protectedCount += expected.size();
+        }
+        assertTrue(protectedCount > 0);
+        for( Subnet subnet : region().subnets.values() ) {
+            Set<ResourceReference> expected = new HashSet<ResourceReference>();
+
+            for( VirtualMachine vm : region().virtualMachines.values() ) {
+                if( subnet.getProviderSubnetId().equals(vm.getProviderSubnetId()) ) {
+                    expected.add(ref(ResourceReference.VIRTUAL_MACHINE, vm.getProviderVirtualMachineId()));
+                }
+            }
+            assertEquals(expected, graph.getSources(ref(ResourceReference.SUBNET, subnet.getProviderSubnetId()), ResourceGraph.Relationship.IN_SUBNET));
+        }
+    }
+
+    @Test
+    public void followsSnapshotsBackingTheVolumesOfAVirtualMachine() throws Exception {
+        ResourceGraph graph = ResourceGraph.build(provider);
+        int backing = 0;
+
+        for( VirtualMachine vm : region().virtualMachines.values() ) {
+            Set<ResourceReference> expected = new HashSet<ResourceReference>();
+            Set<ResourceReference> actual = new HashSet<ResourceReference>();
+
+            for( Volume volume : region().volumes.values() ) {
+                if( vm.getProviderVirtualMachineId().equals(volume.getProviderVirtualMachineId()) ) {
+                    for( Snapshot snapshot : region().snapshots.values() ) {
+                        if( volume.getProviderVolumeId().equals(snapshot.getVolumeId()) ) {
+                            expected.add(ref(ResourceReference.SNAPSHOT, snapshot.getProviderSnapshotId()));
+                        }
+                    }
+                }
+            }
+            for( ResourceReference attached : graph.getSources(ref(ResourceReference.VIRTUAL_MACHINE, vm.getProviderVirtualMachineId()), ResourceGraph.Relationship.ATTACHED_TO) ) {
+                if( attached.getResourceType().equals(ResourceReference.VOLUME) ) {
+                    actual.addAll(graph.getSources(attached, ResourceGraph.Relationship.SNAPSHOT_OF));
+                }
+            }
+            assertEquals(expected, actual);
+            backing += actual.size();
+        }
+        assertTrue(backing > 0);
+    }
+
+    @Test
+    public void blastRadiusOfAFirewallReachesAttachedResources() throws Exception {
+        ResourceGraph graph = ResourceGraph.build(provider);
+        String firewallId = region().firewalls.keySet().iterator().next();
+        ResourceReference firewall = ref(ResourceReference.FIREWALL, firewallId);
+        Set<ResourceReference> vms = graph.getSources(firewall, ResourceGraph.Relationship.PROTECTED_BY);
+        Set<ResourceReference> radius = graph.getDependents(firewall, 2);
+
+        assertTrue(radius.containsAll(vms));
+        assertEquals(vms, graph.getDependents(firewall, 1));
+        for( Volume volume : region().volumes.values() ) {
+            String vmId = volume.getProviderVirtualMachineId();
+
+            if( vmId != null && vms.contains(ref(ResourceReference.VIRTUAL_MACHINE, vmId)) ) {
+                assertTrue(radius.contains(ref(ResourceReference.VOLUME, volume.getProviderVolumeId())));
+            }
+        }
+        assertFalse(radius.contains(firewall));
+    }
+
+    @Test
+    public void watcherEventsKeepTheGraphCurrent() throws Exception {
+        ResourceGraph graph = ResourceGraph.getInstance();
+        //noinspection ConstantConditions
+        ResourceWatcher<Volume> watcher = ResourceWatcher.getInstance(WatchSources.forVolumes(provider.getComputeServices().getVolumeSupport()));
+        ResourceChangeListener<Volume> listener = graph.getListener(ResourceReference.VOLUME);
+
+        listener.changed(watcher.poll(), watcher.getCheckpoint());
+
+        Volume attached = null;
+
+        for( Volume volume : region().volumes.values() ) {
+            if( volume.getProviderVirtualMachineId() != null ) {
+                attached = volume;
+                break;
+            }
+        }
+        assertNotNull(attached);
+
+        ResourceReference vm = ref(ResourceReference.VIRTUAL_MACHINE, attached.getProviderVirtualMachineId());
+        ResourceReference volume = ref(ResourceReference.VOLUME, attached.getProviderVolumeId());
+
+        assertTrue(graph.getSources(vm, ResourceGraph.Relationship.ATTACHED_TO).contains(volume));
+
+        attached.setProviderVirtualMachineId(null);
+        listener.changed(watcher.poll(), watcher.getCheckpoint());
+        assertFalse(graph.getSources(vm, ResourceGraph.Relationship.ATTACHED_TO).contains(volume));
+        assertTrue(graph.getTargets(volume, ResourceGraph.Relationship.ATTACHED_TO).isEmpty());
+    }
+
+    @Test
+    public void removingAResourceDropsEdgesInBothDirections() throws Exception {
+        ResourceGraph graph = ResourceGraph.build(provider);
+        String firewallId = region().firewalls.keySet().iterator().next();
+        ResourceReference firewall = ref(ResourceReference.FIREWALL, firewallId);
+        Set<ResourceReference> vms = graph.getSources(firewall, ResourceGraph.Relationship.PROTECTED_BY);
+
+        graph.remove(firewall);
+        assertTrue(graph.getSources(firewall, ResourceGraph.Relationship.PROTECTED_BY).isEmpty());
+        for( ResourceReference vm : vms ) {
+            assertFalse(graph.getTargets(vm, ResourceGraph.Relationship.PROTECTED_BY).contains(firewall));
+        }
+    }
+}
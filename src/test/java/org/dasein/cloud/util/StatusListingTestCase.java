@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.ResourceStatus;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the cached, lazily projected status listings.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class StatusListingTestCase {
+    static private final String ACCOUNT  = "123456789";
+    static private final String ENDPOINT = "sim://status-listing";
+    static private final String REGION   = "sim-1";
+
+    private Cloud cloud;
+
+    @Before
+    public void setUp() {
+        cloud = Cloud.register("Simulator", "Status Listing", ENDPOINT, SimulatedCloudProvider.class);
+        SimulatedCloud.reset(ENDPOINT);
+        SimulatedCloud.getInstance(ENDPOINT).populate(ACCOUNT, REGION, 25);
+    }
+
+    @After
+    public void tearDown() {
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    private int count(@Nonnull Iterable<ResourceStatus> status) {
+        int count = 0;
+
+        for( ResourceStatus ignore : status ) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void projectionIsLazy() {
+        final AtomicInteger read = new AtomicInteger(0);
+        Iterable<ResourceStatus> status = StatusListing.project(Arrays.asList("a", null, "b", "skip"), new StatusListing.StatusFunction<String>() {
+            @Override
+            public ResourceStatus getStatus(@Nonnull String resource) {
+                read.incrementAndGet();
+                return (resource.equals("skip") ? null : new ResourceStatus(resource, true));
+            }
+        });
+
+        assertEquals(0, read.get());
+        Iterator<ResourceStatus> it = status.iterator();
+
+        assertEquals("a", it.next().getProviderResourceId());
+        assertEquals(1, read.get());
+        assertEquals("b", it.next().getProviderResourceId());
+        assertFalse(it.hasNext());
+        assertEquals(3, read.get());
+    }
+
+    private @Nonnull CloudProvider connect(@Nonnull String ttl) throws Exception {
+        return cloud.createContext(ACCOUNT, REGION, new ProviderContext.Value<String>(StatusListing.TTL_PROPERTY, ttl)).connect();
+    }
+
+    @Test
+    public void repeatedListingsShareOneCall() throws Exception {
+        CloudProvider provider = connect("10");
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        try {
+            //noinspection ConstantConditions
+            VirtualMachineSupport support = provider.getComputeServices().getVirtualMachineSupport();
+            long before = sim.getTotalCalls();
+
+            assertEquals(25, count(support.listVirtualMachineStatus()));
+            assertEquals(25, count(support.listVirtualMachineStatus()));
+            assertEquals(1, sim.getTotalCalls() - before);
+
+            StatusListing.invalidate(provider, "VirtualMachine");
+            assertEquals(25, count(support.listVirtualMachineStatus()));
+            assertEquals(2, sim.getTotalCalls() - before);
+        }
+        finally {
+            StatusListing.invalidate(provider, "VirtualMachine");
+            provider.close();
+        }
+    }
+
+    @Test
+    public void cachingIsOptIn() throws Exception {
+        CloudProvider provider = cloud.createContext(ACCOUNT, REGION).connect();
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        try {
+            //noinspection ConstantConditions
+            VirtualMachineSupport support = provider.getComputeServices().getVirtualMachineSupport();
+            long before = sim.getTotalCalls();
+
+            assertEquals(25, count(support.listVirtualMachineStatus()));
+            assertEquals(25, count(support.listVirtualMachineStatus()));
+            assertEquals("Without a lifetime every listing should go to the cloud", 2, sim.getTotalCalls() - before);
+        }
+        finally {
+            provider.close();
+        }
+    }
+
+    @Test
+    public void cachedListingsStreamAndAreStoredOnlyWhenComplete() throws Exception {
+        CloudProvider provider = connect("10");
+        final AtomicInteger calls = new AtomicInteger(0);
+        final AtomicInteger read = new AtomicInteger(0);
+        StatusListing.StatusSource source = new StatusListing.StatusSource() {
+            @Override
+            public @Nonnull Iterable<ResourceStatus> listStatus() {
+                calls.incrementAndGet();
+                return StatusListing.project(Arrays.asList("a", "b", "c"), new StatusListing.StatusFunction<String>() {
+                    @Override
+                    public ResourceStatus getStatus(@Nonnull String resource) {
+                        read.incrementAndGet();
+                        return new ResourceStatus(resource, true);
+                    }
+                });
+            }
+        };
+
+        try {
+            Iterator<ResourceStatus> it = StatusListing.list(provider, "Streamed", source).iterator();
+
+            assertEquals("a", it.next().getProviderResourceId());
+            assertEquals("The listing should be read as it is iterated", 1, read.get());
+            assertEquals(3, count(StatusListing.list(provider, "Streamed", source)));
+            assertEquals("A partly read listing should not have been cached", 2, calls.get());
+            assertEquals(3, count(StatusListing.list(provider, "Streamed", source)));
+            assertEquals("A completely read listing should have been cached", 2, calls.get());
+        }
+        finally {
+            StatusListing.invalidate(provider, "Streamed");
+            provider.close();
+        }
+    }
+
+    @Test
+    public void contextsKeepTheirOwnTimeToLive() throws Exception {
+        CloudProvider brief = connect("1");
+        CloudProvider lasting = connect("60");
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        try {
+            //noinspection ConstantConditions
+            VirtualMachineSupport briefSupport = brief.getComputeServices().getVirtualMachineSupport();
+            //noinspection ConstantConditions
+            VirtualMachineSupport lastingSupport = lasting.getComputeServices().getVirtualMachineSupport();
+            long before = sim.getTotalCalls();
+
+            assertEquals(25, count(briefSupport.listVirtualMachineStatus()));
+            assertEquals(25, count(lastingSupport.listVirtualMachineStatus()));
+            assertEquals(2, sim.getTotalCalls() - before);
+            Thread.sleep(1100L);
+            assertEquals(25, count(briefSupport.listVirtualMachineStatus()));
+            assertEquals(25, count(lastingSupport.listVirtualMachineStatus()));
+            assertEquals("Only the brief listing should have expired", 3, sim.getTotalCalls() - before);
+        }
+        finally {
+            StatusListing.invalidate(lasting, "VirtualMachine");
+            brief.close();
+            lasting.close();
+        }
+    }
+
+    @Test
+    public void zeroTimeToLiveDisablesCaching() throws Exception {
+        CloudProvider provider = connect("0");
+        SimulatedCloud sim = SimulatedCloud.getInstance(ENDPOINT);
+
+        try {
+            //noinspection ConstantConditions
+            VirtualMachineSupport support = provider.getComputeServices().getVirtualMachineSupport();
+            long before = sim.getTotalCalls();
+
+            assertEquals(25, count(support.listVirtualMachineStatus()));
+            assertEquals(25, count(support.listVirtualMachineStatus()));
+            assertEquals(2, sim.getTotalCalls() - before);
+        }
+        finally {
+            provider.close();
+        }
+    }
+}
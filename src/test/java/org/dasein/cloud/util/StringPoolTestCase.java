@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.compute.Architecture;
+import org.dasein.cloud.compute.ImageClass;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.MachineImageState;
+import org.dasein.cloud.compute.Platform;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.Volume;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the canonicalization of identifiers repeated across model objects.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class StringPoolTestCase {
+    private int maxSize;
+
+    @Before
+    public void setUp() {
+        maxSize = StringPool.getMaxSize();
+        StringPool.setEnabled(true);
+        StringPool.clear();
+        StringPool.reset();
+    }
+
+    @After
+    public void tearDown() {
+        StringPool.setMaxSize(maxSize);
+        StringPool.setEnabled(true);
+    }
+
+    // built at runtime so each call yields a distinct instance
+    private String copyOf(String value) {
+        return new String(value.toCharArray());
+    }
+
+    @Test
+    public void equalStringsShareOneInstance() {
+        String first = copyOf("us-east-1");
+        String second = copyOf("us-east-1");
+
+        assertNotSame(first, second);
+        assertSame(first, StringPool.intern(first));
+        assertSame(first, StringPool.intern(second));
+        assertSame(first, StringPool.intern(first));
+        assertNull(StringPool.intern(null));
+        assertEquals(3L, StringPool.getLookups());
+        assertEquals("Only replacing a distinct copy counts as a hit", 1L, StringPool.getHits());
+        assertTrue(StringPool.getBytesSaved() > 0L);
+    }
+
+    @Test
+    public void disabledPoolPassesStringsThrough() {
+        StringPool.intern(copyOf("us-west-2"));
+        StringPool.setEnabled(false);
+
+        String copy = copyOf("us-west-2");
+
+        assertSame(copy, StringPool.intern(copy));
+        assertEquals(0, StringPool.getSize());
+        assertEquals(1L, StringPool.getLookups());
+    }
+
+    @Test
+    public void poolIsBounded() {
+        StringPool.setMaxSize(10);
+        for( int i=0; i<25; i++ ) {
+            StringPool.intern("id-" + i);
+        }
+        assertTrue(StringPool.getSize() <= 10);
+        assertEquals(2L, StringPool.getFlushes());
+
+        StringBuilder str = new StringBuilder();
+
+        while( str.length() <= StringPool.MAX_LENGTH ) {
+            str.append("long description ");
+        }
+        String description = str.toString();
+
+        assertSame(description, StringPool.intern(description));
+        assertNotSame("Long strings should not be pooled", description, StringPool.intern(copyOf(description)));
+    }
+
+    @Test
+    public void modelSettersCanonicalize() {
+        VirtualMachine first = new VirtualMachine();
+        VirtualMachine second = new VirtualMachine();
+        Map<String,String> tags = new HashMap<String, String>();
+
+        first.setProviderRegionId(copyOf("region-a"));
+        second.setProviderRegionId(copyOf("region-a"));
+        first.setProductId(copyOf("m1.small"));
+        second.setProductId(copyOf("m1.small"));
+        first.setTag(copyOf("cost-center"), "a");
+        tags.put(copyOf("cost-center"), "b");
+        second.setTags(tags);
+        assertSame(first.getProviderRegionId(), second.getProviderRegionId());
+        assertSame(first.getProductId(), second.getProductId());
+        assertSame(first.getTags().keySet().iterator().next(), second.getTags().keySet().iterator().next());
+
+        Volume volume = new Volume();
+        MachineImage image = MachineImage.getImageInstance(copyOf("acct"), copyOf("region-a"), "ami-1", ImageClass.MACHINE, MachineImageState.ACTIVE, "image", "image", Architecture.I64, Platform.UBUNTU);
+
+        volume.setProviderRegionId(copyOf("region-a"));
+        assertSame(first.getProviderRegionId(), volume.getProviderRegionId());
+        assertSame(first.getProviderRegionId(), image.getProviderRegionId());
+    }
+
+    @Test
+    public void statisticsAreExposedOverJmx() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.dasein:type=StringPool");
+
+        StringPool.intern(copyOf("sa-east-1"));
+        StringPool.intern(copyOf("sa-east-1"));
+        assertTrue(server.isRegistered(name));
+        assertEquals(1L, server.getAttribute(name, "Hits"));
+        assertEquals(StringPool.getBytesSaved(), server.getAttribute(name, "BytesSaved"));
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+        server.invoke(name, "reset", new Object[0], new String[0]);
+        assertEquals(0L, StringPool.getHits());
+    }
+}
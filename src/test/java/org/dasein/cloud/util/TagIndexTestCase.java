@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.Tag;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VirtualMachineSupport;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.network.FirewallSupport;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the cross-service inverted tag index.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class TagIndexTestCase {
+    static private final String ACCOUNT  = "123456789";
+    static private final String ENDPOINT = "sim://tag-index";
+    static private final String REGION   = "sim-1";
+
+    static private final BatchLookup.IdFunction<VirtualMachine> VM_ID = new BatchLookup.IdFunction<VirtualMachine>() {
+        @Override
+        public String getId(@Nonnull VirtualMachine vm) {
+            return vm.getProviderVirtualMachineId();
+        }
+    };
+
+    static private final BatchLookup.IdFunction<Volume> VOLUME_ID = new BatchLookup.IdFunction<Volume>() {
+        @Override
+        public String getId(@Nonnull Volume volume) {
+            return volume.getProviderVolumeId();
+        }
+    };
+
+    private Cloud         cloud;
+    private CloudProvider provider;
+
+    @Before
+    public void setUp() throws Exception {
+        cloud = Cloud.register("Simulator", "Tag Index", ENDPOINT, SimulatedCloudProvider.class);
+        SimulatedCloud.reset(ENDPOINT);
+        TagIndex.clear();
+        SimulatedCloud.getInstance(ENDPOINT).populate(ACCOUNT, REGION, 40, 30, 0, 0, 0, 0);
+        provider = cloud.createContext(ACCOUNT, REGION).connect();
+    }
+
+    @After
+    public void tearDown() {
+        provider.close();
+        TagIndex.clear();
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    private @Nonnull SimulatedCloud.RegionState region() {
+        return SimulatedCloud.getInstance(ENDPOINT).getRegion(ACCOUNT, REGION);
+    }
+
+    private @Nonnull TagIndex refreshAll() throws Exception {
+        TagIndex index = TagIndex.getInstance(provider);
+
+        index.refresh(ResourceReference.VIRTUAL_MACHINE, region().virtualMachines.values(), VM_ID);
+        index.refresh(ResourceReference.VOLUME, region().volumes.values(), VOLUME_ID);
+        return index;
+    }
+
+    private @Nonnull Set<ResourceReference> scan(@Nonnull String key, @Nonnull String value) {
+        Set<ResourceReference> refs = new TreeSet<ResourceReference>();
+
+        for( VirtualMachine vm : region().virtualMachines.values() ) {
+            if( value.equals(vm.getTags().get(key)) ) {
+                refs.add(ResourceReference.getInstance(ResourceReference.VIRTUAL_MACHINE, vm.getProviderVirtualMachineId()));
+            }
+        }
+        for( Volume volume : region().volumes.values() ) {
+            if( value.equals(volume.getTags().get(key)) ) {
+                refs.add(ResourceReference.getInstance(ResourceReference.VOLUME, volume.getProviderVolumeId()));
+            }
+        }
+        return refs;
+    }
+
+    @Test
+    public void findsResourcesAcrossServices() throws Exception {
+        TagIndex index = refreshAll();
+
+        assertEquals(70, index.size());
+        for( int i=0; i<100; i++ ) {
+            String cc = String.valueOf(i);
+
+            assertEquals(scan("cost-center", cc), index.findAll(Collections.singletonMap("cost-center", cc)));
+        }
+    }
+
+    @Test
+    public void combinesCriteria() throws Exception {
+        TagIndex index = refreshAll();
+        Map<String,String> both = new HashMap<String, String>();
+
+        both.put("env", "PROD");
+        both.put("cost-center", "42");
+
+        Set<ResourceReference> and = new TreeSet<ResourceReference>(scan("env", "prod"));
+        Set<ResourceReference> or = new TreeSet<ResourceReference>(scan("env", "prod"));
+
+        and.retainAll(scan("cost-center", "42"));
+        or.addAll(scan("cost-center", "42"));
+        assertEquals(and, index.findAll(both));
+        assertEquals(or, index.findAny(both));
+        assertEquals(40, index.findAll(Collections.<String,String>singletonMap("env", null)).size());
+    }
+
+    @Test
+    public void matchesValuePrefixes() throws Exception {
+        TagIndex index = refreshAll();
+        Set<ResourceReference> expected = new TreeSet<ResourceReference>(scan("cost-center", "4"));
+
+        for( int i=40; i<50; i++ ) {
+            expected.addAll(scan("cost-center", String.valueOf(i)));
+        }
+        assertEquals(expected, index.findByPrefix("cost-center", "4"));
+        assertEquals(70, index.findByPrefix("cost-center", "").size());
+        assertTrue(index.findByPrefix("missing", "").isEmpty());
+    }
+
+    @Test
+    public void tagMutationsUpdateTheIndex() throws Exception {
+        TagIndex index = refreshAll();
+        //noinspection ConstantConditions
+        VirtualMachineSupport support = provider.getComputeServices().getVirtualMachineSupport();
+        String vmId = region().virtualMachines.keySet().iterator().next();
+        ResourceReference ref = ResourceReference.getInstance(ResourceReference.VIRTUAL_MACHINE, vmId);
+
+        support.updateTags(new String[] { vmId }, new Tag("compliance", "pci"));
+        assertEquals(Collections.singleton(ref), index.findAll(Collections.singletonMap("compliance", "pci")));
+
+        support.removeTags(new String[] { vmId }, new Tag("compliance", "pci"));
+        assertTrue(index.findAll(Collections.singletonMap("compliance", "pci")).isEmpty());
+
+        support.updateTags(vmId, new Tag("compliance", "sox"));
+        assertEquals(Collections.singleton(ref), index.findAll(Collections.singletonMap("compliance", "sox")));
+
+        support.removeTags(vmId, new Tag("compliance", "sox"));
+        assertTrue(index.findAll(Collections.singletonMap("compliance", "sox")).isEmpty());
+
+        support.setTags(vmId, new Tag("owner", "ops"));
+        //noinspection ConstantConditions
+        assertEquals(Collections.singletonMap("owner", "ops"), index.getTags(ref));
+        assertEquals(Collections.singletonMap("owner", "ops"), region().virtualMachines.get(vmId).getTags());
+    }
+
+    @Test
+    public void supportsWithoutTaggingLeaveTheIndexUntouched() throws Exception {
+        TagIndex index = refreshAll();
+        //noinspection ConstantConditions
+        FirewallSupport support = provider.getNetworkServices().getFirewallSupport();
+        ResourceReference ref = ResourceReference.getInstance(ResourceReference.FIREWALL, "fw-1");
+
+        assertNotNull(support);
+        support.updateTags("fw-1", new Tag("compliance", "pci"));
+        support.updateTags(new String[] { "fw-1" }, new Tag("compliance", "pci"));
+        assertNull(index.getTags(ref));
+        assertTrue(index.findAll(Collections.singletonMap("compliance", "pci")).isEmpty());
+        assertEquals(70, index.size());
+    }
+
+    @Test
+    public void refreshDropsVanishedResourcesOfThatTypeOnly() throws Exception {
+        TagIndex index = refreshAll();
+        String vmId = region().virtualMachines.keySet().iterator().next();
+
+        region().virtualMachines.remove(vmId);
+        assertEquals(39, index.refresh(ResourceReference.VIRTUAL_MACHINE, region().virtualMachines.values(), VM_ID));
+        assertEquals(69, index.size());
+        assertNull(index.getTags(ResourceReference.getInstance(ResourceReference.VIRTUAL_MACHINE, vmId)));
+        assertTrue(index.getLastRefresh(ResourceReference.VIRTUAL_MACHINE) > 0L);
+        assertEquals(0L, index.getLastRefresh(ResourceReference.SNAPSHOT));
+    }
+
+    @Test
+    public void indexIsOptional() throws Exception {
+        //noinspection ConstantConditions
+        VirtualMachineSupport support = provider.getComputeServices().getVirtualMachineSupport();
+        String vmId = region().virtualMachines.keySet().iterator().next();
+
+        support.updateTags(new String[] { vmId }, new Tag("compliance", "pci"));
+        assertNull(TagIndex.find(provider));
+    }
+}
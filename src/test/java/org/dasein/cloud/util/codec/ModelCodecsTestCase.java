@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dasein.cloud.VisibleScope;
+import org.dasein.cloud.compute.MachineImage;
+import org.dasein.cloud.compute.Snapshot;
+import org.dasein.cloud.compute.SnapshotState;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.Volume;
+import org.dasein.cloud.network.Direction;
+import org.dasein.cloud.network.FirewallRule;
+import org.dasein.cloud.network.Permission;
+import org.dasein.cloud.network.Protocol;
+import org.dasein.cloud.network.RuleTarget;
+import org.dasein.cloud.storage.Blob;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.util.uom.storage.Storage;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the binary codecs for the core model objects.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ModelCodecsTestCase {
+    static private final String ENDPOINT = "sim://model-codecs";
+    static private final String ACCOUNT  = "acct";
+    static private final String REGION   = "sim-1";
+
+    @BeforeClass
+    static public void populate() {
+        SimulatedCloud.getInstance(ENDPOINT).populate(ACCOUNT, REGION, 50, 50, 50, 20, 0, 0);
+    }
+
+    static private @Nonnull SimulatedCloud.RegionState region() {
+        return SimulatedCloud.getInstance(ENDPOINT).getRegion(ACCOUNT, REGION);
+    }
+
+    // decoding and encoding again must give back exactly the same bytes
+    private <T> List<T> assertRoundTrip(@Nonnull ModelCodec<T> codec, @Nonnull List<T> items) throws Exception {
+        byte[] encoded = ModelCodecs.encode(codec, items);
+        List<T> decoded = ModelCodecs.decode(codec, ByteBuffer.wrap(encoded));
+
+        assertEquals("Item count changed", items.size(), decoded.size());
+        assertArrayEquals("Round trip changed the " + codec.getType().getSimpleName() + " data", encoded, ModelCodecs.encode(codec, decoded));
+        return decoded;
+    }
+
+    @Test
+    public void virtualMachinesRoundTrip() throws Exception {
+        List<VirtualMachine> vms = new ArrayList<VirtualMachine>(region().virtualMachines.values());
+        List<VirtualMachine> decoded = assertRoundTrip(ModelCodecs.VIRTUAL_MACHINE, vms);
+
+        assertFalse(vms.isEmpty());
+        for( int i=0; i<vms.size(); i++ ) {
+            VirtualMachine original = vms.get(i);
+            VirtualMachine copy = decoded.get(i);
+
+            assertEquals(original.getProviderVirtualMachineId(), copy.getProviderVirtualMachineId());
+            assertEquals(original.getCurrentState(), copy.getCurrentState());
+            assertEquals(original.getCreationTimestamp(), copy.getCreationTimestamp());
+            assertEquals(original.getTags(), copy.getTags());
+            assertNull("Root passwords must not be encoded", copy.getRootPassword());
+        }
+    }
+
+    @Test
+    public void virtualMachineVolumesRoundTrip() throws Exception {
+        Volume volume = new ArrayList<Volume>(region().volumes.values()).get(0);
+        VirtualMachine withVolumes = new VirtualMachine();
+        VirtualMachine withIds = new VirtualMachine();
+        VirtualMachine unknown = new VirtualMachine();
+
+        withVolumes.setProviderVirtualMachineId("vm-volumes");
+        withVolumes.setVolumes(new Volume[] { volume });
+        withIds.setProviderVirtualMachineId("vm-ids");
+        withIds.setProviderVolumeIds("vol-1", "vol-2");
+        unknown.setProviderVirtualMachineId("vm-unknown");
+
+        List<VirtualMachine> decoded = assertRoundTrip(ModelCodecs.VIRTUAL_MACHINE, Arrays.asList(withVolumes, withIds, unknown));
+        Volume[] volumes = decoded.get(0).getVolumes();
+
+        assertNotNull(volumes);
+        assertEquals(1, volumes.length);
+        assertEquals(volume.getProviderVolumeId(), volumes[0].getProviderVolumeId());
+        assertEquals(volume.getCurrentState(), volumes[0].getCurrentState());
+        assertNull(decoded.get(0).getProviderVolumeIds());
+        assertArrayEquals(new String[] { "vol-1", "vol-2" }, decoded.get(1).getProviderVolumeIds());
+        assertNull(decoded.get(1).getVolumes());
+        assertNull(decoded.get(2).getProviderVolumeIds());
+        assertNull(decoded.get(2).getVolumes());
+    }
+
+    @Test
+    public void storageModelsRoundTrip() throws Exception {
+        List<Volume> volumes = new ArrayList<Volume>(region().volumes.values());
+        List<Snapshot> snapshots = new ArrayList<Snapshot>(region().snapshots.values());
+        List<MachineImage> images = new ArrayList<MachineImage>(region().images.values());
+
+        assertFalse(volumes.isEmpty());
+        assertFalse(snapshots.isEmpty());
+        assertFalse(images.isEmpty());
+
+        List<Volume> decoded = assertRoundTrip(ModelCodecs.VOLUME, volumes);
+
+        for( int i=0; i<volumes.size(); i++ ) {
+            assertEquals(volumes.get(i).getSizeInGigabytes(), decoded.get(i).getSizeInGigabytes());
+            assertEquals(volumes.get(i).getFormat(), decoded.get(i).getFormat());
+        }
+        assertRoundTrip(ModelCodecs.SNAPSHOT, snapshots);
+        assertRoundTrip(ModelCodecs.MACHINE_IMAGE, images);
+    }
+
+    @Test
+    public void blobsAndRulesRoundTrip() throws Exception {
+        Blob bucket = Blob.getInstance(REGION, "sim://bucket", "bucket", 1000L);
+        Blob object = Blob.getInstance(REGION, "sim://bucket/object", "bucket", "object", 2000L, new Storage<org.dasein.util.uom.storage.Byte>(12345, Storage.BYTE));
+
+        object.setTag("owner", "ops");
+
+        List<Blob> blobs = assertRoundTrip(ModelCodecs.BLOB, Arrays.asList(bucket, object));
+
+        assertTrue(blobs.get(0).isContainer());
+        assertEquals(12345L, blobs.get(1).getSize().longValue());
+        assertEquals("ops", blobs.get(1).getTags().get("owner"));
+
+        FirewallRule ingress = FirewallRule.getInstance(null, "fw-1", RuleTarget.getCIDR("10.0.0.0/8"), Direction.INGRESS, Protocol.TCP, Permission.ALLOW, RuleTarget.getGlobal("fw-1"), 22, 22);
+        FirewallRule egress = FirewallRule.getInstance("rule-2", "fw-1", RuleTarget.getVirtualMachine("vm-1"), Direction.EGRESS, Protocol.UDP, Permission.DENY, RuleTarget.getVlan("vlan-1"), 1000, 2000).withPrecedence(5);
+        List<FirewallRule> rules = assertRoundTrip(ModelCodecs.FIREWALL_RULE, Arrays.asList(ingress, egress));
+
+        assertEquals(ingress.getProviderRuleId(), rules.get(0).getProviderRuleId());
+        assertEquals("10.0.0.0/8", rules.get(0).getSourceEndpoint().getCidr());
+        assertEquals("vlan-1", rules.get(1).getDestinationEndpoint().getProviderVlanId());
+        assertEquals(5, rules.get(1).getPrecedence());
+    }
+
+    @Test
+    public void primitivesRoundTrip() throws Exception {
+        String text = "r\u00e9gion \u6771\u4eac \ud83d\ude00";
+        BinaryWriter out = new BinaryWriter(16);
+
+        out.writeLong(Long.MIN_VALUE).writeLong(-1L).writeLong(1441065600000L).writeInt(Integer.MAX_VALUE);
+        out.writeString(text).writeString(null).writeString(text).writeDouble(2.5d).writeStrings(new String[] { "a", null });
+
+        BinaryReader in = new BinaryReader(ByteBuffer.wrap(out.toByteArray()));
+
+        assertEquals(Long.MIN_VALUE, in.readLong());
+        assertEquals(-1L, in.readLong());
+        assertEquals(1441065600000L, in.readLong());
+        assertEquals(Integer.MAX_VALUE, in.readInt());
+        String first = in.readString();
+
+        assertEquals(text, first);
+        assertNull(in.readString());
+        assertSame("Repeated strings should come from the string table", first, in.readString());
+        assertEquals(2.5d, in.readDouble(), 0.0d);
+        assertArrayEquals(new String[] { "a", null }, in.readStrings());
+        assertEquals(0, in.getBuffer().remaining());
+    }
+
+    @Test
+    public void badDataIsRejected() throws Exception {
+        List<Snapshot> snapshots = new ArrayList<Snapshot>(region().snapshots.values());
+        byte[] encoded = ModelCodecs.encode(ModelCodecs.SNAPSHOT, snapshots);
+
+        try {
+            ModelCodecs.decode(ModelCodecs.SNAPSHOT, ByteBuffer.wrap(Arrays.copyOf(encoded, encoded.length - 3)));
+            fail("Truncated data was decoded");
+        }
+        catch( CodecException expected ) {
+            // expected
+        }
+        BinaryWriter newer = new BinaryWriter();
+
+        newer.writeUnsigned(ModelCodecs.FORMAT_VERSION).writeUnsigned(ModelCodecs.SNAPSHOT.getVersion() + 1).writeUnsigned(0);
+        try {
+            ModelCodecs.decode(ModelCodecs.SNAPSHOT, ByteBuffer.wrap(newer.toByteArray()));
+            fail("Data from a newer schema was decoded");
+        }
+        catch( CodecException expected ) {
+            // expected
+        }
+        BinaryWriter unknown = new BinaryWriter();
+
+        unknown.writeString("NO_SUCH_STATE");
+        assertNull(new BinaryReader(ByteBuffer.wrap(unknown.toByteArray())).readEnum(SnapshotState.class));
+    }
+
+    @Test
+    public void decodesFromDirectSlices() throws Exception {
+        List<VirtualMachine> vms = new ArrayList<VirtualMachine>(region().virtualMachines.values());
+        byte[] bytes = ModelCodecs.encode(ModelCodecs.VIRTUAL_MACHINE, vms);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 8);
+
+        // the listing sits in the middle of a larger buffer, as it does in a snapshot file
+        direct.putLong(42L);
+        direct.put(bytes);
+        direct.flip();
+        direct.position(8);
+
+        List<VirtualMachine> copies = ModelCodecs.decode(ModelCodecs.VIRTUAL_MACHINE, direct.slice());
+
+        assertEquals(vms.size(), copies.size());
+        for( int i=0; i<vms.size(); i++ ) {
+            assertEquals(vms.get(i).getProviderVirtualMachineId(), copies.get(i).getProviderVirtualMachineId());
+            assertEquals(vms.get(i).getName(), copies.get(i).getName());
+        }
+    }
+
+    @Test
+    public void smallerThanJson() throws Exception {
+        List<Snapshot> snapshots = new ArrayList<Snapshot>();
+
+        for( int i=0; i<200; i++ ) {
+            Snapshot s = new Snapshot();
+
+            s.setProviderSnapshotId("snap-" + i);
+            s.setRegionId(REGION);
+            s.setVolumeId("vol-" + (i % 10));
+            s.setOwner(ACCOUNT);
+            s.setName("nightly-" + i);
+            s.setCurrentState(SnapshotState.AVAILABLE);
+            s.setVisibleScope(VisibleScope.ACCOUNT_REGION);
+            s.setSnapshotTimestamp(1441065600000L + i);
+            s.setSizeInGb(100);
+            s.setTag("env", "prod");
+            snapshots.add(s);
+        }
+        byte[] binary = ModelCodecs.encode(ModelCodecs.SNAPSHOT, snapshots);
+        byte[] json = new ObjectMapper().writeValueAsBytes(snapshots);
+
+        assertRoundTrip(ModelCodecs.SNAPSHOT, snapshots);
+        assertTrue("Binary form (" + binary.length + " bytes) should be under a third of the JSON form (" + json.length + " bytes)", binary.length * 3 < json.length);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.event;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.dasein.cloud.util.APITrace;
+import org.dasein.cloud.util.Cache;
+import org.dasein.cloud.util.CacheLevel;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests publication of {@link CloudEvent}s to registered listeners.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class CloudEventsTestCase {
+    static private class CollectingListener implements CloudEventListener {
+        final List<CloudEvent> events = new ArrayList<CloudEvent>();
+
+        @Override
+        public void onEvent(@Nonnull CloudEvent event) {
+            events.add(event);
+        }
+    }
+
+    private CollectingListener listener;
+
+    @After
+    public void tearDown() {
+        if( listener != null ) {
+            CloudEvents.removeListener(listener);
+        }
+    }
+
+    private CloudProvider connect() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Events", "sim://events", SimulatedCloudProvider.class);
+
+        return cloud.createContext("acct", "region-1").connect();
+    }
+
+    @Test
+    public void disabledWithoutListeners() {
+        assertFalse("No listeners should be registered", CloudEvents.isEnabled());
+        assertEquals("The clock should not be read while disabled", 0L, CloudEvents.start());
+    }
+
+    @Test
+    public void operationsAndCallsArePublished() throws Exception {
+        CloudProvider provider = connect();
+
+        listener = new CollectingListener();
+        CloudEvents.addListener(listener);
+        APITrace.begin(provider, "listVirtualMachines");
+        APITrace.trace(provider, "DescribeInstances");
+        APITrace.end();
+
+        assertEquals("Unexpected number of events", 2, listener.events.size());
+        CloudEvent call = listener.events.get(0);
+        CloudEvent operation = listener.events.get(1);
+
+        assertEquals(CloudEvent.Type.API_CALL, call.getType());
+        assertEquals("DescribeInstances", call.getOperation());
+        assertEquals(CloudEvent.Type.OPERATION, operation.getType());
+        assertEquals("listVirtualMachines", operation.getOperation());
+        assertEquals("acct", operation.getAccountNumber());
+        assertEquals("region-1", operation.getRegionId());
+        assertTrue("Operation should have a duration", operation.getDurationNanos() >= 0L);
+    }
+
+    @Test
+    public void listenersChangingMidOperationKeepOperationsPaired() throws Exception {
+        CloudProvider provider = connect();
+        CollectingListener early = new CollectingListener();
+
+        CloudEvents.addListener(early);
+        APITrace.begin(provider, "removedMidway");
+        CloudEvents.removeListener(early);
+        APITrace.begin(provider, "outer");
+        listener = new CollectingListener();
+        CloudEvents.addListener(listener);
+        APITrace.begin(provider, "inner");
+        APITrace.end();
+        APITrace.end();
+        APITrace.end();
+        APITrace.begin(provider, "next");
+        APITrace.end();
+
+        List<String> names = new ArrayList<String>();
+
+        for( CloudEvent event : listener.events ) {
+            names.add(event.getOperation());
+        }
+        assertEquals("Each end should publish the operation it closes", Arrays.asList("inner", "removedMidway", "next"), names);
+        assertTrue("The removed listener should not have seen anything", early.events.isEmpty());
+    }
+
+    @Test
+    public void cacheHitsAndMissesArePublished() throws Exception {
+        CloudProvider provider = connect();
+        Cache<String> cache = Cache.getInstance(provider, "eventTest", String.class, CacheLevel.REGION_ACCOUNT);
+
+        listener = new CollectingListener();
+        CloudEvents.addListener(listener);
+        cache.get(provider.getContext());
+        cache.put(provider.getContext(), Collections.singletonList("x"));
+        cache.get(provider.getContext());
+
+        assertEquals("Unexpected number of events", 3, listener.events.size());
+        assertEquals(CloudEvent.Type.CACHE_MISS, listener.events.get(0).getType());
+        assertEquals(CloudEvent.Type.CACHE_PUT, listener.events.get(1).getType());
+        assertEquals(CloudEvent.Type.CACHE_HIT, listener.events.get(2).getType());
+        assertEquals(SimulatedCloudProvider.class.getName() + ".eventTest", listener.events.get(2).getOperation());
+    }
+
+    @Test
+    public void failingListenerDoesNotBreakPublication() throws Exception {
+        CloudEventListener failing = new CloudEventListener() {
+            @Override
+            public void onEvent(@Nonnull CloudEvent event) {
+                throw new RuntimeException("boom");
+            }
+        };
+
+        listener = new CollectingListener();
+        CloudEvents.addListener(failing);
+        CloudEvents.addListener(listener);
+        try {
+            CloudEvents.publish(CloudEvent.Type.WAIT, (CloudProvider)null, "stop vm-1", CloudEvents.start(), -1L, null);
+        }
+        finally {
+            CloudEvents.removeListener(failing);
+        }
+        assertEquals("Later listeners should still receive the event", 1, listener.events.size());
+        assertNull(listener.events.get(0).getProviderName());
+    }
+}
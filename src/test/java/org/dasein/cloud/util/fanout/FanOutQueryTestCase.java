@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.fanout;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.dasein.cloud.test.sim.SimulationSettings;
+import org.dasein.util.JiteratorLoadException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the fan-out query engine against the simulated cloud.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class FanOutQueryTestCase {
+    static private final String FAILING = "sim://fanout-failing";
+    static private final String HEALTHY = "sim://fanout";
+
+    private FanOutQuery fanOut;
+    private Cloud       failing;
+    private Cloud       healthy;
+
+    @Before
+    public void setUp() {
+        healthy = Cloud.register("Simulator", "Fan-out", HEALTHY, SimulatedCloudProvider.class);
+        failing = Cloud.register("Simulator", "Fan-out Failing", FAILING, SimulatedCloudProvider.class);
+        SimulatedCloud.reset(HEALTHY);
+        SimulatedCloud.reset(FAILING);
+        fanOut = FanOutQuery.getInstance();
+    }
+
+    @After
+    public void tearDown() {
+        fanOut.close();
+        SimulatedCloud.reset(HEALTHY);
+        SimulatedCloud.reset(FAILING);
+    }
+
+    @Test
+    public void mergesAllShards() throws Exception {
+        SimulatedCloud sim = SimulatedCloud.getInstance(HEALTHY);
+        List<ProviderContext> shards = new ArrayList<ProviderContext>();
+
+        for( int a = 0; a < 3; a++ ) {
+            for( int r = 0; r < 4; r++ ) {
+                sim.populate("acct-" + a, "region-" + r, 50);
+                shards.add(healthy.createContext("acct-" + a, "region-" + r));
+            }
+        }
+        int shardCount = 0;
+        int vmCount = 0;
+
+        for( ShardResult<VirtualMachine> result : fanOut.execute(shards, ShardQueries.virtualMachines(null)) ) {
+            assertTrue("Shard " + result + " failed", result.isSuccessful());
+            shardCount++;
+            vmCount += result.getResults().size();
+        }
+        assertEquals("Not every shard reported", 12, shardCount);
+        assertEquals("Merged VM count does not match", 600, vmCount);
+    }
+
+    @Test
+    public void attachesShardErrors() throws Exception {
+        SimulatedCloud.getInstance(HEALTHY).populate("acct", "region-0", 10);
+        SimulatedCloud.getInstance(FAILING).configure(SimulationSettings.getInstance().withThrottleRate(1.0));
+
+        List<ProviderContext> shards = new ArrayList<ProviderContext>();
+
+        shards.add(healthy.createContext("acct", "region-0"));
+        shards.add(failing.createContext("acct", "region-0"));
+
+        int failed = 0;
+
+        for( ShardResult<VirtualMachine> result : fanOut.execute(shards, ShardQueries.virtualMachines(null)) ) {
+            if( result.isSuccessful() ) {
+                assertEquals("Healthy shard returned the wrong count", 10, result.getResults().size());
+            }
+            else {
+                failed++;
+                assertTrue("Error should be a cloud exception", result.getError() instanceof CloudException);
+                assertEquals("Unexpected error type", CloudErrorType.THROTTLING, ((CloudException)result.getError()).getErrorType());
+                assertTrue("Failed shard should have no results", result.getResults().isEmpty());
+            }
+        }
+        assertEquals("Exactly one shard should have failed", 1, failed);
+    }
+
+    @Test
+    public void errorsFailTheIteration() throws Exception {
+        List<ProviderContext> shards = new ArrayList<ProviderContext>();
+
+        shards.add(healthy.createContext("acct", "region-0"));
+        ShardQuery<String> query = new ShardQuery<String>() {
+            @Override
+            public @Nonnull Iterable<String> query(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+                throw new LinkageError("simulated");
+            }
+        };
+        try {
+            for( ShardResult<String> result : fanOut.execute(shards, query) ) {
+                fail("An error should not be reported as a shard result: " + result);
+            }
+            fail("The iteration should have failed");
+        }
+        catch( JiteratorLoadException expected ) {
+            assertTrue("The load failure should carry the error", expected.getCause().getCause() instanceof LinkageError);
+        }
+    }
+
+    @Test
+    public void boundsConcurrencyPerCloud() throws Exception {
+        final AtomicInteger active = new AtomicInteger(0);
+        final AtomicInteger peak = new AtomicInteger(0);
+        List<ProviderContext> shards = new ArrayList<ProviderContext>();
+
+        for( int r = 0; r < 10; r++ ) {
+            shards.add(healthy.createContext("acct", "region-" + r));
+        }
+        ShardQuery<String> query = new ShardQuery<String>() {
+            @Override
+            public @Nonnull Iterable<String> query(@Nonnull CloudProvider provider) throws CloudException, InternalException {
+                int now = active.incrementAndGet();
+
+                synchronized( peak ) {
+                    if( now > peak.get() ) {
+                        peak.set(now);
+                    }
+                }
+                try { Thread.sleep(50L); }
+                catch( InterruptedException ignore ) { }
+                active.decrementAndGet();
+                //noinspection ConstantConditions
+                return Collections.singletonList(provider.getContext().getRegionId());
+            }
+        };
+        int count = 0;
+
+        for( ShardResult<String> result : fanOut.withMaxConcurrencyPerCloud(2).execute(shards, query) ) {
+            assertTrue("Shard failed", result.isSuccessful());
+            count++;
+        }
+        assertEquals("Not every shard reported", 10, count);
+        assertTrue("Concurrency exceeded the per-cloud bound: " + peak.get(), peak.get() <= 2);
+    }
+}
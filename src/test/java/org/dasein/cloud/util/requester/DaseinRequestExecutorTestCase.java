@@ -0,0 +1,388 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.requester;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.RequestTrackingStrategy;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.dasein.cloud.util.CircuitBreaker;
+import org.dasein.cloud.util.RateLimiter;
+import org.dasein.cloud.util.requester.streamprocessors.StreamToStringProcessor;
+import org.dasein.cloud.util.trace.Span;
+import org.dasein.cloud.util.trace.SpanExporter;
+import org.dasein.cloud.util.trace.Tracer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the retry and circuit breaker behavior of {@link DaseinRequestExecutor} against a local HTTP server.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class DaseinRequestExecutorTestCase {
+    private final LinkedList<Integer> statuses = new LinkedList<Integer>();
+    private final AtomicInteger       requests = new AtomicInteger(0);
+
+    private HttpServer server;
+    private String     url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Integer status;
+
+                requests.incrementAndGet();
+                if( exchange.getRequestURI().getPath().equals("/gzip") ) {
+                    sendCompressed(exchange);
+                    return;
+                }
+                if( exchange.getRequestURI().getPath().startsWith("/header/") ) {
+                    String encoding = String.valueOf(exchange.getRequestHeaders().getFirst(exchange.getRequestURI().getPath().substring(8)));
+                    byte[] body = encoding.getBytes("utf-8");
+
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                    exchange.close();
+                    return;
+                }
+                if( exchange.getRequestURI().getPath().equals("/chunked") ) {
+                    byte[] body = new byte[3000];
+
+                    Arrays.fill(body, (byte)'x');
+                    exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                    exchange.sendResponseHeaders(200, 0);
+                    exchange.getResponseBody().write(body);
+                    exchange.close();
+                    return;
+                }
+                if( exchange.getRequestURI().getPath().equals("/etag") ) {
+                    if( "\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match")) ) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                    exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                }
+                synchronized( statuses ) {
+                    status = statuses.poll();
+                }
+                byte[] body = (status == null ? "ok" : "status " + status).getBytes("utf-8");
+
+                if( status != null && status == 429 ) {
+                    exchange.getResponseHeaders().add("Retry-After", "0");
+                }
+                exchange.sendResponseHeaders(status == null ? 200 : status, body.length);
+                OutputStream out = exchange.getResponseBody();
+
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    private void sendCompressed(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder();
+
+        for( int i=0; i<500; i++ ) {
+            json.append("{\"id\":\"vm-").append(i).append("\"}");
+        }
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+        if( accept == null || !accept.contains("gzip") ) {
+            byte[] body = json.toString().getBytes("utf-8");
+
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+        else {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            GZIPOutputStream out = new GZIPOutputStream(exchange.getResponseBody());
+
+            out.write(json.toString().getBytes("utf-8"));
+            out.finish();
+        }
+        exchange.close();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        CircuitBreaker.clear();
+        RateLimiter.clear();
+    }
+
+    private CloudProvider connect(String ... properties) throws CloudException {
+        Cloud cloud = Cloud.register("Simulator", "Requester", "sim://requester", SimulatedCloudProvider.class);
+        ProviderContext.Value<?>[] values = new ProviderContext.Value<?>[properties.length/2];
+
+        for( int i=0; i<values.length; i++ ) {
+            values[i] = new ProviderContext.Value<String>(properties[i*2], properties[i*2+1]);
+        }
+        try {
+            return cloud.createContext("acct", "region-1", values).connect();
+        }
+        catch( Exception e ) {
+            throw new CloudException(e);
+        }
+    }
+
+    private String execute(CloudProvider provider, HttpUriRequest request) throws CloudException {
+        return execute(provider, HttpClientBuilder.create(), request);
+    }
+
+    private String execute(CloudProvider provider, HttpClientBuilder builder, HttpUriRequest request) throws CloudException {
+        return new DaseinRequestExecutor<String>(provider, builder, request,
+                new DaseinResponseHandler<String>(new StreamToStringProcessor(), String.class)).execute();
+    }
+
+    private void respond(Integer ... codes) {
+        synchronized( statuses ) {
+            for( Integer code : codes ) {
+                statuses.add(code);
+            }
+        }
+    }
+
+    @Test
+    public void retriesServerErrorsForIdempotentRequests() throws CloudException {
+        CloudProvider provider = connect(RetryPolicy.BASE_DELAY_PROPERTY, "1");
+
+        respond(503, 502);
+        assertEquals("Request should eventually succeed", "ok", execute(provider, new HttpGet(url)).trim());
+        assertEquals("Request should have been sent three times", 3, requests.get());
+    }
+
+    @Test
+    public void doesNotRetryServerErrorsForPost() throws CloudException {
+        CloudProvider provider = connect(RetryPolicy.BASE_DELAY_PROPERTY, "1");
+
+        respond(500);
+        try {
+            execute(provider, new HttpPost(url));
+            fail("POST should not be retried after a server error");
+        }
+        catch( CloudException e ) {
+            assertEquals("Error type should be classified", CloudErrorType.COMMUNICATION, e.getErrorType());
+            assertEquals("HTTP status should be kept", 500, e.getHttpCode());
+        }
+        assertEquals("Request should have been sent once", 1, requests.get());
+    }
+
+    @Test
+    public void retriesThrottledPost() throws CloudException {
+        CloudProvider provider = connect(RetryPolicy.BASE_DELAY_PROPERTY, "1");
+
+        respond(429);
+        assertEquals("Throttled POST should be retried", "ok", execute(provider, new HttpPost(url)).trim());
+        assertEquals("Request should have been sent twice", 2, requests.get());
+    }
+
+    @Test
+    public void notModifiedReturnsCachedResultWithoutMapping() throws CloudException {
+        CloudProvider provider = connect();
+        ResponseCache cache = ResponseCache.getInstance(1024L * 1024L);
+        final AtomicInteger mapped = new AtomicInteger(0);
+        DriverToCoreMapper<String,String> mapper = new DriverToCoreMapper<String, String>() {
+            @Override
+            public String mapFrom(String entity) {
+                mapped.incrementAndGet();
+                return entity.trim();
+            }
+        };
+
+        for( int i=0; i<3; i++ ) {
+            String result = new DaseinRequestExecutor<String>(provider, HttpClientBuilder.create(), new HttpGet(url + "etag"),
+                    new DaseinResponseHandlerWithMapper<String, String>(new StreamToStringProcessor(), mapper, String.class)).withResponseCache(cache).execute();
+
+            assertEquals("Cached and fresh results should match", "ok", result);
+        }
+        assertEquals("Every call should have been revalidated with the server", 3, requests.get());
+        assertEquals("Only the first response should have been mapped", 1, mapped.get());
+        assertEquals("Later calls should be cache hits", 2, cache.getHitCount());
+    }
+
+    @Test
+    public void weighsChunkedResponsesByBytesRead() throws CloudException {
+        ResponseCache cache = ResponseCache.getInstance(1024L * 1024L);
+
+        new DaseinRequestExecutor<String>(connect(), HttpClientBuilder.create(), new HttpGet(url + "chunked?Signature=abc"),
+                new DaseinResponseHandler<String>(new StreamToStringProcessor(), String.class)).withResponseCache(cache).execute();
+        assertEquals("The entry should weigh the body that was read", 3000L, cache.getWeight());
+    }
+
+    @Test
+    public void decompressesResponsesAndCountsBytes() throws CloudException {
+        ContentCompression.reset();
+        String body = execute(connect(), new HttpGet(url + "gzip"));
+
+        assertTrue("Body should have been decompressed", body.startsWith("{\"id\":\"vm-0\"}"));
+        assertTrue("Compressed bytes should have been counted", ContentCompression.getResponseCompressedBytes() > 0L);
+        assertTrue("Compressed response should be smaller than the raw one", ContentCompression.getResponseCompressedBytes() < ContentCompression.getResponseRawBytes());
+
+        String plain = execute(connect(ContentCompression.ACCEPT_PROPERTY, "false"), new HttpGet(url + "gzip"));
+
+        assertEquals("Disabling compression should not change the body", body, plain);
+    }
+
+    @Test
+    public void sharedBuildersHonorEachCallersSettings() throws CloudException {
+        HttpClientBuilder builder = HttpClientBuilder.create();
+        CloudProvider accepting = connect();
+        CloudProvider refusing = connect(ContentCompression.ACCEPT_PROPERTY, "false");
+
+        assertEquals("Compression should be negotiated when accepted", "gzip,deflate", execute(accepting, builder, new HttpGet(url + "header/Accept-Encoding")).trim());
+        assertEquals("Compression should not be negotiated on the same builder once refused", "null", execute(refusing, builder, new HttpGet(url + "header/Accept-Encoding")).trim());
+        assertEquals("Compression should be negotiated again when accepted", "gzip,deflate", execute(accepting, builder, new HttpGet(url + "header/Accept-Encoding")).trim());
+    }
+
+    @Test
+    public void gzipsLargeRequestEntities() throws Exception {
+        CloudProvider provider = connect(ContentCompression.GZIP_THRESHOLD_PROPERTY, "100");
+        HttpPost small = new HttpPost(url + "header/Content-Encoding");
+        HttpPost large = new HttpPost(url + "header/Content-Encoding");
+        StringBuilder json = new StringBuilder();
+
+        for( int i=0; i<100; i++ ) {
+            json.append("{\"name\":\"rule\"}");
+        }
+        small.setEntity(new StringEntity("{}"));
+        large.setEntity(new StringEntity(json.toString()));
+        assertEquals("Small entities should be sent as is", "null", execute(provider, small).trim());
+        assertEquals("Large entities should be gzipped", "gzip", execute(provider, large).trim());
+    }
+
+    @Test
+    public void sendsRequestIdAndRecordsSpans() throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Requester", "sim://requester", SimulatedCloudProvider.class);
+        ProviderContext ctx = cloud.createContext("acct", "region-1", new ProviderContext.Value<String>(Tracer.SAMPLE_RATE_PROPERTY, "1"));
+        final List<Span> exported = new ArrayList<Span>();
+
+        ctx.withRequestTracking(RequestTrackingStrategy.getInstance("req-42").sendAsHeader(true, "X-Request-Id"));
+        Tracer.setExporter(new SpanExporter() {
+            @Override
+            public void export(@Nonnull List<Span> spans) {
+                exported.addAll(spans);
+            }
+        });
+        try {
+            assertEquals("Request ID should be sent as a header", "req-42", execute(ctx.connect(), new HttpGet(url + "header/X-Request-Id")).trim());
+            assertTrue("Trace ID should be sent as a header", execute(ctx.connect(), new HttpGet(url + "header/X-B3-TraceId")).trim().matches("[0-9a-f]{16}"));
+        }
+        finally {
+            Tracer.setExporter(null);
+        }
+        List<String> names = new ArrayList<String>();
+
+        for( Span span : exported ) {
+            names.add(span.getName());
+        }
+        assertTrue("Phases should have been recorded: " + names, names.containsAll(Arrays.asList("connect", "send", "ttfb", "parse", "attempt", "HTTP GET")));
+        assertEquals("The HTTP call should be the root span", "HTTP GET", exported.get(exported.size() - 1).getName());
+        assertEquals("Untraced calls should not send a trace ID", "null", execute(connect(), new HttpGet(url + "header/X-B3-TraceId")).trim());
+    }
+
+    @Test
+    public void circuitBreakerFailsFast() throws CloudException {
+        CloudProvider provider = connect(RetryPolicy.MAX_ATTEMPTS_PROPERTY, "1", CircuitBreaker.FAILURE_THRESHOLD_PROPERTY, "2");
+
+        respond(500, 500);
+        for( int i=0; i<2; i++ ) {
+            try {
+                execute(provider, new HttpGet(url));
+                fail("Server error should fail the request");
+            }
+            catch( CloudException expected ) {
+                // expected
+            }
+        }
+        try {
+            execute(provider, new HttpGet(url));
+            fail("Open breaker should fail the request");
+        }
+        catch( CloudException e ) {
+            assertEquals("Open breaker should fail with its own code", "CircuitOpen", e.getProviderCode());
+        }
+        assertEquals("Open breaker should not reach the server", 2, requests.get());
+    }
+
+    @Test
+    public void failedProbeWithoutOutcomeReleasesTheBreaker() throws Exception {
+        CloudProvider provider = connect(RetryPolicy.MAX_ATTEMPTS_PROPERTY, "1", CircuitBreaker.FAILURE_THRESHOLD_PROPERTY, "1", CircuitBreaker.OPEN_MILLIS_PROPERTY, "50");
+        DriverToCoreMapper<String,String> broken = new DriverToCoreMapper<String, String>() {
+            @Override
+            public String mapFrom(String entity) {
+                throw new IllegalStateException("Unparseable");
+            }
+        };
+
+        respond(500);
+        try {
+            execute(provider, new HttpGet(url));
+            fail("Server error should fail the request");
+        }
+        catch( CloudException e ) {
+            assertTrue("The response failure should be kept as the cause", e.getCause() instanceof CloudResponseException);
+        }
+        Thread.sleep(100L);
+        try {
+            new DaseinRequestExecutor<String>(provider, HttpClientBuilder.create(), new HttpGet(url),
+                    new DaseinResponseHandlerWithMapper<String, String>(new StreamToStringProcessor(), broken, String.class)).execute();
+            fail("A failing mapper should fail the request");
+        }
+        catch( CloudException e ) {
+            assertTrue("The mapper failure should be kept as the cause", e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("The probe that ended without an outcome should let the next call through", "ok", execute(provider, new HttpGet(url)).trim());
+        assertEquals("Every call should have reached the server", 3, requests.get());
+    }
+}
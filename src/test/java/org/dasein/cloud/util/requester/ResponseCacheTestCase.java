@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.requester;
+
+import org.junit.Test;
+
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the weight bound and eviction order of {@link ResponseCache}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ResponseCacheTestCase {
+    @Test
+    public void requiresValidators() {
+        ResponseCache cache = ResponseCache.getInstance(1000L);
+
+        cache.put("none", null, null, "result", 10L);
+        assertNull("Responses without validators cannot be revalidated", cache.get("none"));
+        cache.put("etag", "\"abc\"", null, "result", 10L);
+        assertEquals("\"abc\"", cache.get("etag").getETag());
+        assertEquals("result", cache.get("etag").getResult());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverWeight() {
+        ResponseCache cache = ResponseCache.getInstance(300L);
+
+        cache.put("a", "1", null, "a", 100L);
+        cache.put("b", "1", null, "b", 100L);
+        cache.put("c", "1", null, "c", 100L);
+        assertNotNull(cache.get("a"));
+        cache.put("d", "1", null, "d", 100L);
+        assertNull("Least recently used entry should have been evicted", cache.get("b"));
+        assertNotNull("Recently read entry should have been kept", cache.get("a"));
+        assertEquals(3, cache.size());
+        assertEquals(300L, cache.getWeight());
+    }
+
+    @Test
+    public void replacingAnEntryKeepsWeightAccurate() {
+        ResponseCache cache = ResponseCache.getInstance(1000L);
+
+        cache.put("a", "1", null, "a", 100L);
+        cache.put("a", "2", null, "a", 250L);
+        assertEquals(1, cache.size());
+        assertEquals(250L, cache.getWeight());
+        cache.put("huge", "1", null, "huge", 5000L);
+        assertNull("Entries heavier than the cache should not be stored", cache.get("huge"));
+    }
+
+    @Test
+    public void requestKeyIgnoresSignatures() throws Exception {
+        String first = ResponseCache.getRequestKey(new URI("https://ec2.example.com/?Action=DescribeImages&Owner.1=self&Timestamp=2015-09-01T10%3A00%3A00Z&Signature=abc%3D"));
+        String second = ResponseCache.getRequestKey(new URI("https://ec2.example.com/?Action=DescribeImages&Owner.1=self&Timestamp=2015-09-01T10%3A05%3A00Z&Signature=xyz%3D"));
+        String other = ResponseCache.getRequestKey(new URI("https://ec2.example.com/?Action=DescribeImages&Owner.1=amazon&Signature=abc%3D"));
+
+        assertEquals("Re-signed requests for the same resource should share a key", first, second);
+        assertEquals("https://ec2.example.com/?Action=DescribeImages&Owner.1=self", first);
+        assertFalse("Parameters that select the resource must stay in the key", first.equals(other));
+        assertEquals("https://bucket.example.com/key", ResponseCache.getRequestKey(new URI("https://bucket.example.com/key?X-Amz-Date=20150901T100000Z&X-Amz-Signature=abc")));
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.requester;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.dasein.cloud.CloudErrorType;
+import org.dasein.cloud.CloudException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.ConnectException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the classification and backoff decisions of {@link RetryPolicy}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class RetryPolicyTestCase {
+    private final CloudException serverError = new CloudException(CloudErrorType.COMMUNICATION, 500, "InternalError", "Oops");
+    private final CloudException throttle    = new CloudException(CloudErrorType.THROTTLING, 429, "TooManyRequests", "Slow down");
+
+    @Test
+    public void classifiesStatusCodes() {
+        assertEquals(CloudErrorType.THROTTLING, CloudResponseException.getErrorType(429));
+        assertEquals(CloudErrorType.THROTTLING, CloudResponseException.getErrorType(503));
+        assertEquals(CloudErrorType.COMMUNICATION, CloudResponseException.getErrorType(502));
+        assertEquals(CloudErrorType.AUTHENTICATION, CloudResponseException.getErrorType(403));
+        assertEquals(CloudErrorType.GENERAL, CloudResponseException.getErrorType(404));
+    }
+
+    @Test
+    public void readsRetryAfterSeconds() {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 503, "Service Unavailable");
+
+        assertEquals("Missing header should be -1", -1L, CloudResponseException.getRetryAfter(response));
+        response.addHeader("Retry-After", "7");
+        assertEquals("Retry-After should be converted to milliseconds", 7000L, CloudResponseException.getRetryAfter(response));
+    }
+
+    @Test
+    public void backoffIsBoundedAndGrows() {
+        RetryPolicy policy = RetryPolicy.getInstance(10, 100L, 1000L);
+
+        for( int i=0; i<100; i++ ) {
+            assertTrue("First backoff exceeded base delay", policy.getBackoff(1) <= 100L);
+            assertTrue("Third backoff exceeded doubled delay", policy.getBackoff(3) <= 400L);
+            assertTrue("Backoff exceeded maximum delay", policy.getBackoff(9) <= 1000L);
+        }
+    }
+
+    @Test
+    public void honorsRetryAfterWithinMaximum() {
+        RetryPolicy policy = RetryPolicy.getInstance(3, 100L, 1000L);
+
+        assertEquals("Retry-After should replace the backoff", 500L, policy.getRetryDelay(new HttpGet("http://localhost/"), throttle, 500L, 1));
+        assertEquals("Retry-After beyond the maximum should not be waited for", -1L, policy.getRetryDelay(new HttpGet("http://localhost/"), throttle, 5000L, 1));
+    }
+
+    @Test
+    public void stopsAfterMaxAttempts() {
+        RetryPolicy policy = RetryPolicy.getInstance(3, 0L, 0L);
+
+        assertEquals(0L, policy.getRetryDelay(new HttpDelete("http://localhost/"), serverError, -1L, 2));
+        assertEquals(-1L, policy.getRetryDelay(new HttpDelete("http://localhost/"), serverError, -1L, 3));
+        assertEquals("Client errors should not be retried", -1L, policy.getRetryDelay(new HttpGet("http://localhost/"), new CloudException(CloudErrorType.GENERAL, 400, "BadRequest", "Bad"), -1L, 1));
+    }
+
+    @Test
+    public void retriesNonIdempotentOnlyWhenUnprocessed() {
+        RetryPolicy policy = RetryPolicy.getInstance(3, 0L, 0L);
+        HttpPost post = new HttpPost("http://localhost/");
+        CloudException refused = new CloudException(CloudErrorType.COMMUNICATION, 0, "ConnectException", "Connection refused", new ConnectException("Connection refused"));
+
+        assertEquals("POST must not be retried after a server error", -1L, policy.getRetryDelay(post, serverError, -1L, 1));
+        assertEquals("Throttled POST should be retried", 0L, policy.getRetryDelay(post, throttle, -1L, 1));
+        assertEquals("POST that never connected should be retried", 0L, policy.getRetryDelay(post, refused, -1L, 1));
+        post.setEntity(new InputStreamEntity(new ByteArrayInputStream(new byte[1])));
+        assertEquals("Request with a one-shot entity must not be retried", -1L, policy.getRetryDelay(post, throttle, -1L, 1));
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.requester.streamprocessors;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests reading JSON into driver model objects with unneeded properties skipped.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class JsonStreamToObjectProcessorTestCase {
+    static public class Instance {
+        public String              id;
+        public String              state;
+        public Map<String,String>  tags;
+        public List<Map<String,?>> disks;
+    }
+
+    static private final String JSON = "{\"id\":\"i-1\",\"state\":\"running\",\"tags\":{\"env\":\"prod\"},"
+            + "\"disks\":[{\"id\":\"vol-1\",\"size\":10,\"nested\":{\"a\":[1,2,3]}}]}";
+
+    private Instance read(JsonStreamToObjectProcessor<Instance> processor) {
+        return processor.read(new ByteArrayInputStream(JSON.getBytes()), Instance.class);
+    }
+
+    @Test
+    public void readsEverythingByDefault() {
+        Instance instance = read(new JsonStreamToObjectProcessor<Instance>());
+
+        assertEquals("i-1", instance.id);
+        assertEquals("prod", instance.tags.get("env"));
+        assertEquals(1, instance.disks.size());
+    }
+
+    @Test
+    public void skipsUnneededProperties() {
+        JsonStreamToObjectProcessor<Instance> processor = new JsonStreamToObjectProcessor<Instance>().skipping(Instance.class, "tags", "disks");
+        Instance instance = read(processor);
+
+        assertEquals("i-1", instance.id);
+        assertEquals("running", instance.state);
+        assertNull(instance.tags);
+        assertNull(instance.disks);
+        // the mapper is reused across reads
+        assertEquals("i-1", read(processor).id);
+    }
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+package org.dasein.cloud.util.stream;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.dasein.util.JiteratorLoadException;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests demand-driven paging, cancellation and the iterable adapter of {@link ListPublisher}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ListPublisherTestCase {
+    /**
+     * Serves pages of ten numbers each, counting the pages fetched.
+     */
+    static private class Numbers implements PagedListing<Integer> {
+        final AtomicInteger fetched = new AtomicInteger(0);
+        final int           pages;
+
+        Numbers(int pages) {
+            this.pages = pages;
+        }
+
+        @Override
+        public @Nonnull Page<Integer> getPage(@Nullable String pageToken) throws CloudException {
+            int page = (pageToken == null ? 0 : Integer.parseInt(pageToken));
+            List<Integer> items = new ArrayList<Integer>();
+
+            fetched.incrementAndGet();
+            for( int i=0; i<10; i++ ) {
+                items.add(page * 10 + i);
+            }
+            return Page.getInstance(items, page + 1 < pages ? String.valueOf(page + 1) : null);
+        }
+    }
+
+    /**
+     * Records every signal in a queue so the test thread can wait for them.
+     */
+    static private class Recorder implements Flow.Subscriber<Integer> {
+        final LinkedBlockingQueue<Object> signals = new LinkedBlockingQueue<Object>();
+        volatile Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(@Nonnull Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(@Nonnull Integer item) {
+            signals.add(item);
+        }
+
+        @Override
+        public void onError(@Nonnull Throwable error) {
+            signals.add(error);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add("complete");
+        }
+
+        Object next() throws InterruptedException {
+            Object o = signals.poll(5, TimeUnit.SECONDS);
+
+            assertNotNull("Timed out waiting for a signal", o);
+            return o;
+        }
+    }
+
+    @Test
+    public void pagesAreFetchedOnlyOnDemand() throws Exception {
+        Numbers numbers = new Numbers(5);
+        Recorder recorder = new Recorder();
+
+        ListPublisher.forPages(numbers).subscribe(recorder);
+        Thread.sleep(100L);
+        assertEquals("Nothing should be fetched before a request", 0, numbers.fetched.get());
+
+        recorder.subscription.request(3);
+        for( int i=0; i<3; i++ ) {
+            assertEquals(i, recorder.next());
+        }
+        Thread.sleep(100L);
+        assertNull(recorder.signals.poll());
+        assertEquals(1, numbers.fetched.get());
+
+        recorder.subscription.request(10);
+        for( int i=3; i<13; i++ ) {
+            assertEquals(i, recorder.next());
+        }
+        assertEquals(2, numbers.fetched.get());
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        for( int i=13; i<50; i++ ) {
+            assertEquals(i, recorder.next());
+        }
+        assertEquals("complete", recorder.next());
+        assertEquals(5, numbers.fetched.get());
+    }
+
+    @Test
+    public void cancelStopsPaging() throws Exception {
+        Numbers numbers = new Numbers(100);
+        Recorder recorder = new Recorder();
+
+        ListPublisher.forPages(numbers).subscribe(recorder);
+        recorder.subscription.request(15);
+        for( int i=0; i<15; i++ ) {
+            recorder.next();
+        }
+        recorder.subscription.cancel();
+        recorder.subscription.request(100);
+        Thread.sleep(100L);
+        assertNull(recorder.signals.poll());
+        assertEquals(2, numbers.fetched.get());
+    }
+
+    @Test
+    public void cancelInterruptsAPageInProgress() throws Exception {
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Recorder recorder = new Recorder();
+
+        ListPublisher.forPages(new PagedListing<Integer>() {
+            @Override
+            public @Nonnull Page<Integer> getPage(@Nullable String pageToken) throws CloudException {
+                fetching.countDown();
+                try {
+                    Thread.sleep(10000L);
+                }
+                catch( InterruptedException e ) {
+                    interrupted.countDown();
+                    throw new CloudException("Interrupted");
+                }
+                return Page.empty();
+            }
+        }).subscribe(recorder);
+        recorder.subscription.request(1);
+        assertTrue(fetching.await(5, TimeUnit.SECONDS));
+        recorder.subscription.cancel();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100L);
+        assertNull("No error should follow a cancel", recorder.signals.poll());
+    }
+
+    /**
+     * Serves endless pages slowly and counts interrupts that arrive while its own subscription is still wanted.
+     */
+    static private class Slow implements PagedListing<Integer> {
+        final AtomicInteger stray;
+        volatile boolean    wanted = true;
+
+        Slow(@Nonnull AtomicInteger stray) {
+            this.stray = stray;
+        }
+
+        @Override
+        public @Nonnull Page<Integer> getPage(@Nullable String pageToken) throws CloudException {
+            try {
+                Thread.sleep(1L);
+            }
+            catch( InterruptedException e ) {
+                if( wanted ) {
+                    stray.incrementAndGet();
+                }
+                throw new CloudException("Interrupted");
+            }
+            List<Integer> items = new ArrayList<Integer>();
+
+            items.add(1);
+            return Page.getInstance(items, "next");
+        }
+    }
+
+    @Test
+    public void cancelsNeverInterruptOtherSubscriptions() throws Exception {
+        AtomicInteger stray = new AtomicInteger(0);
+        List<Slow> listings = new ArrayList<Slow>();
+        List<Recorder> recorders = new ArrayList<Recorder>();
+
+        for( int i=0; i<8; i++ ) {
+            Slow listing = new Slow(stray);
+            Recorder recorder = new Recorder();
+
+            ListPublisher.forPages(listing).subscribe(recorder);
+            recorder.subscription.request(Long.MAX_VALUE);
+            listings.add(listing);
+            recorders.add(recorder);
+        }
+        // short-lived subscriptions cancelled around the end of their page fetches share the worker threads
+        for( int i=0; i<200; i++ ) {
+            Slow listing = new Slow(stray);
+            Recorder recorder = new Recorder();
+
+            ListPublisher.forPages(listing).subscribe(recorder);
+            recorder.subscription.request(Long.MAX_VALUE);
+            Thread.sleep(i % 3);
+            listing.wanted = false;
+            recorder.subscription.cancel();
+        }
+        for( int i=0; i<listings.size(); i++ ) {
+            listings.get(i).wanted = false;
+            recorders.get(i).subscription.cancel();
+        }
+        assertEquals("Cancelling one subscription interrupted another", 0, stray.get());
+    }
+
+    @Test
+    public void invalidRequestsFail() throws Exception {
+        Recorder recorder = new Recorder();
+
+        ListPublisher.forPages(new Numbers(1)).subscribe(recorder);
+        recorder.subscription.request(0);
+        assertTrue(recorder.next() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    public void iterableHoldsAtMostOneBatch() throws Exception {
+        Numbers numbers = new Numbers(10);
+        int count = 0;
+
+        for( Integer i : ListPublisher.toIterable(ListPublisher.forPages(numbers), 5) ) {
+            assertEquals(count++, i.intValue());
+            if( count == 3 ) {
+                Thread.sleep(100L);
+                assertEquals(1, numbers.fetched.get());
+            }
+        }
+        assertEquals(100, count);
+        assertEquals(10, numbers.fetched.get());
+    }
+
+    @Test
+    public void iterableSurfacesFailures() {
+        Iterable<Integer> failing = ListPublisher.toIterable(ListPublisher.forListing(new ListPublisher.Listing<Integer>() {
+            @Override
+            public @Nonnull Iterable<Integer> list() throws CloudException {
+                throw new CloudException("Boom");
+            }
+        }), 10);
+
+        try {
+            failing.iterator().hasNext();
+            fail("The listing failure should surface");
+        }
+        catch( JiteratorLoadException e ) {
+            assertTrue(e.getCause() instanceof CloudException);
+        }
+    }
+
+    @Test
+    public void virtualMachinesStream() throws Exception {
+        String endpoint = "sim://list-publisher";
+        Cloud cloud = Cloud.register("Simulator", "List Publisher", endpoint, SimulatedCloudProvider.class);
+
+        SimulatedCloud.reset(endpoint);
+        SimulatedCloud.getInstance(endpoint).populate("123456789", "sim-1", 30);
+        CloudProvider provider = cloud.createContext("123456789", "sim-1").connect();
+
+        try {
+            int count = 0;
+
+            //noinspection ConstantConditions
+            for( VirtualMachine ignore : ListPublisher.toIterable(provider.getComputeServices().getVirtualMachineSupport().streamVirtualMachines(null), 8) ) {
+                count++;
+            }
+            assertEquals(30, count);
+        }
+        finally {
+            provider.close();
+            SimulatedCloud.reset(endpoint);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.trace;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.ProviderContext;
+import org.dasein.cloud.RequestTrackingStrategy;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.dasein.cloud.util.APITrace;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests span nesting, sampling and export by {@link Tracer}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class TracerTestCase {
+    static private class CollectingExporter implements SpanExporter {
+        final List<List<Span>> traces = new ArrayList<List<Span>>();
+
+        @Override
+        public void export(@Nonnull List<Span> spans) {
+            traces.add(spans);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Tracer.setExporter(null);
+        Tracer.setDefaultSampleRate(0.0);
+    }
+
+    private CloudProvider connect(String sampleRate) throws Exception {
+        Cloud cloud = Cloud.register("Simulator", "Tracing", "sim://tracing", SimulatedCloudProvider.class);
+        ProviderContext ctx = cloud.createContext("acct", "region-1", new ProviderContext.Value<String>(Tracer.SAMPLE_RATE_PROPERTY, sampleRate));
+
+        ctx.withRequestTracking(RequestTrackingStrategy.getInstance("req-42"));
+        return ctx.connect();
+    }
+
+    @Test
+    public void unsampledTracesAreNotExported() throws Exception {
+        CollectingExporter exporter = new CollectingExporter();
+        CloudProvider provider = connect("0");
+
+        Tracer.setExporter(exporter);
+        APITrace.begin(provider, "listVirtualMachines");
+        Tracer.beginChild("HTTP GET");
+        assertFalse("Unsampled trace should not be recorded", Tracer.isRecording());
+        Tracer.end();
+        APITrace.end();
+        assertNull("Span stack should be empty", Tracer.getCurrentSpan());
+        assertTrue("Unsampled trace should not be exported", exporter.traces.isEmpty());
+    }
+
+    @Test
+    public void nestedSpansShareTheTrace() throws Exception {
+        CollectingExporter exporter = new CollectingExporter();
+        CloudProvider provider = connect("1");
+
+        Tracer.setExporter(exporter);
+        APITrace.begin(provider, "listVirtualMachines");
+        APITrace.trace(provider, "DescribeInstances");
+        Tracer.begin(provider, "HTTP GET");
+        long start = System.nanoTime();
+        Tracer.record("ttfb", start, start + 5000000L);
+        Tracer.end();
+        assertTrue("Root span should still be open", exporter.traces.isEmpty());
+        APITrace.end();
+
+        assertEquals("Trace should have been exported once", 1, exporter.traces.size());
+        List<Span> spans = exporter.traces.get(0);
+
+        assertEquals(3, spans.size());
+        Span ttfb = spans.get(0);
+        Span http = spans.get(1);
+        Span root = spans.get(2);
+
+        assertEquals("listVirtualMachines", root.getName());
+        assertNull("Root should have no parent", root.getParentId());
+        assertEquals(root.getId(), http.getParentId());
+        assertEquals(http.getId(), ttfb.getParentId());
+        assertEquals(root.getTraceId(), ttfb.getTraceId());
+        assertEquals("Recorded phase should keep its duration", 5000L, ttfb.getDuration());
+        assertEquals("req-42", root.getTags().get("dasein.requestId"));
+        assertEquals("DescribeInstances", root.getAnnotations().get(0).getValue());
+
+        JSONObject json = root.toJSON("test");
+
+        assertEquals(16, json.getString("traceId").length());
+        assertEquals("test", json.getJSONObject("localEndpoint").getString("serviceName"));
+        assertEquals("acct", json.getJSONObject("tags").getString("dasein.account"));
+    }
+
+    @Test
+    public void unbalancedSpansAreDiscarded() throws Exception {
+        CollectingExporter exporter = new CollectingExporter();
+        CloudProvider provider = connect("1");
+
+        Tracer.setExporter(exporter);
+        for( int i = 0; i < Tracer.MAX_DEPTH; i++ ) {
+            Tracer.begin(provider, "leaked-" + i);
+        }
+        Tracer.begin(provider, "fresh");
+        assertNull("A thread nested past the maximum depth should start over with a new root", Tracer.getCurrentSpan().getParentId());
+        Tracer.end();
+        assertNull("Span stack should be empty", Tracer.getCurrentSpan());
+        assertEquals("Only the fresh trace should have been exported", 1, exporter.traces.size());
+        assertEquals("fresh", exporter.traces.get(0).get(0).getName());
+    }
+
+    @Test
+    public void capturedTracesContinueOnOtherThreads() throws Exception {
+        CollectingExporter exporter = new CollectingExporter();
+        final CloudProvider provider = connect("1");
+
+        Tracer.setExporter(exporter);
+        APITrace.begin(provider, "searchMachineImages");
+        final Tracer.Context trace = Tracer.capture();
+        Thread worker = new Thread() {
+            public void run() {
+                Tracer.attach(trace);
+                try {
+                    Tracer.begin(provider, "searchPublicImages");
+                    Tracer.end();
+                    // ending the attached span is left to the thread that owns it
+                    Tracer.end();
+                }
+                finally {
+                    Tracer.detach();
+                }
+            }
+        };
+
+        worker.start();
+        worker.join();
+        assertTrue("Root span should still be open", exporter.traces.isEmpty());
+        APITrace.end();
+
+        assertEquals("Trace should have been exported once", 1, exporter.traces.size());
+        List<Span> spans = exporter.traces.get(0);
+
+        assertEquals(2, spans.size());
+        Span child = spans.get(0);
+        Span root = spans.get(1);
+
+        assertEquals("searchPublicImages", child.getName());
+        assertEquals(root.getId(), child.getParentId());
+        assertEquals(root.getTraceId(), child.getTraceId());
+        assertNull("Nothing should have been open when capturing", Tracer.capture());
+    }
+}
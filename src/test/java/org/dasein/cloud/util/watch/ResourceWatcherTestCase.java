@@ -0,0 +1,460 @@
+/**
+ * Copyright (C) 2009-2015 Dell, Inc.
+ * See annotations for authorship information
+ *
+ * ====================================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * ====================================================================
+ */
+
+
+package org.dasein.cloud.util.watch;
+
+import org.dasein.cloud.Cloud;
+import org.dasein.cloud.CloudException;
+import org.dasein.cloud.CloudProvider;
+import org.dasein.cloud.InternalException;
+import org.dasein.cloud.compute.VirtualMachine;
+import org.dasein.cloud.compute.VmState;
+import org.dasein.cloud.network.RawAddress;
+import org.dasein.cloud.test.sim.SimulatedCloud;
+import org.dasein.cloud.test.sim.SimulatedCloudProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the change feed built by {@link ResourceWatcher}.
+ * @version 2015.09 initial version
+ * @since 2015.09
+ */
+public class ResourceWatcherTestCase {
+    static private final String ACCOUNT  = "123456789";
+    static private final String ENDPOINT = "sim://resource-watcher";
+    static private final String REGION   = "sim-1";
+
+    /**
+     * An in-memory resource store whose entries are "id=value" strings, with an optional changed-since listing.
+     */
+    static private class MapSource implements IncrementalWatchSource<String> {
+        final Map<String,Long>   changed   = new LinkedHashMap<String, Long>();
+        final Map<String,String> values    = new LinkedHashMap<String, String>();
+        int                      fullCalls = 0;
+        int                      incrCalls = 0;
+
+        void put(@Nonnull String id, @Nonnull String value) {
+            values.put(id, value);
+            changed.put(id, System.currentTimeMillis());
+        }
+
+        @Override
+        public @Nonnull String getResourceType() {
+            return "string";
+        }
+
+        @Override
+        public @Nullable String getId(@Nonnull String resource) {
+            return resource.substring(0, resource.indexOf('='));
+        }
+
+        @Override
+        public long getFingerprint(@Nonnull String resource) {
+            return Fingerprint.getInstance().add(resource).get();
+        }
+
+        @Override
+        public @Nonnull Iterable<String> list() {
+            fullCalls++;
+            List<String> all = new ArrayList<String>();
+
+            for( Map.Entry<String,String> entry : values.entrySet() ) {
+                all.add(entry.getKey() + "=" + entry.getValue());
+            }
+            return all;
+        }
+
+        @Override
+        public @Nonnull Iterable<String> listChangedSince(long timestamp) {
+            incrCalls++;
+            List<String> recent = new ArrayList<String>();
+
+            for( Map.Entry<String,String> entry : values.entrySet() ) {
+                if( changed.get(entry.getKey()) >= timestamp ) {
+                    recent.add(entry.getKey() + "=" + entry.getValue());
+                }
+            }
+            return recent;
+        }
+    }
+
+    private Cloud cloud;
+
+    @Before
+    public void setUp() {
+        cloud = Cloud.register("Simulator", "Resource Watcher", ENDPOINT, SimulatedCloudProvider.class);
+        SimulatedCloud.reset(ENDPOINT);
+        SimulatedCloud.getInstance(ENDPOINT).populate(ACCOUNT, REGION, 5);
+    }
+
+    @After
+    public void tearDown() {
+        SimulatedCloud.reset(ENDPOINT);
+    }
+
+    private @Nonnull Map<String,ResourceChange.Type> index(@Nonnull List<? extends ResourceChange<?>> changes) {
+        Map<String,ResourceChange.Type> types = new LinkedHashMap<String, ResourceChange.Type>();
+
+        for( ResourceChange<?> change : changes ) {
+            types.put(change.getResourceId(), change.getType());
+        }
+        return types;
+    }
+
+    @Test
+    public void fingerprintIsOrderAndBoundarySensitive() {
+        assertEquals(Fingerprint.getInstance().add("a").add("b").get(), Fingerprint.getInstance().add("a").add("b").get());
+        assertFalse(Fingerprint.getInstance().add("a").add("b").get() == Fingerprint.getInstance().add("b").add("a").get());
+        assertFalse(Fingerprint.getInstance().add("ab").add("c").get() == Fingerprint.getInstance().add("a").add("bc").get());
+        assertFalse(Fingerprint.getInstance().add((Object)null).get() == Fingerprint.getInstance().add("").get());
+    }
+
+    @Test
+    public void reportsCreatesUpdatesAndDeletes() throws Exception {
+        CloudProvider provider = cloud.createContext(ACCOUNT, REGION).connect();
+
+        try {
+            //noinspection ConstantConditions
+            ResourceWatcher<VirtualMachine> watcher = ResourceWatcher.getInstance(WatchSources.forVirtualMachines(provider.getComputeServices().getVirtualMachineSupport()));
+            Map<String,VirtualMachine> vms = SimulatedCloud.getInstance(ENDPOINT).getRegion(ACCOUNT, REGION).virtualMachines;
+            List<ResourceChange<VirtualMachine>> changes = watcher.poll();
+
+            assertEquals(5, changes.size());
+            for( ResourceChange<VirtualMachine> change : changes ) {
+                assertEquals(ResourceChange.Type.CREATED, change.getType());
+                assertNotNull(change.getResource());
+            }
+            assertTrue(watcher.poll().isEmpty());
+
+            Iterator<VirtualMachine> it = vms.values().iterator();
+            VirtualMachine tagged = it.next();
+            VirtualMachine terminated = it.next();
+
+            tagged.addTag("owner", "ops");
+            terminated.setCurrentState(VmState.TERMINATED);
+            changes = watcher.poll();
+
+            Map<String,ResourceChange.Type> types = index(changes);
+
+            assertEquals(2, types.size());
+            assertEquals(ResourceChange.Type.UPDATED, types.get(tagged.getProviderVirtualMachineId()));
+            assertEquals(ResourceChange.Type.DELETED, types.get(terminated.getProviderVirtualMachineId()));
+            assertNull(changes.get(1).getResource());
+            assertEquals(4, watcher.getCheckpoint().getFingerprints().size());
+        }
+        finally {
+            provider.close();
+        }
+    }
+
+    @Test
+    public void resumesFromSerializedCheckpoint() throws Exception {
+        MapSource source = new MapSource();
+
+        source.put("a", "1");
+        source.put("b", "2");
+        ResourceWatcher<String> first = ResourceWatcher.getInstance(source);
+
+        assertEquals(2, first.poll().size());
+        byte[] saved = first.getCheckpoint().toBytes();
+
+        source.values.remove("a");
+        source.put("b", "3");
+        source.put("c", "4");
+
+        WatchCheckpoint checkpoint = WatchCheckpoint.fromBytes(saved);
+
+        assertEquals("string", checkpoint.getResourceType());
+        assertEquals(2, checkpoint.getFingerprints().size());
+
+        Map<String,ResourceChange.Type> types = index(ResourceWatcher.getInstance(source).withCheckpoint(checkpoint).poll());
+
+        assertEquals(3, types.size());
+        assertEquals(ResourceChange.Type.DELETED, types.get("a"));
+        assertEquals(ResourceChange.Type.UPDATED, types.get("b"));
+        assertEquals(ResourceChange.Type.CREATED, types.get("c"));
+    }
+
+    @Test(expected=InternalException.class)
+    public void rejectsCorruptCheckpoint() throws Exception {
+        WatchCheckpoint.fromBytes(new byte[] { 0, 0, 0, 1, 0 });
+    }
+
+    @Test
+    public void incrementalPollsFallBackToPeriodicFullListings() throws Exception {
+        MapSource source = new MapSource();
+        ResourceWatcher<String> watcher = ResourceWatcher.getInstance(source).withFullListingEvery(3).withSkew(0L);
+
+        source.put("a", "1");
+        assertEquals(1, watcher.poll().size());
+        assertEquals(1, source.fullCalls);
+
+        Thread.sleep(5L);
+        source.put("b", "2");
+        source.values.remove("a");
+
+        Map<String,ResourceChange.Type> types = index(watcher.poll());
+
+        // an incremental listing sees the new resource but cannot see the deletion
+        assertEquals(1, source.incrCalls);
+        assertEquals(1, types.size());
+        assertEquals(ResourceChange.Type.CREATED, types.get("b"));
+        assertTrue(watcher.poll().isEmpty());
+        assertEquals(2, source.incrCalls);
+
+        types = index(watcher.poll());
+        assertEquals(2, source.fullCalls);
+        assertEquals(1, types.size());
+        assertEquals(ResourceChange.Type.DELETED, types.get("a"));
+    }
+
+    @Test
+    public void failedPollKeepsState() throws Exception {
+        final MapSource delegate = new MapSource();
+        final AtomicReference<CloudException> failure = new AtomicReference<CloudException>();
+        ResourceWatcher<String> watcher = ResourceWatcher.getInstance(new WatchSource<String>() {
+            @Override
+            public @Nonnull String getResourceType() {
+                return delegate.getResourceType();
+            }
+
+            @Override
+            public String getId(@Nonnull String resource) {
+                return delegate.getId(resource);
+            }
+
+            @Override
+            public long getFingerprint(@Nonnull String resource) {
+                return delegate.getFingerprint(resource);
+            }
+
+            @Override
+            public @Nonnull Iterable<String> list() throws CloudException {
+                if( failure.get() != null ) {
+                    throw failure.get();
+                }
+                return delegate.list();
+            }
+        });
+
+        delegate.put("a", "1");
+        watcher.poll();
+        delegate.put("a", "2");
+        failure.set(new CloudException("down"));
+        try {
+            watcher.poll();
+            fail("Poll should have failed");
+        }
+        catch( CloudException expected ) {
+            // expected
+        }
+        failure.set(null);
+        assertEquals(ResourceChange.Type.UPDATED, watcher.poll().get(0).getType());
+    }
+
+    @Test
+    public void backgroundPollingNotifiesListener() throws Exception {
+        MapSource source = new MapSource();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<List<ResourceChange<String>>> received = new AtomicReference<List<ResourceChange<String>>>();
+        final AtomicReference<WatchCheckpoint> checkpoint = new AtomicReference<WatchCheckpoint>();
+        ResourceWatcher<String> watcher = ResourceWatcher.getInstance(source);
+
+        source.put("a", "1");
+        watcher.start(10L, TimeUnit.MILLISECONDS, new ResourceChangeListener<String>() {
+            @Override
+            public void changed(@Nonnull List<ResourceChange<String>> changes, @Nonnull WatchCheckpoint cp) {
+                received.set(changes);
+                checkpoint.set(cp);
+                latch.countDown();
+            }
+
+            @Override
+            public void failed(@Nonnull Throwable error) {
+                // not expected
+            }
+        });
+        try {
+            assertTrue(watcher.isStarted());
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, received.get().size());
+            assertEquals(1, checkpoint.get().getFingerprints().size());
+        }
+        finally {
+            watcher.stop();
+        }
+        assertFalse(watcher.isStarted());
+    }
+
+    @Test
+    public void addressOrderDoesNotChangeTheFingerprint() throws Exception {
+        CloudProvider provider = cloud.createContext(ACCOUNT, REGION).connect();
+        //noinspection ConstantConditions
+        WatchSource<VirtualMachine> source = WatchSources.forVirtualMachines(provider.getComputeServices().getVirtualMachineSupport());
+        VirtualMachine a = new VirtualMachine();
+        VirtualMachine b = new VirtualMachine();
+
+        a.setProviderVirtualMachineId("i-1");
+        a.setPrivateAddresses(new RawAddress("10.0.0.1"), new RawAddress("10.0.0.2"));
+        a.setProviderFirewallIds(new String[] { "sg-1", "sg-2" });
+        b.setProviderVirtualMachineId("i-1");
+        b.setPrivateAddresses(new RawAddress("10.0.0.2"), new RawAddress("10.0.0.1"));
+        b.setProviderFirewallIds(new String[] { "sg-2", "sg-1" });
+        assertEquals(source.getFingerprint(a), source.getFingerprint(b));
+        provider.close();
+    }
+
+    @Test
+    public void slowPollsDoNotDelayOtherWatchers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch polled = new CountDownLatch(3);
+        List<ResourceWatcher<String>> watchers = new ArrayList<ResourceWatcher<String>>();
+        ResourceChangeListener<String> listener = new ResourceChangeListener<String>() {
+            @Override
+            public void changed(@Nonnull List<ResourceChange<String>> changes, @Nonnull WatchCheckpoint checkpoint) {
+                polled.countDown();
+            }
+
+            @Override
+            public void failed(@Nonnull Throwable error) {
+                // not expected
+            }
+        };
+
+        try {
+            for( int i=0; i<2; i++ ) {
+                final MapSource blocked = new MapSource() {
+                    @Override
+                    public @Nonnull Iterable<String> list() {
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        }
+                        catch( InterruptedException e ) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return super.list();
+                    }
+                };
+
+                blocked.put("slow", "1");
+                watchers.add(ResourceWatcher.getInstance(blocked));
+                watchers.get(i).start(10L, TimeUnit.MILLISECONDS, listener);
+            }
+            MapSource fast = new MapSource();
+
+            fast.put("fast", "1");
+            watchers.add(ResourceWatcher.getInstance(fast));
+            watchers.get(2).start(10L, TimeUnit.MILLISECONDS, listener);
+            assertFalse("Only the fast watcher should have reported", polled.await(1, TimeUnit.SECONDS));
+            assertEquals("The fast watcher should have polled while the others were blocked", 2, polled.getCount());
+            release.countDown();
+            assertTrue(polled.await(5, TimeUnit.SECONDS));
+        }
+        finally {
+            release.countDown();
+            for( ResourceWatcher<String> watcher : watchers ) {
+                watcher.stop();
+            }
+        }
+    }
+
+    @Test
+    public void slowListingsDoNotHoldTheWatcher() throws Exception {
+        final CountDownLatch listing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger active = new AtomicInteger(0);
+        final AtomicInteger overlaps = new AtomicInteger(0);
+        MapSource source = new MapSource() {
+            @Override
+            public @Nonnull Iterable<String> list() {
+                if( active.incrementAndGet() > 1 ) {
+                    overlaps.incrementAndGet();
+                }
+                try {
+                    listing.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                catch( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    active.decrementAndGet();
+                }
+                return super.list();
+            }
+        };
+        final ResourceWatcher<String> watcher = ResourceWatcher.getInstance(source).withFullListingEvery(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        List<Thread> pollers = new ArrayList<Thread>();
+
+        source.put("a", "1");
+        for( int i=0; i<2; i++ ) {
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        watcher.poll();
+                    }
+                    catch( Throwable t ) {
+                        error.set(t);
+                    }
+                }
+            };
+
+            pollers.add(t);
+            t.start();
+        }
+        try {
+            assertTrue("A poll should have started listing", listing.await(5, TimeUnit.SECONDS));
+            long started = System.currentTimeMillis();
+
+            assertEquals("No poll has finished yet", 0L, watcher.getCheckpoint().getTimestamp());
+            assertFalse(watcher.isStarted());
+            watcher.stop();
+            assertTrue("The watcher should not wait for the listing", System.currentTimeMillis() - started < 1000L);
+        }
+        finally {
+            release.countDown();
+        }
+        for( Thread t : pollers ) {
+            t.join(5000L);
+        }
+        assertNull(error.get());
+        assertEquals("Polls of one watcher should run one at a time", 0, overlaps.get());
+        assertEquals(2, source.fullCalls);
+        assertTrue(watcher.getCheckpoint().getTimestamp() > 0L);
+    }
+}